@@ -0,0 +1,179 @@
+package org.opentrafficsim.fosim;
+
+import java.util.Arrays;
+
+import org.djutils.exceptions.Throw;
+
+/**
+ * Pyramid of detector measurements pre-aggregated at multiple resolutions. Level 0 contains the detector periods, and each
+ * further level aggregates a multiple of detector periods, where each multiple is a multiple of the previous level. Levels are
+ * maintained incrementally as detector periods are completed. A range query sums a range of detector periods using the
+ * coarsest levels that fit within the range, and the finer levels only at the edges of the range. Hence the cost of a query
+ * depends on the length of the range divided by the coarsest multiple, rather than on the length of the range.
+ * <p>
+ * Copyright (c) 2023-2024 Delft University of Technology, PO Box 5, 2600 AA, Delft, the Netherlands. All rights reserved. <br>
+ * BSD-style license. See <a href="https://opentrafficsim.org/docs/license.html">OpenTrafficSim License</a>.
+ * </p>
+ * @author <a href="https://github.com/wjschakel">Wouter Schakel</a>
+ */
+public class AggregationPyramid
+{
+
+    /** Index of vehicle count. */
+    public static final int COUNT = 0;
+
+    /** Index of sum of reciprocal speed. */
+    public static final int SUM_RECIPROCAL_SPEED = 1;
+
+    /** Index of vehicle count in travel time sum. */
+    public static final int TRAVEL_TIME_COUNT = 2;
+
+    /** Index of sum of travel time. */
+    public static final int SUM_TRAVEL_TIME = 3;
+
+    /** Number of measures. */
+    private static final int MEASURES = 4;
+
+    /** Initial number of bins at level 0 for which storage is allocated. */
+    private static final int INITIAL_BINS = 16;
+
+    /** Number of detector periods per bin, for each level. */
+    private final int[] multiples;
+
+    /** Values per level, measure and bin. */
+    private final double[][][] values;
+
+    /** Number of completed detector periods. */
+    private int periods = 0;
+
+    /**
+     * Constructor.
+     * @param multiples number of detector periods per bin of each level above level 0, in increasing order, where each is a
+     *            multiple of the previous.
+     * @throws IllegalArgumentException when a multiple is not larger than, or not a multiple of, the previous multiple.
+     */
+    public AggregationPyramid(final int... multiples)
+    {
+        this.multiples = new int[multiples.length + 1];
+        this.multiples[0] = 1;
+        for (int level = 1; level < this.multiples.length; level++)
+        {
+            int multiple = multiples[level - 1];
+            int previous = this.multiples[level - 1];
+            Throw.when(multiple <= previous || multiple % previous != 0, IllegalArgumentException.class,
+                    "Aggregation level %s is not larger than and a multiple of the previous level %s.", multiple, previous);
+            this.multiples[level] = multiple;
+        }
+        this.values = new double[this.multiples.length][MEASURES][];
+        for (int level = 0; level < this.multiples.length; level++)
+        {
+            for (int measure = 0; measure < MEASURES; measure++)
+            {
+                this.values[level][measure] = new double[Math.max(INITIAL_BINS / this.multiples[level], 1)];
+            }
+        }
+    }
+
+    /**
+     * Adds the measurements of the next completed detector period.
+     * @param count vehicle count.
+     * @param sumReciprocalSpeed sum of reciprocal speed.
+     * @param travelTimeCount vehicle count in travel time sum.
+     * @param sumTravelTime sum of travel time.
+     */
+    public void add(final int count, final double sumReciprocalSpeed, final int travelTimeCount, final double sumTravelTime)
+    {
+        for (int level = 0; level < this.multiples.length; level++)
+        {
+            int bin = this.periods / this.multiples[level];
+            double[][] levelValues = this.values[level];
+            if (bin == levelValues[0].length)
+            {
+                for (int measure = 0; measure < MEASURES; measure++)
+                {
+                    levelValues[measure] = Arrays.copyOf(levelValues[measure], 2 * bin);
+                }
+            }
+            levelValues[COUNT][bin] += count;
+            levelValues[SUM_RECIPROCAL_SPEED][bin] += sumReciprocalSpeed;
+            levelValues[TRAVEL_TIME_COUNT][bin] += travelTimeCount;
+            levelValues[SUM_TRAVEL_TIME][bin] += sumTravelTime;
+        }
+        this.periods++;
+    }
+
+    /**
+     * Returns the number of completed detector periods.
+     * @return number of completed detector periods.
+     */
+    public int getPeriods()
+    {
+        return this.periods;
+    }
+
+    /**
+     * Returns the number of detector periods per bin of each level, where level 0 has 1.
+     * @return number of detector periods per bin of each level.
+     */
+    public int[] getMultiples()
+    {
+        return this.multiples.clone();
+    }
+
+    /**
+     * Returns the sum of a measure over a range of completed detector periods.
+     * @param measure measure, e.g. {@code AggregationPyramid.COUNT}.
+     * @param fromPeriod first detector period (inclusive).
+     * @param toPeriod last detector period (exclusive).
+     * @return sum of the measure over the range of detector periods.
+     * @throws IndexOutOfBoundsException when the range is not within the completed detector periods.
+     */
+    public double getSum(final int measure, final int fromPeriod, final int toPeriod)
+    {
+        Throw.when(fromPeriod < 0 || toPeriod > this.periods || fromPeriod > toPeriod, IndexOutOfBoundsException.class,
+                "Range %s-%s is not within the %s completed periods.", fromPeriod, toPeriod, this.periods);
+        return getSum(measure, fromPeriod, toPeriod, this.multiples.length - 1);
+    }
+
+    /**
+     * Returns the sum of a measure over a range of detector periods, using the given level and finer levels.
+     * @param measure measure.
+     * @param fromPeriod first detector period (inclusive).
+     * @param toPeriod last detector period (exclusive).
+     * @param level coarsest level to use.
+     * @return sum of the measure over the range of detector periods.
+     */
+    private double getSum(final int measure, final int fromPeriod, final int toPeriod, final int level)
+    {
+        if (fromPeriod >= toPeriod)
+        {
+            return 0.0;
+        }
+        int multiple = this.multiples[level];
+        int fromBin = (fromPeriod + multiple - 1) / multiple;
+        int toBin = toPeriod / multiple;
+        if (fromBin >= toBin)
+        {
+            // no whole bin of this level within the range
+            return getSum(measure, fromPeriod, toPeriod, level - 1);
+        }
+        double sum = 0.0;
+        for (int bin = fromBin; bin < toBin; bin++)
+        {
+            sum += this.values[level][measure][bin];
+        }
+        if (level > 0)
+        {
+            sum += getSum(measure, fromPeriod, fromBin * multiple, level - 1);
+            sum += getSum(measure, toBin * multiple, toPeriod, level - 1);
+        }
+        return sum;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "AggregationPyramid [multiples=" + Arrays.toString(this.multiples) + ", periods=" + this.periods + "]";
+    }
+
+}
@@ -0,0 +1,156 @@
+package org.opentrafficsim.fosim;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntConsumer;
+
+import org.djunits.value.vdouble.scalar.Duration;
+import org.djutils.exceptions.Throw;
+import org.opentrafficsim.core.dsol.OtsSimulatorInterface;
+
+/**
+ * Clock of the detector periods in a network. A single event per period advances the period of all detectors, after which
+ * listeners are notified of the completed period. This prevents an event per detector per period, and allows consumers of
+ * detector data to respond to completed periods rather than checking the current period at each step. The clock also numbers
+ * the passings at all its detectors in a single sequence.
+ * <p>
+ * Copyright (c) 2023-2024 Delft University of Technology, PO Box 5, 2600 AA, Delft, the Netherlands. All rights reserved. <br>
+ * BSD-style license. See <a href="https://opentrafficsim.org/docs/license.html">OpenTrafficSim License</a>.
+ * </p>
+ * @author <a href="https://github.com/wjschakel">Wouter Schakel</a>
+ */
+public class DetectorPeriodClock
+{
+
+    /** Simulator. */
+    private final OtsSimulatorInterface simulator;
+
+    /** Duration of first period. */
+    private final Duration firstPeriod;
+
+    /** Duration of periods after the first. */
+    private final Duration nextPeriods;
+
+    /** Detectors. */
+    private final List<FosDetector> detectors = new ArrayList<>();
+
+    /** Listeners to completed periods. */
+    private final List<IntConsumer> listeners = new ArrayList<>();
+
+    /** Number of completed periods. */
+    private int completedPeriods = 0;
+
+    /** Sequence number of the next passing at any detector. */
+    private long passingSequence = 0;
+
+    /**
+     * Constructor. The end of the first period is scheduled.
+     * @param simulator simulator.
+     * @param firstPeriod duration of first period.
+     * @param nextPeriods duration of periods after the first.
+     */
+    public DetectorPeriodClock(final OtsSimulatorInterface simulator, final Duration firstPeriod, final Duration nextPeriods)
+    {
+        Throw.whenNull(simulator, "simulator");
+        Throw.whenNull(firstPeriod, "firstPeriod");
+        Throw.whenNull(nextPeriods, "nextPeriods");
+        this.simulator = simulator;
+        this.firstPeriod = firstPeriod;
+        this.nextPeriods = nextPeriods;
+        simulator.scheduleEventAbs(firstPeriod, this, "completePeriod", null);
+    }
+
+    /**
+     * Registers a detector, whose period will be advanced by this clock.
+     * @param detector detector.
+     */
+    void register(final FosDetector detector)
+    {
+        this.detectors.add(detector);
+    }
+
+    /**
+     * Adds a listener that is notified with the index of each completed period, after all detectors have been advanced.
+     * @param listener listener.
+     */
+    public void addListener(final IntConsumer listener)
+    {
+        Throw.whenNull(listener, "listener");
+        this.listeners.add(listener);
+    }
+
+    /**
+     * Removes a listener.
+     * @param listener listener.
+     */
+    public void removeListener(final IntConsumer listener)
+    {
+        this.listeners.remove(listener);
+    }
+
+    /**
+     * Completes the current period of all detectors, notifies listeners, and schedules the end of the next period.
+     */
+    @SuppressWarnings("unused") // used through scheduling
+    private void completePeriod()
+    {
+        for (FosDetector detector : this.detectors)
+        {
+            detector.increasePeriod();
+        }
+        int period = this.completedPeriods++;
+        for (IntConsumer listener : new ArrayList<>(this.listeners))
+        {
+            listener.accept(period);
+        }
+        Duration time = Duration.ofSI(this.firstPeriod.si + this.completedPeriods * this.nextPeriods.si);
+        this.simulator.scheduleEventAbs(time, this, "completePeriod", null);
+    }
+
+    /**
+     * Returns the sequence number for a new passing at any of the detectors.
+     * @return sequence number for a new passing.
+     */
+    long nextPassingSequence()
+    {
+        return this.passingSequence++;
+    }
+
+    /**
+     * Returns the sequence number that the next passing at any of the detectors will have. All earlier passings have a lower
+     * sequence number.
+     * @return sequence number that the next passing will have.
+     */
+    public long getPassingSequence()
+    {
+        return this.passingSequence;
+    }
+
+    /**
+     * Returns the number of completed periods.
+     * @return number of completed periods.
+     */
+    public int getCompletedPeriods()
+    {
+        return this.completedPeriods;
+    }
+
+    /**
+     * Returns the duration of the first period.
+     * @return duration of the first period.
+     */
+    public Duration getFirstPeriod()
+    {
+        return this.firstPeriod;
+    }
+
+    /**
+     * Returns the duration of periods after the first.
+     * @return duration of periods after the first.
+     */
+    public Duration getNextPeriods()
+    {
+        return this.nextPeriods;
+    }
+
+}
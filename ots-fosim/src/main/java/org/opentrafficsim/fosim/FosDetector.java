@@ -1,20 +1,10 @@
 package org.opentrafficsim.fosim;
 
-import java.util.ArrayList;
-import java.util.LinkedHashSet;
-import java.util.List;
-import java.util.Map;
-import java.util.NavigableMap;
-import java.util.Set;
-import java.util.TreeMap;
-
-import org.djunits.value.vdouble.scalar.Duration;
+import java.util.Arrays;
+
 import org.djunits.value.vdouble.scalar.Length;
-import org.djunits.value.vdouble.scalar.Speed;
 import org.djutils.exceptions.Throw;
 import org.opentrafficsim.core.definitions.DefaultsNl;
-import org.opentrafficsim.core.dsol.OtsSimulatorInterface;
-import org.opentrafficsim.core.gtu.GtuType;
 import org.opentrafficsim.core.gtu.RelativePosition;
 import org.opentrafficsim.core.network.NetworkException;
 import org.opentrafficsim.road.gtu.lane.LaneBasedGtu;
@@ -33,97 +23,112 @@ import org.opentrafficsim.road.network.lane.object.detector.LaneDetector;
 public class FosDetector extends LaneDetector
 {
 
-    /** Registered passing times in previous detector cross-section. */
-    private final Map<String, Duration> prevTime;
+    /** Initial number of periods for which storage is allocated. */
+    private static final int INITIAL_PERIODS = 16;
+
+    /** Slots of GTUs. */
+    private final GtuSlots gtuSlots;
 
-    /** Registered passing times in this detector cross-section. */
-    private final Map<String, Duration> thisTime;
+    /** Registered passing times in previous detector cross-section, per GTU slot. */
+    private final GtuSlots.Times prevTime;
 
-    /** Vehicle count. */
-    private final List<Integer> count = new ArrayList<>();
+    /** Registered passing times in this detector cross-section, per GTU slot. */
+    private final GtuSlots.Times thisTime;
 
-    /** Sum of reciprocal speed. */
-    private final List<Double> sumReciprocalSpeed = new ArrayList<>();
+    /** Vehicle count, per period. Storage grows as periods are added, and may be larger than the number of periods. */
+    private int[] count = new int[INITIAL_PERIODS];
 
-    /** Vehicle count, for all vehicles that passed an earlier detector. */
-    private final List<Integer> travelTimeCount = new ArrayList<>();
+    /** Sum of reciprocal speed, per period. */
+    private double[] sumReciprocalSpeed = new double[INITIAL_PERIODS];
 
-    /** Sum of travel time since last detector. */
-    private final List<Double> sumTravelTime = new ArrayList<>();
+    /** Vehicle count, for all vehicles that passed an earlier detector, per period. */
+    private int[] travelTimeCount = new int[INITIAL_PERIODS];
+
+    /** Sum of travel time since last detector, per period. */
+    private double[] sumTravelTime = new double[INITIAL_PERIODS];
 
     /** GTU passings. */
-    private NavigableMap<Duration, Passing> passings = new TreeMap<>();
+    private final PassingLog passings;
+
+    /** Pre-aggregated measurements of completed periods. */
+    private AggregationPyramid pyramid = new AggregationPyramid();
 
     /** Current period index. */
     private int index = -1;
 
-    /** Time of first aggregation. */
-    private final Duration firstAggregation;
-
-    /** Aggregation period. */
-    private final Duration aggregationTime;
+    /** Clock of detector periods. */
+    private final DetectorPeriodClock periodClock;
 
     /**
      * Constructor.
      * @param id id.
      * @param lane lane.
      * @param longitudinalPosition position on lane.
-     * @param simulator simulator.
-     * @param prevTime registered passing times in previous detector cross-section.
-     * @param thisTime registered passing times in this detector cross-section.
-     * @param firstAggregation time of first aggregation.
-     * @param aggregationTime aggregation period.
+     * @param gtuSlots slots of GTUs.
+     * @param prevTime registered passing times in previous detector cross-section, per GTU slot.
+     * @param thisTime registered passing times in this detector cross-section, per GTU slot.
+     * @param periodClock clock of detector periods, which advances the period of this detector.
      * @throws NetworkException when the position on the lane is out of bounds
      */
-    public FosDetector(final String id, final Lane lane, final Length longitudinalPosition,
-            final OtsSimulatorInterface simulator, final Map<String, Duration> prevTime, final Map<String, Duration> thisTime,
-            final Duration firstAggregation, final Duration aggregationTime) throws NetworkException
+    public FosDetector(final String id, final Lane lane, final Length longitudinalPosition, final GtuSlots gtuSlots,
+            final GtuSlots.Times prevTime, final GtuSlots.Times thisTime, final DetectorPeriodClock periodClock)
+            throws NetworkException
     {
         super(id, lane, longitudinalPosition, RelativePosition.FRONT, LaneBasedObject.makeLine(lane, longitudinalPosition, 1.0),
                 DefaultsNl.LOOP_DETECTOR);
+        this.gtuSlots = gtuSlots;
+        this.passings = new PassingLog(gtuSlots.getDestinations());
         this.prevTime = prevTime;
         this.thisTime = thisTime;
-        this.firstAggregation = firstAggregation;
-        this.aggregationTime = aggregationTime;
+        this.periodClock = periodClock;
+        periodClock.register(this);
         increasePeriod();
     }
 
     /**
-     * Initialize next measurements and schedule next period.
+     * Initialize next measurements. This is invoked by the clock of detector periods.
      */
-    private void increasePeriod()
+    void increasePeriod()
     {
+        if (this.index >= 0)
+        {
+            this.pyramid.add(this.count[this.index], this.sumReciprocalSpeed[this.index], this.travelTimeCount[this.index],
+                    this.sumTravelTime[this.index]);
+        }
         this.index++;
-        this.count.add(0);
-        this.sumReciprocalSpeed.add(0.0);
-        this.travelTimeCount.add(0);
-        this.sumTravelTime.add(0.0);
-        Duration time = Duration.ofSI(this.firstAggregation.si + this.index * this.aggregationTime.si);
-        getSimulator().scheduleEventAbs(time, this, "increasePeriod", null);
+        if (this.index == this.count.length)
+        {
+            int length = 2 * this.count.length;
+            this.count = Arrays.copyOf(this.count, length);
+            this.sumReciprocalSpeed = Arrays.copyOf(this.sumReciprocalSpeed, length);
+            this.travelTimeCount = Arrays.copyOf(this.travelTimeCount, length);
+            this.sumTravelTime = Arrays.copyOf(this.sumTravelTime, length);
+        }
     }
 
     @Override
     protected void triggerResponse(final LaneBasedGtu gtu)
     {
-        this.count.set(this.index, this.count.get(this.index) + 1);
-        this.sumReciprocalSpeed.set(this.index,
-                this.sumReciprocalSpeed.get(this.index) + (1.0 / Math.max(gtu.getSpeed().si, 0.05)));
-        Duration now = getSimulator().getSimulatorTime();
-        Duration prev = this.prevTime.remove(gtu.getId());
-        if (prev != null)
+        double speed = gtu.getSpeed().si;
+        this.count[this.index]++;
+        this.sumReciprocalSpeed[this.index] += 1.0 / Math.max(speed, 0.05);
+        double now = getSimulator().getSimulatorTime().si;
+        int slot = this.gtuSlots.getSlot(gtu.getId());
+        double travelTime = this.prevTime.remove(slot);
+        if (!Double.isNaN(travelTime))
         {
-            Duration travelTime = now.minus(prev);
-            this.travelTimeCount.set(this.index, this.travelTimeCount.get(this.index) + 1);
-            this.sumTravelTime.set(this.index, this.sumTravelTime.get(this.index) + travelTime.si);
-            this.passings.put(now, new Passing(now, travelTime, gtu.getSpeed(), gtu.getType(), gtu.getId(),
-                    gtu.getStrategicalPlanner().getDestination().get().getId()));
+            travelTime = now - travelTime;
+            this.travelTimeCount[this.index]++;
+            this.sumTravelTime[this.index] += travelTime;
         }
-        else
+        if (slot < 0)
         {
-            this.passings.put(now, new Passing(now, null, gtu.getSpeed(), gtu.getType(), gtu.getId(),
-                    gtu.getStrategicalPlanner().getDestination().get().getId()));
+            // a GTU that was added before the slots were created is counted, but not logged
+            return;
         }
-        this.thisTime.put(gtu.getId(), now);
+        this.passings.append(this.periodClock.nextPassingSequence(), now, speed, travelTime, this.gtuSlots.getGtuType(slot),
+                this.gtuSlots.getGtuId(slot), this.gtuSlots.getDestination(slot, gtu));
+        this.thisTime.set(slot, now);
     }
 
     /**
@@ -134,7 +139,7 @@ public class FosDetector extends LaneDetector
     public int getCount(final int period)
     {
         checkPeriod(period);
-        return this.count.get(period);
+        return this.count[period];
     }
 
     /**
@@ -145,7 +150,7 @@ public class FosDetector extends LaneDetector
     public double getSumReciprocalSpeed(final int period)
     {
         checkPeriod(period);
-        return this.sumReciprocalSpeed.get(period);
+        return this.sumReciprocalSpeed[period];
     }
 
     /**
@@ -156,7 +161,7 @@ public class FosDetector extends LaneDetector
     public int getTravelTimeCount(final int period)
     {
         checkPeriod(period);
-        return this.travelTimeCount.get(period);
+        return this.travelTimeCount[period];
     }
 
     /**
@@ -167,7 +172,7 @@ public class FosDetector extends LaneDetector
     public double getSumTravelTime(final int period)
     {
         checkPeriod(period);
-        return this.sumTravelTime.get(period);
+        return this.sumTravelTime[period];
     }
 
     /**
@@ -179,6 +184,39 @@ public class FosDetector extends LaneDetector
         return this.index;
     }
 
+    /**
+     * Returns the clock of detector periods.
+     * @return clock of detector periods.
+     */
+    public DetectorPeriodClock getPeriodClock()
+    {
+        return this.periodClock;
+    }
+
+    /**
+     * Sets the aggregation levels of completed periods, as multiples of the aggregation period. Already completed periods are
+     * added to the new levels.
+     * @param multiples number of periods per aggregation of each level, in increasing order, each a multiple of the previous.
+     */
+    public void setAggregationLevels(final int... multiples)
+    {
+        this.pyramid = new AggregationPyramid(multiples);
+        for (int period = 0; period < this.index; period++)
+        {
+            this.pyramid.add(this.count[period], this.sumReciprocalSpeed[period], this.travelTimeCount[period],
+                    this.sumTravelTime[period]);
+        }
+    }
+
+    /**
+     * Returns the pre-aggregated measurements of completed periods.
+     * @return pre-aggregated measurements of completed periods.
+     */
+    public AggregationPyramid getAggregationPyramid()
+    {
+        return this.pyramid;
+    }
+
     /**
      * Checks that the given period index is a valid index.
      * @param period period index.
@@ -190,36 +228,23 @@ public class FosDetector extends LaneDetector
     }
 
     /**
-     * Returns safe copy of the passings since given time.
-     * @param startTime start time (exclusive)
-     * @return passings since given time
+     * Returns a cursor over the passings from given sequence number. The cursor is invalid once passings are cleared. Sequence
+     * numbers are shared by all detectors of the clock of detector periods.
+     * @param fromSequence sequence number (inclusive)
+     * @return cursor over the passings from given sequence number
      */
-    public Set<Passing> getPassings(final Duration startTime)
+    public PassingLog.Cursor getPassings(final long fromSequence)
     {
-        return new LinkedHashSet<>(this.passings.tailMap(startTime, false).values());
+        return this.passings.from(fromSequence);
     }
 
     /**
-     * Clear passings up to given time.
-     * @param time time (inclusive)
+     * Clear passings before given sequence number.
+     * @param sequence sequence number (exclusive)
      */
-    public void clearPassingsUpTo(final Duration time)
+    public void clearPassingsBefore(final long sequence)
     {
-        this.passings.headMap(time, true).clear();
+        this.passings.clearBefore(sequence);
     }
 
-    /**
-     * Single vehicle passage record.
-     * @param time time
-     * @param travelTimeSinceDetector travel time since last detector
-     * @param speed speed
-     * @param gtuType GTU type
-     * @param id id
-     * @param destination destination node id
-     */
-    public record Passing(Duration time, Duration travelTimeSinceDetector, Speed speed, GtuType gtuType, String id,
-            String destination)
-    {
-    };
-
 }
@@ -0,0 +1,330 @@
+package org.opentrafficsim.fosim;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.djutils.event.Event;
+import org.djutils.event.EventListener;
+import org.djutils.exceptions.Throw;
+import org.opentrafficsim.core.gtu.Gtu;
+import org.opentrafficsim.core.gtu.GtuType;
+import org.opentrafficsim.core.network.Network;
+import org.opentrafficsim.road.gtu.lane.LaneBasedGtu;
+
+/**
+ * Maps the ids of GTUs in a network to dense integer slots. A slot is assigned when a GTU is added to the network, and is
+ * recycled after the GTU is removed. Hence the number of slots does not exceed the maximum number of GTUs that were in the
+ * network at the same time, and data per GTU can be stored in primitive arrays indexed by slot. Slots of removed GTUs are
+ * only recycled once the next GTU is added, such that other listeners to the removal of a GTU can still obtain its slot.
+ * Slot indices can be used by any component that stores data per GTU, such as detectors and traces.
+ * <p>
+ * Per slot, the numeric GTU id and the GTU type index are resolved once when the GTU is added, and the destination index is
+ * resolved once when it is first requested, as the strategical planner of a GTU may not yet exist when it is added. Hence
+ * components that output these values for each event of a GTU do not need to parse ids or look up GTU types and destinations.
+ * <p>
+ * Copyright (c) 2023-2024 Delft University of Technology, PO Box 5, 2600 AA, Delft, the Netherlands. All rights reserved. <br>
+ * BSD-style license. See <a href="https://opentrafficsim.org/docs/license.html">OpenTrafficSim License</a>.
+ * </p>
+ * @author <a href="https://github.com/wjschakel">Wouter Schakel</a>
+ */
+public class GtuSlots implements EventListener
+{
+
+    /** Slot per GTU id. */
+    private final Map<String, Integer> slots = new LinkedHashMap<>();
+
+    /** Free slots, as a stack. */
+    private int[] free = new int[16];
+
+    /** Number of free slots. */
+    private int freeCount = 0;
+
+    /** Ids of removed GTUs whose slot is released when the next GTU is added. */
+    private final List<String> removed = new ArrayList<>();
+
+    /** Number of slots that were ever assigned. */
+    private int capacity = 0;
+
+    /** Times per slot, which are cleared as slots are released. */
+    private final List<Times> times = new ArrayList<>();
+
+    /** Network. */
+    private final Network network;
+
+    /** GTU types, of which the index is the GTU type index. */
+    private final List<GtuType> gtuTypes;
+
+    /** Numeric GTU id per slot, -1 if the id is not a number. */
+    private int[] gtuId = new int[16];
+
+    /** GTU type index per slot, -1 if the GTU type is not in the GTU types. */
+    private int[] gtuType = new int[16];
+
+    /** Destination index per slot, -1 if not yet resolved. */
+    private int[] destination = new int[16];
+
+    /** Destination node ids by index. */
+    private final List<String> destinations = new ArrayList<>();
+
+    /** Index of destination node ids. */
+    private final Map<String, Integer> destinationIndex = new LinkedHashMap<>();
+
+    /**
+     * Constructor. The instance listens to GTUs being added and removed from the network.
+     * @param network network.
+     * @param gtuTypes GTU types, of which the index is the GTU type index. The list is not copied, and may be filled after
+     *            construction until the first GTU is added.
+     */
+    public GtuSlots(final Network network, final List<GtuType> gtuTypes)
+    {
+        Throw.whenNull(network, "network");
+        Throw.whenNull(gtuTypes, "gtuTypes");
+        this.network = network;
+        this.gtuTypes = gtuTypes;
+        network.addListener(this, Network.GTU_ADD_EVENT);
+        network.addListener(this, Network.GTU_REMOVE_EVENT);
+    }
+
+    @Override
+    public void notify(final Event event)
+    {
+        String id = (String) event.getContent();
+        if (event.getType().equals(Network.GTU_ADD_EVENT))
+        {
+            for (String removedId : this.removed)
+            {
+                release(this.slots.remove(removedId));
+            }
+            this.removed.clear();
+            int slot;
+            if (this.freeCount > 0)
+            {
+                slot = this.free[--this.freeCount];
+            }
+            else
+            {
+                slot = this.capacity++;
+                if (slot == this.gtuId.length)
+                {
+                    this.gtuId = Arrays.copyOf(this.gtuId, 2 * slot);
+                    this.gtuType = Arrays.copyOf(this.gtuType, 2 * slot);
+                    this.destination = Arrays.copyOf(this.destination, 2 * slot);
+                }
+            }
+            this.slots.put(id, slot);
+            this.gtuId[slot] = parseId(id);
+            Gtu gtu = this.network.getGTU(id).orElse(null);
+            this.gtuType[slot] = gtu == null ? -1 : this.gtuTypes.indexOf(gtu.getType());
+            this.destination[slot] = -1;
+        }
+        else if (event.getType().equals(Network.GTU_REMOVE_EVENT))
+        {
+            this.removed.add(id);
+        }
+    }
+
+    /**
+     * Releases a slot for reuse, and clears all times of the slot.
+     * @param slot slot.
+     */
+    private void release(final int slot)
+    {
+        for (Times slotTimes : this.times)
+        {
+            slotTimes.clear(slot);
+        }
+        if (this.freeCount == this.free.length)
+        {
+            this.free = Arrays.copyOf(this.free, 2 * this.free.length);
+        }
+        this.free[this.freeCount++] = slot;
+    }
+
+    /**
+     * Returns the slot of a GTU.
+     * @param gtuId GTU id.
+     * @return slot of the GTU, -1 if the GTU has no slot.
+     */
+    public int getSlot(final String gtuId)
+    {
+        Integer slot = this.slots.get(gtuId);
+        return slot == null ? -1 : slot;
+    }
+
+    /**
+     * Returns the numeric id of a GTU, without parsing it.
+     * @param slot slot of the GTU.
+     * @return numeric id of the GTU, -1 if the id is not a number.
+     */
+    public int getGtuId(final int slot)
+    {
+        return this.gtuId[slot];
+    }
+
+    /**
+     * Returns the GTU type index of a GTU, without looking it up.
+     * @param slot slot of the GTU.
+     * @return GTU type index of the GTU, -1 if the GTU type is not in the GTU types.
+     */
+    public int getGtuType(final int slot)
+    {
+        return this.gtuType[slot];
+    }
+
+    /**
+     * Returns the destination index of a GTU, which is resolved from its strategical planner on the first request.
+     * @param slot slot of the GTU.
+     * @param gtu GTU in the slot.
+     * @return destination index of the GTU.
+     */
+    public int getDestination(final int slot, final LaneBasedGtu gtu)
+    {
+        int index = this.destination[slot];
+        if (index < 0)
+        {
+            String id = gtu.getStrategicalPlanner().getDestination().get().getId();
+            Integer known = this.destinationIndex.get(id);
+            if (known == null)
+            {
+                known = this.destinations.size();
+                this.destinations.add(id);
+                this.destinationIndex.put(id, known);
+            }
+            index = known;
+            this.destination[slot] = index;
+        }
+        return index;
+    }
+
+    /**
+     * Returns the destination node ids by destination index. The list is a view, which grows as destinations are resolved.
+     * @return destination node ids by destination index.
+     */
+    public List<String> getDestinations()
+    {
+        return Collections.unmodifiableList(this.destinations);
+    }
+
+    /**
+     * Parses a GTU id as a non-negative int, without throwing an exception for an id that is not a number.
+     * @param id GTU id.
+     * @return numeric id, -1 if the id is not a non-negative int.
+     */
+    private static int parseId(final String id)
+    {
+        if (id.isEmpty() || id.length() > 10)
+        {
+            return -1;
+        }
+        long value = 0L;
+        for (int i = 0; i < id.length(); i++)
+        {
+            char c = id.charAt(i);
+            if (c < '0' || c > '9')
+            {
+                return -1;
+            }
+            value = 10L * value + (c - '0');
+        }
+        return value > Integer.MAX_VALUE ? -1 : (int) value;
+    }
+
+    /**
+     * Returns the number of slots that were ever assigned, i.e. one more than the highest slot.
+     * @return number of slots that were ever assigned.
+     */
+    public int getCapacity()
+    {
+        return this.capacity;
+    }
+
+    /**
+     * Creates storage of a time per slot, which is cleared as slots are released.
+     * @return storage of a time per slot.
+     */
+    public Times createTimes()
+    {
+        Times slotTimes = new Times();
+        this.times.add(slotTimes);
+        return slotTimes;
+    }
+
+    /**
+     * Time per slot, e.g. the time GTUs passed a detector cross-section. Slots without time have value NaN. Slot -1, as
+     * returned for a GTU without slot, never has a time.
+     */
+    public static final class Times
+    {
+
+        /** Time per slot [s]. */
+        private double[] time = new double[0];
+
+        /**
+         * Constructor.
+         */
+        private Times()
+        {
+            //
+        }
+
+        /**
+         * Sets the time of a slot. Nothing is set for slot -1.
+         * @param slot slot.
+         * @param t time [s].
+         */
+        public void set(final int slot, final double t)
+        {
+            if (slot < 0)
+            {
+                return;
+            }
+            if (slot >= this.time.length)
+            {
+                int length = this.time.length;
+                this.time = Arrays.copyOf(this.time, Math.max(2 * length, Math.max(slot + 1, 16)));
+                Arrays.fill(this.time, length, this.time.length, Double.NaN);
+            }
+            this.time[slot] = t;
+        }
+
+        /**
+         * Returns the time of a slot.
+         * @param slot slot.
+         * @return time of the slot [s], NaN if the slot has no time.
+         */
+        public double get(final int slot)
+        {
+            return slot >= 0 && slot < this.time.length ? this.time[slot] : Double.NaN;
+        }
+
+        /**
+         * Returns and clears the time of a slot.
+         * @param slot slot.
+         * @return time of the slot [s], NaN if the slot had no time.
+         */
+        public double remove(final int slot)
+        {
+            double t = get(slot);
+            clear(slot);
+            return t;
+        }
+
+        /**
+         * Clears the time of a slot.
+         * @param slot slot.
+         */
+        void clear(final int slot)
+        {
+            if (slot >= 0 && slot < this.time.length)
+            {
+                this.time[slot] = Double.NaN;
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,276 @@
+package org.opentrafficsim.fosim;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.djutils.exceptions.Throw;
+
+/**
+ * Append-only log of vehicle passings at a detector, stored in primitive columns. GTU types and destinations are stored as
+ * index, as resolved once per GTU by {@code GtuSlots}. Each passing has a sequence number, which increases over all detectors
+ * that share a clock of detector periods. Passings are appended in order of sequence number, such that the sequence column is
+ * an index for reads from a given sequence number, using binary search. Hence, a reader can continue from the sequence number
+ * it read up to at the cost of the new passings only. All passings in the log are kept until they are cleared. Appending a
+ * passing does not allocate, except when the storage grows. Reading is done with a cursor over the columns, without copying.
+ * <p>
+ * Copyright (c) 2023-2024 Delft University of Technology, PO Box 5, 2600 AA, Delft, the Netherlands. All rights reserved. <br>
+ * BSD-style license. See <a href="https://opentrafficsim.org/docs/license.html">OpenTrafficSim License</a>.
+ * </p>
+ * @author <a href="https://github.com/wjschakel">Wouter Schakel</a>
+ */
+public class PassingLog
+{
+
+    /** Initial capacity. */
+    private static final int INITIAL_CAPACITY = 64;
+
+    /** Sequence number. */
+    private long[] sequence = new long[INITIAL_CAPACITY];
+
+    /** Time [s]. */
+    private double[] time = new double[INITIAL_CAPACITY];
+
+    /** Speed [m/s]. */
+    private double[] speed = new double[INITIAL_CAPACITY];
+
+    /** Travel time since previous detector [s], NaN if the vehicle did not pass the previous detector. */
+    private double[] travelTime = new double[INITIAL_CAPACITY];
+
+    /** GTU type index. */
+    private int[] gtuType = new int[INITIAL_CAPACITY];
+
+    /** GTU id. */
+    private int[] gtuId = new int[INITIAL_CAPACITY];
+
+    /** Destination index. */
+    private int[] destination = new int[INITIAL_CAPACITY];
+
+    /** Number of passings in the log. */
+    private int size = 0;
+
+    /** Destination node ids by index. */
+    private final List<String> destinations;
+
+    /**
+     * Constructor.
+     * @param destinations destination node ids by index, which may grow as passings are appended.
+     */
+    public PassingLog(final List<String> destinations)
+    {
+        Throw.whenNull(destinations, "destinations");
+        this.destinations = destinations;
+    }
+
+    /**
+     * Appends a passing. The sequence number should be larger than the sequence number of the last passing in the log.
+     * @param seq sequence number.
+     * @param t time [s].
+     * @param v speed [m/s].
+     * @param tt travel time since previous detector [s], NaN if the vehicle did not pass the previous detector.
+     * @param type GTU type index.
+     * @param id numeric GTU id.
+     * @param dest destination index.
+     */
+    public void append(final long seq, final double t, final double v, final double tt, final int type, final int id,
+            final int dest)
+    {
+        if (this.size > 0 && seq <= this.sequence[this.size - 1])
+        {
+            // not Throw.when(...), as its varargs would allocate on every passing
+            throw new IllegalArgumentException(
+                    "Passing " + seq + " is not after last passing " + this.sequence[this.size - 1]);
+        }
+        if (this.size == this.time.length)
+        {
+            int capacity = 2 * this.time.length;
+            this.sequence = Arrays.copyOf(this.sequence, capacity);
+            this.time = Arrays.copyOf(this.time, capacity);
+            this.speed = Arrays.copyOf(this.speed, capacity);
+            this.travelTime = Arrays.copyOf(this.travelTime, capacity);
+            this.gtuType = Arrays.copyOf(this.gtuType, capacity);
+            this.gtuId = Arrays.copyOf(this.gtuId, capacity);
+            this.destination = Arrays.copyOf(this.destination, capacity);
+        }
+        this.sequence[this.size] = seq;
+        this.time[this.size] = t;
+        this.speed[this.size] = v;
+        this.travelTime[this.size] = tt;
+        this.gtuType[this.size] = type;
+        this.gtuId[this.size] = id;
+        this.destination[this.size] = dest;
+        this.size++;
+    }
+
+    /**
+     * Returns the number of passings in the log.
+     * @return number of passings in the log.
+     */
+    public int size()
+    {
+        return this.size;
+    }
+
+    /**
+     * Returns the index of the first passing with at least the given sequence number.
+     * @param seq sequence number.
+     * @return index of the first passing with at least the given sequence number, equal to the size if there is no such
+     *         passing.
+     */
+    private int firstFrom(final long seq)
+    {
+        int low = 0;
+        int high = this.size;
+        while (low < high)
+        {
+            int mid = (low + high) >>> 1;
+            if (this.sequence[mid] < seq)
+            {
+                low = mid + 1;
+            }
+            else
+            {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Clears all passings before the given sequence number.
+     * @param seq sequence number (exclusive).
+     */
+    public void clearBefore(final long seq)
+    {
+        int from = firstFrom(seq);
+        if (from > 0)
+        {
+            int n = this.size - from;
+            System.arraycopy(this.sequence, from, this.sequence, 0, n);
+            System.arraycopy(this.time, from, this.time, 0, n);
+            System.arraycopy(this.speed, from, this.speed, 0, n);
+            System.arraycopy(this.travelTime, from, this.travelTime, 0, n);
+            System.arraycopy(this.gtuType, from, this.gtuType, 0, n);
+            System.arraycopy(this.gtuId, from, this.gtuId, 0, n);
+            System.arraycopy(this.destination, from, this.destination, 0, n);
+            this.size = n;
+        }
+    }
+
+    /**
+     * Returns a cursor over all passings from the given sequence number. The cursor is invalid once the log is cleared.
+     * @param seq sequence number (inclusive).
+     * @return cursor over all passings from the given sequence number.
+     */
+    public Cursor from(final long seq)
+    {
+        return new Cursor(firstFrom(seq) - 1);
+    }
+
+    /**
+     * Cursor over passings in the log. The cursor is positioned before the first passing, and {@code next()} needs to be
+     * called before the values of a passing can be obtained.
+     */
+    public final class Cursor
+    {
+
+        /** Current index. */
+        private int index;
+
+        /**
+         * Constructor.
+         * @param index index before the first passing.
+         */
+        private Cursor(final int index)
+        {
+            this.index = index;
+        }
+
+        /**
+         * Moves to the next passing.
+         * @return whether there is a next passing.
+         */
+        public boolean next()
+        {
+            if (this.index + 1 < PassingLog.this.size)
+            {
+                this.index++;
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * Returns the sequence number.
+         * @return sequence number.
+         */
+        public long getSequence()
+        {
+            return PassingLog.this.sequence[this.index];
+        }
+
+        /**
+         * Returns the time.
+         * @return time [s].
+         */
+        public double getTime()
+        {
+            return PassingLog.this.time[this.index];
+        }
+
+        /**
+         * Returns the speed.
+         * @return speed [m/s].
+         */
+        public double getSpeed()
+        {
+            return PassingLog.this.speed[this.index];
+        }
+
+        /**
+         * Returns whether the passing has a travel time since the previous detector.
+         * @return whether the passing has a travel time since the previous detector.
+         */
+        public boolean hasTravelTime()
+        {
+            return !Double.isNaN(PassingLog.this.travelTime[this.index]);
+        }
+
+        /**
+         * Returns the travel time since the previous detector.
+         * @return travel time since the previous detector [s], NaN if the vehicle did not pass the previous detector.
+         */
+        public double getTravelTime()
+        {
+            return PassingLog.this.travelTime[this.index];
+        }
+
+        /**
+         * Returns the GTU type index.
+         * @return GTU type index.
+         */
+        public int getGtuType()
+        {
+            return PassingLog.this.gtuType[this.index];
+        }
+
+        /**
+         * Returns the GTU id.
+         * @return GTU id.
+         */
+        public int getGtuId()
+        {
+            return PassingLog.this.gtuId[this.index];
+        }
+
+        /**
+         * Returns the destination node id.
+         * @return destination node id.
+         */
+        public String getDestination()
+        {
+            return PassingLog.this.destinations.get(PassingLog.this.destination[this.index]);
+        }
+
+    }
+
+}
@@ -0,0 +1,281 @@
+package org.opentrafficsim.fosim.batch;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.djutils.cli.CliUtil;
+import org.djutils.data.Column;
+import org.djutils.data.ListTable;
+import org.djutils.data.csv.CsvData;
+import org.djutils.data.serialization.TextSerializationException;
+import org.opentrafficsim.base.logger.Logger;
+
+import picocli.CommandLine.Option;
+
+/**
+ * Calibrates OTS parameters to measured detector data. The measured data is in the format of detector output of
+ * {@code OtsRunner}. Parameters are optimized with Nelder-Mead within their ranges, where the objective is the normalized
+ * error of flow and speed per cross-section and period, averaged over multiple seeds. All seeds of all candidates in a step of
+ * the optimizer are simulated in parallel. The best parameter set and the convergence history are written to file. Example
+ * arguments:
+ *
+ * <pre>
+ * --fosFile "A12.fos" --measured "a12_measured.csv" --parameters Tmax,Tmin,a,x0 --seeds 5
+ * </pre>
+ * <p>
+ * Copyright (c) 2023-2024 Delft University of Technology, PO Box 5, 2600 AA, Delft, the Netherlands. All rights reserved. <br>
+ * BSD-style license. See <a href="https://opentrafficsim.org/docs/license.html">OpenTrafficSim License</a>.
+ * </p>
+ * @author <a href="https://github.com/wjschakel">Wouter Schakel</a>
+ */
+public class Calibration
+{
+
+    /** Base FOSIM file. */
+    @Option(names = "--fosFile", description = "Base FOSIM file", required = true)
+    private String fosFile;
+
+    /** Measured data file. */
+    @Option(names = "--measured", description = "Measured data with columns t (s), lane, x (m), q (/h), v (km/h)",
+            required = true)
+    private String measured;
+
+    /** Parameters to calibrate. */
+    @Option(names = "--parameters", description = "Parameters as id or id=min:max, comma separated", split = ",",
+            required = true)
+    private List<String> parameters;
+
+    /** Number of seeds per candidate. */
+    @Option(names = "--seeds", description = "Number of seeds per candidate", defaultValue = "3")
+    private int seeds;
+
+    /** First seed. */
+    @Option(names = "--seed", description = "First seed", defaultValue = "1")
+    private int seed;
+
+    /** Number of threads. */
+    @Option(names = "--threads", description = "Number of parallel runs (default: number of processors)")
+    private Integer threads;
+
+    /** Maximum number of iterations. */
+    @Option(names = "--maxIterations", description = "Maximum number of iterations", defaultValue = "50")
+    private int maxIterations;
+
+    /** Tolerance of objective spread in the simplex. */
+    @Option(names = "--tolerance", description = "Tolerance of objective spread in the simplex", defaultValue = "0.001")
+    private double tolerance;
+
+    /** Initial step as fraction of parameter ranges. */
+    @Option(names = "--step", description = "Initial step as fraction of parameter ranges", defaultValue = "0.25")
+    private double step;
+
+    /** Weight of flow error. */
+    @Option(names = "--flowWeight", description = "Weight of flow error", defaultValue = "1.0")
+    private double flowWeight;
+
+    /** Weight of speed error. */
+    @Option(names = "--speedWeight", description = "Weight of speed error", defaultValue = "1.0")
+    private double speedWeight;
+
+    /** Output file. */
+    @Option(names = "--output", description = "Output file of best parameters (default: <fosFile>_calibration.csv)")
+    private String output;
+
+    /** Contents of base .fos file. */
+    private String fosString;
+
+    /** Parameter space. */
+    private ParameterSpace space;
+
+    /** Measured data. */
+    private MeasuredData measuredData;
+
+    /** Executor. */
+    private ExecutorService executor;
+
+    /** Candidate counter for unique simulator ids. */
+    private int candidate = 0;
+
+    /**
+     * Constructor.
+     * @param args command line arguments.
+     * @throws Exception on any exception during command line parsing.
+     */
+    protected Calibration(final String... args) throws Exception
+    {
+        CliUtil.execute(this, args);
+    }
+
+    /**
+     * Main method.
+     * @param args command line arguments.
+     * @throws Exception on any exception during calibration.
+     */
+    public static void main(final String[] args) throws Exception
+    {
+        new Calibration(args).run();
+    }
+
+    /**
+     * Runs the calibration.
+     * @throws IOException when a file cannot be read.
+     * @throws CancellationException when interrupted while waiting for runs.
+     */
+    private void run() throws IOException
+    {
+        File file = new File(this.fosFile);
+        this.fosString = Files.readString(file.toPath());
+        List<ParameterRange> ranges = new ArrayList<>();
+        this.parameters.forEach((specification) -> ranges.add(ParameterRange.of(specification)));
+        this.space = new ParameterSpace(ranges);
+        this.measuredData = MeasuredData.read(Path.of(this.measured));
+        this.executor =
+                Executors.newFixedThreadPool(this.threads == null ? Runtime.getRuntime().availableProcessors() : this.threads);
+
+        ListTable history = new ListTable("history", "Calibration convergence history", getHistoryColumns());
+        double[] start = new double[this.space.getDimensions()];
+        Arrays.fill(start, 0.5);
+        NelderMead optimizer;
+        try
+        {
+            optimizer = new NelderMead(this::evaluate, start, this.step);
+            addHistory(history, 0, optimizer);
+            for (int iteration = 1; iteration <= this.maxIterations && optimizer.getSpread() > this.tolerance; iteration++)
+            {
+                optimizer.iterate();
+                addHistory(history, iteration, optimizer);
+                Logger.ots().info("Iteration {}: error {} after {} evaluations.", iteration, optimizer.getBestValue(),
+                        optimizer.getEvaluations());
+            }
+        }
+        finally
+        {
+            // all runs are done, unless the calibration was aborted
+            this.executor.shutdownNow();
+        }
+
+        ListTable best = new ListTable("best", "Best parameter set",
+                List.of(new Column<>("parameter", "parameter id", String.class),
+                        new Column<>("value", "parameter value", Double.class)));
+        this.space.asMap(this.space.getValues(optimizer.getBestPoint()))
+                .forEach((id, value) -> best.addRowByColumnIds(Map.of("parameter", id, "value", value)));
+        String name = this.output != null ? this.output
+                : new File(file.getParent(), file.getName().toLowerCase().replace(".fos", "_calibration.csv")).getPath();
+        String historyName = name.replace(".csv", "_history.csv");
+        try
+        {
+            CsvData.writeData(name, name.replace(".csv", "_meta.csv"), best);
+            CsvData.writeData(historyName, historyName.replace(".csv", "_meta.csv"), history);
+            Logger.ots().info("Best parameters written to {}, error {}.", name, optimizer.getBestValue());
+        }
+        catch (IOException | TextSerializationException ex)
+        {
+            Logger.ots().error("Unable to write output table.");
+        }
+    }
+
+    /**
+     * Evaluates candidates in parallel, each with all seeds.
+     * @param points candidates in the unit hypercube.
+     * @return mean error over seeds for each candidate, NaN if no seed could be evaluated.
+     * @throws CancellationException when interrupted while waiting for runs, the interrupt flag is restored.
+     */
+    private double[] evaluate(final List<double[]> points)
+    {
+        List<List<Future<Double>>> futures = new ArrayList<>();
+        for (double[] point : points)
+        {
+            String pointString =
+                    FosFileEditor.setParameters(this.fosString, this.space.getRanges(), this.space.getValues(point));
+            List<Future<Double>> seedFutures = new ArrayList<>();
+            int c = this.candidate++;
+            for (int s = 0; s < this.seeds; s++)
+            {
+                String runString = FosFileEditor.setSeed(pointString, this.seed + s);
+                String simulatorId = "Ots-Fosim-" + c + "-" + s;
+                seedFutures.add(this.executor.submit(() -> this.measuredData
+                        .getError(HeadlessRun.run(runString, simulatorId), this.flowWeight, this.speedWeight)));
+            }
+            futures.add(seedFutures);
+        }
+        double[] errors = new double[points.size()];
+        for (int i = 0; i < points.size(); i++)
+        {
+            int n = 0;
+            double sum = 0.0;
+            for (Future<Double> future : futures.get(i))
+            {
+                try
+                {
+                    double error = future.get();
+                    if (!Double.isNaN(error))
+                    {
+                        n++;
+                        sum += error;
+                    }
+                }
+                catch (InterruptedException ex)
+                {
+                    // the optimizer cannot continue with missing results, abort the calibration
+                    Thread.currentThread().interrupt();
+                    futures.forEach((seedFutures) -> seedFutures.forEach((f) -> f.cancel(true)));
+                    throw new CancellationException("Interrupted while waiting for runs.");
+                }
+                catch (ExecutionException ex)
+                {
+                    Logger.ots().error(ex.getCause() == null ? ex : ex.getCause(), "Run failed.");
+                }
+            }
+            errors[i] = n == 0 ? Double.NaN : sum / n;
+        }
+        return errors;
+    }
+
+    /**
+     * Returns the columns of the history table.
+     * @return columns of the history table.
+     */
+    private List<Column<?>> getHistoryColumns()
+    {
+        List<Column<?>> columns = new ArrayList<>();
+        columns.add(new Column<>("iteration", "iteration", Integer.class));
+        columns.add(new Column<>("evaluations", "number of evaluated candidates", Integer.class));
+        columns.add(new Column<>("error", "error of best candidate", Double.class));
+        columns.add(new Column<>("spread", "spread of error in simplex", Double.class));
+        for (ParameterRange range : this.space.getRanges())
+        {
+            columns.add(new Column<>(range.getParameterId(), "parameter " + range.getParameterId(), Double.class));
+        }
+        return columns;
+    }
+
+    /**
+     * Adds the state of the optimizer to the history.
+     * @param history history table.
+     * @param iteration iteration.
+     * @param optimizer optimizer.
+     */
+    private void addHistory(final ListTable history, final int iteration, final NelderMead optimizer)
+    {
+        Map<String, Object> row = new LinkedHashMap<>();
+        row.put("iteration", iteration);
+        row.put("evaluations", optimizer.getEvaluations());
+        row.put("error", optimizer.getBestValue());
+        row.put("spread", optimizer.getSpread());
+        this.space.asMap(this.space.getValues(optimizer.getBestPoint())).forEach(row::put);
+        history.addRowByColumnIds(row);
+    }
+
+}
@@ -0,0 +1,215 @@
+package org.opentrafficsim.fosim.batch;
+
+import java.util.TreeMap;
+
+import org.djunits.value.vdouble.scalar.Duration;
+import org.djutils.exceptions.Throw;
+import org.opentrafficsim.fosim.FosDetector;
+import org.opentrafficsim.road.network.RoadNetwork;
+
+/**
+ * Detector results of a finished simulation, aggregated per detector cross-section over all lanes. Cross-sections are numbered
+ * as in FOSIM, and only periods that were completed within the simulation are included.
+ * <p>
+ * Copyright (c) 2023-2024 Delft University of Technology, PO Box 5, 2600 AA, Delft, the Netherlands. All rights reserved. <br>
+ * BSD-style license. See <a href="https://opentrafficsim.org/docs/license.html">OpenTrafficSim License</a>.
+ * </p>
+ * @author <a href="https://github.com/wjschakel">Wouter Schakel</a>
+ */
+public class DetectorResults
+{
+
+    /** Position of each cross-section [m]. */
+    private final double[] position;
+
+    /** Vehicle count per cross-section and period. */
+    private final int[][] count;
+
+    /** Sum of reciprocal speed per cross-section and period [s/m]. */
+    private final double[][] sumReciprocalSpeed;
+
+    /** Duration of first period. */
+    private final Duration firstPeriod;
+
+    /** Duration of next periods. */
+    private final Duration nextPeriods;
+
+    /** Number of completed periods. */
+    private final int periods;
+
+    /**
+     * Constructor that collects the results of all {@code FosDetector}s in the network.
+     * @param network network with finished simulation.
+     * @param firstPeriod duration of first period.
+     * @param nextPeriods duration of next periods.
+     */
+    public DetectorResults(final RoadNetwork network, final Duration firstPeriod, final Duration nextPeriods)
+    {
+        Throw.whenNull(network, "network");
+        this.firstPeriod = firstPeriod;
+        this.nextPeriods = nextPeriods;
+        double now = network.getSimulator().getSimulatorTime().si;
+        int completed = now < firstPeriod.si ? 0 : 1 + (int) Math.floor((now - firstPeriod.si) / nextPeriods.si + 1e-9);
+
+        // Id's are "1_2" where 1=detector cross-section, and 2=lane 2 (both start counting at 0)
+        TreeMap<Integer, Double> positions = new TreeMap<>();
+        for (FosDetector detector : network.getObjectMap(FosDetector.class).values())
+        {
+            int crossSection = Integer.parseInt(detector.getId().substring(0, detector.getId().indexOf('_')));
+            positions.put(crossSection, detector.getLocation().x);
+            // a period that ends at the final simulation time may not have been closed by the detector itself
+            completed = Math.min(completed, detector.getCurrentPeriod() + 1);
+        }
+        this.periods = positions.isEmpty() ? 0 : completed;
+        int crossSections = positions.isEmpty() ? 0 : positions.lastKey() + 1;
+        this.position = new double[crossSections];
+        positions.forEach((crossSection, x) -> this.position[crossSection] = x);
+        this.count = new int[crossSections][this.periods];
+        this.sumReciprocalSpeed = new double[crossSections][this.periods];
+        for (FosDetector detector : network.getObjectMap(FosDetector.class).values())
+        {
+            int crossSection = Integer.parseInt(detector.getId().substring(0, detector.getId().indexOf('_')));
+            for (int period = 0; period < this.periods; period++)
+            {
+                this.count[crossSection][period] += detector.getCount(period);
+                this.sumReciprocalSpeed[crossSection][period] += detector.getSumReciprocalSpeed(period);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of detector cross-sections.
+     * @return number of detector cross-sections.
+     */
+    public int getCrossSections()
+    {
+        return this.position.length;
+    }
+
+    /**
+     * Returns the number of completed periods.
+     * @return number of completed periods.
+     */
+    public int getPeriods()
+    {
+        return this.periods;
+    }
+
+    /**
+     * Returns the position of the cross-section.
+     * @param crossSection cross-section index.
+     * @return position of the cross-section [m].
+     */
+    public double getPosition(final int crossSection)
+    {
+        return this.position[crossSection];
+    }
+
+    /**
+     * Returns the start time of the period.
+     * @param period period index.
+     * @return start time of the period [s].
+     */
+    public double getPeriodStart(final int period)
+    {
+        return period == 0 ? 0.0 : this.firstPeriod.si + (period - 1) * this.nextPeriods.si;
+    }
+
+    /**
+     * Returns the duration of the period.
+     * @param period period index.
+     * @return duration of the period [s].
+     */
+    public double getPeriodDuration(final int period)
+    {
+        return period == 0 ? this.firstPeriod.si : this.nextPeriods.si;
+    }
+
+    /**
+     * Returns the vehicle count over all lanes.
+     * @param crossSection cross-section index.
+     * @param period period index.
+     * @return vehicle count over all lanes.
+     */
+    public int getCount(final int crossSection, final int period)
+    {
+        return this.count[crossSection][period];
+    }
+
+    /**
+     * Returns the flow over all lanes.
+     * @param crossSection cross-section index.
+     * @param period period index.
+     * @return flow over all lanes [veh/h].
+     */
+    public double getFlow(final int crossSection, final int period)
+    {
+        return 3600.0 * this.count[crossSection][period] / getPeriodDuration(period);
+    }
+
+    /**
+     * Returns the harmonic mean speed over all lanes.
+     * @param crossSection cross-section index.
+     * @param period period index.
+     * @return harmonic mean speed over all lanes [km/h], NaN if no vehicle passed.
+     */
+    public double getSpeed(final int crossSection, final int period)
+    {
+        return this.count[crossSection][period] == 0 ? Double.NaN
+                : 3.6 * this.count[crossSection][period] / this.sumReciprocalSpeed[crossSection][period];
+    }
+
+    /**
+     * Returns the mean flow over all completed periods.
+     * @param crossSection cross-section index.
+     * @return mean flow over all completed periods [veh/h].
+     */
+    public double getMeanFlow(final int crossSection)
+    {
+        int n = 0;
+        double duration = 0.0;
+        for (int period = 0; period < this.periods; period++)
+        {
+            n += this.count[crossSection][period];
+            duration += getPeriodDuration(period);
+        }
+        return duration == 0.0 ? Double.NaN : 3600.0 * n / duration;
+    }
+
+    /**
+     * Returns the harmonic mean speed over all completed periods.
+     * @param crossSection cross-section index.
+     * @return harmonic mean speed over all completed periods [km/h], NaN if no vehicle passed.
+     */
+    public double getMeanSpeed(final int crossSection)
+    {
+        int n = 0;
+        double sum = 0.0;
+        for (int period = 0; period < this.periods; period++)
+        {
+            n += this.count[crossSection][period];
+            sum += this.sumReciprocalSpeed[crossSection][period];
+        }
+        return n == 0 ? Double.NaN : 3.6 * n / sum;
+    }
+
+    /**
+     * Returns the harmonic mean speed over all cross-sections and completed periods.
+     * @return harmonic mean speed over all cross-sections and completed periods [km/h], NaN if no vehicle passed.
+     */
+    public double getMeanSpeed()
+    {
+        int n = 0;
+        double sum = 0.0;
+        for (int crossSection = 0; crossSection < this.position.length; crossSection++)
+        {
+            for (int period = 0; period < this.periods; period++)
+            {
+                n += this.count[crossSection][period];
+                sum += this.sumReciprocalSpeed[crossSection][period];
+            }
+        }
+        return n == 0 ? Double.NaN : 3.6 * n / sum;
+    }
+
+}
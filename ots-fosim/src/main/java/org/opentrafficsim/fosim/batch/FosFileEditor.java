@@ -0,0 +1,264 @@
+package org.opentrafficsim.fosim.batch;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.util.List;
+import java.util.function.UnaryOperator;
+import java.util.stream.Collectors;
+
+import org.djunits.value.vdouble.scalar.Duration;
+import org.djutils.exceptions.Throw;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+/**
+ * Utility to edit the contents of a .fos file before it is parsed. As parsing is 1-pass, values such as the seed and the OTS
+ * parameters need to be set in the text itself. Only the relevant lines are changed, all other lines remain as is.
+ * <p>
+ * Copyright (c) 2023-2024 Delft University of Technology, PO Box 5, 2600 AA, Delft, the Netherlands. All rights reserved. <br>
+ * BSD-style license. See <a href="https://opentrafficsim.org/docs/license.html">OpenTrafficSim License</a>.
+ * </p>
+ * @author <a href="https://github.com/wjschakel">Wouter Schakel</a>
+ */
+public final class FosFileEditor
+{
+
+    /** Start of line with OTS parameters. */
+    private static final String OTS_PARAMETERS = "ots param";
+
+    /** Start of line with random seed. */
+    private static final String RANDOM_SEED = "random seed";
+
+    /** Start of line with flow of a source. */
+    private static final String FLOW = "flow";
+
+    /** Start of line with time step size. */
+    private static final String TIME_STEP = "time step size";
+
+    /** Start of line with maximum simulation time. */
+    private static final String MAXIMUM_SIMULATION_TIME = "maximum simulation time";
+
+    /** Duration of the step from original to scaled demand [s]. */
+    private static final double DEMAND_STEP = 0.001;
+
+    /**
+     * Utility class.
+     */
+    private FosFileEditor()
+    {
+        //
+    }
+
+    /**
+     * Returns the end time of the replication, as the parser derives it from the time step size and maximum simulation time.
+     * @param fosString contents of .fos file.
+     * @return end time of the replication.
+     * @throws IllegalArgumentException when the file does not define the time step size and maximum simulation time.
+     */
+    public static Duration getEndTime(final String fosString)
+    {
+        Throw.whenNull(fosString, "fosString");
+        double timeStep = Double.NaN;
+        int steps = -1;
+        for (String line : fosString.lines().toList())
+        {
+            if (line.startsWith(TIME_STEP))
+            {
+                timeStep = Double.parseDouble(fieldValue(line));
+            }
+            else if (line.startsWith(MAXIMUM_SIMULATION_TIME))
+            {
+                String value = fieldValue(line);
+                int blank = value.indexOf(" ");
+                if (blank > 0)
+                {
+                    // second value is time of day of start simulation
+                    value = value.substring(0, blank);
+                }
+                if (value.contains("s"))
+                {
+                    steps = (int) (Duration.valueOf(value).si / 0.5);
+                    timeStep = 0.5;
+                }
+                else
+                {
+                    steps = Integer.parseInt(value);
+                }
+            }
+        }
+        Throw.when(Double.isNaN(timeStep) || steps < 0, IllegalArgumentException.class,
+                "The file does not define the time step size and maximum simulation time.");
+        return Duration.ofSI(timeStep * steps);
+    }
+
+    /**
+     * Sets the random seed.
+     * @param fosString contents of .fos file.
+     * @param seed seed.
+     * @return contents of .fos file with given seed.
+     */
+    public static String setSeed(final String fosString, final int seed)
+    {
+        return editLines(fosString, RANDOM_SEED, (line) -> RANDOM_SEED + ": " + seed);
+    }
+
+    /**
+     * Sets OTS parameter values. The value is set for all vehicle types, replacing any distribution.
+     * @param fosString contents of .fos file.
+     * @param ranges parameter ranges, defining the parameters.
+     * @param values values, one for each parameter range.
+     * @return contents of .fos file with given parameter values.
+     * @throws IllegalArgumentException when the file has no OTS parameters, or a parameter is not in the file.
+     */
+    public static String setParameters(final String fosString, final List<ParameterRange> ranges, final double[] values)
+    {
+        Throw.when(ranges.size() != values.length, IllegalArgumentException.class,
+                "Number of values %s does not match number of parameters %s.", values.length, ranges.size());
+        Throw.when(fosString.lines().noneMatch((line) -> line.startsWith(OTS_PARAMETERS)), IllegalArgumentException.class,
+                "File contains no OTS parameters, save the file in a FOSIM version that supports OTS parameters.");
+        return editLines(fosString, OTS_PARAMETERS, (line) ->
+        {
+            int colon = line.indexOf(':');
+            JsonObject json = JsonParser.parseString(line.substring(colon + 1).trim()).getAsJsonObject();
+            for (int i = 0; i < values.length; i++)
+            {
+                JsonArray value = getParameter(json, ranges.get(i)).getAsJsonArray("value");
+                for (int j = 0; j < value.size(); j++)
+                {
+                    value.set(j, new Gson().toJsonTree(values[i]));
+                }
+            }
+            return line.substring(0, colon) + ": " + new Gson().toJson(json);
+        });
+    }
+
+    /**
+     * Scales the demand of all sources from the given time onwards. Demand before the given time remains exactly equal, such
+     * that a simulation with the same seed is equal up to that time. The scaled demand starts after a very short linear step.
+     * @param fosString contents of .fos file.
+     * @param from time from which demand is scaled [s].
+     * @param factor demand factor.
+     * @return contents of .fos file with scaled demand.
+     */
+    public static String scaleDemand(final String fosString, final double from, final double factor)
+    {
+        Throw.when(factor < 0.0, IllegalArgumentException.class, "Demand factor should not be negative.");
+        return editLines(fosString, FLOW, (line) ->
+        {
+            int colon = line.indexOf(':');
+            String[] fields = line.substring(colon + 1).trim().split("\\s+");
+            double[] time = new double[fields.length];
+            double[] flow = new double[fields.length];
+            for (int i = 0; i < fields.length; i++)
+            {
+                String[] pair = fields[i].split("\\|");
+                time[i] = Double.parseDouble(pair[0].trim());
+                flow[i] = Double.parseDouble(pair[1].trim());
+            }
+            StringBuilder out = new StringBuilder(line.substring(0, colon + 1));
+            for (int i = 0; i < time.length && time[i] < from; i++)
+            {
+                appendFlow(out, time[i], flow[i]);
+            }
+            appendFlow(out, from, interpolate(time, flow, from));
+            double scaleFrom = from + DEMAND_STEP;
+            appendFlow(out, scaleFrom, factor * interpolate(time, flow, scaleFrom));
+            for (int i = 0; i < time.length; i++)
+            {
+                if (time[i] > scaleFrom)
+                {
+                    appendFlow(out, time[i], factor * flow[i]);
+                }
+            }
+            return out.toString();
+        });
+    }
+
+    /**
+     * Returns the linearly interpolated flow at the given time. Flow is constant before the first and after the last time.
+     * @param time time values.
+     * @param flow flow values.
+     * @param t time to interpolate at.
+     * @return linearly interpolated flow at the given time.
+     */
+    private static double interpolate(final double[] time, final double[] flow, final double t)
+    {
+        if (t <= time[0])
+        {
+            return flow[0];
+        }
+        for (int i = 1; i < time.length; i++)
+        {
+            if (t <= time[i])
+            {
+                return flow[i - 1] + (t - time[i - 1]) / (time[i] - time[i - 1]) * (flow[i] - flow[i - 1]);
+            }
+        }
+        return flow[flow.length - 1];
+    }
+
+    /**
+     * Appends a time|flow pair to a flow line.
+     * @param line flow line.
+     * @param time time [s].
+     * @param flow flow [veh/h].
+     */
+    private static void appendFlow(final StringBuilder line, final double time, final double flow)
+    {
+        line.append(" ").append(time).append("|").append(flow);
+    }
+
+    /**
+     * Returns the JSON object of the parameter.
+     * @param json JSON object of all OTS parameters.
+     * @param range parameter range.
+     * @return JSON object of the parameter.
+     * @throws IllegalArgumentException when the parameter is not in the JSON object.
+     */
+    private static JsonObject getParameter(final JsonObject json, final ParameterRange range)
+    {
+        for (JsonElement group : json.getAsJsonArray("parameterGroups"))
+        {
+            if (group.getAsJsonObject().get("id").getAsString().equals(range.getGroupId()))
+            {
+                for (JsonElement parameter : group.getAsJsonObject().getAsJsonArray("parameters"))
+                {
+                    if (parameter.getAsJsonObject().get("id").getAsString().equals(range.getParameterId()))
+                    {
+                        return parameter.getAsJsonObject();
+                    }
+                }
+            }
+        }
+        throw new IllegalArgumentException("Parameter " + range.getParameterId() + " in group " + range.getGroupId()
+                + " is not in the OTS parameters of the file.");
+    }
+
+    /**
+     * Returns the value of the field in a line, i.e. the part after the ":".
+     * @param line line.
+     * @return value of the field in the line.
+     */
+    private static String fieldValue(final String line)
+    {
+        return line.substring(line.indexOf(":") + 1).trim();
+    }
+
+    /**
+     * Edits all lines that start with the given prefix.
+     * @param fosString contents of .fos file.
+     * @param prefix start of line.
+     * @param editor editor of line.
+     * @return contents of .fos file with edited lines.
+     */
+    static String editLines(final String fosString, final String prefix, final UnaryOperator<String> editor)
+    {
+        return new BufferedReader(new StringReader(fosString)).lines()
+                .map((line) -> line.startsWith(prefix) ? editor.apply(line) : line).collect(Collectors.joining("\n"));
+    }
+
+}
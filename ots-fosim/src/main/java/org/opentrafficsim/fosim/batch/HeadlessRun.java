@@ -0,0 +1,324 @@
+package org.opentrafficsim.fosim.batch;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+
+import org.djunits.value.vdouble.scalar.Duration;
+import org.djunits.value.vdouble.scalar.Speed;
+import org.djutils.event.Event;
+import org.djutils.event.EventListener;
+import org.djutils.exceptions.Throw;
+import org.opentrafficsim.core.network.Network;
+import org.opentrafficsim.core.network.NetworkException;
+import org.opentrafficsim.fosim.FosDetector;
+import org.opentrafficsim.fosim.parser.FosParser;
+import org.opentrafficsim.fosim.parser.ParserSetting;
+import org.opentrafficsim.fosim.sim0mq.StopCriterion;
+import org.opentrafficsim.fosim.sim0mq.StopCriterion.BatchStatus;
+import org.opentrafficsim.fosim.sim0mq.StopCriterion.DetectionType;
+import org.opentrafficsim.fosim.simulator.OtsSimulatorStep;
+import org.opentrafficsim.road.network.RoadNetwork;
+
+/**
+ * Runs a single simulation from the contents of a .fos file without GUI, in the calling thread. Each run has its own simulator
+ * so multiple runs can be performed in parallel. Optionally a stop criterion is applied as in a FOSIM batch run, in which case
+ * the capacity is derived. Actions can be added to change or measure the network at specific times.
+ * <p>
+ * Copyright (c) 2023-2024 Delft University of Technology, PO Box 5, 2600 AA, Delft, the Netherlands. All rights reserved. <br>
+ * BSD-style license. See <a href="https://opentrafficsim.org/docs/license.html">OpenTrafficSim License</a>.
+ * </p>
+ * @author <a href="https://github.com/wjschakel">Wouter Schakel</a>
+ */
+public class HeadlessRun
+{
+
+    /** Contents of .fos file. */
+    private final String fosString;
+
+    /** Simulator id. */
+    private final String simulatorId;
+
+    /** Detection type of stop criterion, {@code null} if there is no stop criterion. */
+    private DetectionType detectionType;
+
+    /** From lane of stop criterion. */
+    private int fromLane;
+
+    /** To lane of stop criterion. */
+    private int toLane;
+
+    /** Detector cross-section of stop criterion, negative for all. */
+    private int detector;
+
+    /** Speed threshold of stop criterion. */
+    private Speed threshold;
+
+    /** End time, {@code null} for the end time of the replication. */
+    private Duration endTime;
+
+    /** Actions to perform at specific times. */
+    private final NavigableMap<Duration, List<Consumer<RoadNetwork>>> actions = new TreeMap<>();
+
+    /**
+     * Constructor.
+     * @param fosString contents of .fos file.
+     * @param simulatorId simulator id, unique among parallel runs.
+     */
+    public HeadlessRun(final String fosString, final String simulatorId)
+    {
+        Throw.whenNull(fosString, "fosString");
+        Throw.whenNull(simulatorId, "simulatorId");
+        this.fosString = fosString;
+        this.simulatorId = simulatorId;
+    }
+
+    /**
+     * Parses the .fos contents and simulates up to the end time of the replication.
+     * @param fosString contents of .fos file.
+     * @param simulatorId simulator id, unique among parallel runs.
+     * @return detector results.
+     * @throws NetworkException when the network cannot be built from the .fos contents.
+     */
+    public static DetectorResults run(final String fosString, final String simulatorId) throws NetworkException
+    {
+        return new HeadlessRun(fosString, simulatorId).run().detectors();
+    }
+
+    /**
+     * Sets a stop criterion, as in a FOSIM batch run. The simulation stops when the criterion triggers.
+     * @param detectionType FOSIM, PLM or QDC.
+     * @param fromLane from lane to check detectors.
+     * @param toLane to lane to check detectors.
+     * @param detectorCrossSection detector cross section number, negative for all.
+     * @param speedThreshold threshold speed below which congestion is recognized.
+     * @return this run for method chaining.
+     */
+    public HeadlessRun setStopCriterion(final DetectionType detectionType, final int fromLane, final int toLane,
+            final int detectorCrossSection, final Speed speedThreshold)
+    {
+        Throw.whenNull(detectionType, "detectionType");
+        Throw.whenNull(speedThreshold, "speedThreshold");
+        this.detectionType = detectionType;
+        this.fromLane = fromLane;
+        this.toLane = toLane;
+        this.detector = detectorCrossSection;
+        this.threshold = speedThreshold;
+        return this;
+    }
+
+    /**
+     * Sets an end time before the end time of the replication.
+     * @param time end time.
+     * @return this run for method chaining.
+     */
+    public HeadlessRun setEndTime(final Duration time)
+    {
+        Throw.whenNull(time, "time");
+        this.endTime = time;
+        return this;
+    }
+
+    /**
+     * Adds an action to perform on the network at the given time, e.g. to change the network or to take measurements. The
+     * simulation is paused exactly at the given time, i.e. after all earlier events and before any later event. Actions at
+     * the same time are performed in the order they were added.
+     * @param time time.
+     * @param action action.
+     * @return this run for method chaining.
+     */
+    public HeadlessRun addAction(final Duration time, final Consumer<RoadNetwork> action)
+    {
+        Throw.whenNull(time, "time");
+        Throw.whenNull(action, "action");
+        this.actions.computeIfAbsent(time, (t) -> new ArrayList<>()).add(action);
+        return this;
+    }
+
+    /**
+     * Parses the .fos contents and simulates up to the end time, or until the stop criterion triggers.
+     * @return run result.
+     * @throws NetworkException when the network cannot be built from the .fos contents.
+     */
+    public RunResult run() throws NetworkException
+    {
+        Map<ParserSetting, Boolean> settings = new LinkedHashMap<>();
+        settings.put(ParserSetting.GUI, false);
+        settings.put(ParserSetting.FOS_DETECTORS, true);
+        OtsSimulatorStep simulator = new OtsSimulatorStep(this.simulatorId);
+        FosParser parser = new FosParser().setSettings(settings).setSimulator(simulator);
+        parser.parseFromString(this.fosString);
+        RoadNetwork network = parser.getNetwork();
+        TravelTimes travelTimes = new TravelTimes(network);
+        StopCriterion stopCriterion = this.detectionType == null ? null
+                : new StopCriterion(network, this.detectionType, this.fromLane, this.toLane, this.detector, this.threshold);
+
+        Duration replicationEnd = simulator.getReplication().getEndTime();
+        Duration end = this.endTime == null || this.endTime.gt(replicationEnd) ? replicationEnd : this.endTime;
+        boolean triggered = false;
+        for (Entry<Duration, List<Consumer<RoadNetwork>>> entry : this.actions.headMap(end, true).entrySet())
+        {
+            triggered = stepUntil(simulator, entry.getKey(), stopCriterion);
+            if (triggered)
+            {
+                break;
+            }
+            entry.getValue().forEach((action) -> action.accept(network));
+        }
+        if (!triggered)
+        {
+            triggered = stepUntil(simulator, end, stopCriterion);
+        }
+        if (stopCriterion != null)
+        {
+            stopCriterion.stop();
+        }
+        return new RunResult(new DetectorResults(network, parser.getFirstPeriod(), parser.getNextPeriods()),
+                triggered ? getCapacity(network, parser) : Double.NaN, travelTimes.getMeanTravelTime());
+    }
+
+    /**
+     * Simulates until the given time, or until the stop criterion triggers.
+     * @param simulator simulator.
+     * @param time time.
+     * @param stopCriterion stop criterion, may be {@code null}.
+     * @return whether the stop criterion triggered.
+     */
+    private boolean stepUntil(final OtsSimulatorStep simulator, final Duration time, final StopCriterion stopCriterion)
+    {
+        if (simulator.getSimulatorTime().lt(time))
+        {
+            simulator.scheduleEventAbs(time, this, "pause", null);
+        }
+        while (simulator.getSimulatorTime().lt(time))
+        {
+            simulator.step();
+            if (stopCriterion != null && BatchStatus.TRIGGERED.equals(stopCriterion.canStop()))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Event to pause the simulation at exactly the scheduled time.
+     */
+    @SuppressWarnings("unused") // used through scheduling
+    private void pause()
+    {
+        //
+    }
+
+    /**
+     * Returns the capacity as the highest flow over the lanes of the stop criterion, in any completed period at any of the
+     * detector cross-sections of the stop criterion.
+     * @param network network.
+     * @param parser parser.
+     * @return capacity [veh/h].
+     */
+    private double getCapacity(final RoadNetwork network, final FosParser parser)
+    {
+        Map<Integer, int[]> counts = new LinkedHashMap<>();
+        for (FosDetector det : network.getObjectMap(FosDetector.class).values())
+        {
+            String[] crossSectionAndLane = det.getId().split("_");
+            int crossSection = Integer.valueOf(crossSectionAndLane[0]);
+            int lane = Integer.valueOf(crossSectionAndLane[1]);
+            if (this.fromLane <= lane && lane <= this.toLane && (this.detector < 0 || this.detector == crossSection))
+            {
+                int[] count = counts.computeIfAbsent(crossSection, (cs) -> new int[det.getCurrentPeriod()]);
+                for (int period = 0; period < count.length && period < det.getCurrentPeriod(); period++)
+                {
+                    count[period] += det.getCount(period);
+                }
+            }
+        }
+        double capacity = Double.NaN;
+        for (int[] count : counts.values())
+        {
+            for (int period = 0; period < count.length; period++)
+            {
+                Duration duration = period == 0 ? parser.getFirstPeriod() : parser.getNextPeriods();
+                double flow = 3600.0 * count[period] / duration.si;
+                capacity = Double.isNaN(capacity) ? flow : Math.max(capacity, flow);
+            }
+        }
+        return capacity;
+    }
+
+    /**
+     * Result of a single run.
+     * @param detectors detector results
+     * @param capacity capacity [veh/h], NaN if there is no stop criterion or it did not trigger
+     * @param travelTime mean travel time from origin to destination [s], NaN if no vehicle arrived
+     */
+    public record RunResult(DetectorResults detectors, double capacity, double travelTime)
+    {
+    };
+
+    /**
+     * Listener that registers the travel time from origin to destination of all vehicles.
+     */
+    private static class TravelTimes implements EventListener
+    {
+
+        /** Network. */
+        private final Network network;
+
+        /** Start time of each GTU in the network. */
+        private final Map<String, Duration> startTime = new LinkedHashMap<>();
+
+        /** Number of vehicles that arrived. */
+        private int count = 0;
+
+        /** Sum of travel time [s]. */
+        private double sumTravelTime = 0.0;
+
+        /**
+         * Constructor.
+         * @param network network
+         */
+        TravelTimes(final Network network)
+        {
+            this.network = network;
+            network.addListener(this, Network.GTU_ADD_EVENT);
+            network.addListener(this, Network.GTU_REMOVE_EVENT);
+        }
+
+        @Override
+        public void notify(final Event event)
+        {
+            String id = (String) event.getContent();
+            if (event.getType().equals(Network.GTU_ADD_EVENT))
+            {
+                this.startTime.put(id, this.network.getSimulator().getSimulatorTime());
+            }
+            else
+            {
+                Duration tStart = this.startTime.remove(id);
+                if (tStart != null)
+                {
+                    this.count++;
+                    this.sumTravelTime += this.network.getSimulator().getSimulatorTime().si - tStart.si;
+                }
+            }
+        }
+
+        /**
+         * Returns the mean travel time.
+         * @return mean travel time [s], NaN if no vehicle arrived
+         */
+        public double getMeanTravelTime()
+        {
+            return this.count == 0 ? Double.NaN : this.sumTravelTime / this.count;
+        }
+
+    }
+
+}
@@ -0,0 +1,77 @@
+package org.opentrafficsim.fosim.batch;
+
+import java.util.function.ToDoubleFunction;
+
+import org.opentrafficsim.fosim.batch.HeadlessRun.RunResult;
+
+/**
+ * Key performance indicators that can be derived from a single headless run.
+ * <p>
+ * Copyright (c) 2023-2024 Delft University of Technology, PO Box 5, 2600 AA, Delft, the Netherlands. All rights reserved. <br>
+ * BSD-style license. See <a href="https://opentrafficsim.org/docs/license.html">OpenTrafficSim License</a>.
+ * </p>
+ * @author <a href="https://github.com/wjschakel">Wouter Schakel</a>
+ */
+public enum Kpi
+{
+
+    /** Capacity from the stop criterion [veh/h]. */
+    CAPACITY("capacity", "/h", (result) -> result.capacity()),
+
+    /** Harmonic mean speed over all detectors [km/h]. */
+    SPEED("speed", "km/h", (result) -> result.detectors().getMeanSpeed()),
+
+    /** Mean travel time from origin to destination [s]. */
+    TRAVEL_TIME("travelTime", "s", (result) -> result.travelTime());
+
+    /** Id. */
+    private final String id;
+
+    /** Unit. */
+    private final String unit;
+
+    /** Function to derive the value from a run result. */
+    private final ToDoubleFunction<RunResult> function;
+
+    /**
+     * Constructor.
+     * @param id id
+     * @param unit unit
+     * @param function function to derive the value from a run result
+     */
+    Kpi(final String id, final String unit, final ToDoubleFunction<RunResult> function)
+    {
+        this.id = id;
+        this.unit = unit;
+        this.function = function;
+    }
+
+    /**
+     * Returns the id.
+     * @return id
+     */
+    public String getId()
+    {
+        return this.id;
+    }
+
+    /**
+     * Returns the unit.
+     * @return unit
+     */
+    public String getUnit()
+    {
+        return this.unit;
+    }
+
+    /**
+     * Returns the value from a run result.
+     * @param result run result
+     * @return value, NaN if not available
+     */
+    public double getValue(final RunResult result)
+    {
+        return this.function.applyAsDouble(result);
+    }
+
+}
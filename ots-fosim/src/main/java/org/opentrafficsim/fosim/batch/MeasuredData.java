@@ -0,0 +1,205 @@
+package org.opentrafficsim.fosim.batch;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.djutils.exceptions.Throw;
+
+/**
+ * Measured detector data per period and detector cross-section. The data is read from a file in the format that
+ * {@code OtsRunner} writes for detector output, i.e. a CSV file with columns t (s), lane, x (m), q (/h) and v (km/h). Lanes are
+ * aggregated to cross-sections by summing flow and taking the flow-weighted harmonic mean of speed.
+ * <p>
+ * Copyright (c) 2023-2024 Delft University of Technology, PO Box 5, 2600 AA, Delft, the Netherlands. All rights reserved. <br>
+ * BSD-style license. See <a href="https://opentrafficsim.org/docs/license.html">OpenTrafficSim License</a>.
+ * </p>
+ * @author <a href="https://github.com/wjschakel">Wouter Schakel</a>
+ */
+public class MeasuredData
+{
+
+    /** Distance within which a simulated cross-section matches a measured cross-section [m]. */
+    private static final double POSITION_TOLERANCE = 5.0;
+
+    /** Time within which a simulated period matches a measured period [s]. */
+    private static final double TIME_TOLERANCE = 1.0;
+
+    /** Measurements. */
+    private final List<Measurement> measurements;
+
+    /**
+     * Constructor.
+     * @param measurements measurements.
+     */
+    public MeasuredData(final List<Measurement> measurements)
+    {
+        Throw.whenNull(measurements, "measurements");
+        this.measurements = List.copyOf(measurements);
+    }
+
+    /**
+     * Reads measured data from file.
+     * @param path file path.
+     * @return measured data.
+     * @throws IOException when the file cannot be read.
+     * @throws IllegalArgumentException when the file does not contain columns t, x, q and v.
+     */
+    public static MeasuredData read(final Path path) throws IOException
+    {
+        List<String> lines = Files.readAllLines(path);
+        Throw.when(lines.isEmpty(), IllegalArgumentException.class, "File %s is empty.", path);
+        List<String> header = Arrays.stream(lines.get(0).split(",")).map(MeasuredData::strip).toList();
+        int t = header.indexOf("t");
+        int x = header.indexOf("x");
+        int q = header.indexOf("q");
+        int v = header.indexOf("v");
+        Throw.when(t < 0 || x < 0 || q < 0 || v < 0, IllegalArgumentException.class,
+                "File %s should contain columns t, x, q and v.", path);
+
+        // aggregate lanes: key is time and position
+        Map<String, double[]> aggregate = new LinkedHashMap<>();
+        for (String line : lines.subList(1, lines.size()))
+        {
+            if (line.isBlank())
+            {
+                continue;
+            }
+            String[] fields = line.split(",");
+            double time = Double.parseDouble(strip(fields[t]));
+            double position = Double.parseDouble(strip(fields[x]));
+            double flow = Double.parseDouble(strip(fields[q]));
+            double speed = Double.parseDouble(strip(fields[v]));
+            double[] sums = aggregate.computeIfAbsent(time + "_" + position, (k) -> new double[] {time, position, 0.0, 0.0});
+            sums[2] += flow;
+            sums[3] += speed > 0.0 && flow > 0.0 ? flow / speed : 0.0;
+        }
+        List<Measurement> measurements = new ArrayList<>();
+        for (double[] sums : aggregate.values())
+        {
+            measurements.add(new Measurement(sums[0], sums[1], sums[2], sums[3] > 0.0 ? sums[2] / sums[3] : Double.NaN));
+        }
+        return new MeasuredData(measurements);
+    }
+
+    /**
+     * Strips quotes and white space from a CSV field.
+     * @param field field.
+     * @return stripped field.
+     */
+    private static String strip(final String field)
+    {
+        return field.replace("\"", "").trim();
+    }
+
+    /**
+     * Returns the measurements.
+     * @return measurements.
+     */
+    public List<Measurement> getMeasurements()
+    {
+        return this.measurements;
+    }
+
+    /**
+     * Returns the normalized error between simulated and measured data. This is the root mean squared error of flow divided by
+     * the mean measured flow, plus the same for speed, each with a weight. Measurements for which no simulated cross-section
+     * or period exists, or without speed in either, are ignored.
+     * @param results simulated detector results.
+     * @param flowWeight weight of flow error.
+     * @param speedWeight weight of speed error.
+     * @return normalized error, NaN if no measurement could be matched.
+     */
+    public double getError(final DetectorResults results, final double flowWeight, final double speedWeight)
+    {
+        int nFlow = 0;
+        double sumFlow = 0.0;
+        double sumSquaredFlowError = 0.0;
+        int nSpeed = 0;
+        double sumSpeed = 0.0;
+        double sumSquaredSpeedError = 0.0;
+        for (Measurement measurement : this.measurements)
+        {
+            int crossSection = findCrossSection(results, measurement.position());
+            int period = findPeriod(results, measurement.time());
+            if (crossSection < 0 || period < 0)
+            {
+                continue;
+            }
+            double flowError = results.getFlow(crossSection, period) - measurement.flow();
+            nFlow++;
+            sumFlow += measurement.flow();
+            sumSquaredFlowError += flowError * flowError;
+            double speed = results.getSpeed(crossSection, period);
+            if (!Double.isNaN(speed) && !Double.isNaN(measurement.speed()))
+            {
+                nSpeed++;
+                sumSpeed += measurement.speed();
+                sumSquaredSpeedError += (speed - measurement.speed()) * (speed - measurement.speed());
+            }
+        }
+        if (nFlow == 0)
+        {
+            return Double.NaN;
+        }
+        double error = flowWeight * Math.sqrt(sumSquaredFlowError / nFlow) / (sumFlow / nFlow);
+        if (nSpeed > 0)
+        {
+            error += speedWeight * Math.sqrt(sumSquaredSpeedError / nSpeed) / (sumSpeed / nSpeed);
+        }
+        return error;
+    }
+
+    /**
+     * Returns the index of the simulated cross-section at the position.
+     * @param results simulated detector results.
+     * @param position position [m].
+     * @return index of the simulated cross-section at the position, -1 if none.
+     */
+    private static int findCrossSection(final DetectorResults results, final double position)
+    {
+        for (int crossSection = 0; crossSection < results.getCrossSections(); crossSection++)
+        {
+            if (Math.abs(results.getPosition(crossSection) - position) <= POSITION_TOLERANCE)
+            {
+                return crossSection;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the index of the simulated period starting at the time.
+     * @param results simulated detector results.
+     * @param time start time of period [s].
+     * @return index of the simulated period starting at the time, -1 if none.
+     */
+    private static int findPeriod(final DetectorResults results, final double time)
+    {
+        for (int period = 0; period < results.getPeriods(); period++)
+        {
+            if (Math.abs(results.getPeriodStart(period) - time) <= TIME_TOLERANCE)
+            {
+                return period;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Measurement at a detector cross-section in a period.
+     * @param time start time of period [s]
+     * @param position position of cross-section [m]
+     * @param flow flow over all lanes [veh/h]
+     * @param speed harmonic mean speed over all lanes [km/h], NaN if no vehicles
+     */
+    public record Measurement(double time, double position, double flow, double speed)
+    {
+    };
+
+}
@@ -0,0 +1,244 @@
+package org.opentrafficsim.fosim.batch;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Function;
+
+import org.djutils.exceptions.Throw;
+
+/**
+ * Derivative-free Nelder-Mead minimization in the unit hypercube. Points are clamped to [0...1] in each dimension. Candidates
+ * are given to the evaluator in batches, such that they can be evaluated in parallel: all points of the initial simplex, the
+ * reflection together with the expansion and both contractions of an iteration, and all points of a shrink. Candidates that
+ * turn out not to be needed are thus evaluated speculatively, which costs no additional time given enough processors.
+ * <p>
+ * Copyright (c) 2023-2024 Delft University of Technology, PO Box 5, 2600 AA, Delft, the Netherlands. All rights reserved. <br>
+ * BSD-style license. See <a href="https://opentrafficsim.org/docs/license.html">OpenTrafficSim License</a>.
+ * </p>
+ * @author <a href="https://github.com/wjschakel">Wouter Schakel</a>
+ */
+public class NelderMead
+{
+
+    /** Reflection coefficient. */
+    private static final double ALPHA = 1.0;
+
+    /** Expansion coefficient. */
+    private static final double GAMMA = 2.0;
+
+    /** Contraction coefficient. */
+    private static final double RHO = 0.5;
+
+    /** Shrink coefficient. */
+    private static final double SIGMA = 0.5;
+
+    /** Evaluator of a batch of points, returning the objective value of each point. NaN is treated as infinitely bad. */
+    private final Function<List<double[]>, double[]> evaluator;
+
+    /** Simplex vertices, sorted from best to worst. */
+    private final List<Vertex> simplex = new ArrayList<>();
+
+    /** Number of evaluated points. */
+    private int evaluations = 0;
+
+    /**
+     * Constructor. The initial simplex consists of the start point, and for each dimension the start point with a step in that
+     * dimension. The step is taken in the direction with most room within the unit hypercube.
+     * @param evaluator evaluator of a batch of points.
+     * @param start start point.
+     * @param step initial step size.
+     */
+    public NelderMead(final Function<List<double[]>, double[]> evaluator, final double[] start, final double step)
+    {
+        Throw.whenNull(evaluator, "evaluator");
+        Throw.when(step <= 0.0, IllegalArgumentException.class, "Step should be positive.");
+        this.evaluator = evaluator;
+        List<double[]> points = new ArrayList<>();
+        points.add(clamp(start));
+        for (int j = 0; j < start.length; j++)
+        {
+            double[] point = clamp(start);
+            point[j] = point[j] <= 0.5 ? point[j] + step : point[j] - step;
+            points.add(clamp(point));
+        }
+        this.simplex.addAll(evaluate(points));
+        sort();
+    }
+
+    /**
+     * Performs one iteration.
+     */
+    public void iterate()
+    {
+        int n = this.simplex.size() - 1;
+        Vertex worst = this.simplex.get(n);
+        double[] centroid = new double[n];
+        for (Vertex vertex : this.simplex.subList(0, n))
+        {
+            for (int j = 0; j < n; j++)
+            {
+                centroid[j] += vertex.point()[j] / n;
+            }
+        }
+        List<Vertex> candidates = evaluate(List.of(move(centroid, worst.point(), ALPHA), move(centroid, worst.point(), GAMMA),
+                move(centroid, worst.point(), RHO), move(centroid, worst.point(), -RHO)));
+        Vertex reflection = candidates.get(0);
+        Vertex expansion = candidates.get(1);
+        Vertex outside = candidates.get(2);
+        Vertex inside = candidates.get(3);
+        double best = this.simplex.get(0).value();
+        double secondWorst = this.simplex.get(n - 1).value();
+
+        Vertex replacement = null;
+        if (reflection.value() < best)
+        {
+            replacement = expansion.value() < reflection.value() ? expansion : reflection;
+        }
+        else if (reflection.value() < secondWorst)
+        {
+            replacement = reflection;
+        }
+        else if (reflection.value() < worst.value())
+        {
+            replacement = outside.value() <= reflection.value() ? outside : null;
+        }
+        else
+        {
+            replacement = inside.value() < worst.value() ? inside : null;
+        }
+
+        if (replacement != null)
+        {
+            this.simplex.set(n, replacement);
+        }
+        else
+        {
+            // shrink towards best
+            double[] bestPoint = this.simplex.get(0).point();
+            List<double[]> points = new ArrayList<>();
+            for (Vertex vertex : this.simplex.subList(1, n + 1))
+            {
+                points.add(move(bestPoint, vertex.point(), -SIGMA));
+            }
+            List<Vertex> shrunk = evaluate(points);
+            for (int i = 0; i < n; i++)
+            {
+                this.simplex.set(i + 1, shrunk.get(i));
+            }
+        }
+        sort();
+    }
+
+    /**
+     * Returns the point from the origin along the direction away from the other point, times the coefficient. With a
+     * coefficient of 1 this is the reflection of the other point. Negative coefficients move towards the other point.
+     * @param origin origin point.
+     * @param other other point.
+     * @param coefficient coefficient.
+     * @return moved point, clamped to the unit hypercube.
+     */
+    private static double[] move(final double[] origin, final double[] other, final double coefficient)
+    {
+        double[] point = new double[origin.length];
+        for (int j = 0; j < point.length; j++)
+        {
+            point[j] = origin[j] + coefficient * (origin[j] - other[j]);
+        }
+        return clamp(point);
+    }
+
+    /**
+     * Returns a copy of the point clamped to the unit hypercube.
+     * @param point point.
+     * @return clamped copy.
+     */
+    private static double[] clamp(final double[] point)
+    {
+        double[] out = new double[point.length];
+        for (int j = 0; j < point.length; j++)
+        {
+            out[j] = Math.max(0.0, Math.min(1.0, point[j]));
+        }
+        return out;
+    }
+
+    /**
+     * Evaluates the points as a batch.
+     * @param points points.
+     * @return vertices.
+     */
+    private List<Vertex> evaluate(final List<double[]> points)
+    {
+        double[] values = this.evaluator.apply(points);
+        this.evaluations += points.size();
+        List<Vertex> vertices = new ArrayList<>();
+        for (int i = 0; i < points.size(); i++)
+        {
+            vertices.add(new Vertex(points.get(i), Double.isNaN(values[i]) ? Double.POSITIVE_INFINITY : values[i]));
+        }
+        return vertices;
+    }
+
+    /**
+     * Sorts the simplex from best to worst.
+     */
+    private void sort()
+    {
+        this.simplex.sort(Comparator.comparingDouble(Vertex::value));
+    }
+
+    /**
+     * Returns the best point.
+     * @return best point.
+     */
+    public double[] getBestPoint()
+    {
+        return this.simplex.get(0).point().clone();
+    }
+
+    /**
+     * Returns the objective value of the best point.
+     * @return objective value of the best point.
+     */
+    public double getBestValue()
+    {
+        return this.simplex.get(0).value();
+    }
+
+    /**
+     * Returns the difference in objective value between the worst and best point.
+     * @return difference in objective value between the worst and best point.
+     */
+    public double getSpread()
+    {
+        return this.simplex.get(this.simplex.size() - 1).value() - this.simplex.get(0).value();
+    }
+
+    /**
+     * Returns the number of evaluated points.
+     * @return number of evaluated points.
+     */
+    public int getEvaluations()
+    {
+        return this.evaluations;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "NelderMead [best=" + Arrays.toString(this.simplex.get(0).point()) + ", value=" + getBestValue()
+                + ", evaluations=" + this.evaluations + "]";
+    }
+
+    /**
+     * Simplex vertex.
+     * @param point point
+     * @param value objective value
+     */
+    private record Vertex(double[] point, double value)
+    {
+    };
+
+}
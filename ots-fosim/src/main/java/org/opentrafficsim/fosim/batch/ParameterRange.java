@@ -0,0 +1,183 @@
+package org.opentrafficsim.fosim.batch;
+
+import java.util.List;
+
+import org.djutils.exceptions.Throw;
+import org.opentrafficsim.fosim.parameters.DefaultValue;
+import org.opentrafficsim.fosim.parameters.Limit;
+import org.opentrafficsim.fosim.parameters.Parameter;
+import org.opentrafficsim.fosim.parameters.ParameterDefinitions;
+import org.opentrafficsim.fosim.parameters.ParameterGroup;
+import org.opentrafficsim.fosim.parameters.Scalar;
+
+/**
+ * Range of a single OTS parameter in a batch study. Ranges are by default derived from the limits in
+ * {@code ParameterDefinitions}. A limit that refers to another parameter is resolved using the default value of that parameter,
+ * multiplied by the factor of the limit if it has one.
+ * <p>
+ * Copyright (c) 2023-2024 Delft University of Technology, PO Box 5, 2600 AA, Delft, the Netherlands. All rights reserved. <br>
+ * BSD-style license. See <a href="https://opentrafficsim.org/docs/license.html">OpenTrafficSim License</a>.
+ * </p>
+ * @author <a href="https://github.com/wjschakel">Wouter Schakel</a>
+ */
+public class ParameterRange
+{
+
+    /** Parameter group id. */
+    private final String groupId;
+
+    /** Parameter id. */
+    private final String parameterId;
+
+    /** Minimum value. */
+    private final double minimum;
+
+    /** Maximum value. */
+    private final double maximum;
+
+    /**
+     * Constructor.
+     * @param groupId parameter group id.
+     * @param parameterId parameter id.
+     * @param minimum minimum value.
+     * @param maximum maximum value.
+     * @throws IllegalArgumentException when the minimum is larger than the maximum.
+     */
+    public ParameterRange(final String groupId, final String parameterId, final double minimum, final double maximum)
+    {
+        Throw.whenNull(groupId, "groupId");
+        Throw.whenNull(parameterId, "parameterId");
+        Throw.when(minimum > maximum, IllegalArgumentException.class, "Minimum %s of parameter %s is larger than maximum %s.",
+                minimum, parameterId, maximum);
+        this.groupId = groupId;
+        this.parameterId = parameterId;
+        this.minimum = minimum;
+        this.maximum = maximum;
+    }
+
+    /**
+     * Creates a range from a specification of the form {@code id} or {@code id=min:max}. Without explicit range, the limits
+     * from {@code ParameterDefinitions} are used.
+     * @param specification specification.
+     * @return parameter range.
+     * @throws IllegalArgumentException when the parameter is not defined, or its limits cannot be resolved.
+     */
+    public static ParameterRange of(final String specification)
+    {
+        Throw.whenNull(specification, "specification");
+        int equals = specification.indexOf('=');
+        String id = (equals < 0 ? specification : specification.substring(0, equals)).trim();
+        List<ParameterGroup> groups = ParameterDefinitions.getParameterGroups();
+        for (ParameterGroup group : groups)
+        {
+            // groups without parameters, such as courtesy, have no list of parameters
+            for (Parameter parameter : group.parameters == null ? List.<Parameter> of() : group.parameters)
+            {
+                if (parameter.id.equals(id))
+                {
+                    if (equals < 0)
+                    {
+                        return new ParameterRange(group.id, id, resolve(id, parameter.minimum, groups),
+                                resolve(id, parameter.maximum, groups));
+                    }
+                    String[] bounds = specification.substring(equals + 1).split(":");
+                    Throw.when(bounds.length != 2, IllegalArgumentException.class,
+                            "Range of parameter %s should be given as min:max.", id);
+                    return new ParameterRange(group.id, id, Double.parseDouble(bounds[0].trim()),
+                            Double.parseDouble(bounds[1].trim()));
+                }
+            }
+        }
+        throw new IllegalArgumentException("Parameter " + id + " is not defined in ParameterDefinitions.");
+    }
+
+    /**
+     * Resolves a limit to a value.
+     * @param id id of parameter the limit applies to.
+     * @param limit limit.
+     * @param groups parameter groups.
+     * @return limit value.
+     * @throws IllegalArgumentException when the limit cannot be resolved.
+     */
+    private static double resolve(final String id, final Limit limit, final List<ParameterGroup> groups)
+    {
+        Throw.when(limit == null, IllegalArgumentException.class, "Parameter %s has no limits, specify as %s=min:max.", id,
+                id);
+        if (limit.parameter == null)
+        {
+            return limit.value;
+        }
+        double factor = limit.value == null ? 1.0 : limit.value;
+        for (ParameterGroup group : groups)
+        {
+            for (Parameter parameter : group.parameters == null ? List.<Parameter> of() : group.parameters)
+            {
+                if (parameter.id.equals(limit.parameter) && parameter.defaultValue != null
+                        && !parameter.defaultValue.isEmpty())
+                {
+                    DefaultValue defaultValue = parameter.defaultValue.get(0);
+                    Throw.when(!(defaultValue instanceof Scalar), IllegalArgumentException.class,
+                            "Limit of parameter %s refers to %s, which has no scalar default, specify as %s=min:max.", id,
+                            limit.parameter, id);
+                    return factor * ((Scalar) defaultValue).value();
+                }
+            }
+        }
+        throw new IllegalArgumentException(
+                "Limit of parameter " + id + " refers to unknown parameter " + limit.parameter + ", specify as id=min:max.");
+    }
+
+    /**
+     * Returns the value at the given fraction of the range.
+     * @param fraction fraction in the range [0...1].
+     * @return value at the given fraction of the range.
+     */
+    public double getValue(final double fraction)
+    {
+        return this.minimum + fraction * (this.maximum - this.minimum);
+    }
+
+    /**
+     * Returns the parameter group id.
+     * @return parameter group id.
+     */
+    public String getGroupId()
+    {
+        return this.groupId;
+    }
+
+    /**
+     * Returns the parameter id.
+     * @return parameter id.
+     */
+    public String getParameterId()
+    {
+        return this.parameterId;
+    }
+
+    /**
+     * Returns the minimum value.
+     * @return minimum value.
+     */
+    public double getMinimum()
+    {
+        return this.minimum;
+    }
+
+    /**
+     * Returns the maximum value.
+     * @return maximum value.
+     */
+    public double getMaximum()
+    {
+        return this.maximum;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "ParameterRange [groupId=" + this.groupId + ", parameterId=" + this.parameterId + ", minimum=" + this.minimum
+                + ", maximum=" + this.maximum + "]";
+    }
+
+}
@@ -0,0 +1,160 @@
+package org.opentrafficsim.fosim.batch;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.djutils.exceptions.Throw;
+
+import nl.tudelft.simulation.jstats.streams.StreamInterface;
+
+/**
+ * Space of OTS parameters spanned by parameter ranges, from which samples can be drawn. A sample is a {@code double[]} with a
+ * value for each range, in the order of the ranges.
+ * <p>
+ * Copyright (c) 2023-2024 Delft University of Technology, PO Box 5, 2600 AA, Delft, the Netherlands. All rights reserved. <br>
+ * BSD-style license. See <a href="https://opentrafficsim.org/docs/license.html">OpenTrafficSim License</a>.
+ * </p>
+ * @author <a href="https://github.com/wjschakel">Wouter Schakel</a>
+ */
+public class ParameterSpace
+{
+
+    /** Parameter ranges. */
+    private final List<ParameterRange> ranges;
+
+    /**
+     * Constructor.
+     * @param ranges parameter ranges.
+     */
+    public ParameterSpace(final List<ParameterRange> ranges)
+    {
+        Throw.whenNull(ranges, "ranges");
+        Throw.when(ranges.isEmpty(), IllegalArgumentException.class, "At least one parameter range is required.");
+        this.ranges = List.copyOf(ranges);
+    }
+
+    /**
+     * Returns the parameter ranges.
+     * @return parameter ranges.
+     */
+    public List<ParameterRange> getRanges()
+    {
+        return this.ranges;
+    }
+
+    /**
+     * Returns the number of dimensions, i.e. parameters.
+     * @return number of dimensions.
+     */
+    public int getDimensions()
+    {
+        return this.ranges.size();
+    }
+
+    /**
+     * Returns the parameter values at the given fractions of each range.
+     * @param fractions fractions in the range [0...1], one for each parameter.
+     * @return parameter values.
+     */
+    public double[] getValues(final double[] fractions)
+    {
+        Throw.when(fractions.length != this.ranges.size(), IllegalArgumentException.class,
+                "Number of fractions %s does not match number of parameters %s.", fractions.length, this.ranges.size());
+        double[] values = new double[fractions.length];
+        for (int i = 0; i < fractions.length; i++)
+        {
+            values[i] = this.ranges.get(i).getValue(fractions[i]);
+        }
+        return values;
+    }
+
+    /**
+     * Returns the parameter values as map from parameter id to value.
+     * @param values parameter values.
+     * @return map from parameter id to value.
+     */
+    public Map<String, Double> asMap(final double[] values)
+    {
+        Map<String, Double> map = new LinkedHashMap<>();
+        for (int i = 0; i < values.length; i++)
+        {
+            map.put(this.ranges.get(i).getParameterId(), values[i]);
+        }
+        return map;
+    }
+
+    /**
+     * Returns a full factorial grid with the given number of equidistant levels per parameter, including range limits.
+     * @param levels number of levels per parameter, at least 2.
+     * @return samples of full factorial grid.
+     */
+    public List<double[]> grid(final int levels)
+    {
+        Throw.when(levels < 2, IllegalArgumentException.class, "Number of grid levels should be at least 2.");
+        int dimensions = this.ranges.size();
+        List<double[]> samples = new ArrayList<>();
+        int[] level = new int[dimensions];
+        while (true)
+        {
+            double[] fractions = new double[dimensions];
+            for (int i = 0; i < dimensions; i++)
+            {
+                fractions[i] = (double) level[i] / (levels - 1);
+            }
+            samples.add(getValues(fractions));
+            // increase level like an odometer, last parameter fastest
+            int i = dimensions - 1;
+            while (i >= 0 && ++level[i] == levels)
+            {
+                level[i--] = 0;
+            }
+            if (i < 0)
+            {
+                return samples;
+            }
+        }
+    }
+
+    /**
+     * Returns a Latin-hypercube sample. Each parameter range is divided in equally sized strata, and each stratum is sampled
+     * exactly once per parameter.
+     * @param n number of samples.
+     * @param stream random number stream.
+     * @return Latin-hypercube sample.
+     */
+    public List<double[]> latinHypercube(final int n, final StreamInterface stream)
+    {
+        Throw.when(n < 1, IllegalArgumentException.class, "Number of samples should be at least 1.");
+        int dimensions = this.ranges.size();
+        double[][] fractions = new double[n][dimensions];
+        int[] strata = new int[n];
+        for (int j = 0; j < dimensions; j++)
+        {
+            for (int i = 0; i < n; i++)
+            {
+                strata[i] = i;
+            }
+            // Fisher-Yates shuffle of strata over samples
+            for (int i = n - 1; i > 0; i--)
+            {
+                int k = stream.nextInt(0, i);
+                int tmp = strata[i];
+                strata[i] = strata[k];
+                strata[k] = tmp;
+            }
+            for (int i = 0; i < n; i++)
+            {
+                fractions[i][j] = (strata[i] + stream.nextDouble()) / n;
+            }
+        }
+        List<double[]> samples = new ArrayList<>(n);
+        for (int i = 0; i < n; i++)
+        {
+            samples.add(getValues(fractions[i]));
+        }
+        return samples;
+    }
+
+}
@@ -0,0 +1,216 @@
+package org.opentrafficsim.fosim.batch;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.djutils.cli.CliUtil;
+import org.djutils.data.Column;
+import org.djutils.data.ListTable;
+import org.djutils.data.csv.CsvData;
+import org.djutils.data.serialization.TextSerializationException;
+import org.opentrafficsim.base.logger.Logger;
+
+import nl.tudelft.simulation.jstats.streams.MersenneTwister;
+import picocli.CommandLine.Option;
+
+/**
+ * Runs a sweep over OTS parameters from a base .fos file. The parameter samples are a full factorial grid or a Latin hypercube
+ * within the limits of {@code ParameterDefinitions}, or within explicitly given ranges. All runs are performed in parallel and
+ * a table is written with the parameter values and detector KPIs per run. Example arguments:
+ *
+ * <pre>
+ * --fosFile "Config 1.fos" --parameters Tmax,a,x0=200:500 --design LHS --samples 50 --seeds 3
+ * </pre>
+ * <p>
+ * Copyright (c) 2023-2024 Delft University of Technology, PO Box 5, 2600 AA, Delft, the Netherlands. All rights reserved. <br>
+ * BSD-style license. See <a href="https://opentrafficsim.org/docs/license.html">OpenTrafficSim License</a>.
+ * </p>
+ * @author <a href="https://github.com/wjschakel">Wouter Schakel</a>
+ */
+public class ParameterSweep
+{
+
+    /** Base FOSIM file. */
+    @Option(names = "--fosFile", description = "Base FOSIM file", required = true)
+    private String fosFile;
+
+    /** Parameters to sweep. */
+    @Option(names = "--parameters", description = "Parameters as id or id=min:max, comma separated", split = ",",
+            required = true)
+    private List<String> parameters;
+
+    /** Sampling design. */
+    @Option(names = "--design", description = "Sampling design: ${COMPLETION-CANDIDATES}", defaultValue = "GRID")
+    private Design design;
+
+    /** Number of levels per parameter in a grid. */
+    @Option(names = "--levels", description = "Number of levels per parameter in a grid", defaultValue = "3")
+    private int levels;
+
+    /** Number of samples in a Latin hypercube. */
+    @Option(names = "--samples", description = "Number of samples in a Latin hypercube", defaultValue = "10")
+    private int samples;
+
+    /** Number of seeds per sample. */
+    @Option(names = "--seeds", description = "Number of seeds per sample", defaultValue = "1")
+    private int seeds;
+
+    /** First seed, also used for the Latin hypercube. */
+    @Option(names = "--seed", description = "First seed, also used for the Latin hypercube", defaultValue = "1")
+    private int seed;
+
+    /** Number of threads. */
+    @Option(names = "--threads", description = "Number of parallel runs (default: number of processors)")
+    private Integer threads;
+
+    /** Output file. */
+    @Option(names = "--output", description = "Output file (default: <fosFile>_sweep.csv)")
+    private String output;
+
+    /**
+     * Constructor.
+     * @param args command line arguments.
+     * @throws Exception on any exception during command line parsing.
+     */
+    protected ParameterSweep(final String... args) throws Exception
+    {
+        CliUtil.execute(this, args);
+    }
+
+    /**
+     * Main method.
+     * @param args command line arguments.
+     * @throws Exception on any exception during the sweep.
+     */
+    public static void main(final String[] args) throws Exception
+    {
+        new ParameterSweep(args).run();
+    }
+
+    /**
+     * Runs the sweep.
+     * @throws IOException when the .fos file cannot be read.
+     * @throws InterruptedException when interrupted while waiting for runs.
+     */
+    private void run() throws IOException, InterruptedException
+    {
+        File file = new File(this.fosFile);
+        String fosString = Files.readString(file.toPath());
+        List<ParameterRange> ranges = new ArrayList<>();
+        this.parameters.forEach((specification) -> ranges.add(ParameterRange.of(specification)));
+        ParameterSpace space = new ParameterSpace(ranges);
+        List<double[]> sample = Design.GRID.equals(this.design) ? space.grid(this.levels)
+                : space.latinHypercube(this.samples, new MersenneTwister(this.seed));
+        Logger.ots().info("Sweep of {} samples with {} seeds.", sample.size(), this.seeds);
+
+        ExecutorService executor =
+                Executors.newFixedThreadPool(this.threads == null ? Runtime.getRuntime().availableProcessors() : this.threads);
+        List<Future<DetectorResults>> futures = new ArrayList<>();
+        for (int i = 0; i < sample.size(); i++)
+        {
+            String sampleString = FosFileEditor.setParameters(fosString, ranges, sample.get(i));
+            for (int s = 0; s < this.seeds; s++)
+            {
+                String runString = FosFileEditor.setSeed(sampleString, this.seed + s);
+                String simulatorId = "Ots-Fosim-" + i + "-" + s;
+                futures.add(executor.submit(() -> HeadlessRun.run(runString, simulatorId)));
+            }
+        }
+        List<DetectorResults> results = new ArrayList<>();
+        for (Future<DetectorResults> future : futures)
+        {
+            try
+            {
+                results.add(future.get());
+            }
+            catch (ExecutionException ex)
+            {
+                Logger.ots().error(ex.getCause(), "Run failed.");
+                results.add(null);
+            }
+        }
+        executor.shutdown();
+
+        writeResults(file, space, sample, results);
+    }
+
+    /**
+     * Writes the table with parameter values and KPIs per run.
+     * @param file base .fos file.
+     * @param space parameter space.
+     * @param sample parameter samples.
+     * @param results results per sample and seed, {@code null} for failed runs.
+     */
+    private void writeResults(final File file, final ParameterSpace space, final List<double[]> sample,
+            final List<DetectorResults> results)
+    {
+        int crossSections = results.stream().filter((r) -> r != null).mapToInt(DetectorResults::getCrossSections).max()
+                .orElse(0);
+        List<Column<?>> columns = new ArrayList<>();
+        columns.add(new Column<>("run", "run number", Integer.class));
+        columns.add(new Column<>("seed", "seed", Integer.class));
+        for (ParameterRange range : space.getRanges())
+        {
+            columns.add(new Column<>(range.getParameterId(), "parameter " + range.getParameterId(), Double.class));
+        }
+        columns.add(new Column<>("v", "harmonic mean speed all cross-sections", Double.class, "km/h"));
+        for (int crossSection = 0; crossSection < crossSections; crossSection++)
+        {
+            columns.add(new Column<>("q_" + crossSection, "mean flow cross-section " + crossSection, Double.class, "/h"));
+            columns.add(new Column<>("v_" + crossSection, "harmonic mean speed cross-section " + crossSection, Double.class,
+                    "km/h"));
+        }
+        ListTable table = new ListTable("sweep", "Parameter sweep results", columns);
+
+        for (int run = 0; run < results.size(); run++)
+        {
+            DetectorResults result = results.get(run);
+            Map<String, Object> row = new LinkedHashMap<>();
+            row.put("run", run);
+            row.put("seed", this.seed + run % this.seeds);
+            space.asMap(sample.get(run / this.seeds)).forEach(row::put);
+            row.put("v", result == null ? Double.NaN : result.getMeanSpeed());
+            for (int crossSection = 0; crossSection < crossSections; crossSection++)
+            {
+                boolean available = result != null && crossSection < result.getCrossSections();
+                row.put("q_" + crossSection, available ? result.getMeanFlow(crossSection) : Double.NaN);
+                row.put("v_" + crossSection, available ? result.getMeanSpeed(crossSection) : Double.NaN);
+            }
+            table.addRowByColumnIds(row);
+        }
+
+        String csv = this.output != null ? this.output
+                : new File(file.getParent(), file.getName().toLowerCase().replace(".fos", "_sweep.csv")).getPath();
+        try
+        {
+            CsvData.writeData(csv, csv.replace(".csv", "_meta.csv"), table);
+            Logger.ots().info("Sweep results written to {}.", csv);
+        }
+        catch (IOException | TextSerializationException ex)
+        {
+            Logger.ots().error("Unable to write output table.");
+        }
+    }
+
+    /**
+     * Sampling design.
+     */
+    public enum Design
+    {
+        /** Full factorial grid. */
+        GRID,
+
+        /** Latin hypercube. */
+        LHS;
+    }
+
+}
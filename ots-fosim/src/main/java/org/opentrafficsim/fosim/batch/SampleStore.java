@@ -0,0 +1,159 @@
+package org.opentrafficsim.fosim.batch;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.djutils.exceptions.Throw;
+
+/**
+ * Append-only store of KPI values per sample point and seed on disk. Each finished run is written and flushed directly, such
+ * that a long study can be resumed by skipping runs that are already in the file. The first line describes the design of the
+ * study, a study can only be resumed with the same design.
+ * <p>
+ * Copyright (c) 2023-2024 Delft University of Technology, PO Box 5, 2600 AA, Delft, the Netherlands. All rights reserved. <br>
+ * BSD-style license. See <a href="https://opentrafficsim.org/docs/license.html">OpenTrafficSim License</a>.
+ * </p>
+ * @author <a href="https://github.com/wjschakel">Wouter Schakel</a>
+ */
+public class SampleStore implements AutoCloseable
+{
+
+    /** KPI values per key of sample point and seed. */
+    private final Map<String, double[]> values = new LinkedHashMap<>();
+
+    /** KPIs. */
+    private final List<Kpi> kpis;
+
+    /** Writer. */
+    private final BufferedWriter writer;
+
+    /**
+     * Constructor. Existing values are loaded if the file exists.
+     * @param path file path.
+     * @param design description of the study design, must be equal to the description in an existing file.
+     * @param kpis KPIs.
+     * @throws IOException when the file cannot be read or written.
+     * @throws IllegalStateException when the existing file has a different design.
+     */
+    public SampleStore(final Path path, final String design, final List<Kpi> kpis) throws IOException
+    {
+        Throw.whenNull(design, "design");
+        this.kpis = kpis;
+        String designLine = "# " + design;
+        boolean exists = Files.exists(path) && Files.size(path) > 0;
+        boolean partialLine = false;
+        if (exists)
+        {
+            String content = Files.readString(path);
+            partialLine = !content.endsWith("\n");
+            List<String> lines = content.lines().toList();
+            // skip partially written line from an interrupted study
+            int complete = partialLine ? lines.size() - 1 : lines.size();
+            Throw.when(complete > 0 && !lines.get(0).equals(designLine), IllegalStateException.class,
+                    "File %s contains a study with different design, remove it or choose another output.", path);
+            if (complete < 2)
+            {
+                // interrupted before the header was written, there are no finished samples and the file is rewritten
+                exists = false;
+                partialLine = false;
+            }
+            for (String line : lines.subList(Math.min(2, complete), complete))
+            {
+                String[] fields = line.split(",");
+                if (fields.length == 2 + kpis.size())
+                {
+                    double[] kpiValues = new double[kpis.size()];
+                    for (int i = 0; i < kpiValues.length; i++)
+                    {
+                        kpiValues[i] = Double.parseDouble(fields[i + 2]);
+                    }
+                    this.values.put(fields[0] + "_" + fields[1], kpiValues);
+                }
+            }
+        }
+        this.writer = Files.newBufferedWriter(path, StandardOpenOption.CREATE,
+                exists ? StandardOpenOption.APPEND : StandardOpenOption.TRUNCATE_EXISTING);
+        if (partialLine)
+        {
+            this.writer.newLine();
+        }
+        if (!exists)
+        {
+            this.writer.write(designLine);
+            this.writer.newLine();
+            StringBuilder header = new StringBuilder("point,seed");
+            kpis.forEach((kpi) -> header.append(",").append(kpi.getId()));
+            this.writer.write(header.toString());
+            this.writer.newLine();
+            this.writer.flush();
+        }
+    }
+
+    /**
+     * Returns whether the store contains values for the sample point and seed.
+     * @param point sample point index.
+     * @param seed seed.
+     * @return whether the store contains values for the sample point and seed.
+     */
+    public synchronized boolean contains(final int point, final int seed)
+    {
+        return this.values.containsKey(point + "_" + seed);
+    }
+
+    /**
+     * Adds values and writes them to file.
+     * @param point sample point index.
+     * @param seed seed.
+     * @param kpiValues values, one for each KPI.
+     * @throws IOException when the values cannot be written.
+     */
+    public synchronized void add(final int point, final int seed, final double[] kpiValues) throws IOException
+    {
+        this.values.put(point + "_" + seed, kpiValues);
+        StringBuilder line = new StringBuilder().append(point).append(",").append(seed);
+        for (double value : kpiValues)
+        {
+            line.append(",").append(value);
+        }
+        this.writer.write(line.toString());
+        this.writer.newLine();
+        this.writer.flush();
+    }
+
+    /**
+     * Returns the value of a KPI at a sample point, as mean over the seeds for which the value is available.
+     * @param point sample point index.
+     * @param kpi KPI.
+     * @param seeds seeds.
+     * @return mean value over seeds, NaN if not available for any seed.
+     */
+    public synchronized double getMean(final int point, final Kpi kpi, final int[] seeds)
+    {
+        int index = this.kpis.indexOf(kpi);
+        int n = 0;
+        double sum = 0.0;
+        for (int seed : seeds)
+        {
+            double[] kpiValues = this.values.get(point + "_" + seed);
+            if (kpiValues != null && !Double.isNaN(kpiValues[index]))
+            {
+                n++;
+                sum += kpiValues[index];
+            }
+        }
+        return n == 0 ? Double.NaN : sum / n;
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        this.writer.close();
+    }
+
+}
@@ -0,0 +1,437 @@
+package org.opentrafficsim.fosim.batch;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.djunits.unit.SpeedUnit;
+import org.djunits.value.vdouble.scalar.Speed;
+import org.djutils.cli.CliUtil;
+import org.djutils.data.Column;
+import org.djutils.data.ListTable;
+import org.djutils.data.csv.CsvData;
+import org.djutils.data.serialization.TextSerializationException;
+import org.djutils.exceptions.Throw;
+import org.opentrafficsim.base.logger.Logger;
+import org.opentrafficsim.fosim.batch.HeadlessRun.RunResult;
+import org.opentrafficsim.fosim.sim0mq.StopCriterion.DetectionType;
+
+import nl.tudelft.simulation.jstats.streams.MersenneTwister;
+import nl.tudelft.simulation.jstats.streams.StreamInterface;
+import picocli.CommandLine.Option;
+
+/**
+ * Global sensitivity analysis of OTS parameters using either the elementary effects method of Morris, or Sobol indices
+ * estimated from a Saltelli sample. All runs are performed in parallel, and each finished run is stored directly such that an
+ * interrupted study continues where it was when started again with the same arguments. Capacity is only available with a
+ * stop criterion, and is the highest flow in any completed period before the criterion triggered. Example arguments:
+ *
+ * <pre>
+ * --fosFile "Config 1.fos" --parameters Tmax,a,b,x0 --method MORRIS --trajectories 20 --detectionType FOSIM
+ * </pre>
+ * <p>
+ * Copyright (c) 2023-2024 Delft University of Technology, PO Box 5, 2600 AA, Delft, the Netherlands. All rights reserved. <br>
+ * BSD-style license. See <a href="https://opentrafficsim.org/docs/license.html">OpenTrafficSim License</a>.
+ * </p>
+ * @author <a href="https://github.com/wjschakel">Wouter Schakel</a>
+ */
+public class SensitivityAnalysis
+{
+
+    /** Base FOSIM file. */
+    @Option(names = "--fosFile", description = "Base FOSIM file", required = true)
+    private String fosFile;
+
+    /** Parameters to analyze. */
+    @Option(names = "--parameters", description = "Parameters as id or id=min:max, comma separated", split = ",",
+            required = true)
+    private List<String> parameters;
+
+    /** Method. */
+    @Option(names = "--method", description = "Method: ${COMPLETION-CANDIDATES}", defaultValue = "MORRIS")
+    private Method method;
+
+    /** Number of trajectories for Morris. */
+    @Option(names = "--trajectories", description = "Number of trajectories for Morris", defaultValue = "10")
+    private int trajectories;
+
+    /** Number of grid levels for Morris. */
+    @Option(names = "--levels", description = "Number of grid levels for Morris, even number", defaultValue = "4")
+    private int levels;
+
+    /** Number of base samples for Sobol. */
+    @Option(names = "--samples", description = "Number of base samples for Sobol", defaultValue = "100")
+    private int samples;
+
+    /** Number of seeds per sample point. */
+    @Option(names = "--seeds", description = "Number of seeds per sample point", defaultValue = "1")
+    private int seeds;
+
+    /** First seed, also used for the design. */
+    @Option(names = "--seed", description = "First seed, also used for the design", defaultValue = "1")
+    private int seed;
+
+    /** Number of threads. */
+    @Option(names = "--threads", description = "Number of parallel runs (default: number of processors)")
+    private Integer threads;
+
+    /** Detection type of stop criterion. */
+    @Option(names = "--detectionType", description = "Detection type of stop criterion for capacity: ${COMPLETION-CANDIDATES}")
+    private DetectionType detectionType;
+
+    /** From lane of stop criterion. */
+    @Option(names = "--fromLane", description = "From lane of stop criterion", defaultValue = "0")
+    private int fromLane;
+
+    /** To lane of stop criterion. */
+    @Option(names = "--toLane", description = "To lane of stop criterion", defaultValue = "99")
+    private int toLane;
+
+    /** Detector cross-section of stop criterion. */
+    @Option(names = "--detector", description = "Detector cross-section of stop criterion, -1 for all", defaultValue = "-1")
+    private int detector;
+
+    /** Speed threshold of stop criterion. */
+    @Option(names = "--threshold", description = "Speed threshold of stop criterion [km/h]", defaultValue = "50")
+    private double threshold;
+
+    /** Output file. */
+    @Option(names = "--output", description = "Output file of runs, used to resume (default: <fosFile>_<method>.csv)")
+    private String output;
+
+    /**
+     * Constructor.
+     * @param args command line arguments.
+     * @throws Exception on any exception during command line parsing.
+     */
+    protected SensitivityAnalysis(final String... args) throws Exception
+    {
+        CliUtil.execute(this, args);
+    }
+
+    /**
+     * Main method.
+     * @param args command line arguments.
+     * @throws Exception on any exception during the analysis.
+     */
+    public static void main(final String[] args) throws Exception
+    {
+        new SensitivityAnalysis(args).run();
+    }
+
+    /**
+     * Runs the analysis.
+     * @throws IOException when the .fos file cannot be read, or output cannot be written.
+     * @throws InterruptedException when interrupted while waiting for runs.
+     */
+    private void run() throws IOException, InterruptedException
+    {
+        File file = new File(this.fosFile);
+        String fosString = Files.readString(file.toPath());
+        List<ParameterRange> ranges = new ArrayList<>();
+        this.parameters.forEach((specification) -> ranges.add(ParameterRange.of(specification)));
+        ParameterSpace space = new ParameterSpace(ranges);
+        int k = space.getDimensions();
+        StreamInterface stream = new MersenneTwister(this.seed);
+        List<double[]> design = Method.MORRIS.equals(this.method) ? morris(k, this.trajectories, this.levels, stream)
+                : saltelli(k, this.samples, stream);
+        int[] seedValues = new int[this.seeds];
+        for (int s = 0; s < this.seeds; s++)
+        {
+            seedValues[s] = this.seed + s;
+        }
+
+        String name = this.output != null ? this.output
+                : new File(file.getParent(), file.getName().toLowerCase().replace(".fos", "_" + this.method.name().toLowerCase()
+                        + ".csv")).getPath();
+        String designDescription = this.method + " " + space.getRanges() + " trajectories=" + this.trajectories + " levels="
+                + this.levels + " samples=" + this.samples + " seed=" + this.seed + " seeds=" + this.seeds + " stop="
+                + this.detectionType + "/" + this.fromLane + "/" + this.toLane + "/" + this.detector + "/" + this.threshold;
+        List<Kpi> kpis = List.of(Kpi.values());
+        try (SampleStore store = new SampleStore(Path.of(name), designDescription, kpis))
+        {
+            ExecutorService executor = Executors
+                    .newFixedThreadPool(this.threads == null ? Runtime.getRuntime().availableProcessors() : this.threads);
+            List<Future<?>> futures = new ArrayList<>();
+            for (int point = 0; point < design.size(); point++)
+            {
+                String pointString = FosFileEditor.setParameters(fosString, ranges, space.getValues(design.get(point)));
+                for (int seedValue : seedValues)
+                {
+                    if (!store.contains(point, seedValue))
+                    {
+                        String runString = FosFileEditor.setSeed(pointString, seedValue);
+                        int p = point;
+                        futures.add(executor.submit(() ->
+                        {
+                            RunResult result = createRun(runString, "Ots-Fosim-" + p + "-" + seedValue).run();
+                            double[] values = new double[kpis.size()];
+                            for (int i = 0; i < values.length; i++)
+                            {
+                                values[i] = kpis.get(i).getValue(result);
+                            }
+                            store.add(p, seedValue, values);
+                            return null;
+                        }));
+                    }
+                }
+            }
+            Logger.ots().info("{} of {} runs remaining.", futures.size(), design.size() * this.seeds);
+            for (Future<?> future : futures)
+            {
+                try
+                {
+                    future.get();
+                }
+                catch (ExecutionException ex)
+                {
+                    Logger.ots().error(ex.getCause(), "Run failed.");
+                }
+            }
+            executor.shutdown();
+
+            ListTable table = Method.MORRIS.equals(this.method) ? morrisIndices(space, design, store, kpis, seedValues)
+                    : sobolIndices(space, design, store, kpis, seedValues);
+            String indices = name.replace(".csv", "_indices.csv");
+            CsvData.writeData(indices, indices.replace(".csv", "_meta.csv"), table);
+            Logger.ots().info("Sensitivity indices written to {}.", indices);
+        }
+        catch (TextSerializationException ex)
+        {
+            Logger.ots().error("Unable to write output table.");
+        }
+    }
+
+    /**
+     * Creates a headless run, with stop criterion if specified.
+     * @param runString contents of .fos file.
+     * @param simulatorId simulator id.
+     * @return headless run.
+     */
+    private HeadlessRun createRun(final String runString, final String simulatorId)
+    {
+        HeadlessRun run = new HeadlessRun(runString, simulatorId);
+        if (this.detectionType != null)
+        {
+            run.setStopCriterion(this.detectionType, this.fromLane, this.toLane, this.detector,
+                    new Speed(this.threshold, SpeedUnit.KM_PER_HOUR));
+        }
+        return run;
+    }
+
+    /**
+     * Creates a Morris design of trajectories in the unit hypercube. Each trajectory consists of k + 1 consecutive points,
+     * where between each consecutive pair one parameter is changed by delta = levels / (2 * (levels - 1)).
+     * @param k number of parameters.
+     * @param r number of trajectories.
+     * @param p number of grid levels.
+     * @param stream random number stream.
+     * @return design of r * (k + 1) points.
+     * @throws IllegalArgumentException when the number of levels is not an even number of at least 2.
+     */
+    static List<double[]> morris(final int k, final int r, final int p, final StreamInterface stream)
+    {
+        Throw.when(p < 2 || p % 2 != 0, IllegalArgumentException.class, "Number of levels %s is not an even number.", p);
+        double delta = p / (2.0 * (p - 1));
+        List<double[]> design = new ArrayList<>(r * (k + 1));
+        for (int t = 0; t < r; t++)
+        {
+            double[] x = new double[k];
+            int[] order = new int[k];
+            for (int j = 0; j < k; j++)
+            {
+                x[j] = (double) stream.nextInt(0, p - 1) / (p - 1);
+                order[j] = j;
+            }
+            for (int j = k - 1; j > 0; j--)
+            {
+                int i = stream.nextInt(0, j);
+                int tmp = order[j];
+                order[j] = order[i];
+                order[i] = tmp;
+            }
+            design.add(x.clone());
+            for (int j : order)
+            {
+                x[j] = x[j] + delta <= 1.0 + 1e-9 ? x[j] + delta : x[j] - delta;
+                design.add(x.clone());
+            }
+        }
+        return design;
+    }
+
+    /**
+     * Creates a Saltelli design in the unit hypercube. For each base sample n, the points are A_n, B_n and AB_n^i for each
+     * parameter i, where AB_n^i equals A_n with value i from B_n.
+     * @param k number of parameters.
+     * @param n number of base samples.
+     * @param stream random number stream.
+     * @return design of n * (k + 2) points.
+     */
+    static List<double[]> saltelli(final int k, final int n, final StreamInterface stream)
+    {
+        List<double[]> design = new ArrayList<>(n * (k + 2));
+        for (int s = 0; s < n; s++)
+        {
+            double[] a = new double[k];
+            double[] b = new double[k];
+            for (int j = 0; j < k; j++)
+            {
+                a[j] = stream.nextDouble();
+                b[j] = stream.nextDouble();
+            }
+            design.add(a);
+            design.add(b);
+            for (int i = 0; i < k; i++)
+            {
+                double[] ab = a.clone();
+                ab[i] = b[i];
+                design.add(ab);
+            }
+        }
+        return design;
+    }
+
+    /**
+     * Computes Morris elementary effect statistics mu, mu* and sigma, in output units per full parameter range.
+     * @param space parameter space.
+     * @param design design.
+     * @param store stored run values.
+     * @param kpis KPIs.
+     * @param seedValues seeds.
+     * @return table of indices.
+     */
+    private ListTable morrisIndices(final ParameterSpace space, final List<double[]> design, final SampleStore store,
+            final List<Kpi> kpis, final int[] seedValues)
+    {
+        int k = space.getDimensions();
+        ListTable table = new ListTable("morris", "Morris elementary effects",
+                List.of(new Column<>("parameter", "parameter id", String.class),
+                        new Column<>("output", "output id", String.class),
+                        new Column<>("n", "number of effects", Integer.class),
+                        new Column<>("mu", "mean effect", Double.class),
+                        new Column<>("muStar", "mean absolute effect", Double.class),
+                        new Column<>("sigma", "standard deviation of effect", Double.class)));
+        for (Kpi kpi : kpis)
+        {
+            List<List<Double>> effects = new ArrayList<>();
+            for (int j = 0; j < k; j++)
+            {
+                effects.add(new ArrayList<>());
+            }
+            for (int point = 0; point < design.size(); point++)
+            {
+                if (point % (k + 1) == 0)
+                {
+                    continue; // first point of trajectory
+                }
+                double[] x0 = design.get(point - 1);
+                double[] x1 = design.get(point);
+                double y0 = store.getMean(point - 1, kpi, seedValues);
+                double y1 = store.getMean(point, kpi, seedValues);
+                for (int j = 0; j < k; j++)
+                {
+                    if (x0[j] != x1[j] && !Double.isNaN(y0) && !Double.isNaN(y1))
+                    {
+                        effects.get(j).add((y1 - y0) / (x1[j] - x0[j]));
+                    }
+                }
+            }
+            for (int j = 0; j < k; j++)
+            {
+                List<Double> ee = effects.get(j);
+                double mu = ee.stream().mapToDouble((e) -> e).average().orElse(Double.NaN);
+                double muStar = ee.stream().mapToDouble(Math::abs).average().orElse(Double.NaN);
+                double sigma = ee.size() < 2 ? Double.NaN
+                        : Math.sqrt(ee.stream().mapToDouble((e) -> (e - mu) * (e - mu)).sum() / (ee.size() - 1));
+                Map<String, Object> row = new LinkedHashMap<>();
+                row.put("parameter", space.getRanges().get(j).getParameterId());
+                row.put("output", kpi.getId());
+                row.put("n", ee.size());
+                row.put("mu", mu);
+                row.put("muStar", muStar);
+                row.put("sigma", sigma);
+                table.addRowByColumnIds(row);
+            }
+        }
+        return table;
+    }
+
+    /**
+     * Computes first-order (Saltelli 2010) and total (Jansen) Sobol indices.
+     * @param space parameter space.
+     * @param design design.
+     * @param store stored run values.
+     * @param kpis KPIs.
+     * @param seedValues seeds.
+     * @return table of indices.
+     */
+    private ListTable sobolIndices(final ParameterSpace space, final List<double[]> design, final SampleStore store,
+            final List<Kpi> kpis, final int[] seedValues)
+    {
+        int k = space.getDimensions();
+        int n = design.size() / (k + 2);
+        ListTable table = new ListTable("sobol", "Sobol indices",
+                List.of(new Column<>("parameter", "parameter id", String.class),
+                        new Column<>("output", "output id", String.class),
+                        new Column<>("n", "number of base samples used", Integer.class),
+                        new Column<>("S1", "first-order index", Double.class),
+                        new Column<>("ST", "total index", Double.class)));
+        for (Kpi kpi : kpis)
+        {
+            for (int i = 0; i < k; i++)
+            {
+                // only base samples where A, B and AB_i are all available
+                List<double[]> triples = new ArrayList<>();
+                for (int s = 0; s < n; s++)
+                {
+                    int base = s * (k + 2);
+                    double fA = store.getMean(base, kpi, seedValues);
+                    double fB = store.getMean(base + 1, kpi, seedValues);
+                    double fAB = store.getMean(base + 2 + i, kpi, seedValues);
+                    if (!Double.isNaN(fA) && !Double.isNaN(fB) && !Double.isNaN(fAB))
+                    {
+                        triples.add(new double[] {fA, fB, fAB});
+                    }
+                }
+                double mean = triples.stream().mapToDouble((f) -> f[0] + f[1]).sum() / (2.0 * triples.size());
+                double variance = triples.stream()
+                        .mapToDouble((f) -> (f[0] - mean) * (f[0] - mean) + (f[1] - mean) * (f[1] - mean)).sum()
+                        / (2.0 * triples.size() - 1.0);
+                double s1 = triples.stream().mapToDouble((f) -> f[1] * (f[2] - f[0])).average().orElse(Double.NaN) / variance;
+                double st = triples.stream().mapToDouble((f) -> (f[0] - f[2]) * (f[0] - f[2])).average().orElse(Double.NaN)
+                        / (2.0 * variance);
+                Map<String, Object> row = new LinkedHashMap<>();
+                row.put("parameter", space.getRanges().get(i).getParameterId());
+                row.put("output", kpi.getId());
+                row.put("n", triples.size());
+                row.put("S1", s1);
+                row.put("ST", st);
+                table.addRowByColumnIds(row);
+            }
+        }
+        return table;
+    }
+
+    /**
+     * Sensitivity analysis method.
+     */
+    public enum Method
+    {
+        /** Elementary effects of Morris. */
+        MORRIS,
+
+        /** Sobol indices from a Saltelli sample. */
+        SOBOL;
+    }
+
+}
@@ -0,0 +1,346 @@
+package org.opentrafficsim.fosim.batch;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.djunits.unit.SpeedUnit;
+import org.djunits.value.vdouble.scalar.Duration;
+import org.djunits.value.vdouble.scalar.Length;
+import org.djunits.value.vdouble.scalar.Speed;
+import org.djutils.exceptions.Throw;
+import org.opentrafficsim.core.definitions.DefaultsNl;
+import org.opentrafficsim.core.gtu.Gtu;
+import org.opentrafficsim.core.network.Link;
+import org.opentrafficsim.core.network.NetworkException;
+import org.opentrafficsim.fosim.FosDetector;
+import org.opentrafficsim.fosim.parser.FosParser;
+import org.opentrafficsim.road.network.RoadNetwork;
+import org.opentrafficsim.road.network.lane.CrossSectionLink;
+import org.opentrafficsim.road.network.lane.Lane;
+import org.opentrafficsim.road.network.lane.object.trafficlight.TrafficLight;
+import org.opentrafficsim.road.network.lane.object.trafficlight.TrafficLightColor;
+
+/**
+ * Branches a simulation at a fork time into variants, each with a mutation, that run in parallel up to a horizon. As the state
+ * of a running simulation cannot be cloned, each variant replays the simulation from the start with the same .fos contents,
+ * and thus the same seed, which results in exactly the same state at the fork time. The mutation is applied at the fork time.
+ * Besides the given variants, a reference variant without mutation is always simulated. Results are the flow and speed at each
+ * detector cross-section between the fork time and the horizon, and the state of the network at the horizon.
+ * <p>
+ * Copyright (c) 2023-2024 Delft University of Technology, PO Box 5, 2600 AA, Delft, the Netherlands. All rights reserved. <br>
+ * BSD-style license. See <a href="https://opentrafficsim.org/docs/license.html">OpenTrafficSim License</a>.
+ * </p>
+ * @author <a href="https://github.com/wjschakel">Wouter Schakel</a>
+ */
+public class WhatIfFork
+{
+
+    /** Number of forks that were run, such that simulator ids are unique among forks that run at the same time. */
+    private static final AtomicInteger FORKS = new AtomicInteger();
+
+    /** Contents of .fos file. */
+    private final String fosString;
+
+    /** Fork time. */
+    private final Duration forkTime;
+
+    /** Horizon. */
+    private final Duration horizon;
+
+    /**
+     * Constructor.
+     * @param fosString contents of .fos file, from which the simulation to fork was created.
+     * @param forkTime fork time, i.e. the current time of the simulation to fork.
+     * @param horizon time up to which variants are simulated.
+     * @throws IllegalArgumentException when the horizon is not after the fork time, or after the end of the replication.
+     */
+    public WhatIfFork(final String fosString, final Duration forkTime, final Duration horizon)
+    {
+        Throw.whenNull(fosString, "fosString");
+        Throw.whenNull(forkTime, "forkTime");
+        Throw.whenNull(horizon, "horizon");
+        Throw.when(!horizon.gt(forkTime), IllegalArgumentException.class, "Horizon should be after the fork time.");
+        Duration end = FosFileEditor.getEndTime(fosString);
+        Throw.when(horizon.gt(end), IllegalArgumentException.class, "Horizon %s is after the end of the replication %s.",
+                horizon, end);
+        this.fosString = fosString;
+        this.forkTime = forkTime;
+        this.horizon = horizon;
+    }
+
+    /**
+     * Simulates all variants in parallel, and waits for the results. The first result is of the reference variant without
+     * mutation, the others are in order of the given variants.
+     * @param variants variants.
+     * @param executor executor to run variants in parallel.
+     * @return results, starting with the reference variant.
+     * @throws NetworkException when the network cannot be built, or a variant failed.
+     */
+    public List<VariantResult> run(final List<Variant> variants, final Executor executor) throws NetworkException
+    {
+        try
+        {
+            return runAsync(variants, executor).get();
+        }
+        catch (InterruptedException | ExecutionException ex)
+        {
+            throw new NetworkException("Variant failed.", ex.getCause() == null ? ex : ex.getCause());
+        }
+    }
+
+    /**
+     * Simulates all variants in parallel, without waiting for the results. The first result is of the reference variant
+     * without mutation, the others are in order of the given variants. No thread of the executor waits for other variants,
+     * such that an executor with fewer threads than variants, or that is shared with other tasks, can be used.
+     * @param variants variants.
+     * @param executor executor to run variants in parallel.
+     * @return future results, starting with the reference variant, which completes exceptionally when a variant failed.
+     */
+    public CompletableFuture<List<VariantResult>> runAsync(final List<Variant> variants, final Executor executor)
+    {
+        Throw.whenNull(variants, "variants");
+        Throw.whenNull(executor, "executor");
+        List<Variant> all = new ArrayList<>();
+        all.add(new Variant(Mutation.NONE, 0, 0, Length.ZERO, 0.0));
+        all.addAll(variants);
+        int fork = FORKS.getAndIncrement();
+        List<CompletableFuture<VariantResult>> futures = new ArrayList<>();
+        for (int i = 0; i < all.size(); i++)
+        {
+            Variant variant = all.get(i);
+            String simulatorId = "Ots-Fosim-fork-" + fork + "-" + i;
+            futures.add(CompletableFuture.supplyAsync(() ->
+            {
+                try
+                {
+                    return runVariant(variant, simulatorId);
+                }
+                catch (NetworkException ex)
+                {
+                    throw new CompletionException(ex);
+                }
+            }, executor));
+        }
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[futures.size()]))
+                .thenApply((v) -> futures.stream().map(CompletableFuture::join).toList());
+    }
+
+    /**
+     * Simulates a single variant.
+     * @param variant variant.
+     * @param simulatorId simulator id.
+     * @return result of the variant.
+     * @throws NetworkException when the network cannot be built.
+     */
+    private VariantResult runVariant(final Variant variant, final String simulatorId) throws NetworkException
+    {
+        String variantString = Mutation.DEMAND.equals(variant.mutation())
+                ? FosFileEditor.scaleDemand(this.fosString, this.forkTime.si, variant.value()) : this.fosString;
+        HeadlessRun run = new HeadlessRun(variantString, simulatorId).setEndTime(this.horizon);
+        List<double[]> atFork = new ArrayList<>();
+        List<double[]> atHorizon = new ArrayList<>();
+        double[] state = new double[2];
+        run.addAction(this.forkTime, (network) ->
+        {
+            atFork.addAll(getCumulativeDetection(network));
+            applyMutation(network, variant);
+        });
+        run.addAction(this.horizon, (network) ->
+        {
+            atHorizon.addAll(getCumulativeDetection(network));
+            double sumSpeed = 0.0;
+            for (Gtu gtu : network.getGTUs())
+            {
+                sumSpeed += gtu.getSpeed().getInUnit(SpeedUnit.KM_PER_HOUR);
+            }
+            state[0] = network.getGTUs().isEmpty() ? Double.NaN : sumSpeed / network.getGTUs().size();
+            state[1] = network.getGTUs().size();
+        });
+        run.run();
+
+        double duration = this.horizon.si - this.forkTime.si;
+        double[] flow = new double[atHorizon.size()];
+        double[] speed = new double[atHorizon.size()];
+        for (int crossSection = 0; crossSection < atHorizon.size(); crossSection++)
+        {
+            double[] from = crossSection < atFork.size() ? atFork.get(crossSection) : new double[2];
+            double count = atHorizon.get(crossSection)[0] - from[0];
+            double sumReciprocalSpeed = atHorizon.get(crossSection)[1] - from[1];
+            flow[crossSection] = 3600.0 * count / duration;
+            speed[crossSection] = sumReciprocalSpeed > 0.0 ? 3.6 * count / sumReciprocalSpeed : Double.NaN;
+        }
+        return new VariantResult(variant, flow, speed, state[0], (int) state[1]);
+    }
+
+    /**
+     * Returns the cumulative count and sum of reciprocal speed up to now, per detector cross-section over all lanes.
+     * @param network network.
+     * @return cumulative count and sum of reciprocal speed [s/m] per detector cross-section.
+     */
+    private static List<double[]> getCumulativeDetection(final RoadNetwork network)
+    {
+        List<double[]> detection = new ArrayList<>();
+        for (FosDetector detector : network.getObjectMap(FosDetector.class).values())
+        {
+            int crossSection = Integer.valueOf(detector.getId().split("_")[0]);
+            while (detection.size() <= crossSection)
+            {
+                detection.add(new double[2]);
+            }
+            for (int period = 0; period <= detector.getCurrentPeriod(); period++)
+            {
+                detection.get(crossSection)[0] += detector.getCount(period);
+                detection.get(crossSection)[1] += detector.getSumReciprocalSpeed(period);
+            }
+        }
+        return detection;
+    }
+
+    /**
+     * Applies the mutation of the variant to the network.
+     * @param network network.
+     * @param variant variant.
+     */
+    private void applyMutation(final RoadNetwork network, final Variant variant)
+    {
+        if (Mutation.BLOCKAGE.equals(variant.mutation()))
+        {
+            List<TrafficLight> lights = new ArrayList<>();
+            for (Lane lane : getLanes(network, variant))
+            {
+                double x0 = lane.getCenterLine().getFirst().x;
+                double x1 = lane.getCenterLine().getLast().x;
+                if (x0 <= variant.position().si && variant.position().si < x1)
+                {
+                    Length position = lane.getLength().times((variant.position().si - x0) / (x1 - x0));
+                    try
+                    {
+                        TrafficLight light = new TrafficLight("blockage_" + lane.getFullId(), lane, position);
+                        light.setTrafficLightColor(TrafficLightColor.RED);
+                        lights.add(light);
+                    }
+                    catch (NetworkException ex)
+                    {
+                        throw new IllegalStateException("Unable to place blockage on lane " + lane.getFullId(), ex);
+                    }
+                }
+            }
+            if (variant.value() > 0.0)
+            {
+                network.getSimulator().scheduleEventRel(Duration.ofSI(variant.value()), this, "endBlockage",
+                        new Object[] {lights});
+            }
+        }
+        else if (Mutation.SPEED_LIMIT.equals(variant.mutation()))
+        {
+            Speed speedLimit = new Speed(variant.value(), SpeedUnit.KM_PER_HOUR);
+            for (Lane lane : getLanes(network, variant))
+            {
+                if (lane.getCenterLine().getLast().x > variant.position().si)
+                {
+                    lane.setSpeedLimit(DefaultsNl.ROAD_USER, speedLimit);
+                }
+            }
+        }
+    }
+
+    /**
+     * Ends a blockage by setting all its traffic lights to green.
+     * @param lights traffic lights of the blockage.
+     */
+    @SuppressWarnings("unused") // used through scheduling
+    private void endBlockage(final List<TrafficLight> lights)
+    {
+        lights.forEach((light) -> light.setTrafficLightColor(TrafficLightColor.GREEN));
+    }
+
+    /**
+     * Returns all lanes in the network whose row is within the lane range of the variant.
+     * @param network network.
+     * @param variant variant.
+     * @return lanes within the lane range of the variant.
+     */
+    private static List<Lane> getLanes(final RoadNetwork network, final Variant variant)
+    {
+        List<Lane> lanes = new ArrayList<>();
+        for (Link link : network.getLinkMap().values())
+        {
+            if (link instanceof CrossSectionLink crossSectionLink)
+            {
+                for (Lane lane : crossSectionLink.getLanes())
+                {
+                    if (!lane.getId().startsWith("_"))
+                    {
+                        int row = FosParser.getLaneRowFromId(lane.getId());
+                        if (variant.fromLane() <= row && row <= variant.toLane())
+                        {
+                            lanes.add(lane);
+                        }
+                    }
+                }
+            }
+        }
+        return lanes;
+    }
+
+    /**
+     * Mutation of a variant.
+     */
+    public enum Mutation
+    {
+        /** No mutation. */
+        NONE,
+
+        /** Temporary blockage of lanes at a position, value is the duration [s], 0 for a blockage up to the horizon. */
+        BLOCKAGE,
+
+        /** Demand scale of all sources, value is the factor. */
+        DEMAND,
+
+        /** Speed limit on lanes downstream of a position, value is the speed limit [km/h]. */
+        SPEED_LIMIT;
+    }
+
+    /**
+     * Variant of a fork.
+     * @param mutation mutation
+     * @param fromLane from lane of lane range, not used for a demand mutation
+     * @param toLane to lane of lane range, not used for a demand mutation
+     * @param position position, not used for a demand mutation
+     * @param value value, meaning depends on the mutation
+     */
+    public record Variant(Mutation mutation, int fromLane, int toLane, Length position, double value)
+    {
+        /**
+         * Constructor.
+         * @param mutation mutation
+         * @param fromLane from lane of lane range, not used for a demand mutation
+         * @param toLane to lane of lane range, not used for a demand mutation
+         * @param position position, not used for a demand mutation
+         * @param value value, meaning depends on the mutation
+         */
+        public Variant
+        {
+            Throw.whenNull(mutation, "mutation");
+            Throw.whenNull(position, "position");
+        }
+    };
+
+    /**
+     * Result of a variant.
+     * @param variant variant
+     * @param flow flow between fork time and horizon per detector cross-section [veh/h]
+     * @param speed harmonic mean speed between fork time and horizon per detector cross-section [km/h], NaN if no vehicles
+     * @param meanSpeed mean speed of vehicles in the network at the horizon [km/h], NaN if no vehicles
+     * @param gtuCount number of vehicles in the network at the horizon
+     */
+    public record VariantResult(Variant variant, double[] flow, double[] speed, double meanSpeed, int gtuCount)
+    {
+    };
+
+}
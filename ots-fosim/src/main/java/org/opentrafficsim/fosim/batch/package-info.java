@@ -0,0 +1,9 @@
+/**
+ * Batch execution of OTS-FOSIM simulations without FOSIM, such as parameter sweeps over the OTS parameters.
+ * <p>
+ * Copyright (c) 2023-2024 Delft University of Technology, PO Box 5, 2600 AA, Delft, the Netherlands. All rights reserved. <br>
+ * BSD-style license. See <a href="https://opentrafficsim.org/docs/license.html">OpenTrafficSim License</a>.
+ * </p>
+ * @author <a href="https://github.com/wjschakel">Wouter Schakel</a>
+ */
+package org.opentrafficsim.fosim.batch;
@@ -0,0 +1,334 @@
+package org.opentrafficsim.fosim.export;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.zip.Deflater;
+
+import org.djutils.exceptions.Throw;
+import org.opentrafficsim.fosim.sim0mq.trace.Trace.ColumnType;
+import org.opentrafficsim.fosim.sim0mq.trace.TraceData;
+
+/**
+ * Writes a table to a compressed columnar binary file. Rows are written in blocks, and each column of a block is compressed
+ * separately, such that a reader can decompress a column of a block directly into a typed array. All numbers are big-endian.
+ * <ul>
+ * <li>Header: an int 'FOSC', an int version (1), an int m for the number of metadata entries and m pairs of UTF strings (key
+ * and value), an int n for the number of columns and for each column a UTF string name, a byte type (0 for float32, 1 for
+ * int32) and a UTF string unit. UTF strings are a short length followed by modified UTF-8 bytes, as by
+ * {@code DataOutputStream.writeUTF()}.</li>
+ * <li>Blocks: an int number of rows r, followed for each column by an int number of bytes b and b bytes of zlib compressed
+ * data, which decompress to r big-endian values of the column type.</li>
+ * <li>End: an int 0.</li>
+ * </ul>
+ * In Python for example, a column of a block can be read with {@code numpy.frombuffer(zlib.decompress(data), '>f4')}.
+ * <p>
+ * Copyright (c) 2023-2024 Delft University of Technology, PO Box 5, 2600 AA, Delft, the Netherlands. All rights reserved. <br>
+ * BSD-style license. See <a href="https://opentrafficsim.org/docs/license.html">OpenTrafficSim License</a>.
+ * </p>
+ * @author <a href="https://github.com/wjschakel">Wouter Schakel</a>
+ */
+public class ColumnarWriter implements Closeable
+{
+
+    /** Magic number at the start of a file, 'FOSC'. */
+    private static final int MAGIC = 0x464F5343;
+
+    /** Version of format. */
+    private static final int VERSION = 1;
+
+    /** Maximum number of rows per block. */
+    private static final int BLOCK_SIZE = 65536;
+
+    /** Output stream. */
+    private final DataOutputStream out;
+
+    /** Columns. */
+    private final Column[] columns;
+
+    /** Buffered rows of float columns, null for int columns. */
+    private final float[][] floatBuffer;
+
+    /** Buffered rows of int columns, null for float columns. */
+    private final int[][] intBuffer;
+
+    /** Number of buffered rows. */
+    private int buffered = 0;
+
+    /** Compressor. */
+    private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+
+    /** Bytes of a column of a block. */
+    private ByteBuffer bytes = ByteBuffer.allocate(0);
+
+    /** Compressed bytes of a column of a block. */
+    private byte[] compressed = new byte[0];
+
+    /**
+     * Constructor. The file is created, or truncated if it exists, and the header is written.
+     * @param path path of file.
+     * @param metadata metadata, e.g. the source of the table.
+     * @param columns columns.
+     * @throws IOException when the file cannot be created.
+     */
+    public ColumnarWriter(final Path path, final Map<String, String> metadata, final List<Column> columns) throws IOException
+    {
+        Throw.whenNull(path, "path");
+        Throw.whenNull(metadata, "metadata");
+        Throw.whenNull(columns, "columns");
+        this.columns = columns.toArray(new Column[columns.size()]);
+        this.floatBuffer = new float[this.columns.length][];
+        this.intBuffer = new int[this.columns.length][];
+        this.out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)));
+        this.out.writeInt(MAGIC);
+        this.out.writeInt(VERSION);
+        this.out.writeInt(metadata.size());
+        for (Entry<String, String> entry : metadata.entrySet())
+        {
+            this.out.writeUTF(entry.getKey());
+            this.out.writeUTF(entry.getValue());
+        }
+        this.out.writeInt(this.columns.length);
+        for (Column column : this.columns)
+        {
+            this.out.writeUTF(column.name());
+            this.out.writeByte(column.type().ordinal());
+            this.out.writeUTF(column.unit());
+        }
+    }
+
+    /**
+     * Creates a writer for trace data, with a column for each column of the trace. Float columns are in SI units.
+     * @param path path of file.
+     * @param metadata metadata, e.g. the source of the table.
+     * @param header column names.
+     * @param types column types.
+     * @return writer for trace data.
+     * @throws IOException when the file cannot be created.
+     */
+    public static ColumnarWriter forTrace(final Path path, final Map<String, String> metadata, final String[] header,
+            final ColumnType[] types) throws IOException
+    {
+        Throw.when(header.length != types.length, IllegalArgumentException.class,
+                "Number of column names and column types are not equal.");
+        Column[] columns = new Column[header.length];
+        for (int i = 0; i < header.length; i++)
+        {
+            columns[i] = switch (types[i])
+            {
+                case DURATION -> new Column(header[i], Type.FLOAT32, "s");
+                case LENGTH -> new Column(header[i], Type.FLOAT32, "m");
+                case SPEED -> new Column(header[i], Type.FLOAT32, "m/s");
+                case ACCELERATION -> new Column(header[i], Type.FLOAT32, "m/s2");
+                case INTEGER -> new Column(header[i], Type.INT32, "");
+            };
+        }
+        return new ColumnarWriter(path, new LinkedHashMap<>(metadata), Arrays.asList(columns));
+    }
+
+    /**
+     * Sets the value of a float column in the row being appended.
+     * @param column column number.
+     * @param value value.
+     * @return this writer for method chaining.
+     */
+    public ColumnarWriter setFloat(final int column, final float value)
+    {
+        Throw.when(!Type.FLOAT32.equals(this.columns[column].type()), IllegalArgumentException.class,
+                "Column %s is not a float column.", column);
+        if (this.floatBuffer[column] == null)
+        {
+            this.floatBuffer[column] = new float[BLOCK_SIZE];
+        }
+        this.floatBuffer[column][this.buffered] = value;
+        return this;
+    }
+
+    /**
+     * Sets the value of an int column in the row being appended.
+     * @param column column number.
+     * @param value value.
+     * @return this writer for method chaining.
+     */
+    public ColumnarWriter setInt(final int column, final int value)
+    {
+        Throw.when(!Type.INT32.equals(this.columns[column].type()), IllegalArgumentException.class,
+                "Column %s is not an int column.", column);
+        if (this.intBuffer[column] == null)
+        {
+            this.intBuffer[column] = new int[BLOCK_SIZE];
+        }
+        this.intBuffer[column][this.buffered] = value;
+        return this;
+    }
+
+    /**
+     * Completes the row being appended. Once a block is full, it is written.
+     * @throws IOException when the file cannot be written.
+     */
+    public void addRow() throws IOException
+    {
+        this.buffered++;
+        if (this.buffered == BLOCK_SIZE)
+        {
+            flush();
+        }
+    }
+
+    /**
+     * Writes all rows of the trace data, in blocks. Buffered rows are written first.
+     * @param data trace data, with column types equal to the columns of this writer.
+     * @throws IOException when the file cannot be written.
+     */
+    public void write(final TraceData data) throws IOException
+    {
+        Throw.when(data.getNumberOfColumns() != this.columns.length, IllegalArgumentException.class,
+                "Trace data has %s columns, writer has %s columns.", data.getNumberOfColumns(), this.columns.length);
+        flush();
+        Object[] values = new Object[this.columns.length];
+        for (int column = 0; column < this.columns.length; column++)
+        {
+            values[column] = Type.INT32.equals(this.columns[column].type()) ? data.asInteger(column) : data.asFloat(column);
+        }
+        int rows = data.size();
+        for (int from = 0; from < rows; from += BLOCK_SIZE)
+        {
+            int n = Math.min(BLOCK_SIZE, rows - from);
+            this.out.writeInt(n);
+            for (int column = 0; column < this.columns.length; column++)
+            {
+                writeColumn(column, values[column], from, n);
+            }
+        }
+    }
+
+    /**
+     * Writes buffered rows as a block.
+     * @throws IOException when the file cannot be written.
+     */
+    public void flush() throws IOException
+    {
+        if (this.buffered > 0)
+        {
+            this.out.writeInt(this.buffered);
+            for (int column = 0; column < this.columns.length; column++)
+            {
+                writeColumn(column,
+                        Type.INT32.equals(this.columns[column].type()) ? this.intBuffer[column] : this.floatBuffer[column], 0,
+                        this.buffered);
+            }
+            this.buffered = 0;
+        }
+        this.out.flush();
+    }
+
+    /**
+     * Compresses and writes values of a column.
+     * @param column column number.
+     * @param values float[] or int[] values, according to the column type, may be null if no value was set in any buffered
+     *            row, in which case zeros are written.
+     * @param from index of first value.
+     * @param n number of values.
+     * @throws IOException when the file cannot be written.
+     * @throws IllegalArgumentException when the values do not match the column type.
+     */
+    private void writeColumn(final int column, final Object values, final int from, final int n) throws IOException
+    {
+        Type type = this.columns[column].type();
+        if (this.bytes.capacity() < 4 * n)
+        {
+            this.bytes = ByteBuffer.allocate(4 * n).order(ByteOrder.BIG_ENDIAN);
+            this.compressed = new byte[4 * n + 64];
+        }
+        this.bytes.clear();
+        if (values == null)
+        {
+            Arrays.fill(this.bytes.array(), 0, 4 * n, (byte) 0);
+        }
+        else if (Type.FLOAT32.equals(type) && values instanceof float[] floats)
+        {
+            this.bytes.asFloatBuffer().put(floats, from, n);
+        }
+        else if (Type.INT32.equals(type) && values instanceof int[] ints)
+        {
+            this.bytes.asIntBuffer().put(ints, from, n);
+        }
+        else
+        {
+            throw new IllegalArgumentException("Values of type " + values.getClass().getSimpleName() + " do not match type "
+                    + type + " of column " + this.columns[column].name() + ".");
+        }
+        this.deflater.reset();
+        this.deflater.setInput(this.bytes.array(), 0, 4 * n);
+        this.deflater.finish();
+        int length = 0;
+        while (!this.deflater.finished())
+        {
+            if (length == this.compressed.length)
+            {
+                this.compressed = Arrays.copyOf(this.compressed, 2 * this.compressed.length);
+            }
+            length += this.deflater.deflate(this.compressed, length, this.compressed.length - length);
+        }
+        this.out.writeInt(length);
+        this.out.write(this.compressed, 0, length);
+    }
+
+    /**
+     * Writes buffered rows, the end of the file, and closes the file.
+     * @throws IOException when the file cannot be written.
+     */
+    @Override
+    public void close() throws IOException
+    {
+        flush();
+        this.out.writeInt(0);
+        this.out.close();
+        this.deflater.end();
+    }
+
+    /**
+     * Column definition.
+     * @param name name.
+     * @param type type.
+     * @param unit unit, empty if not applicable.
+     */
+    public record Column(String name, Type type, String unit)
+    {
+        /**
+         * Constructor.
+         * @param name name.
+         * @param type type.
+         * @param unit unit, empty if not applicable.
+         */
+        public Column
+        {
+            Throw.whenNull(name, "name");
+            Throw.whenNull(type, "type");
+            Throw.whenNull(unit, "unit");
+        }
+    }
+
+    /**
+     * Column type, the ordinal is the type byte in the file.
+     */
+    public enum Type
+    {
+        /** 32-bit float. */
+        FLOAT32,
+
+        /** 32-bit int. */
+        INT32;
+    }
+
+}
@@ -0,0 +1,337 @@
+package org.opentrafficsim.fosim.export;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.function.IntConsumer;
+
+import org.djunits.value.vdouble.scalar.Duration;
+import org.djunits.value.vfloat.scalar.FloatAcceleration;
+import org.djunits.value.vfloat.scalar.FloatDuration;
+import org.djunits.value.vfloat.scalar.FloatLength;
+import org.djunits.value.vfloat.scalar.FloatSpeed;
+import org.djutils.data.Column;
+import org.djutils.data.Row;
+import org.djutils.event.Event;
+import org.djutils.event.EventListener;
+import org.djutils.exceptions.Throw;
+import org.opentrafficsim.base.logger.Logger;
+import org.opentrafficsim.core.network.Link;
+import org.opentrafficsim.core.object.Detector;
+import org.opentrafficsim.fosim.DetectorPeriodClock;
+import org.opentrafficsim.fosim.FosDetector;
+import org.opentrafficsim.fosim.export.ColumnarWriter.Type;
+import org.opentrafficsim.fosim.parser.FosParser;
+import org.opentrafficsim.fosim.sim0mq.OtsTransceiver;
+import org.opentrafficsim.fosim.sim0mq.trace.ConflictCollector;
+import org.opentrafficsim.fosim.sim0mq.trace.OdTravelTimeListener;
+import org.opentrafficsim.fosim.sim0mq.trace.PassingTraces;
+import org.opentrafficsim.fosim.sim0mq.trace.Trace;
+import org.opentrafficsim.fosim.sim0mq.trace.TraceCollector;
+import org.opentrafficsim.fosim.sim0mq.trace.TraceData;
+import org.opentrafficsim.fosim.sim0mq.trace.TraceFilter;
+import org.opentrafficsim.fosim.sim0mq.trace.VehicleSampleStore;
+import org.opentrafficsim.kpi.sampling.SamplerData;
+import org.opentrafficsim.road.network.RoadNetwork;
+import org.opentrafficsim.road.network.lane.CrossSectionLink;
+import org.opentrafficsim.road.network.lane.Lane;
+import org.opentrafficsim.road.network.sampling.GtuDataRoad;
+import org.opentrafficsim.road.network.sampling.RoadSampler;
+
+import nl.tudelft.simulation.dsol.experiment.Replication;
+
+/**
+ * Exports all traces, detector periods and sampler trajectories of a simulation to compressed columnar files in a directory,
+ * one file per table, as written by {@link ColumnarWriter}. Trace data is collected as in a FOSIM coupling, and is written to
+ * file at a fixed interval after which it is discarded from memory. Detector periods are written as each period is completed.
+ * Trajectories are written at the end of the replication, when all files are closed.
+ * <p>
+ * Copyright (c) 2023-2024 Delft University of Technology, PO Box 5, 2600 AA, Delft, the Netherlands. All rights reserved. <br>
+ * BSD-style license. See <a href="https://opentrafficsim.org/docs/license.html">OpenTrafficSim License</a>.
+ * </p>
+ * @author <a href="https://github.com/wjschakel">Wouter Schakel</a>
+ */
+public class SimulationExport implements EventListener
+{
+
+    /** File extension. */
+    public static final String EXTENSION = ".fosc";
+
+    /** Interval at which trace data is written. */
+    private static final Duration FLUSH_INTERVAL = Duration.ofSI(60.0);
+
+    /** Network. */
+    private final RoadNetwork network;
+
+    /** Parser. */
+    private final FosParser parser;
+
+    /** Sampler of trajectories. */
+    private final RoadSampler sampler;
+
+    /** Directory of files. */
+    private final Path directory;
+
+    /** Metadata of all files. */
+    private final Map<String, String> metadata = new LinkedHashMap<>();
+
+    /** Trace data per trace. */
+    private final Map<Trace, TraceData> traceData = new EnumMap<>(Trace.class);
+
+    /** Writer per trace. */
+    private final Map<Trace, ColumnarWriter> traceWriters = new EnumMap<>(Trace.class);
+
+    /** Detectors. */
+    private final List<FosDetector> detectors = new ArrayList<>();
+
+    /** Sequence number of the first passing not yet exported. */
+    private long passingSequence = 0L;
+
+    /** Writer of detector periods, null if there are no detectors. */
+    private ColumnarWriter detectorWriter;
+
+    /** Listener to completed periods. */
+    private final IntConsumer periodListener = this::writePeriod;
+
+    /** Collector of conflicts, of which open conflicts are written at the end. */
+    private final ConflictCollector conflictCollector;
+
+    /**
+     * Constructor. Files are created and trace data is collected from the current simulation time.
+     * @param network network.
+     * @param parser parser of the network.
+     * @param sampler sampler of trajectories, may be null for no trajectories.
+     * @param directory directory of files, which is created if it does not exist.
+     * @param vehiclesTraceStep step in vehicles trace, and between evaluations of conflicts.
+     * @throws IOException when a file cannot be created.
+     */
+    public SimulationExport(final RoadNetwork network, final FosParser parser, final RoadSampler sampler,
+            final Path directory, final Duration vehiclesTraceStep) throws IOException
+    {
+        Throw.whenNull(network, "network");
+        Throw.whenNull(parser, "parser");
+        Throw.whenNull(directory, "directory");
+        this.network = network;
+        this.parser = parser;
+        this.sampler = sampler;
+        this.directory = directory;
+        Files.createDirectories(directory);
+        this.metadata.put("source", "ots-fosim");
+        this.metadata.put("version", OtsTransceiver.VERSION);
+        this.metadata.put("seed", Integer.toString(parser.getSeed()));
+
+        for (Trace trace : Trace.values())
+        {
+            this.traceData.put(trace, new TraceData(trace));
+            this.traceWriters.put(trace, ColumnarWriter.forTrace(directory.resolve(trace.getInfo().id() + EXTENSION),
+                    metadata("trace", trace.getInfo().id()), trace.getInfo().header(), trace.getInfo().columns()));
+        }
+        new TraceCollector(network, parser.getGtuSlots())
+                .setAccelerationChangeData(this.traceData.get(Trace.ACCELERATION_CHANGE))
+                .setLaneChangeData(this.traceData.get(Trace.LANE_CHANGE));
+        new OdTravelTimeListener(network, parser.getGtuTypes(), parser.getOdNameMappings(),
+                this.traceData.get(Trace.OD_TRAVEL_TIME));
+        new VehicleSampleStore(network, parser.getGtuSlots(), parser.getGtuTypes(), parser.getOdNameMappings(),
+                this.traceData.get(Trace.VEHICLES), vehiclesTraceStep);
+        this.conflictCollector = new ConflictCollector(network, parser.getGtuSlots(), this.traceData.get(Trace.CONFLICT),
+                vehiclesTraceStep);
+
+        for (Link link : network.getLinkMap().values())
+        {
+            if (link instanceof CrossSectionLink cLink)
+            {
+                for (Lane lane : cLink.getLanes())
+                {
+                    for (Detector detector : lane.getDetectors())
+                    {
+                        if (detector instanceof FosDetector fosDetector)
+                        {
+                            this.detectors.add(fosDetector);
+                        }
+                    }
+                }
+            }
+        }
+        if (!this.detectors.isEmpty())
+        {
+            this.detectorWriter = new ColumnarWriter(directory.resolve("DetectorPeriods" + EXTENSION),
+                    metadata("table", "DetectorPeriods"),
+                    List.of(new ColumnarWriter.Column("t", Type.FLOAT32, "s"),
+                            new ColumnarWriter.Column("lane", Type.INT32, ""),
+                            new ColumnarWriter.Column("x", Type.FLOAT32, "m"),
+                            new ColumnarWriter.Column("q", Type.FLOAT32, "1/h"),
+                            new ColumnarWriter.Column("v", Type.FLOAT32, "km/h")));
+            getPeriodClock().addListener(this.periodListener);
+        }
+
+        network.getSimulator().scheduleEventRel(FLUSH_INTERVAL, this, "flush", null);
+        network.getSimulator().addListener(this, Replication.END_REPLICATION_EVENT);
+    }
+
+    /**
+     * Returns the metadata of all files with an additional entry.
+     * @param key key.
+     * @param value value.
+     * @return metadata of all files with an additional entry.
+     */
+    private Map<String, String> metadata(final String key, final String value)
+    {
+        Map<String, String> map = new LinkedHashMap<>(this.metadata);
+        map.put(key, value);
+        return map;
+    }
+
+    /**
+     * Returns the clock of detector periods.
+     * @return clock of detector periods.
+     */
+    private DetectorPeriodClock getPeriodClock()
+    {
+        return this.detectors.get(0).getPeriodClock();
+    }
+
+    /**
+     * Writes and discards all trace data, and schedules the next flush.
+     */
+    @SuppressWarnings("unused") // used through scheduling
+    private void flush()
+    {
+        try
+        {
+            writeTraces();
+        }
+        catch (IOException ex)
+        {
+            Logger.ots().error(ex, "Unable to write trace data.");
+        }
+        this.network.getSimulator().scheduleEventRel(FLUSH_INTERVAL, this, "flush", null);
+    }
+
+    /**
+     * Writes and discards all trace data.
+     * @throws IOException when a file cannot be written.
+     */
+    private void writeTraces() throws IOException
+    {
+        if (!this.detectors.isEmpty())
+        {
+            for (FosDetector detector : this.detectors)
+            {
+                PassingTraces.addPassings(detector, this.passingSequence, this.traceData.get(Trace.DETECTION), false,
+                        TraceFilter.ALL, this.parser.getOdNameMappings());
+                PassingTraces.addPassings(detector, this.passingSequence, this.traceData.get(Trace.TRAVEL_TIME), true,
+                        TraceFilter.ALL, this.parser.getOdNameMappings());
+            }
+            this.passingSequence = getPeriodClock().getPassingSequence();
+            for (FosDetector detector : this.detectors)
+            {
+                detector.clearPassingsBefore(this.passingSequence);
+            }
+        }
+        for (Entry<Trace, TraceData> entry : this.traceData.entrySet())
+        {
+            this.traceWriters.get(entry.getKey()).write(entry.getValue());
+            entry.getValue().clear();
+        }
+    }
+
+    /**
+     * Writes the rows of all detectors for a completed period.
+     * @param period index of completed period.
+     */
+    private void writePeriod(final int period)
+    {
+        DetectorPeriodClock clock = getPeriodClock();
+        double duration = (period == 0 ? clock.getFirstPeriod() : clock.getNextPeriods()).si;
+        float t = (float) (period == 0 ? 0.0 : clock.getFirstPeriod().si + (period - 1) * duration);
+        try
+        {
+            for (FosDetector detector : this.detectors)
+            {
+                int count = detector.getCount(period);
+                this.detectorWriter.setFloat(0, t).setInt(1, FosParser.getLaneRowFromId(detector.getLane().getId()))
+                        .setFloat(2, (float) detector.getLocation().x).setFloat(3, (float) (3600.0 * count / duration))
+                        .setFloat(4, (float) (3.6 * count / detector.getSumReciprocalSpeed(period))).addRow();
+            }
+        }
+        catch (IOException ex)
+        {
+            Logger.ots().error(ex, "Unable to write detector periods of period {}.", period);
+        }
+    }
+
+    /**
+     * Writes all sampled trajectories, skipping dummy lanes. Positions are absolute, i.e. including the start of the link.
+     * @throws IOException when the file cannot be written.
+     */
+    @SuppressWarnings("unchecked")
+    private void writeTrajectories() throws IOException
+    {
+        SamplerData<GtuDataRoad> data = this.sampler.getSamplerData();
+        Column<FloatDuration> tColumn = (Column<FloatDuration>) data.getColumn(data.getColumnNumber("t"));
+        Column<String> gtuIdColumn = (Column<String>) data.getColumn(data.getColumnNumber("gtuId"));
+        Column<String> linkColumn = (Column<String>) data.getColumn(data.getColumnNumber("linkId"));
+        Column<String> laneColumn = (Column<String>) data.getColumn(data.getColumnNumber("laneId"));
+        Column<FloatLength> xColumn = (Column<FloatLength>) data.getColumn(data.getColumnNumber("x"));
+        Column<FloatSpeed> vColumn = (Column<FloatSpeed>) data.getColumn(data.getColumnNumber("v"));
+        Column<FloatAcceleration> aColumn = (Column<FloatAcceleration>) data.getColumn(data.getColumnNumber("a"));
+        try (ColumnarWriter writer = new ColumnarWriter(this.directory.resolve("Trajectories" + EXTENSION),
+                metadata("table", "Trajectories"),
+                List.of(new ColumnarWriter.Column("t", Type.FLOAT32, "s"), new ColumnarWriter.Column("id", Type.INT32, ""),
+                        new ColumnarWriter.Column("lane", Type.INT32, ""), new ColumnarWriter.Column("x", Type.FLOAT32, "m"),
+                        new ColumnarWriter.Column("v", Type.FLOAT32, "m/s"),
+                        new ColumnarWriter.Column("a", Type.FLOAT32, "m/s2"))))
+        {
+            Map<String, Double> linkStart = new LinkedHashMap<>();
+            for (Row row : data)
+            {
+                String laneId = row.getValue(laneColumn);
+                if (laneId.startsWith("_"))
+                {
+                    continue;
+                }
+                double x0 = linkStart.computeIfAbsent(row.getValue(linkColumn),
+                        (linkId) -> this.network.getLink(linkId).get().getStartNode().getPoint().x);
+                writer.setFloat(0, row.getValue(tColumn).si).setInt(1, Integer.parseInt(row.getValue(gtuIdColumn)))
+                        .setInt(2, FosParser.getLaneRowFromId(laneId))
+                        .setFloat(3, (float) (x0 + row.getValue(xColumn).si)).setFloat(4, row.getValue(vColumn).si)
+                        .setFloat(5, row.getValue(aColumn).si).addRow();
+            }
+        }
+    }
+
+    @Override
+    public void notify(final Event event)
+    {
+        try
+        {
+            // the collector may not have been notified of the end of the replication yet
+            this.conflictCollector.flush();
+            writeTraces();
+            for (ColumnarWriter writer : this.traceWriters.values())
+            {
+                writer.close();
+            }
+            if (this.detectorWriter != null)
+            {
+                getPeriodClock().removeListener(this.periodListener);
+                this.detectorWriter.close();
+            }
+            if (this.sampler != null)
+            {
+                writeTrajectories();
+            }
+        }
+        catch (IOException ex)
+        {
+            Logger.ots().error(ex, "Unable to complete export in {}.", this.directory);
+        }
+    }
+
+}
@@ -61,7 +61,9 @@ import org.opentrafficsim.core.perception.HistoryManagerDevs;
 import org.opentrafficsim.core.units.distributions.ContinuousDistSpeed;
 import org.opentrafficsim.draw.colorer.Colorer;
 import org.opentrafficsim.draw.gtu.DefaultCarAnimation.GtuData.GtuMarker;
+import org.opentrafficsim.fosim.DetectorPeriodClock;
 import org.opentrafficsim.fosim.FosDetector;
+import org.opentrafficsim.fosim.GtuSlots;
 import org.opentrafficsim.fosim.parameters.ParameterDefinitions;
 import org.opentrafficsim.fosim.parameters.data.ParameterDataDefinition;
 import org.opentrafficsim.fosim.parameters.data.ParameterDataGroup;
@@ -178,6 +180,9 @@ public class FosParser
     /** Network. */
     private RoadNetwork network;
 
+    /** Slots of GTUs in the network. */
+    private GtuSlots gtuSlots;
+
     /** Model. */
     private FosimModel model;
 
@@ -380,6 +385,17 @@ public class FosParser
         return this.network;
     }
 
+    /**
+     * Returns the slots of GTUs in the network after parsing.
+     * @return slots of GTUs in the network.
+     * @throws IllegalStateException when no parsing was yet performed.
+     */
+    public GtuSlots getGtuSlots()
+    {
+        Throw.when(this.gtuSlots == null, IllegalStateException.class, "No fos information was parsed.");
+        return this.gtuSlots;
+    }
+
     /**
      * Returns the model after parsing.
      * @return model.
@@ -721,6 +737,7 @@ public class FosParser
                 gui = false;
             }
             this.network = new RoadNetwork("Ots-Fosim", this.simulator);
+            this.gtuSlots = new GtuSlots(this.network, this.gtuTypes);
             this.model = new FosimModel(this.simulator, this.seed);
             this.model.setNetwork(this.network);
 
@@ -1353,6 +1370,26 @@ public class FosParser
         }
     }
 
+    /**
+     * Returns the lane row from a lane id, which is the number after the underscore in ids of lanes created by the parser.
+     * @param laneId lane id
+     * @return lane row
+     * @throws OtsRuntimeException when the lane id does not contain a row, e.g. of a dummy lane starting with '_'
+     */
+    public static int getLaneRowFromId(final String laneId)
+    {
+        int underscore = laneId.indexOf("_");
+        try
+        {
+            return Integer.parseInt(underscore < 0 ? laneId : laneId.substring(underscore + 1));
+        }
+        catch (NumberFormatException ex)
+        {
+            throw new OtsRuntimeException("Could not find row from lane. Is the GTU mapped to a dummy lane starting with '_'?",
+                    ex);
+        }
+    }
+
     /**
      * Returns the contour based on left and right edge.
      * @param leftEdge left edge, in design line direction.
@@ -1710,8 +1747,10 @@ public class FosParser
         Duration firstAggregation = Duration.ofSI(this.timeStep.si * this.detectorTimes.get(0));
         Duration aggregationTime = this.timeStep.times(this.detectorTimes.get(1));
 
-        Map<String, Duration> prevTime = new LinkedHashMap<>();
-        Map<String, Duration> thisTime = new LinkedHashMap<>();
+        DetectorPeriodClock periodClock = getSetting(ParserSetting.FOS_DETECTORS)
+                ? new DetectorPeriodClock(this.network.getSimulator(), firstAggregation, aggregationTime) : null;
+        GtuSlots.Times prevTime = this.gtuSlots.createTimes();
+        GtuSlots.Times thisTime = this.gtuSlots.createTimes();
         for (int detectorCrossSection = 0; detectorCrossSection < this.detectorPositions.size(); detectorCrossSection++)
         {
             Length position = this.detectorPositions.get(detectorCrossSection);
@@ -1748,8 +1787,8 @@ public class FosParser
                         String id = (this.detectorPositions.size() - detectorCrossSection - 1) + "_" + laneNum;
                         if (getSetting(ParserSetting.FOS_DETECTORS))
                         {
-                            new FosDetector(id, lane, longitudinalPosition, this.network.getSimulator(), prevTime, thisTime,
-                                    firstAggregation, aggregationTime);
+                            new FosDetector(id, lane, longitudinalPosition, this.gtuSlots, prevTime, thisTime,
+                                    periodClock);
                         }
                         else
                         {
@@ -1761,7 +1800,7 @@ public class FosParser
                 }
             }
             prevTime = thisTime;
-            thisTime = new LinkedHashMap<>();
+            thisTime = this.gtuSlots.createTimes();
         }
     }
 
@@ -36,14 +36,30 @@ import org.opentrafficsim.road.network.sampling.LaneDataRoad;
 import org.opentrafficsim.road.network.sampling.RoadSampler;
 
 /**
- * This class sets up a sampler for use in a FOSIM simulation.
+ * This class sets up a sampler for use in a FOSIM simulation. The sampler can be replaced by a new sampler that records from
+ * the current time, such that data of the previous sampler can be released once it is no longer required.
  * @author wjschakel
  */
 public class FosSampler
 {
 
     /** Trajectory sampler. */
-    private final RoadSampler sampler;
+    private RoadSampler sampler;
+
+    /** Extended data types. */
+    private final Set<ExtendedDataType<?, ?, ?, ? super GtuDataRoad>> extendedDataTypes;
+
+    /** Filter data types. */
+    private final Set<FilterDataType<?, ? super GtuDataRoad>> filterDataTypes;
+
+    /** Network. */
+    private final RoadNetwork network;
+
+    /** Sampling frequency. */
+    private final Frequency frequency;
+
+    /** Lane data of all recorded lanes, excluding dummy lanes. */
+    private final List<LaneDataRoad> recordedLanes = new ArrayList<>();
 
     /** Graph paths per lane. */
     private final GraphPath<LaneDataRoad>[] laneGraphPaths;
@@ -65,6 +81,20 @@ public class FosSampler
         this(new LinkedHashSet<>(), new LinkedHashSet<>(), parser, network, frequency);
     }
 
+    /**
+     * Sets up a sampler based on the network, which records until the given time.
+     * @param parser parser
+     * @param network network
+     * @param frequency sampling frequency
+     * @param recordUntil time until which the sampler records
+     * @throws NetworkException if dummy network element cannot be created
+     */
+    public FosSampler(final FosParser parser, final RoadNetwork network, final Frequency frequency,
+            final Duration recordUntil) throws NetworkException
+    {
+        this(new LinkedHashSet<>(), new LinkedHashSet<>(), parser, network, frequency, recordUntil);
+    }
+
     /**
      * Sets up a sampler based on the network.
      * @param extendedDataTypes extended data types
@@ -73,12 +103,33 @@ public class FosSampler
      * @param network network
      * @throws NetworkException if dummy network element cannot be created
      */
-    @SuppressWarnings("unchecked")
     public FosSampler(final Set<ExtendedDataType<?, ?, ?, ? super GtuDataRoad>> extendedDataTypes,
             final Set<FilterDataType<?, ? super GtuDataRoad>> filterDataTypes, final FosParser parser,
             final RoadNetwork network, final Frequency frequency) throws NetworkException
     {
-        Duration endtime = Duration.ZERO.plus(network.getSimulator().getReplication().getEndTime());
+        this(extendedDataTypes, filterDataTypes, parser, network, frequency,
+                Duration.ZERO.plus(network.getSimulator().getReplication().getEndTime()));
+    }
+
+    /**
+     * Sets up a sampler based on the network, which records until the given time.
+     * @param extendedDataTypes extended data types
+     * @param filterDataTypes filter data types
+     * @param parser parser
+     * @param network network
+     * @param frequency sampling frequency
+     * @param recordUntil time until which the sampler records
+     * @throws NetworkException if dummy network element cannot be created
+     */
+    @SuppressWarnings("unchecked")
+    public FosSampler(final Set<ExtendedDataType<?, ?, ?, ? super GtuDataRoad>> extendedDataTypes,
+            final Set<FilterDataType<?, ? super GtuDataRoad>> filterDataTypes, final FosParser parser,
+            final RoadNetwork network, final Frequency frequency, final Duration recordUntil) throws NetworkException
+    {
+        this.extendedDataTypes = extendedDataTypes;
+        this.filterDataTypes = filterDataTypes;
+        this.network = network;
+        this.frequency = frequency;
         this.sampler = new RoadSampler(extendedDataTypes, filterDataTypes, network, frequency);
 
         // determine grid
@@ -111,8 +162,10 @@ public class FosSampler
                 {
                     Lane lane = (Lane) fosLane.getLane();
                     laneData[laneNum][fosLink.sectionIndex] = new LaneDataRoad(lane);
+                    this.recordedLanes.add(laneData[laneNum][fosLink.sectionIndex]);
                     this.sampler.registerSpaceTimeRegion(new SpaceTimeRegion<LaneDataRoad>(
-                            laneData[laneNum][fosLink.sectionIndex], Length.ZERO, lane.getLength(), Duration.ZERO, endtime));
+                            laneData[laneNum][fosLink.sectionIndex], Length.ZERO, lane.getLength(), Duration.ZERO,
+                            recordUntil));
                 }
                 laneNum++;
             }
@@ -173,7 +226,26 @@ public class FosSampler
     }
 
     /**
-     * Get road sampler.
+     * Replaces the sampler by a new sampler that records all lanes from the current time until the given time. The new
+     * sampler uses the same lane data, such that the graph paths remain valid. The previous sampler keeps recording until
+     * the time it was set up to record until.
+     * @param recordUntil time until which the new sampler records
+     * @return new road sampler
+     */
+    public RoadSampler rotate(final Duration recordUntil)
+    {
+        Duration now = this.network.getSimulator().getSimulatorTime();
+        this.sampler = new RoadSampler(this.extendedDataTypes, this.filterDataTypes, this.network, this.frequency);
+        for (LaneDataRoad laneData : this.recordedLanes)
+        {
+            this.sampler.registerSpaceTimeRegion(
+                    new SpaceTimeRegion<LaneDataRoad>(laneData, Length.ZERO, laneData.getLength(), now, recordUntil));
+        }
+        return this.sampler;
+    }
+
+    /**
+     * Get road sampler, which is the latest sampler if the sampler was rotated.
      * @return road sampler
      */
     public RoadSampler getSampler()
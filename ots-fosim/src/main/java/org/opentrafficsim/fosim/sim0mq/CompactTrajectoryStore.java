@@ -0,0 +1,516 @@
+package org.opentrafficsim.fosim.sim0mq;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.djunits.value.vdouble.scalar.Duration;
+import org.djunits.value.vdouble.scalar.Length;
+import org.djutils.exceptions.Throw;
+
+/**
+ * Compact storage of series of trajectory samples (time, position and lane row) in off-heap memory. Samples are quantized to
+ * a configurable time and position precision, and stored in blocks of 128 bytes that are allocated from direct buffers of
+ * 1MB. Each block starts with the absolute quantized values of its first sample and the number of samples in the block,
+ * followed by the differences of each next sample to the previous sample as variable-length integers. With a time precision
+ * of 1ms and a position precision of 1cm, a typical sample takes 5 bytes. Blocks of released series are reused. Quantized
+ * values are stored as int, limiting time to about 24 days at 1ms, and position to about 21000km at 1cm.
+ * <p>
+ * Series are read with a {@code Reader}, which can seek the first sample at or after a given time by a binary search over the
+ * first sample of each block.
+ * <p>
+ * The store backs the {@code TrajectoryCache}, which is a copy of the sampled trajectories. The trajectories of the sampler
+ * itself remain on-heap in OTS, until their sampler data is released by a {@code SamplerRetention}. Speed and acceleration
+ * are not stored, as trajectory queries only return time, position and lane.
+ * <p>
+ * Copyright (c) 2023-2024 Delft University of Technology, PO Box 5, 2600 AA, Delft, the Netherlands. All rights reserved. <br>
+ * BSD-style license. See <a href="https://opentrafficsim.org/docs/license.html">OpenTrafficSim License</a>.
+ * </p>
+ * @author <a href="https://github.com/wjschakel">Wouter Schakel</a>
+ */
+public class CompactTrajectoryStore
+{
+
+    /** Size of a block in bytes. */
+    private static final int BLOCK_SIZE = 128;
+
+    /** Size of the block header: int time, int position, int lane and short count. */
+    private static final int HEADER_SIZE = 14;
+
+    /** Maximum size of an encoded sample: three variable-length ints. */
+    private static final int MAX_SAMPLE_SIZE = 15;
+
+    /** Number of blocks per chunk, such that a chunk is 1MB. */
+    private static final int BLOCKS_PER_CHUNK = 8192;
+
+    /** Time precision [s]. */
+    private final double timePrecision;
+
+    /** Position precision [m]. */
+    private final double positionPrecision;
+
+    /** Chunks of off-heap memory. */
+    private final List<ByteBuffer> chunks = new ArrayList<>();
+
+    /** Number of blocks that were ever allocated. */
+    private int allocatedBlocks = 0;
+
+    /** Blocks that are free for reuse. */
+    private int[] freeBlocks = new int[16];
+
+    /** Number of blocks that are free for reuse. */
+    private int numberOfFreeBlocks = 0;
+
+    /**
+     * Constructor with a time precision of 1ms and a position precision of 1cm.
+     */
+    public CompactTrajectoryStore()
+    {
+        this(Duration.ofSI(0.001), Length.ofSI(0.01));
+    }
+
+    /**
+     * Constructor.
+     * @param timePrecision time precision.
+     * @param positionPrecision position precision.
+     */
+    public CompactTrajectoryStore(final Duration timePrecision, final Length positionPrecision)
+    {
+        Throw.whenNull(timePrecision, "timePrecision");
+        Throw.whenNull(positionPrecision, "positionPrecision");
+        Throw.when(timePrecision.si <= 0.0 || positionPrecision.si <= 0.0, IllegalArgumentException.class,
+                "Precision should be positive.");
+        this.timePrecision = timePrecision.si;
+        this.positionPrecision = positionPrecision.si;
+    }
+
+    /**
+     * Creates a new empty series.
+     * @return new empty series.
+     */
+    public Series createSeries()
+    {
+        return new Series();
+    }
+
+    /**
+     * Appends a sample to a series. Samples should be appended in order of time.
+     * @param series series.
+     * @param t time [s].
+     * @param x position [m].
+     * @param lane lane row.
+     */
+    public void append(final Series series, final double t, final double x, final int lane)
+    {
+        int qt = (int) Math.round(t / this.timePrecision);
+        int qx = (int) Math.round(x / this.positionPrecision);
+        if (series.numberOfBlocks == 0 || series.position + MAX_SAMPLE_SIZE > BLOCK_SIZE)
+        {
+            int block = allocateBlock();
+            ByteBuffer chunk = chunk(block);
+            int offset = offset(block);
+            chunk.putInt(offset, qt);
+            chunk.putInt(offset + 4, qx);
+            chunk.putInt(offset + 8, lane);
+            chunk.putShort(offset + 12, (short) 1);
+            series.addBlock(block, qt);
+            series.position = HEADER_SIZE;
+        }
+        else
+        {
+            int block = series.blocks[series.numberOfBlocks - 1];
+            ByteBuffer chunk = chunk(block);
+            int offset = offset(block);
+            int position = offset + series.position;
+            position = putVarInt(chunk, position, zigZag(qt - series.lastTime));
+            position = putVarInt(chunk, position, zigZag(qx - series.lastPosition));
+            position = putVarInt(chunk, position, zigZag(lane - series.lastLane));
+            series.position = position - offset;
+            chunk.putShort(offset + 12, (short) (chunk.getShort(offset + 12) + 1));
+        }
+        series.lastTime = qt;
+        series.lastPosition = qx;
+        series.lastLane = lane;
+        series.size++;
+    }
+
+    /**
+     * Releases the memory of a series, after which the series is empty.
+     * @param series series.
+     */
+    public void release(final Series series)
+    {
+        for (int i = 0; i < series.numberOfBlocks; i++)
+        {
+            if (this.numberOfFreeBlocks == this.freeBlocks.length)
+            {
+                this.freeBlocks = Arrays.copyOf(this.freeBlocks, 2 * this.freeBlocks.length);
+            }
+            this.freeBlocks[this.numberOfFreeBlocks++] = series.blocks[i];
+        }
+        series.blocks = new int[0];
+        series.blockTime = new int[0];
+        series.numberOfBlocks = 0;
+        series.size = 0;
+    }
+
+    /**
+     * Returns a new reader of series in this store.
+     * @return new reader.
+     */
+    public Reader reader()
+    {
+        return new Reader();
+    }
+
+    /**
+     * Returns the number of bytes of off-heap memory.
+     * @return number of bytes of off-heap memory.
+     */
+    public long getAllocatedBytes()
+    {
+        return (long) this.chunks.size() * BLOCKS_PER_CHUNK * BLOCK_SIZE;
+    }
+
+    /**
+     * Returns the number of bytes in blocks that are in use.
+     * @return number of bytes in blocks that are in use.
+     */
+    public long getUsedBytes()
+    {
+        return (long) (this.allocatedBlocks - this.numberOfFreeBlocks) * BLOCK_SIZE;
+    }
+
+    /**
+     * Takes a free block, or allocates a new block, allocating a new chunk if required.
+     * @return block number.
+     */
+    private int allocateBlock()
+    {
+        if (this.numberOfFreeBlocks > 0)
+        {
+            return this.freeBlocks[--this.numberOfFreeBlocks];
+        }
+        if (this.allocatedBlocks == this.chunks.size() * BLOCKS_PER_CHUNK)
+        {
+            this.chunks.add(ByteBuffer.allocateDirect(BLOCKS_PER_CHUNK * BLOCK_SIZE));
+        }
+        return this.allocatedBlocks++;
+    }
+
+    /**
+     * Returns the chunk of a block.
+     * @param block block number.
+     * @return chunk of the block.
+     */
+    private ByteBuffer chunk(final int block)
+    {
+        return this.chunks.get(block / BLOCKS_PER_CHUNK);
+    }
+
+    /**
+     * Returns the offset of a block in its chunk.
+     * @param block block number.
+     * @return offset of the block in its chunk.
+     */
+    private static int offset(final int block)
+    {
+        return (block % BLOCKS_PER_CHUNK) * BLOCK_SIZE;
+    }
+
+    /**
+     * Encodes a signed value such that small absolute values are small unsigned values.
+     * @param value value.
+     * @return zigzag encoded value.
+     */
+    private static int zigZag(final int value)
+    {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    /**
+     * Decodes a zigzag encoded value.
+     * @param value zigzag encoded value.
+     * @return value.
+     */
+    private static int unZigZag(final int value)
+    {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Writes a value as variable-length int, 7 bits per byte with the highest bit indicating that more bytes follow.
+     * @param buffer buffer.
+     * @param position position to write at.
+     * @param value unsigned value.
+     * @return position after the written bytes.
+     */
+    private static int putVarInt(final ByteBuffer buffer, final int position, final int value)
+    {
+        int p = position;
+        int v = value;
+        while ((v & ~0x7F) != 0)
+        {
+            buffer.put(p++, (byte) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        buffer.put(p++, (byte) v);
+        return p;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "CompactTrajectoryStore [timePrecision=" + this.timePrecision + ", positionPrecision=" + this.positionPrecision
+                + ", allocatedBytes=" + getAllocatedBytes() + ", usedBytes=" + getUsedBytes() + "]";
+    }
+
+    /**
+     * Series of samples. The samples are in off-heap memory, the series only contains the block numbers and the state to
+     * append samples.
+     */
+    public static final class Series
+    {
+        /** Block numbers. */
+        private int[] blocks = new int[0];
+
+        /** Quantized time of the first sample in each block. */
+        private int[] blockTime = new int[0];
+
+        /** Number of blocks. */
+        private int numberOfBlocks = 0;
+
+        /** Number of samples. */
+        private int size = 0;
+
+        /** Write position in the last block. */
+        private int position;
+
+        /** Quantized time of the last sample. */
+        private int lastTime;
+
+        /** Quantized position of the last sample. */
+        private int lastPosition;
+
+        /** Lane row of the last sample. */
+        private int lastLane;
+
+        /**
+         * Constructor.
+         */
+        private Series()
+        {
+            //
+        }
+
+        /**
+         * Adds a block.
+         * @param block block number.
+         * @param time quantized time of the first sample in the block.
+         */
+        private void addBlock(final int block, final int time)
+        {
+            if (this.numberOfBlocks == this.blocks.length)
+            {
+                int length = Math.max(4, 2 * this.blocks.length);
+                this.blocks = Arrays.copyOf(this.blocks, length);
+                this.blockTime = Arrays.copyOf(this.blockTime, length);
+            }
+            this.blocks[this.numberOfBlocks] = block;
+            this.blockTime[this.numberOfBlocks] = time;
+            this.numberOfBlocks++;
+        }
+
+        /**
+         * Returns the number of samples.
+         * @return number of samples.
+         */
+        public int size()
+        {
+            return this.size;
+        }
+    }
+
+    /**
+     * Sequential reader of a series. Usage: {@code reader.seek(series, t); while (reader.next()) { reader.t(); ... }}.
+     */
+    public final class Reader
+    {
+        /** Series. */
+        private Series series;
+
+        /** Index of the current block in the series. */
+        private int blockIndex;
+
+        /** Chunk of the current block. */
+        private ByteBuffer chunk;
+
+        /** Read position in the chunk. */
+        private int position;
+
+        /** Number of samples remaining in the current block. */
+        private int remaining;
+
+        /** Whether the first sample of the current block is still to be returned. */
+        private boolean header;
+
+        /** Whether the current sample is held to be returned by the next call to {@code next()}. */
+        private boolean hold;
+
+        /** Quantized time of the current sample. */
+        private int time;
+
+        /** Quantized position of the current sample. */
+        private int pos;
+
+        /** Lane row of the current sample. */
+        private int lane;
+
+        /**
+         * Constructor.
+         */
+        private Reader()
+        {
+            //
+        }
+
+        /**
+         * Positions the reader before the first sample of the series at or after the given time.
+         * @param s series.
+         * @param t time [s].
+         */
+        public void seek(final Series s, final double t)
+        {
+            this.series = s;
+            this.hold = false;
+            this.remaining = 0;
+            this.blockIndex = s.numberOfBlocks;
+            if (s.numberOfBlocks == 0)
+            {
+                return;
+            }
+            // last block of which the first sample is at or before the time
+            int q = (int) Math.floor(t / CompactTrajectoryStore.this.timePrecision);
+            int lo = 0;
+            int hi = s.numberOfBlocks - 1;
+            while (lo < hi)
+            {
+                int mid = (lo + hi + 1) >>> 1;
+                if (s.blockTime[mid] <= q)
+                {
+                    lo = mid;
+                }
+                else
+                {
+                    hi = mid - 1;
+                }
+            }
+            loadBlock(lo);
+            while (next())
+            {
+                if (t() >= t)
+                {
+                    this.hold = true;
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Loads a block.
+         * @param index index of the block in the series.
+         */
+        private void loadBlock(final int index)
+        {
+            int block = this.series.blocks[index];
+            this.blockIndex = index;
+            this.chunk = chunk(block);
+            int offset = offset(block);
+            this.time = this.chunk.getInt(offset);
+            this.pos = this.chunk.getInt(offset + 4);
+            this.lane = this.chunk.getInt(offset + 8);
+            this.remaining = this.chunk.getShort(offset + 12);
+            this.position = offset + HEADER_SIZE;
+            this.header = true;
+        }
+
+        /**
+         * Moves to the next sample.
+         * @return whether there is a next sample.
+         */
+        public boolean next()
+        {
+            if (this.hold)
+            {
+                this.hold = false;
+                return true;
+            }
+            if (this.remaining == 0)
+            {
+                if (this.blockIndex + 1 >= this.series.numberOfBlocks)
+                {
+                    return false;
+                }
+                loadBlock(this.blockIndex + 1);
+            }
+            this.remaining--;
+            if (this.header)
+            {
+                this.header = false;
+                return true;
+            }
+            this.time += unZigZag(getVarInt());
+            this.pos += unZigZag(getVarInt());
+            this.lane += unZigZag(getVarInt());
+            return true;
+        }
+
+        /**
+         * Reads a variable-length int at the read position.
+         * @return unsigned value.
+         */
+        private int getVarInt()
+        {
+            int value = 0;
+            int shift = 0;
+            byte b;
+            do
+            {
+                b = this.chunk.get(this.position++);
+                value |= (b & 0x7F) << shift;
+                shift += 7;
+            }
+            while (b < 0);
+            return value;
+        }
+
+        /**
+         * Returns the time of the current sample.
+         * @return time of the current sample [s].
+         */
+        public float t()
+        {
+            return (float) (this.time * CompactTrajectoryStore.this.timePrecision);
+        }
+
+        /**
+         * Returns the position of the current sample.
+         * @return position of the current sample [m].
+         */
+        public float x()
+        {
+            return (float) (this.pos * CompactTrajectoryStore.this.positionPrecision);
+        }
+
+        /**
+         * Returns the lane row of the current sample.
+         * @return lane row of the current sample.
+         */
+        public int lane()
+        {
+            return this.lane;
+        }
+    }
+
+}
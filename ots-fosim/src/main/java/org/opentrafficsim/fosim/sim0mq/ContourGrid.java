@@ -0,0 +1,384 @@
+package org.opentrafficsim.fosim.sim0mq;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.djunits.value.vdouble.scalar.Duration;
+import org.djunits.value.vdouble.scalar.Length;
+import org.djutils.exceptions.Throw;
+import org.opentrafficsim.draw.graphs.GraphPath;
+import org.opentrafficsim.draw.graphs.GraphPath.Section;
+import org.opentrafficsim.kpi.interfaces.LaneData;
+import org.opentrafficsim.kpi.sampling.Trajectory;
+
+/**
+ * Contour data of graph paths that is accumulated during simulation. For each graph path, the total distance and total time
+ * traveled (Edie's definitions) are stored on a fixed base grid of cells, from time zero onwards. The grid is fed with new
+ * samples by a {@code TrajectoryIndex}: each interval between consecutive samples of a trajectory is assumed to be traveled
+ * at constant speed, and is split over the cells it crosses. A contour query then only re-bins the base grid to the requested
+ * granularity, at a cost that depends on the number of cells rather than on the number of trajectories. Where a cell of a
+ * query partially overlaps with a base cell, the data of the base cell is distributed uniformly over the base cell, which is
+ * exact for queries of which the cell boundaries are on the base grid. Time cells before a given time can be discarded, e.g.
+ * by a {@code SamplerRetention}, such that the grid remains bounded. Discarded cells contribute no data to queries.
+ * <p>
+ * Copyright (c) 2023-2024 Delft University of Technology, PO Box 5, 2600 AA, Delft, the Netherlands. All rights reserved. <br>
+ * BSD-style license. See <a href="https://opentrafficsim.org/docs/license.html">OpenTrafficSim License</a>.
+ * </p>
+ * @author <a href="https://github.com/wjschakel">Wouter Schakel</a>
+ */
+public class ContourGrid
+{
+
+    /** Default time granularity [s]. */
+    private static final double DEFAULT_DT = 10.0;
+
+    /** Default space granularity [m]. */
+    private static final double DEFAULT_DX = 10.0;
+
+    /** Graph paths, may contain {@code null} values. */
+    private final GraphPath<? extends LaneData<?>>[] paths;
+
+    /** Length per graph path [m]. */
+    private final double[] lengths;
+
+    /** Time granularity [s]. */
+    private final double dt;
+
+    /** Space granularity [m]. */
+    private final double dx;
+
+    /** Total distance per graph path, per time cell, per space cell. */
+    private final List<List<float[]>> distance = new ArrayList<>();
+
+    /** Total time per graph path, per time cell, per space cell. */
+    private final List<List<float[]>> time = new ArrayList<>();
+
+    /** Index of the first time cell that is not discarded, per graph path. */
+    private final int[] firstCell;
+
+    /** Placements of each lane on the graph paths. */
+    private final Map<LaneData<?>, List<Placement>> placements = new LinkedHashMap<>();
+
+    /** Fractions along a sample interval at which it crosses cell boundaries, reused between intervals. */
+    private double[] cuts = new double[16];
+
+    /**
+     * Constructor with default granularity of 10s and 10m.
+     * @param paths graph paths, may contain {@code null} values.
+     */
+    public ContourGrid(final GraphPath<? extends LaneData<?>>[] paths)
+    {
+        this(paths, Duration.ofSI(DEFAULT_DT), Length.ofSI(DEFAULT_DX));
+    }
+
+    /**
+     * Constructor.
+     * @param paths graph paths, may contain {@code null} values.
+     * @param dt time granularity.
+     * @param dx space granularity.
+     */
+    public ContourGrid(final GraphPath<? extends LaneData<?>>[] paths, final Duration dt, final Length dx)
+    {
+        Throw.whenNull(paths, "paths");
+        Throw.whenNull(dt, "dt");
+        Throw.whenNull(dx, "dx");
+        Throw.when(dt.si <= 0.0 || dx.si <= 0.0, IllegalArgumentException.class, "Granularity should be positive.");
+        this.paths = paths.clone();
+        this.lengths = new double[paths.length];
+        this.firstCell = new int[paths.length];
+        this.dt = dt.si;
+        this.dx = dx.si;
+        for (int p = 0; p < paths.length; p++)
+        {
+            this.distance.add(new ArrayList<>());
+            this.time.add(new ArrayList<>());
+            if (paths[p] != null)
+            {
+                this.lengths[p] = paths[p].getTotalLength().si;
+                for (int series = 0; series < paths[p].getNumberOfSeries(); series++)
+                {
+                    for (Section<? extends LaneData<?>> section : paths[p].getSections())
+                    {
+                        LaneData<?> lane = section.getSource(series);
+                        this.placements.computeIfAbsent(lane, (l) -> new ArrayList<>()).add(new Placement(p,
+                                paths[p].getStartDistance(section).si, section.length().si / lane.getLength().si));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the time granularity.
+     * @return time granularity.
+     */
+    public Duration getDt()
+    {
+        return Duration.ofSI(this.dt);
+    }
+
+    /**
+     * Returns the space granularity.
+     * @return space granularity.
+     */
+    public Length getDx()
+    {
+        return Length.ofSI(this.dx);
+    }
+
+    /**
+     * Discards all time cells that end at or before the given time. Intervals that are added later are ignored in discarded
+     * cells.
+     * @param before time at or before which discarded cells end.
+     */
+    public void discardBefore(final Duration before)
+    {
+        Throw.whenNull(before, "before");
+        int first = (int) Math.floor(before.si / this.dt);
+        for (int path = 0; path < this.paths.length; path++)
+        {
+            if (first > this.firstCell[path])
+            {
+                List<float[]> distanceColumns = this.distance.get(path);
+                int n = Math.min(first - this.firstCell[path], distanceColumns.size());
+                distanceColumns.subList(0, n).clear();
+                this.time.get(path).subList(0, n).clear();
+                this.firstCell[path] = first;
+            }
+        }
+    }
+
+    /**
+     * Adds the intervals between new samples of a trajectory, and between the last previous sample and the first new sample.
+     * @param laneData lane of the trajectory.
+     * @param trajectory trajectory.
+     * @param from index of first new sample.
+     * @param to index after last new sample.
+     */
+    void append(final LaneData<?> laneData, final Trajectory<?> trajectory, final int from, final int to)
+    {
+        List<Placement> lanePlacements = this.placements.get(laneData);
+        if (lanePlacements == null)
+        {
+            return;
+        }
+        for (int i = Math.max(1, from); i < to; i++)
+        {
+            addInterval(lanePlacements, trajectory.getT(i - 1), trajectory.getX(i - 1), trajectory.getT(i),
+                    trajectory.getX(i));
+        }
+    }
+
+    /**
+     * Adds a single interval between two samples on a lane.
+     * @param laneData lane of the samples.
+     * @param t0 time of the first sample [s].
+     * @param x0 position of the first sample on the lane [m].
+     * @param t1 time of the second sample [s].
+     * @param x1 position of the second sample on the lane [m].
+     */
+    void append(final LaneData<?> laneData, final double t0, final double x0, final double t1, final double x1)
+    {
+        List<Placement> lanePlacements = this.placements.get(laneData);
+        if (lanePlacements != null)
+        {
+            addInterval(lanePlacements, t0, x0, t1, x1);
+        }
+    }
+
+    /**
+     * Adds an interval between two samples on a lane to each graph path the lane is on.
+     * @param lanePlacements placements of the lane on the graph paths.
+     * @param t0 time of the first sample [s].
+     * @param x0 position of the first sample on the lane [m].
+     * @param t1 time of the second sample [s].
+     * @param x1 position of the second sample on the lane [m].
+     */
+    private void addInterval(final List<Placement> lanePlacements, final double t0, final double x0, final double t1,
+            final double x1)
+    {
+        for (Placement placement : lanePlacements)
+        {
+            addInterval(placement.path(), t0, placement.start() + x0 * placement.scale(), t1,
+                    placement.start() + x1 * placement.scale(), x1 - x0);
+        }
+    }
+
+    /**
+     * Splits a sample interval over the cells it crosses.
+     * @param path index of the graph path.
+     * @param t0 start time [s].
+     * @param p0 start position on the graph path [m].
+     * @param t1 end time [s].
+     * @param p1 end position on the graph path [m].
+     * @param laneDistance distance traveled on the lane, which differs from the distance on the path if the section length
+     *            differs from the lane length [m].
+     */
+    private void addInterval(final int path, final double t0, final double p0, final double t1, final double p1,
+            final double laneDistance)
+    {
+        double duration = t1 - t0;
+        if (duration <= 0.0)
+        {
+            return;
+        }
+        double pMin = Math.min(p0, p1);
+        double pMax = Math.max(p0, p1);
+        int n = (int) (Math.floor(t1 / this.dt) - Math.floor(t0 / this.dt) + Math.floor(pMax / this.dx)
+                - Math.floor(pMin / this.dx)) + 3;
+        if (n > this.cuts.length)
+        {
+            this.cuts = new double[Math.max(n, 2 * this.cuts.length)];
+        }
+        n = 0;
+        this.cuts[n++] = 0.0;
+        for (int k = (int) Math.floor(t0 / this.dt) + 1; k * this.dt < t1; k++)
+        {
+            this.cuts[n++] = (k * this.dt - t0) / duration;
+        }
+        if (pMax > pMin)
+        {
+            for (int k = (int) Math.floor(pMin / this.dx) + 1; k * this.dx < pMax; k++)
+            {
+                this.cuts[n++] = (k * this.dx - p0) / (p1 - p0);
+            }
+            // the end of the path may not be on the grid, the part beyond it is not on the path
+            if (pMin < this.lengths[path] && pMax > this.lengths[path])
+            {
+                this.cuts[n++] = (this.lengths[path] - p0) / (p1 - p0);
+            }
+        }
+        this.cuts[n++] = 1.0;
+        Arrays.sort(this.cuts, 0, n);
+        List<float[]> distanceColumns = this.distance.get(path);
+        List<float[]> timeColumns = this.time.get(path);
+        int first = this.firstCell[path];
+        for (int c = 0; c < n - 1; c++)
+        {
+            double fraction = this.cuts[c + 1] - this.cuts[c];
+            double mid = 0.5 * (this.cuts[c] + this.cuts[c + 1]);
+            double p = p0 + mid * (p1 - p0);
+            if (fraction <= 0.0 || p < 0.0 || p >= this.lengths[path])
+            {
+                continue;
+            }
+            int j = (int) Math.floor((t0 + mid * duration) / this.dt) - first;
+            if (j < 0)
+            {
+                continue;
+            }
+            int i = (int) Math.floor(p / this.dx);
+            while (distanceColumns.size() <= j)
+            {
+                int nSpace = (int) Math.ceil(this.lengths[path] / this.dx);
+                distanceColumns.add(new float[nSpace]);
+                timeColumns.add(new float[nSpace]);
+            }
+            distanceColumns.get(j)[i] += (float) (fraction * laneDistance);
+            timeColumns.get(j)[i] += (float) (fraction * duration);
+        }
+    }
+
+    /**
+     * Returns the contour data of a graph path, re-binned from the base grid. Discarded cells contribute no data.
+     * @param path index of the graph path.
+     * @param startTime start time of contour data.
+     * @param dtContour time granularity of contour data.
+     * @param finishTime finish time of contour data.
+     * @param startPosition start position of contour data.
+     * @param dxContour space granularity of contour data.
+     * @param finishPosition finish position of contour data.
+     * @return contour data, per space cell, per time cell.
+     */
+    public Contour getContour(final int path, final Duration startTime, final Duration dtContour, final Duration finishTime,
+            final Length startPosition, final Length dxContour, final Length finishPosition)
+    {
+        Throw.when(this.paths[path] == null, IllegalArgumentException.class, "There is no graph path %s.", path);
+        double[] timeTicks = ticks(startTime.si, dtContour.si, finishTime.si);
+        double[] spaceTicks = ticks(startPosition.si, dxContour.si, finishPosition.si);
+        float[][] totalDistance = new float[spaceTicks.length - 1][timeTicks.length - 1];
+        float[][] totalTime = new float[spaceTicks.length - 1][timeTicks.length - 1];
+        List<float[]> distanceColumns = this.distance.get(path);
+        List<float[]> timeColumns = this.time.get(path);
+        double length = this.lengths[path];
+        int first = this.firstCell[path];
+        for (int j = 0; j < timeTicks.length - 1; j++)
+        {
+            double t0 = Math.max(timeTicks[j], first * this.dt);
+            double t1 = timeTicks[j + 1];
+            for (int q = (int) Math.floor(t0 / this.dt); q < first + distanceColumns.size() && q * this.dt < t1; q++)
+            {
+                double fTime = (Math.min(t1, (q + 1) * this.dt) - Math.max(t0, q * this.dt)) / this.dt;
+                if (fTime <= 0.0)
+                {
+                    continue;
+                }
+                float[] distanceColumn = distanceColumns.get(q - first);
+                float[] timeColumn = timeColumns.get(q - first);
+                for (int i = 0; i < spaceTicks.length - 1; i++)
+                {
+                    double x0 = Math.max(spaceTicks[i], 0.0);
+                    double x1 = Math.min(spaceTicks[i + 1], length);
+                    for (int p = (int) Math.floor(x0 / this.dx); p < distanceColumn.length && p * this.dx < x1; p++)
+                    {
+                        double cellEnd = Math.min((p + 1) * this.dx, length);
+                        double fSpace = (Math.min(x1, cellEnd) - Math.max(x0, p * this.dx)) / (cellEnd - p * this.dx);
+                        if (fSpace > 0.0)
+                        {
+                            totalDistance[i][j] += (float) (fTime * fSpace * distanceColumn[p]);
+                            totalTime[i][j] += (float) (fTime * fSpace * timeColumn[p]);
+                        }
+                    }
+                }
+            }
+        }
+        return new Contour(totalDistance, totalTime);
+    }
+
+    /**
+     * Returns the ticks of an axis, as {@code ContourDataSource} determines them.
+     * @param min minimum value.
+     * @param granularity granularity.
+     * @param max maximum value.
+     * @return ticks of the axis.
+     */
+    private static double[] ticks(final double min, final double granularity, final double max)
+    {
+        int n = (int) Math.ceil((max - min) / granularity) + 1;
+        double[] ticks = new double[n];
+        for (int i = 0; i < n; i++)
+        {
+            ticks[i] = i == n - 1 ? min + Math.min(i * granularity, max) : min + i * granularity;
+        }
+        return ticks;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "ContourGrid [dt=" + this.dt + ", dx=" + this.dx + ", lanes=" + this.placements.size() + "]";
+    }
+
+    /**
+     * Contour data of a graph path.
+     * @param distance total distance, per space cell, per time cell [m].
+     * @param time total time, per space cell, per time cell [s].
+     */
+    public record Contour(float[][] distance, float[][] time)
+    {
+    }
+
+    /**
+     * Placement of a lane on a graph path.
+     * @param path index of the graph path.
+     * @param start start distance of the section on the graph path [m].
+     * @param scale section length over lane length.
+     */
+    private record Placement(int path, double start, double scale)
+    {
+    }
+
+}
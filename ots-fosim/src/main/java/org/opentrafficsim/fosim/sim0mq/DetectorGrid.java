@@ -0,0 +1,141 @@
+package org.opentrafficsim.fosim.sim0mq;
+
+import java.util.Collection;
+
+import org.djutils.exceptions.Throw;
+import org.opentrafficsim.fosim.FosDetector;
+
+/**
+ * Detectors by cross-section and lane, from which the measurements of all detectors can be obtained in bulk. The id of each
+ * detector is of the form {@code crossSection_lane}. The grid spans all cross-sections and lanes up to the largest of each,
+ * such that there is no detector at some positions in the grid.
+ * <p>
+ * Copyright (c) 2023-2024 Delft University of Technology, PO Box 5, 2600 AA, Delft, the Netherlands. All rights reserved. <br>
+ * BSD-style license. See <a href="https://opentrafficsim.org/docs/license.html">OpenTrafficSim License</a>.
+ * </p>
+ * @author <a href="https://github.com/wjschakel">Wouter Schakel</a>
+ */
+public class DetectorGrid
+{
+
+    /** Detectors by cross-section and lane, {@code null} where no detector exists. */
+    private final FosDetector[][] grid;
+
+    /** Number of lanes. */
+    private final int lanes;
+
+    /**
+     * Constructor.
+     * @param detectors detectors, with ids of the form {@code crossSection_lane}
+     */
+    public DetectorGrid(final Collection<FosDetector> detectors)
+    {
+        Throw.whenNull(detectors, "detectors");
+        int crossSections = 0;
+        int maxLanes = 0;
+        for (FosDetector detector : detectors)
+        {
+            String[] crossSectionAndLane = detector.getId().split("_");
+            crossSections = Math.max(crossSections, Integer.parseInt(crossSectionAndLane[0]) + 1);
+            maxLanes = Math.max(maxLanes, Integer.parseInt(crossSectionAndLane[1]) + 1);
+        }
+        this.grid = new FosDetector[crossSections][maxLanes];
+        this.lanes = maxLanes;
+        for (FosDetector detector : detectors)
+        {
+            String[] crossSectionAndLane = detector.getId().split("_");
+            this.grid[Integer.parseInt(crossSectionAndLane[0])][Integer.parseInt(crossSectionAndLane[1])] = detector;
+        }
+    }
+
+    /**
+     * Returns the number of cross-sections.
+     * @return number of cross-sections
+     */
+    public int getCrossSections()
+    {
+        return this.grid.length;
+    }
+
+    /**
+     * Returns the number of lanes.
+     * @return number of lanes
+     */
+    public int getLanes()
+    {
+        return this.lanes;
+    }
+
+    /**
+     * Returns the detector at the cross-section and lane.
+     * @param crossSection detector cross-section
+     * @param lane lane
+     * @return detector at the cross-section and lane, {@code null} if there is no such detector
+     */
+    public FosDetector getDetector(final int crossSection, final int lane)
+    {
+        if (crossSection < 0 || crossSection >= this.grid.length || lane < 0 || lane >= this.lanes)
+        {
+            return null;
+        }
+        return this.grid[crossSection][lane];
+    }
+
+    /**
+     * Returns all detector measurements of all cross-sections and lanes, in a range of periods. Only completed periods are
+     * returned, hence fewer periods than requested may be returned. The result contains the number of cross-sections, number
+     * of lanes, first period and number of periods, followed by arrays for COUNT, SUM_RECIPROCAL_SPEED, TRAVEL_TIME_COUNT and
+     * SUM_TRAVEL_TIME. The value of cross-section c, lane l and period p is at index (c * lanes + l) * periods + (p - first
+     * period). Values are -1 where there is no detector.
+     * @param fromPeriod first period (inclusive), negative values are treated as 0
+     * @param toPeriod last period (inclusive)
+     * @param completed number of completed periods
+     * @return number of cross-sections, number of lanes, first period, number of periods, and arrays of measurements
+     */
+    public Object[] getMeasurements(final int fromPeriod, final int toPeriod, final int completed)
+    {
+        int from = Math.max(fromPeriod, 0);
+        int periods = Math.max(Math.min(toPeriod + 1, completed) - from, 0);
+        int crossSections = this.grid.length;
+        int n = crossSections * this.lanes * periods;
+        float[] count = new float[n];
+        float[] sumReciprocalSpeed = new float[n];
+        float[] travelTimeCount = new float[n];
+        float[] sumTravelTime = new float[n];
+        int index = 0;
+        for (int crossSection = 0; crossSection < crossSections; crossSection++)
+        {
+            for (int lane = 0; lane < this.lanes; lane++)
+            {
+                FosDetector detector = this.grid[crossSection][lane];
+                for (int period = from; period < from + periods; period++)
+                {
+                    if (detector == null || period > detector.getCurrentPeriod())
+                    {
+                        count[index] = -1.0f;
+                        sumReciprocalSpeed[index] = -1.0f;
+                        travelTimeCount[index] = -1.0f;
+                        sumTravelTime[index] = -1.0f;
+                    }
+                    else
+                    {
+                        count[index] = detector.getCount(period);
+                        sumReciprocalSpeed[index] = (float) detector.getSumReciprocalSpeed(period);
+                        travelTimeCount[index] = detector.getTravelTimeCount(period);
+                        sumTravelTime[index] = (float) detector.getSumTravelTime(period);
+                    }
+                    index++;
+                }
+            }
+        }
+        return new Object[] {crossSections, this.lanes, from, periods, count, sumReciprocalSpeed, travelTimeCount,
+                sumTravelTime};
+    }
+
+    @Override
+    public String toString()
+    {
+        return "DetectorGrid [crossSections=" + this.grid.length + ", lanes=" + this.lanes + "]";
+    }
+
+}
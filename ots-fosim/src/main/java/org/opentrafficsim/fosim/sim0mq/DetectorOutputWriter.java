@@ -0,0 +1,237 @@
+package org.opentrafficsim.fosim.sim0mq;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntConsumer;
+
+import org.djutils.event.Event;
+import org.djutils.event.EventListener;
+import org.djutils.exceptions.Throw;
+import org.opentrafficsim.base.logger.Logger;
+import org.opentrafficsim.core.network.Link;
+import org.opentrafficsim.core.object.Detector;
+import org.opentrafficsim.fosim.DetectorPeriodClock;
+import org.opentrafficsim.fosim.FosDetector;
+import org.opentrafficsim.road.network.RoadNetwork;
+import org.opentrafficsim.road.network.lane.CrossSectionLink;
+import org.opentrafficsim.road.network.lane.Lane;
+
+import nl.tudelft.simulation.dsol.experiment.Replication;
+
+/**
+ * Writes detector output while the simulation runs. The rows of all detectors are appended to file as soon as a detector
+ * period is completed, and the file is forced to the storage device. Hence memory does not grow with the simulation length,
+ * and all completed periods are available if the simulation is terminated. The file is closed at the end of the replication.
+ * Two formats are supported:
+ * <ul>
+ * <li>CSV: a header and rows with columns t (start time, s), lane, x (m), q (/h) and v (km/h).</li>
+ * <li>BINARY: big-endian, an int 'FOSD', an int version (1), an int n for the number of detectors, and for each detector an
+ * int lane and float x (m). Then for each period a float t (start time, s), followed by n floats q (/h) and n floats v
+ * (km/h).</li>
+ * </ul>
+ * <p>
+ * Copyright (c) 2023-2024 Delft University of Technology, PO Box 5, 2600 AA, Delft, the Netherlands. All rights reserved. <br>
+ * BSD-style license. See <a href="https://opentrafficsim.org/docs/license.html">OpenTrafficSim License</a>.
+ * </p>
+ * @author <a href="https://github.com/wjschakel">Wouter Schakel</a>
+ */
+public class DetectorOutputWriter implements EventListener
+{
+
+    /** Magic number at the start of a binary file, 'FOSD'. */
+    private static final int MAGIC = 0x464F5344;
+
+    /** Version of binary format. */
+    private static final int VERSION = 1;
+
+    /** Detectors. */
+    private final List<FosDetector> detectors = new ArrayList<>();
+
+    /** Lane number of each detector. */
+    private final int[] lanes;
+
+    /** Format. */
+    private final Format format;
+
+    /** Clock of detector periods. */
+    private final DetectorPeriodClock periodClock;
+
+    /** File channel. */
+    private final FileChannel channel;
+
+    /** Buffer for a single period in binary format. */
+    private final ByteBuffer buffer;
+
+    /** Listener to completed periods. */
+    private final IntConsumer periodListener = this::writePeriod;
+
+    /**
+     * Constructor. The file is created, or truncated if it exists, and the header is written.
+     * @param network network.
+     * @param path path of output file.
+     * @param format format.
+     * @throws IOException when the file cannot be created.
+     */
+    public DetectorOutputWriter(final RoadNetwork network, final Path path, final Format format) throws IOException
+    {
+        Throw.whenNull(network, "network");
+        Throw.whenNull(path, "path");
+        Throw.whenNull(format, "format");
+        this.format = format;
+        for (Link link : network.getLinkMap().values())
+        {
+            if (link instanceof CrossSectionLink cLink)
+            {
+                for (Lane lane : cLink.getLanes())
+                {
+                    for (Detector detector : lane.getDetectors())
+                    {
+                        if (detector instanceof FosDetector fosDetector)
+                        {
+                            this.detectors.add(fosDetector);
+                        }
+                    }
+                }
+            }
+        }
+        this.lanes = new int[this.detectors.size()];
+        for (int i = 0; i < this.lanes.length; i++)
+        {
+            this.lanes[i] = OtsTransceiver.getLaneRowFromId(this.detectors.get(i).getLane().getId());
+        }
+        this.periodClock = this.detectors.isEmpty() ? null : this.detectors.get(0).getPeriodClock();
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        this.buffer = ByteBuffer.allocateDirect(Math.max(12, 4 + 8 * this.lanes.length))
+                .order(ByteOrder.BIG_ENDIAN);
+        writeHeader();
+        if (this.periodClock != null)
+        {
+            this.periodClock.addListener(this.periodListener);
+        }
+        network.getSimulator().addListener(this, Replication.END_REPLICATION_EVENT);
+    }
+
+    /**
+     * Writes the header.
+     * @throws IOException when the file cannot be written.
+     */
+    private void writeHeader() throws IOException
+    {
+        if (Format.CSV.equals(this.format))
+        {
+            write(ByteBuffer.wrap("t,lane,x,q,v\n".getBytes(StandardCharsets.UTF_8)));
+        }
+        else
+        {
+            this.buffer.clear();
+            this.buffer.putInt(MAGIC).putInt(VERSION).putInt(this.detectors.size());
+            this.buffer.flip();
+            write(this.buffer);
+            ByteBuffer detectorBuffer = ByteBuffer.allocate(8 * this.detectors.size()).order(ByteOrder.BIG_ENDIAN);
+            for (int i = 0; i < this.lanes.length; i++)
+            {
+                detectorBuffer.putInt(this.lanes[i]).putFloat((float) this.detectors.get(i).getLocation().x);
+            }
+            detectorBuffer.flip();
+            write(detectorBuffer);
+        }
+        this.channel.force(false);
+    }
+
+    /**
+     * Writes the rows of all detectors for a completed period.
+     * @param period index of completed period.
+     */
+    private void writePeriod(final int period)
+    {
+        double duration = (period == 0 ? this.periodClock.getFirstPeriod() : this.periodClock.getNextPeriods()).si;
+        double t = period == 0 ? 0.0 : this.periodClock.getFirstPeriod().si + (period - 1) * duration;
+        try
+        {
+            if (Format.CSV.equals(this.format))
+            {
+                StringBuilder rows = new StringBuilder();
+                for (int i = 0; i < this.lanes.length; i++)
+                {
+                    FosDetector detector = this.detectors.get(i);
+                    int count = detector.getCount(period);
+                    rows.append(t).append(',').append(this.lanes[i]).append(',').append(detector.getLocation().x).append(',')
+                            .append(3600.0 * count / duration).append(',')
+                            .append(3.6 * count / detector.getSumReciprocalSpeed(period)).append('\n');
+                }
+                write(ByteBuffer.wrap(rows.toString().getBytes(StandardCharsets.UTF_8)));
+            }
+            else
+            {
+                this.buffer.clear();
+                this.buffer.putFloat((float) t);
+                for (FosDetector detector : this.detectors)
+                {
+                    this.buffer.putFloat((float) (3600.0 * detector.getCount(period) / duration));
+                }
+                for (FosDetector detector : this.detectors)
+                {
+                    this.buffer.putFloat((float) (3.6 * detector.getCount(period) / detector.getSumReciprocalSpeed(period)));
+                }
+                this.buffer.flip();
+                write(this.buffer);
+            }
+            this.channel.force(false);
+        }
+        catch (IOException ex)
+        {
+            Logger.ots().error(ex, "Unable to write detector output of period {}.", period);
+        }
+    }
+
+    /**
+     * Writes all remaining bytes in the buffer to the channel.
+     * @param bytes bytes to write.
+     * @throws IOException when the file cannot be written.
+     */
+    private void write(final ByteBuffer bytes) throws IOException
+    {
+        while (bytes.hasRemaining())
+        {
+            this.channel.write(bytes);
+        }
+    }
+
+    @Override
+    public void notify(final Event event)
+    {
+        if (this.periodClock != null)
+        {
+            this.periodClock.removeListener(this.periodListener);
+        }
+        try
+        {
+            this.channel.close();
+        }
+        catch (IOException ex)
+        {
+            Logger.ots().error(ex, "Unable to close detector output.");
+        }
+    }
+
+    /**
+     * Detector output format.
+     */
+    public enum Format
+    {
+        /** CSV file. */
+        CSV,
+
+        /** Binary columnar file. */
+        BINARY;
+    }
+
+}
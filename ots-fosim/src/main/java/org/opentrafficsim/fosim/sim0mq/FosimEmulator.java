@@ -453,7 +453,7 @@ public class FosimEmulator
                     {
                         length = arr.length;
                     }
-                    if (obj instanceof Integer[] arr)
+                    else if (obj instanceof Integer[] arr)
                     {
                         length = arr.length;
                     }
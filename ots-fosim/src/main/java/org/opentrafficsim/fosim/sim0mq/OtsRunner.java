@@ -17,18 +17,8 @@ import java.util.TimerTask;
 
 import javax.swing.JOptionPane;
 
-import org.djunits.unit.FrequencyUnit;
-import org.djunits.unit.SpeedUnit;
 import org.djunits.value.vdouble.scalar.Duration;
 import org.djunits.value.vdouble.scalar.Frequency;
-import org.djunits.value.vdouble.scalar.Length;
-import org.djunits.value.vdouble.scalar.Speed;
-import org.djutils.data.Column;
-import org.djutils.data.ListTable;
-import org.djutils.data.csv.CsvData;
-import org.djutils.data.serialization.TextSerializationException;
-import org.djutils.event.Event;
-import org.djutils.event.EventListener;
 import org.djutils.io.ResourceResolver;
 import org.opentrafficsim.animation.gtu.colorer.AttentionGtuColorer;
 import org.opentrafficsim.animation.gtu.colorer.IncentiveGtuColorer;
@@ -37,13 +27,11 @@ import org.opentrafficsim.animation.gtu.colorer.TaskSaturationGtuColorer;
 import org.opentrafficsim.base.logger.Logger;
 import org.opentrafficsim.core.dsol.OtsSimulatorInterface;
 import org.opentrafficsim.core.gtu.Gtu;
-import org.opentrafficsim.core.network.Link;
 import org.opentrafficsim.core.network.NetworkException;
-import org.opentrafficsim.core.object.Detector;
 import org.opentrafficsim.draw.colorer.Colorer;
 import org.opentrafficsim.draw.graphs.ContourDataSource;
 import org.opentrafficsim.draw.graphs.TrajectoryPlot;
-import org.opentrafficsim.fosim.FosDetector;
+import org.opentrafficsim.fosim.export.SimulationExport;
 import org.opentrafficsim.fosim.parser.FosParser;
 import org.opentrafficsim.fosim.parser.FosSampler;
 import org.opentrafficsim.fosim.parser.ParserSetting;
@@ -55,8 +43,6 @@ import org.opentrafficsim.kpi.sampling.filter.FilterDataType;
 import org.opentrafficsim.road.gtu.lane.perception.mental.Fuller;
 import org.opentrafficsim.road.gtu.lane.tactical.lmrs.IncentiveSocioSpeed;
 import org.opentrafficsim.road.network.RoadNetwork;
-import org.opentrafficsim.road.network.lane.CrossSectionLink;
-import org.opentrafficsim.road.network.lane.Lane;
 import org.opentrafficsim.road.network.sampling.GtuDataRoad;
 import org.opentrafficsim.swing.graphs.OtsPlotScheduler;
 import org.opentrafficsim.swing.graphs.SwingContourPlot;
@@ -65,7 +51,6 @@ import org.opentrafficsim.swing.graphs.SwingTrajectoryPlot;
 import org.opentrafficsim.swing.gui.Appearance;
 import org.opentrafficsim.swing.gui.OtsSwingApplication;
 
-import nl.tudelft.simulation.dsol.experiment.Replication;
 import nl.tudelft.simulation.dsol.swing.gui.TablePanel;
 
 /**
@@ -85,19 +70,21 @@ public class OtsRunner
      */
     public static void main(final String[] args) throws NetworkException
     {
-        run(ResourceResolver.resolve("OtsRunnerTestFile.fos").asPath().toFile(), true, false, null);
+        run(ResourceResolver.resolve("OtsRunnerTestFile.fos").asPath().toFile(), true, null, null, false, null);
     }
 
     /**
      * Run OTS from FOSIM file.
      * @param file FOSIM (.fos) file
      * @param showGui show the GUI
-     * @param detectorOutput generate detector output
+     * @param detectorOutput format of detector output, {@code null} for no detector output
      * @param seed to override with
+     * @param export export all traces, detector periods and trajectories to compressed columnar files
+     * @param exportStep step of the Vehicles trace and of conflict evaluation in the export, may be null if not exporting
      * @throws NetworkException
      */
-    public static final void run(final File file, final boolean showGui, final boolean detectorOutput, final Integer seed)
-            throws NetworkException
+    public static final void run(final File file, final boolean showGui, final DetectorOutputWriter.Format detectorOutput,
+            final Integer seed, final boolean export, final Duration exportStep) throws NetworkException
     {
         // Read file contents as string
         String fosString;
@@ -147,9 +134,15 @@ public class OtsRunner
         FosSampler fosSampler = new FosSampler(extendedDataTypes, filterDataTypes, parser, network, Frequency.ofSI(2.0));
 
         // Detector output
-        if (detectorOutput)
+        if (detectorOutput != null)
         {
-            prepareDetectorOutput(file, parser, network);
+            prepareDetectorOutput(file, parser, network, detectorOutput);
+        }
+
+        // Export
+        if (export)
+        {
+            prepareExport(file, parser, network, fosSampler, exportStep);
         }
 
         // User interface
@@ -209,73 +202,49 @@ public class OtsRunner
     }
 
     /**
-     * Prepares detector output.
+     * Prepares detector output, which is written to file as each detector period is completed.
      * @param file fos file
-     * @param parser
-     * @param network
+     * @param parser parser
+     * @param network network
+     * @param format format of detector output
      */
-    private static void prepareDetectorOutput(final File file, final FosParser parser, final RoadNetwork network)
+    private static void prepareDetectorOutput(final File file, final FosParser parser, final RoadNetwork network,
+            final DetectorOutputWriter.Format format)
     {
-        network.getSimulator().addListener(new EventListener()
+        int seed = parser.getSeed();
+        String extension = DetectorOutputWriter.Format.CSV.equals(format) ? ".csv" : ".bin";
+        Path path = Paths.get(file.getParent(), file.getName().toLowerCase().replace(".fos", "_" + seed + extension));
+        try
         {
-            @Override
-            public void notify(final Event event)
-            {
-                ListTable table = new ListTable("detectors", "Detector output",
-                        List.of(new Column<>("t", "start time", Duration.class, "s"),
-                                new Column<>("lane", "lane", Integer.class), new Column<>("x", "location", Length.class, "m"),
-                                new Column<>("q", "flow", Frequency.class, "/h"),
-                                new Column<>("v", "speed", Speed.class, "km/h")));
-
-                for (Link link : network.getLinkMap().values())
-                {
-                    if (link instanceof CrossSectionLink cLink)
-                    {
-                        for (Lane lane : cLink.getLanes())
-                        {
-                            for (Detector detector : lane.getDetectors())
-                            {
-                                if (detector instanceof FosDetector fosDetector)
-                                {
-                                    Duration period = parser.getFirstPeriod();
-                                    for (int i = 0; i < fosDetector.getCurrentPeriod(); i++)
-                                    {
-                                        Duration t = parser.getFirstPeriod().times(Math.min(i, 1))
-                                                .plus(parser.getNextPeriods().times(Math.max(i - 1, 0)));
-                                        String id = fosDetector.getLane().getId();
-                                        int underscore = id.indexOf('_');
-                                        int laneNum = Integer.valueOf(id.substring(underscore + 1));
-                                        Length x = Length.ofSI(fosDetector.getLocation().x);
-                                        int count = fosDetector.getCount(i);
-                                        Frequency q = new Frequency(3600.0 * count / period.si, FrequencyUnit.PER_HOUR);
-                                        Speed v = new Speed(3.6 * count / fosDetector.getSumReciprocalSpeed(i),
-                                                SpeedUnit.KM_PER_HOUR);
-                                        table.addRowByColumnIds(Map.of("t", t, "lane", laneNum, "x", x, "q", q, "v", v));
-                                        period = parser.getNextPeriods();
-                                    }
-                                }
-                            }
-                        }
-                    }
-                }
+            new DetectorOutputWriter(network, path, format);
+        }
+        catch (IOException e)
+        {
+            Logger.ots().error("Unable to write output table.");
+        }
+    }
 
-                if (!table.isEmpty())
-                {
-                    int seed = parser.getSeed();
-                    Path csv = Paths.get(file.getParent(), file.getName().toLowerCase().replace(".fos", "_" + seed + ".csv"));
-                    Path meta =
-                            Paths.get(file.getParent(), file.getName().toLowerCase().replace(".fos", "_" + seed + "_meta.csv"));
-                    try
-                    {
-                        CsvData.writeData(csv.toString(), meta.toString(), table);
-                    }
-                    catch (IOException | TextSerializationException e)
-                    {
-                        Logger.ots().error("Unable to write output table.");
-                    }
-                }
-            }
-        }, Replication.END_REPLICATION_EVENT);
+    /**
+     * Prepares export of all traces, detector periods and trajectories to a directory next to the fos file.
+     * @param file fos file
+     * @param parser parser
+     * @param network network
+     * @param fosSampler sampler
+     * @param step step of the Vehicles trace and of conflict evaluation
+     */
+    private static void prepareExport(final File file, final FosParser parser, final RoadNetwork network,
+            final FosSampler fosSampler, final Duration step)
+    {
+        int seed = parser.getSeed();
+        Path directory = Paths.get(file.getParent(), file.getName().toLowerCase().replace(".fos", "_" + seed + "_export"));
+        try
+        {
+            new SimulationExport(network, parser, fosSampler.getSampler(), directory, step);
+        }
+        catch (IOException e)
+        {
+            Logger.ots().error(e, "Unable to create export in {}.", directory);
+        }
     }
 
 }
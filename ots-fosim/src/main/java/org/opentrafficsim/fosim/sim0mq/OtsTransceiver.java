@@ -4,14 +4,16 @@ import java.io.File;
 import java.io.IOException;
 import java.io.StringWriter;
 import java.util.ArrayList;
-import java.util.Comparator;
+import java.util.Arrays;
 import java.util.EnumMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.SortedSet;
-import java.util.TreeSet;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingQueue;
 
 import javax.swing.JFileChooser;
@@ -24,19 +26,14 @@ import org.djunits.value.vdouble.scalar.Length;
 import org.djunits.value.vdouble.scalar.Speed;
 import org.djunits.value.vfloat.matrix.FloatDurationMatrix;
 import org.djunits.value.vfloat.matrix.FloatLengthMatrix;
-import org.djunits.value.vfloat.scalar.FloatDuration;
-import org.djunits.value.vfloat.scalar.FloatLength;
-import org.djunits.value.vfloat.scalar.FloatSpeed;
 import org.djunits.value.vfloat.vector.FloatDurationVector;
 import org.djunits.value.vfloat.vector.FloatLengthVector;
 import org.djutils.cli.CliUtil;
-import org.djutils.data.Column;
-import org.djutils.data.Row;
 import org.djutils.event.Event;
 import org.djutils.event.EventListener;
 import org.djutils.exceptions.Throw;
 import org.djutils.serialization.SerializationException;
-import org.opentrafficsim.base.OtsRuntimeException;
+import org.opentrafficsim.base.logger.Logger;
 import org.opentrafficsim.base.parameters.ParameterException;
 import org.opentrafficsim.core.dsol.OtsAnimator;
 import org.opentrafficsim.core.gtu.Gtu;
@@ -46,9 +43,13 @@ import org.opentrafficsim.core.network.LateralDirectionality;
 import org.opentrafficsim.core.network.Network;
 import org.opentrafficsim.core.network.NetworkException;
 import org.opentrafficsim.draw.graphs.GraphPath;
-import org.opentrafficsim.draw.graphs.GraphUtil;
+import org.opentrafficsim.fosim.AggregationPyramid;
 import org.opentrafficsim.fosim.FosDetector;
-import org.opentrafficsim.fosim.FosDetector.Passing;
+import org.opentrafficsim.fosim.GtuSlots;
+import org.opentrafficsim.fosim.batch.WhatIfFork;
+import org.opentrafficsim.fosim.batch.WhatIfFork.Mutation;
+import org.opentrafficsim.fosim.batch.WhatIfFork.Variant;
+import org.opentrafficsim.fosim.batch.WhatIfFork.VariantResult;
 import org.opentrafficsim.fosim.parameters.DefaultValue;
 import org.opentrafficsim.fosim.parameters.DefaultValueAdapter;
 import org.opentrafficsim.fosim.parameters.Limit;
@@ -59,25 +60,25 @@ import org.opentrafficsim.fosim.parser.FosIncentiveRoute;
 import org.opentrafficsim.fosim.parser.FosParser;
 import org.opentrafficsim.fosim.parser.FosSampler;
 import org.opentrafficsim.fosim.parser.ParserSetting;
+import org.opentrafficsim.fosim.sim0mq.ContourGrid.Contour;
 import org.opentrafficsim.fosim.sim0mq.StopCriterion.BatchStatus;
 import org.opentrafficsim.fosim.sim0mq.StopCriterion.DetectionType;
-import org.opentrafficsim.fosim.sim0mq.trace.AccelerationChangeListener;
-import org.opentrafficsim.fosim.sim0mq.trace.LaneChangeListener;
+import org.opentrafficsim.fosim.sim0mq.trace.ConflictCollector;
 import org.opentrafficsim.fosim.sim0mq.trace.OdTravelTimeListener;
-import org.opentrafficsim.fosim.sim0mq.trace.StaticVehiclesTraceDataListener;
+import org.opentrafficsim.fosim.sim0mq.trace.PassingTraces;
 import org.opentrafficsim.fosim.sim0mq.trace.Trace;
+import org.opentrafficsim.fosim.sim0mq.trace.TraceCollector;
 import org.opentrafficsim.fosim.sim0mq.trace.TraceData;
+import org.opentrafficsim.fosim.sim0mq.trace.TraceFilter;
+import org.opentrafficsim.fosim.sim0mq.trace.TraceSpill;
+import org.opentrafficsim.fosim.sim0mq.trace.VehicleSampleStore;
 import org.opentrafficsim.fosim.simulator.OtsSimulatorInterfaceStep;
-import org.opentrafficsim.kpi.interfaces.LaneData;
-import org.opentrafficsim.kpi.sampling.Trajectory;
 import org.opentrafficsim.road.gtu.lane.LaneBasedGtu;
 import org.opentrafficsim.road.gtu.lane.tactical.lmrs.Lmrs;
 import org.opentrafficsim.road.gtu.lane.tactical.util.lmrs.LmrsParameters;
 import org.opentrafficsim.road.network.RoadNetwork;
-import org.opentrafficsim.road.network.lane.Lane;
 import org.opentrafficsim.road.network.lane.LanePosition;
 import org.opentrafficsim.road.network.sampling.LaneDataRoad;
-import org.opentrafficsim.road.network.sampling.RoadSampler;
 import org.opentrafficsim.swing.gui.OtsSimulationApplication;
 import org.sim0mq.Sim0MQException;
 import org.sim0mq.message.Sim0MQMessage;
@@ -133,6 +134,23 @@ public class OtsTransceiver
     @Option(names = "--gui", description = "Whether to show GUI", defaultValue = "false")
     private boolean showGui;
 
+    /** Detector aggregation levels. */
+    @Option(names = "--aggregationLevels", description = "Detector aggregation levels as multiples of the detector period, "
+            + "comma separated, each a multiple of the previous", split = ",", defaultValue = "5,15,60")
+    private List<Integer> aggregationLevels;
+
+    /** Memory budget of trace data, beyond which trace data is spilled to disk. */
+    @Option(names = "--traceMemoryBudget", description = "Memory budget of trace data in MB, beyond which trace data is "
+            + "spilled to temporary files", defaultValue = "256")
+    private long traceMemoryBudget;
+
+    /** Horizon of full-resolution trajectories. */
+    @Option(names = "--retentionHorizon", description = "Horizon of full-resolution trajectories in minutes, older "
+            + "trajectories are only retained as downsampled trajectories, and older contour data, trace data and passings are "
+            + "discarded (0 retains all)",
+            defaultValue = "0")
+    private int retentionHorizon;
+
     // -------- OTS-only settings --------
     // To use the transceiver in OTS only mode, use (with possible relevant paths):
     // java.exe -jar OtsTransceiver.jar --otsOnly=true --gui=false --fosFile=network.fos --detectorOutput=true --seed=12
@@ -149,6 +167,15 @@ public class OtsTransceiver
     @Option(names = "--detectorOutput", description = "Write detector output", defaultValue = "false")
     private boolean detectorOutput;
 
+    /** Format of detector output. */
+    @Option(names = "--detectorFormat", description = "Format of detector output: CSV or BINARY", defaultValue = "CSV")
+    private DetectorOutputWriter.Format detectorFormat;
+
+    /** Export-only run. */
+    @Option(names = "--export", description = "Run simulation in OTS from FOSIM file without GUI, and export all traces, "
+            + "detector periods and trajectories to compressed columnar files", defaultValue = "false")
+    private boolean export;
+
     /** Seed. */
     @Option(names = "--seed", description = "Seed to override file seed with")
     private Integer seed;
@@ -159,6 +186,9 @@ public class OtsTransceiver
     /** The network. */
     private RoadNetwork network;
 
+    /** Executor of forked variants, created on the first fork and shut down when the transceiver terminates. */
+    private ExecutorService forkExecutor;
+
     /** Duration of virtual lane change. */
     private final static Duration VIRTUAL_LC_DURATION = Duration.ofSI(3.0);
 
@@ -180,7 +210,7 @@ public class OtsTransceiver
     public static void main(String[] args) throws Exception
     {
         OtsTransceiver otsTransceiver = new OtsTransceiver(args);
-        if (otsTransceiver.otsOnly)
+        if (otsTransceiver.otsOnly || otsTransceiver.export)
         {
             File file;
             if (otsTransceiver.fosFile != null && !otsTransceiver.fosFile.isBlank())
@@ -202,7 +232,9 @@ public class OtsTransceiver
                     return;
                 }
             }
-            OtsRunner.run(file, otsTransceiver.showGui, otsTransceiver.detectorOutput, otsTransceiver.seed);
+            OtsRunner.run(file, otsTransceiver.showGui && !otsTransceiver.export,
+                    otsTransceiver.detectorOutput ? otsTransceiver.detectorFormat : null, otsTransceiver.seed,
+                    otsTransceiver.export, otsTransceiver.step);
         }
         else
         {
@@ -267,19 +299,11 @@ public class OtsTransceiver
      * Returns the lane number.
      * @param laneId lane id
      * @return lane number
+     * @see FosParser#getLaneRowFromId(String)
      */
     public static int getLaneRowFromId(final String laneId)
     {
-        int underscore = laneId.indexOf("_");
-        try
-        {
-            return Integer.parseInt(underscore < 0 ? laneId : laneId.substring(underscore + 1));
-        }
-        catch (NumberFormatException ex)
-        {
-            throw new OtsRuntimeException("Could not find row from lane. Is the GTU mapped to a dummy lane starting with '_'?",
-                    ex);
-        }
+        return FosParser.getLaneRowFromId(laneId);
     }
 
     /**
@@ -321,11 +345,20 @@ public class OtsTransceiver
         /** Detectors. */
         protected Map<String, FosDetector> detectors = new LinkedHashMap<>();
 
+        /** Detectors by cross-section and lane. */
+        private DetectorGrid detectorGrid = new DetectorGrid(List.of());
+
         /** Step number. */
         private int stepNumber = 1;
 
-        /** Trajectory sampler. */
-        private RoadSampler sampler;
+        /** Time index over sampled trajectories. */
+        private TrajectoryIndex trajectoryIndex;
+
+        /** Multi-resolution cache of sampled trajectories. */
+        private TrajectoryCache trajectoryCache;
+
+        /** Contour data accumulated during simulation. */
+        private ContourGrid contourGrid;
 
         /** Target lane of lane changes. */
         private Map<Gtu, Integer> targetLane = new LinkedHashMap<>();
@@ -333,6 +366,9 @@ public class OtsTransceiver
         /** Stop criterion during a batch run. */
         private StopCriterion stopCriterion;
 
+        /** Contents of .fos file of the current simulation, used to fork the simulation. */
+        private String fosString;
+
         /** Graph paths. */
         private GraphPath<LaneDataRoad>[] graphPaths;
 
@@ -348,35 +384,26 @@ public class OtsTransceiver
         /** Step in vehicle trace file. */
         private Duration vehiclesTraceStep = Duration.ofSI(0.5);
 
-        /** Time until which detections data was returned. */
-        private Duration lastDetectionTime;
-
-        /** Time until which travel time data was returned. */
-        private Duration lastTravelTimeTime;
-
-        /** Time until which vehicle data was returned. */
-        private Duration lastVehiclesTime;
+        /** Sequence number of passings from which Detection data was not yet acknowledged. */
+        private long detectionSequence;
 
-        /** Listener to static vehicles trace data. */
-        private StaticVehiclesTraceDataListener staticVehiclesTraceDataListener;
+        /** Sequence number of passings from which TravelTime data was not yet acknowledged. */
+        private long travelTimeSequence;
 
-        /** Time column in sampler data for Vehicles trace data. */
-        private Column<FloatDuration> tColumn;
+        /** Slots of GTUs in the network. */
+        private GtuSlots gtuSlots;
 
-        /** GTU id column in sampler data for Vehicles trace data. */
-        private Column<String> gtuIdColumn;
+        /** Collector of trace data from GTU movements. */
+        private TraceCollector traceCollector;
 
-        /** Link id column in sampler data for Vehicles trace data. */
-        private Column<String> linkColumn;
+        /** Store of vehicle samples for the Vehicles trace, null if not active. */
+        private VehicleSampleStore vehicleSampleStore;
 
-        /** Lane id column in sampler data for Vehicles trace data. */
-        private Column<String> laneColumn;
+        /** Collector of the Conflict trace, null if not active. */
+        private ConflictCollector conflictCollector;
 
-        /** Lane location column in sampler data for Vehicles trace data. */
-        private Column<FloatLength> xColumn;
-
-        /** Speed column in sampler data for Vehicles trace data. */
-        private Column<FloatSpeed> vColumn;
+        /** Memory budget and location of spilled trace data, null if trace data cannot be spilled. */
+        private TraceSpill traceSpill;
 
         /** OD node name mappings (OTS names are the keys, Fosim names the fields). */
         private Map<String, Integer> odNumbers;
@@ -494,6 +521,11 @@ public class OtsTransceiver
                 while (!this.isInterrupted())
                 {
                     Request requestObj = queue.take();
+                    if (requestObj.forkReply() != null)
+                    {
+                        requestObj.reply(OtsTransceiver.this, Worker.this, "FORK_REPLY", requestObj.forkReply());
+                        continue;
+                    }
                     byte[] request = requestObj.request;
 
                     /*
@@ -529,6 +561,30 @@ public class OtsTransceiver
                         // "DETECTOR_REPLY", this.messageId++, value), 0);
                         requestObj.reply(OtsTransceiver.this, Worker.this, "DETECTOR_REPLY", value);
                     }
+                    else if ("DETECTORS_ALL".equals(message.getMessageTypeId()))
+                    {
+                        Object[] payload = getDetectorsAllPayload(message);
+                        // this.responder.send(Sim0MQMessage.encodeUTF8(OtsTransceiver.this.bigEndian,
+                        // OtsTransceiver.this.federation, OtsTransceiver.this.ots, OtsTransceiver.this.fosim,
+                        // "DETECTORS_ALL_REPLY", this.messageId++, payload), 0);
+                        requestObj.reply(OtsTransceiver.this, Worker.this, "DETECTORS_ALL_REPLY", payload);
+                    }
+                    else if ("DETECTOR_RANGE".equals(message.getMessageTypeId()))
+                    {
+                        Object[] payload = getDetectorRangePayload(message);
+                        // this.responder.send(Sim0MQMessage.encodeUTF8(OtsTransceiver.this.bigEndian,
+                        // OtsTransceiver.this.federation, OtsTransceiver.this.ots, OtsTransceiver.this.fosim,
+                        // "DETECTOR_RANGE_REPLY", this.messageId++, payload), 0);
+                        requestObj.reply(OtsTransceiver.this, Worker.this, "DETECTOR_RANGE_REPLY", payload);
+                    }
+                    else if ("VIRTUAL_DETECTOR".equals(message.getMessageTypeId()))
+                    {
+                        Object[] payload = getVirtualDetectorPayload(message);
+                        // this.responder.send(Sim0MQMessage.encodeUTF8(OtsTransceiver.this.bigEndian,
+                        // OtsTransceiver.this.federation, OtsTransceiver.this.ots, OtsTransceiver.this.fosim,
+                        // "VIRTUAL_DETECTOR_REPLY", this.messageId++, payload), 0);
+                        requestObj.reply(OtsTransceiver.this, Worker.this, "VIRTUAL_DETECTOR_REPLY", payload);
+                    }
                     else if ("BATCH".equals(message.getMessageTypeId()))
                     {
                         batch(message);
@@ -562,6 +618,21 @@ public class OtsTransceiver
                         // "CONTOUR_REPLY", this.messageId++, payload), 0);
                         requestObj.reply(OtsTransceiver.this, Worker.this, "CONTOUR_REPLY", payload);
                     }
+                    else if ("FORK".equals(message.getMessageTypeId()))
+                    {
+                        // the reply is queued when all variants are done, and sent by this thread as the socket is not
+                        // thread-safe
+                        CompletableFuture<Object[]> payload = getForkPayload(message);
+                        if (this.reqrep)
+                        {
+                            // a REP socket cannot receive the next request before this one is replied
+                            requestObj.reply(OtsTransceiver.this, Worker.this, "FORK_REPLY", payload.join());
+                        }
+                        else
+                        {
+                            payload.thenAccept((reply) -> queue.add(new Request(requestObj.identity(), null, reply)));
+                        }
+                    }
                     else if ("DISTRIBUTIONS".equals(message.getMessageTypeId()))
                     {
                         String distributions = asJsonString(new DistributionDefinitions(OtsTransceiver.VERSION));
@@ -600,15 +671,19 @@ public class OtsTransceiver
                     }
                     else if ("TRACE_ACTIVE".equals(message.getMessageTypeId()))
                     {
-                        setTraceActive(message);
+                        String exceptionMessage = setTraceActive(message);
                         // this.responder.send(Sim0MQMessage.encodeUTF8(OtsTransceiver.this.bigEndian,
                         // OtsTransceiver.this.federation, OtsTransceiver.this.ots, OtsTransceiver.this.fosim,
                         // "TRACE_ACTIVE_REPLY", this.messageId++, new Object[0]), 0);
-                        requestObj.reply(OtsTransceiver.this, Worker.this, "TRACE_ACTIVE_REPLY");
+                        requestObj.reply(OtsTransceiver.this, Worker.this, "TRACE_ACTIVE_REPLY", exceptionMessage);
                     }
                     else if ("TRACE_VEHICLES_STEP".equals(message.getMessageTypeId()))
                     {
                         this.vehiclesTraceStep = (Duration) message.createObjectArray()[8];
+                        if (this.vehicleSampleStore != null)
+                        {
+                            this.vehicleSampleStore.setVehiclesTraceStep(this.vehiclesTraceStep);
+                        }
                         // this.responder.send(Sim0MQMessage.encodeUTF8(OtsTransceiver.this.bigEndian,
                         // OtsTransceiver.this.federation, OtsTransceiver.this.ots, OtsTransceiver.this.fosim,
                         // "TRACE_VEHICLES_STEP_REPLY", this.messageId++, new Object[0]), 0);
@@ -616,7 +691,18 @@ public class OtsTransceiver
                     }
                     else if ("TRACE_GET".equals(message.getMessageTypeId()))
                     {
-                        Object[] payload = getTracePayload((String) message.createObjectArray()[8]);
+                        Object[] fields = message.createObjectArray();
+                        Object[] payload;
+                        try
+                        {
+                            Long cursor = fields.length > 9 ? getTraceCursor((String) fields[8], fields[9]) : null;
+                            payload = getTracePayload((String) fields[8], cursor);
+                        }
+                        catch (IllegalArgumentException ex)
+                        {
+                            // no rows are returned nor acknowledged, as acknowledging none would resend all rows
+                            payload = new Object[] {fields[8], ex.getMessage()};
+                        }
                         // this.responder.send(Sim0MQMessage.encodeUTF8(OtsTransceiver.this.bigEndian,
                         // OtsTransceiver.this.federation, OtsTransceiver.this.ots, OtsTransceiver.this.fosim,
                         // "TRACE_GET_REPLY", this.messageId++, payload), 0);
@@ -670,6 +756,10 @@ public class OtsTransceiver
             {
                 listener.interrupt();
             }
+            if (OtsTransceiver.this.forkExecutor != null)
+            {
+                OtsTransceiver.this.forkExecutor.shutdownNow();
+            }
             this.responder.close();
             this.context.destroy();
             this.context.close();
@@ -704,40 +794,90 @@ public class OtsTransceiver
         }
 
         /**
-         * Sets trace file active or not.
+         * Sets trace file active or not. When enabled, an optional filter may follow: x from and to (Length), lane from and to
+         * (int), GTU type indices (int[], empty for all types), and time from and to (Duration). When the trace is already
+         * active, only its filter is changed, such that the listeners that collect the data keep using the same data. Note
+         * that the Vehicles and Conflict traces stop sampling once the time window of the filter is over.
          * @param message message
+         * @return possible exception message, empty when ok
          */
-        private void setTraceActive(final Sim0MQMessage message)
+        private String setTraceActive(final Sim0MQMessage message)
         {
             Object[] payload = message.createObjectArray();
             Trace trace = Trace.byId((String) payload[8]);
             boolean enable = (Boolean) payload[9];
             if (enable)
             {
-                this.traceFiles.put(trace, new TraceData(trace.getInfo().header().length));
+                TraceFilter filter = TraceFilter.ALL;
+                if (payload.length > 10)
+                {
+                    if (payload.length < 17)
+                    {
+                        return "Trace filter requires 7 fields, but " + (payload.length - 10) + " were given.";
+                    }
+                    try
+                    {
+                        filter = new TraceFilter((Length) payload[10], (Length) payload[11], (Integer) payload[12],
+                                (Integer) payload[13], (int[]) payload[14], (Duration) payload[15], (Duration) payload[16]);
+                    }
+                    catch (IllegalArgumentException | NullPointerException | ClassCastException ex)
+                    {
+                        return ex.getMessage() == null ? "Invalid trace filter." : ex.getMessage();
+                    }
+                }
+                TraceData data = this.traceFiles.get(trace);
+                if (data != null)
+                {
+                    data.setFilter(filter);
+                }
+                else
+                {
+                    this.traceFiles.put(trace, new TraceData(trace).setSpill(getTraceSpill()).setFilter(filter));
+                }
             }
             else
             {
-                this.traceFiles.remove(trace);
+                TraceData removed = this.traceFiles.remove(trace);
+                if (removed != null)
+                {
+                    removed.clear();
+                }
+            }
+            return "";
+        }
+
+        /**
+         * Returns the spill of trace data, which is created when first needed.
+         * @return spill of trace data, null if it cannot be created
+         */
+        private TraceSpill getTraceSpill()
+        {
+            if (this.traceSpill == null)
+            {
+                try
+                {
+                    this.traceSpill = TraceSpill.inTempDirectory(OtsTransceiver.this.traceMemoryBudget * 1024 * 1024);
+                }
+                catch (IOException ex)
+                {
+                    Logger.ots().warn(ex, "Unable to create directory for trace data, all trace data is kept in memory.");
+                }
             }
+            return this.traceSpill;
         }
 
         /**
          * Sets up active trace file data recording.
          */
-        @SuppressWarnings("unchecked")
         private void setupTraceData()
         {
             this.traceFiles.values().forEach((td) -> td.clear());
-            if (this.traceFiles.containsKey(Trace.ACCELERATION_CHANGE))
+            if (this.traceSpill != null)
             {
-                new AccelerationChangeListener(OtsTransceiver.this.network, this.gtuTypes,
-                        this.traceFiles.get(Trace.ACCELERATION_CHANGE));
-            }
-            if (this.traceFiles.containsKey(Trace.LANE_CHANGE))
-            {
-                new LaneChangeListener(OtsTransceiver.this.network, this.gtuTypes, this.traceFiles.get(Trace.LANE_CHANGE));
+                this.traceSpill.deleteSegments();
             }
+            this.traceCollector.setAccelerationChangeData(this.traceFiles.get(Trace.ACCELERATION_CHANGE))
+                    .setLaneChangeData(this.traceFiles.get(Trace.LANE_CHANGE));
             if (this.traceFiles.containsKey(Trace.OD_TRAVEL_TIME))
             {
                 new OdTravelTimeListener(OtsTransceiver.this.network, this.gtuTypes, this.odNumbers,
@@ -745,133 +885,87 @@ public class OtsTransceiver
             }
             if (this.traceFiles.containsKey(Trace.VEHICLES))
             {
-                this.staticVehiclesTraceDataListener = new StaticVehiclesTraceDataListener(OtsTransceiver.this.network);
-                this.tColumn = (Column<FloatDuration>) this.sampler.getSamplerData()
-                        .getColumn(this.sampler.getSamplerData().getColumnNumber("t"));
-                this.gtuIdColumn = (Column<String>) this.sampler.getSamplerData()
-                        .getColumn(this.sampler.getSamplerData().getColumnNumber("gtuId"));
-                this.linkColumn = (Column<String>) this.sampler.getSamplerData()
-                        .getColumn(this.sampler.getSamplerData().getColumnNumber("linkId"));
-                this.laneColumn = (Column<String>) this.sampler.getSamplerData()
-                        .getColumn(this.sampler.getSamplerData().getColumnNumber("laneId"));
-                this.xColumn = (Column<FloatLength>) this.sampler.getSamplerData()
-                        .getColumn(this.sampler.getSamplerData().getColumnNumber("x"));
-                this.vColumn = (Column<FloatSpeed>) this.sampler.getSamplerData()
-                        .getColumn(this.sampler.getSamplerData().getColumnNumber("v"));
+                this.vehicleSampleStore = new VehicleSampleStore(OtsTransceiver.this.network, this.gtuSlots, this.gtuTypes,
+                        this.odNumbers, this.traceFiles.get(Trace.VEHICLES), this.vehiclesTraceStep);
+            }
+            if (this.traceFiles.containsKey(Trace.CONFLICT))
+            {
+                this.conflictCollector = new ConflictCollector(OtsTransceiver.this.network, this.gtuSlots,
+                        this.traceFiles.get(Trace.CONFLICT), OtsTransceiver.this.step);
             }
-            // Detection, TravelTime and Vehicles are based on detectors and the sampler
+            // Detection and TravelTime are based on detectors
         }
 
         /**
-         * Returns the payload of a trace file.
+         * Returns the cursor of a trace request. This is a sequence number, or for the Vehicles trace also a time (Duration),
+         * in which case the cursor is the sequence number of the first row sampled at or after that time. A time cursor for
+         * another trace, or while the Vehicles trace is not active, is rejected, in which case the reply is the trace id
+         * followed by the exception message.
          * @param traceId id of the trace file
-         * @return
+         * @param field cursor field in the request
+         * @return sequence number of the first row not yet acknowledged
+         * @throws IllegalArgumentException when the cursor is not supported for the trace
          */
-        private Object[] getTracePayload(final String traceId)
+        private Long getTraceCursor(final String traceId, final Object field)
+        {
+            if (field instanceof Duration time)
+            {
+                Throw.when(!Trace.Info.VEHICLES_ID.equals(traceId), IllegalArgumentException.class,
+                        "Time cursor %s is not supported for trace %s.", time, traceId);
+                Throw.when(this.vehicleSampleStore == null, IllegalArgumentException.class,
+                        "Time cursor %s is not supported while trace %s is not active.", time, traceId);
+                return this.vehicleSampleStore.getSequence(time);
+            }
+            Throw.when(!(field instanceof Number), IllegalArgumentException.class,
+                    "Cursor should be a sequence number or a time, but is %s.", field);
+            return ((Number) field).longValue();
+        }
+
+        /**
+         * Returns the payload of a trace file. With a cursor, all rows before the cursor are acknowledged and discarded, and
+         * the payload contains all rows from the cursor, followed by the cursor to acknowledge these rows with in the next
+         * request. Without a cursor, the payload contains all rows that were not yet returned, which are discarded immediately.
+         * @param traceId id of the trace file
+         * @param cursor sequence number of the first row not yet acknowledged, may be null
+         * @return payload of trace file
+         */
+        private Object[] getTracePayload(final String traceId, final Long cursor)
         {
             switch (traceId)
             {
                 case Trace.Info.ACCELERATION_CHANGE_ID:
+                case Trace.Info.CONFLICT_ID:
+                case Trace.Info.LANE_CHANGE_ID:
+                case Trace.Info.OD_TRAVEL_TIME_ID:
+                case Trace.Info.VEHICLES_ID:
                 {
-                    TraceData data = this.traceFiles.get(Trace.ACCELERATION_CHANGE);
-                    Object[] payload = new Object[10];
-                    int index = 0;
-                    payload[++index] = data.asDuration(index - 1); // t
-                    payload[++index] = data.asInteger(index - 1); // fromln
-                    payload[++index] = data.asInteger(index - 1); // tolane
-                    payload[++index] = data.asAcceleration(index - 1); // from a
-                    payload[++index] = data.asAcceleration(index - 1); // to a
-                    payload[++index] = data.asLength(index - 1); // pos
-                    payload[++index] = data.asSpeed(index - 1); // v
-                    payload[++index] = data.asInteger(index - 1); // type
-                    payload[++index] = data.asInteger(index - 1); // id
-                    payload[0] = traceId;
-                    data.clear();
-                    return payload;
+                    TraceData data = this.traceFiles.get(Trace.byId(traceId));
+                    if (cursor == null)
+                    {
+                        Object[] payload = getTracePayload(traceId, data, null);
+                        data.clear();
+                        return payload;
+                    }
+                    data.discardBefore(cursor);
+                    return getTracePayload(traceId, data, data.getSequence());
                 }
                 case Trace.Info.DETECTION_ID:
                 case Trace.Info.TRAVEL_TIME_ID:
                 {
-                    // pos, lane, t, ___ v, type, id, dest
-                    // pos, lane, t, dt, v, type, id, dest
                     boolean addTravelTime = traceId.equals(Trace.Info.TRAVEL_TIME_ID);
-                    Duration time = addTravelTime ? this.lastTravelTimeTime : this.lastDetectionTime;
-                    int numberOfColumns = addTravelTime ? 8 : 7;
-                    TraceData data = new TraceData(numberOfColumns);
-                    this.detectors.values().forEach((d) -> addTraceDataFromPassings(d, time, data, addTravelTime));
-                    Object[] payload = new Object[numberOfColumns + 1];
-                    int index = 0;
-                    payload[++index] = data.asLength(index - 1); // pos
-                    payload[++index] = data.asInteger(index - 1); // lane
-                    payload[++index] = data.asDuration(index - 1); // t
-                    if (addTravelTime)
-                    {
-                        payload[++index] = data.asDuration(index - 1); // dt
-                    }
-                    payload[++index] = data.asSpeed(index - 1); // v
-                    payload[++index] = data.asInteger(index - 1); // type
-                    payload[++index] = data.asInteger(index - 1); // id
-                    payload[++index] = data.asInteger(index - 1); // dest
-                    payload[0] = traceId;
+                    long from = cursor != null ? cursor : (addTravelTime ? this.travelTimeSequence : this.detectionSequence);
+                    long next = getPassingSequence(from);
                     if (addTravelTime)
                     {
-                        this.lastTravelTimeTime = OtsTransceiver.this.simulator.getSimulatorTime();
+                        this.travelTimeSequence = cursor != null ? cursor : next;
                     }
                     else
                     {
-                        this.lastDetectionTime = OtsTransceiver.this.simulator.getSimulatorTime();
+                        this.detectionSequence = cursor != null ? cursor : next;
                     }
-                    return payload;
-                }
-                case Trace.Info.LANE_CHANGE_ID:
-                {
-                    TraceData data = this.traceFiles.get(Trace.LANE_CHANGE);
-                    Object[] payload = new Object[7];
-                    int index = 0;
-                    payload[++index] = data.asDuration(index - 1); // t
-                    payload[++index] = data.asInteger(index - 1); // fromln
-                    payload[++index] = data.asInteger(index - 1); // tolane
-                    payload[++index] = data.asLength(index - 1); // pos
-                    payload[++index] = data.asInteger(index - 1); // type
-                    payload[++index] = data.asInteger(index - 1); // id
-                    payload[0] = traceId;
-                    data.clear();
-                    return payload;
-                }
-                case Trace.Info.OD_TRAVEL_TIME_ID:
-                {
-                    TraceData data = this.traceFiles.get(Trace.OD_TRAVEL_TIME);
-                    Object[] payload = new Object[8];
-                    int index = 0;
-                    payload[++index] = data.asDuration(index - 1); // t
-                    payload[++index] = data.asInteger(index - 1); // origin
-                    payload[++index] = data.asInteger(index - 1); // dest
-                    payload[++index] = data.asDuration(index - 1); // tt
-                    payload[++index] = data.asSpeed(index - 1); // v
-                    payload[++index] = data.asInteger(index - 1); // type
-                    payload[++index] = data.asInteger(index - 1); // id
-                    payload[0] = traceId;
-                    data.clear();
-                    return payload;
-                }
-                case Trace.Info.VEHICLES_ID:
-                {
-                    // t, id, type, origin, dest, lane, pos, v
-                    TraceData data = new TraceData(8);
-                    this.sampler.getSamplerData().forEach((row) -> addVehiclesTraceRow(row, data));
-                    Object[] payload = new Object[9];
-                    int index = 0;
-                    payload[++index] = data.asDuration(index - 1); // t
-                    payload[++index] = data.asInteger(index - 1); // id
-                    payload[++index] = data.asInteger(index - 1); // type
-                    payload[++index] = data.asInteger(index - 1); // origin
-                    payload[++index] = data.asInteger(index - 1); // dest
-                    payload[++index] = data.asInteger(index - 1); // lane
-                    payload[++index] = data.asLength(index - 1); // pos
-                    payload[++index] = data.asSpeed(index - 1); // v
-                    payload[0] = traceId;
-                    this.lastVehiclesTime = OtsTransceiver.this.simulator.getSimulatorTime();
-                    return payload;
+                    TraceData data = new TraceData(Trace.byId(traceId));
+                    this.detectors.values().forEach((d) -> addTraceDataFromPassings(d, from, data, addTravelTime));
+                    return getTracePayload(traceId, data, cursor == null ? null : next);
                 }
                 default:
                 {
@@ -881,62 +975,56 @@ public class OtsTransceiver
         }
 
         /**
-         * Add passing data to trace data for a single detector.
-         * @param detector detector
-         * @param since time since last data was sent
-         * @param data object to add data to
-         * @param addTravelTime whether to include the travel time since last detector data
+         * Returns the payload of trace data, which is the trace id followed by each column as defined by the trace schema, and
+         * the cursor if it is not null.
+         * @param traceId id of the trace file
+         * @param data trace data
+         * @param cursor cursor to acknowledge the rows with, may be null
+         * @return payload of trace data
          */
-        private void addTraceDataFromPassings(final FosDetector detector, final Duration since, final TraceData data,
-                final boolean addTravelTime)
+        private Object[] getTracePayload(final String traceId, final TraceData data, final Long cursor)
         {
-            FloatLength pos = FloatLength.ofSI((float) detector.getLocation().x);
-            Integer lane = getLaneRowFromId(detector.getLane().getId());
-            for (Passing passing : detector.getPassings(since))
+            Object[] payload = new Object[data.getNumberOfColumns() + (cursor == null ? 1 : 2)];
+            payload[0] = traceId;
+            for (int column = 0; column < data.getNumberOfColumns(); column++)
             {
-                if (!addTravelTime || passing.travelTimeSinceDetector() != null)
-                {
-                    Object[] row = new Object[addTravelTime ? 8 : 7];
-                    int index = 0;
-                    row[index++] = pos; // pos
-                    row[index++] = lane; // lane
-                    row[index++] = FloatDuration.ofSI((float) passing.time().si); // t
-                    if (addTravelTime)
-                    {
-                        row[index++] = FloatDuration.ofSI((float) passing.travelTimeSinceDetector().si); // dt
-                    }
-                    row[index++] = FloatSpeed.ofSI((float) passing.speed().si); // v
-                    row[index++] = this.gtuTypes.indexOf(passing.gtuType()); // type
-                    row[index++] = Integer.valueOf(passing.id()); // id
-                    row[index++] = this.odNumbers.get(passing.destination()); // dest
-                    data.append(row);
-                }
+                payload[column + 1] = data.getColumn(column);
             }
-            detector.clearPassingsUpTo(Duration.min(this.lastDetectionTime, this.lastTravelTimeTime));
+            if (cursor != null)
+            {
+                payload[payload.length - 1] = cursor;
+            }
+            return payload;
         }
 
         /**
-         * Adds sampler row to vehicles trace data, if it is at the right vehicles trace step in time.
-         * @param row sampler row
-         * @param data vehicles trace data
+         * Returns the sequence number that the next passing at any detector will have.
+         * @param sequence sequence number to return if there are no detectors
+         * @return sequence number that the next passing at any detector will have
          */
-        private void addVehiclesTraceRow(final Row row, final TraceData data)
+        private long getPassingSequence(final long sequence)
         {
-            FloatDuration t = row.getValue(this.tColumn);
-            if (t.si % this.vehiclesTraceStep.si < 1e-6 && t.si > this.lastVehiclesTime.si - 1e-6)
-            {
-                // t, id, type, origin, dest, lane, pos, v
-                String id = row.getValue(this.gtuIdColumn);
-                int type = this.gtuTypes.indexOf(this.staticVehiclesTraceDataListener.getGtuType(id));
-                int origin = this.odNumbers.get(this.staticVehiclesTraceDataListener.getOrigin(id));
-                int dest = this.odNumbers.get(this.staticVehiclesTraceDataListener.getDestination(id));
-                double x0 =
-                        OtsTransceiver.this.network.getLink(row.getValue(this.linkColumn)).get().getStartNode().getPoint().x;
-                int lane = getLaneRowFromId(row.getValue(this.laneColumn));
-                FloatLength pos = FloatLength.ofSI((float) (x0 + row.getValue(this.xColumn).si));
-                FloatSpeed v = FloatSpeed.ofSI((float) row.getValue(this.vColumn).si);
-                data.append(t, Integer.valueOf(id), type, origin, dest, lane, pos, v);
-            }
+            return this.detectors.isEmpty() ? sequence
+                    : this.detectors.values().iterator().next().getPeriodClock().getPassingSequence();
+        }
+
+        /**
+         * Add passing data to trace data for a single detector, if it is in the region of the filter of the trace. Passings
+         * that are acknowledged by all active detector based traces are cleared.
+         * @param detector detector
+         * @param from sequence number of the first passing to add
+         * @param data object to add data to
+         * @param addTravelTime whether to include the travel time since last detector data
+         */
+        private void addTraceDataFromPassings(final FosDetector detector, final long from, final TraceData data,
+                final boolean addTravelTime)
+        {
+            TraceFilter filter = this.traceFiles.getOrDefault(addTravelTime ? Trace.TRAVEL_TIME : Trace.DETECTION,
+                    data).getFilter();
+            PassingTraces.addPassings(detector, from, data, addTravelTime, filter, this.odNumbers);
+            long detection = this.traceFiles.containsKey(Trace.DETECTION) ? this.detectionSequence : Long.MAX_VALUE;
+            long travelTime = this.traceFiles.containsKey(Trace.TRAVEL_TIME) ? this.travelTimeSequence : Long.MAX_VALUE;
+            detector.clearPassingsBefore(Math.min(detection, travelTime));
         }
 
         /**
@@ -1006,6 +1094,7 @@ public class OtsTransceiver
             {
                 stopSimulation();
                 String fosString = (String) message.createObjectArray()[8];
+                this.fosString = fosString;
                 Map<ParserSetting, Boolean> settings = new LinkedHashMap<>();
                 settings.put(ParserSetting.GUI, OtsTransceiver.this.showGui);
                 settings.put(ParserSetting.FOS_DETECTORS, true);
@@ -1029,12 +1118,14 @@ public class OtsTransceiver
                 {
                     this.detectors.put(detector.getId(), detector);
                 }
+                setupDetectorGrid();
                 this.gtuTypes = parser.getGtuTypes();
-                this.lastDetectionTime = Duration.ofSI(-1.0);
-                this.lastTravelTimeTime = Duration.ofSI(-1.0);
-                this.lastVehiclesTime = Duration.ofSI(-1.0);
+                this.detectionSequence = 0L;
+                this.travelTimeSequence = 0L;
                 this.odNumbers = parser.getOdNameMappings();
                 setupSampler(parser);
+                this.gtuSlots = parser.getGtuSlots();
+                this.traceCollector = new TraceCollector(OtsTransceiver.this.network, this.gtuSlots);
                 setupVirtualLaneChanges();
             }
             catch (Exception ex)
@@ -1051,17 +1142,30 @@ public class OtsTransceiver
          */
         private void setupSampler(final FosParser parser) throws NetworkException
         {
-            FosSampler fosSampler = new FosSampler(parser, network, Frequency.ofSI(1.0 / OtsTransceiver.this.step.si));
-            this.sampler = fosSampler.getSampler();
+            Frequency frequency = Frequency.ofSI(1.0 / OtsTransceiver.this.step.si);
+            Duration horizon = Duration.ofSI(60.0 * OtsTransceiver.this.retentionHorizon);
+            FosSampler fosSampler = OtsTransceiver.this.retentionHorizon > 0
+                    ? new FosSampler(parser, network, frequency, network.getSimulator().getSimulatorTime().plus(horizon))
+                    : new FosSampler(parser, network, frequency);
             this.graphPaths = fosSampler.getLaneGraphPaths();
+            this.trajectoryCache = new TrajectoryCache(OtsTransceiver.this.step);
+            this.contourGrid = new ContourGrid(this.graphPaths);
+            this.trajectoryIndex = new TrajectoryIndex(fosSampler.getSampler().getSamplerData(), OtsTransceiver.this.step)
+                    .setCache(this.trajectoryCache).setContourGrid(this.contourGrid).scheduleUpdates(network.getSimulator());
+            if (OtsTransceiver.this.retentionHorizon > 0)
+            {
+                new SamplerRetention(network.getSimulator(), fosSampler, this.trajectoryIndex, this.trajectoryCache, horizon)
+                        .setContourGrid(this.contourGrid).setTraceData(this.traceFiles.values())
+                        .setDetectors(this.detectors.values());
+            }
         }
 
         /**
-         * Listen to lane change events to maintain 3s bookkeeping.
+         * Listen to lane change events to maintain 3s bookkeeping. Lane change events are forwarded by the trace collector.
          */
         private void setupVirtualLaneChanges()
         {
-            OtsTransceiver.this.network.addListener(this, Network.GTU_ADD_EVENT);
+            this.traceCollector.addLaneChangeListener(this);
             OtsTransceiver.this.network.addListener(this, Network.GTU_REMOVE_EVENT);
         }
 
@@ -1092,19 +1196,100 @@ public class OtsTransceiver
                 this.laneChanges.put(gtuId,
                         new VirtualLaneChange(dir.isLeft(), OtsTransceiver.this.simulator.getSimulatorTime(), overtaking));
             }
-            else if (event.getType().equals(Network.GTU_ADD_EVENT))
+            else if (event.getType().equals(Network.GTU_REMOVE_EVENT))
             {
-                String id = (String) event.getContent();
-                Gtu gtu = OtsTransceiver.this.network.getGTU(id).get();
-                gtu.addListener(this, LaneBasedGtu.LANE_CHANGE_EVENT);
+                this.laneChanges.remove((String) event.getContent());
             }
-            else if (event.getType().equals(Network.GTU_REMOVE_EVENT))
+        }
+
+        /**
+         * Forks the simulation at the current time into variants that are simulated in parallel up to a horizon. The request
+         * contains the horizon, the number of variants, and for each variant the mutation type (BLOCKAGE, DEMAND or
+         * SPEED_LIMIT), from lane, to lane, position and value. The reply contains an exception message (empty if none), the
+         * number of variants including the reference variant without mutation, which is first, and for each variant the flow
+         * and speed per detector cross-section between now and the horizon, and the mean speed and number of vehicles in the
+         * network at the horizon. The variants are simulated by the executor of the transceiver, such that other requests are
+         * handled while the variants are simulated.
+         * @param message message through Sim0MQ
+         * @return future payload with results of all variants, or with an exception message
+         */
+        private CompletableFuture<Object[]> getForkPayload(final Sim0MQMessage message)
+        {
+            CompletableFuture<List<VariantResult>> future;
+            try
+            {
+                Object[] payload = message.createObjectArray();
+                Duration horizon = (Duration) payload[8];
+                int n = (int) payload[9];
+                List<Variant> variants = new ArrayList<>();
+                int index = 10;
+                for (int i = 0; i < n; i++)
+                {
+                    Mutation mutation = Mutation.valueOf((String) payload[index++]);
+                    int fromLane = (int) payload[index++];
+                    int toLane = (int) payload[index++];
+                    Length position = (Length) payload[index++];
+                    double value = ((Number) payload[index++]).doubleValue();
+                    variants.add(new Variant(mutation, fromLane, toLane, position, value));
+                }
+                Throw.when(this.fosString == null, IllegalStateException.class, "Simulation is not setup.");
+                if (OtsTransceiver.this.forkExecutor == null)
+                {
+                    OtsTransceiver.this.forkExecutor =
+                            Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+                }
+                future = new WhatIfFork(this.fosString, OtsTransceiver.this.simulator.getSimulatorTime(), horizon)
+                        .runAsync(variants, OtsTransceiver.this.forkExecutor);
+            }
+            catch (Exception ex)
+            {
+                return CompletableFuture.completedFuture(getForkExceptionPayload(ex));
+            }
+            return future.handle((results, ex) ->
+            {
+                if (ex != null)
+                {
+                    return getForkExceptionPayload(ex instanceof CompletionException && ex.getCause() != null
+                            ? ex.getCause() : ex);
+                }
+                Object[] reply = new Object[2 + 4 * results.size()];
+                reply[0] = "";
+                reply[1] = results.size();
+                int index = 2;
+                for (VariantResult result : results)
+                {
+                    reply[index++] = toFloatArray(result.flow());
+                    reply[index++] = toFloatArray(result.speed());
+                    reply[index++] = (float) result.meanSpeed();
+                    reply[index++] = result.gtuCount();
+                }
+                return reply;
+            });
+        }
+
+        /**
+         * Returns the payload of a fork that failed.
+         * @param ex exception
+         * @return payload of a fork that failed
+         */
+        private Object[] getForkExceptionPayload(final Throwable ex)
+        {
+            return new Object[] {ex.getMessage() == null ? "Exception occured without message." : ex.getMessage(), 0};
+        }
+
+        /**
+         * Returns a float array with the values of a double array.
+         * @param values double values
+         * @return float values
+         */
+        private float[] toFloatArray(final double[] values)
+        {
+            float[] out = new float[values.length];
+            for (int i = 0; i < values.length; i++)
             {
-                String id = (String) event.getContent();
-                Gtu gtu = OtsTransceiver.this.network.getGTU(id).get();
-                gtu.removeListener(this, LaneBasedGtu.LANE_CHANGE_EVENT);
-                this.laneChanges.remove(id);
+                out[i] = (float) values[i];
             }
+            return out;
         }
 
         /**
@@ -1128,8 +1313,7 @@ public class OtsTransceiver
             else
             {
                 String measurement = (String) payload[11];
-                String detectorId = crossSection + "_" + lane;
-                FosDetector detector = this.detectors.get(detectorId);
+                FosDetector detector = this.detectorGrid.getDetector(crossSection, lane);
                 try
                 {
                     switch (measurement)
@@ -1158,6 +1342,134 @@ public class OtsTransceiver
             return value;
         }
 
+        /**
+         * Maps all detectors by cross-section and lane in a grid.
+         */
+        private void setupDetectorGrid()
+        {
+            int[] multiples = OtsTransceiver.this.aggregationLevels.stream().mapToInt((i) -> i).toArray();
+            this.detectors.values().forEach((detector) -> detector.setAggregationLevels(multiples));
+            this.detectorGrid = new DetectorGrid(this.detectors.values());
+        }
+
+        /**
+         * Returns all detector measurements of all cross-sections and lanes, in a range of periods. The request contains the
+         * first and last period (inclusive). Only completed periods are returned, hence fewer periods than requested may be
+         * returned. The reply contains the number of cross-sections, number of lanes, first period and number of periods,
+         * followed by arrays for COUNT, SUM_RECIPROCAL_SPEED, TRAVEL_TIME_COUNT and SUM_TRAVEL_TIME. The value of cross-section
+         * c, lane l and period p is at index (c * lanes + l) * periods + (p - first period). Values are -1 where there is no
+         * detector.
+         * @param message message through Sim0MQ
+         * @return payload with all detector measurements
+         */
+        private Object[] getDetectorsAllPayload(final Sim0MQMessage message)
+        {
+            Object[] payload = message.createObjectArray();
+            double tNow = OtsTransceiver.this.simulator.getSimulatorTime().si;
+            // period p is completed at firstPeriod + p * nextPeriods, also see getDetectorValue()
+            int completed = tNow < this.firstPeriod.si ? 0
+                    : (int) Math.floor((tNow - this.firstPeriod.si) / this.nextPeriods.si + 1e-9) + 1;
+            return this.detectorGrid.getMeasurements((int) payload[8], (int) payload[9], completed);
+        }
+
+        /**
+         * Returns detector measurements of all cross-sections and lanes, aggregated over a number of periods. The request
+         * contains the first period (inclusive), the last period (exclusive) and the number of periods per value. Only whole
+         * values of completed periods are returned, hence fewer values than requested may be returned. Each value is derived
+         * from the coarsest pre-aggregated levels that fit, as configured with {@code --aggregationLevels}. The reply is as
+         * for DETECTORS_ALL, but the first period and number of periods are replaced by the first period and number of values.
+         * @param message message through Sim0MQ
+         * @return payload with aggregated detector measurements
+         */
+        private Object[] getDetectorRangePayload(final Sim0MQMessage message)
+        {
+            Object[] payload = message.createObjectArray();
+            int fromPeriod = Math.max((int) payload[8], 0);
+            int toPeriod = (int) payload[9];
+            int step = Math.max((int) payload[10], 1);
+            int crossSections = this.detectorGrid.getCrossSections();
+            int lanes = this.detectorGrid.getLanes();
+            int completed = 0;
+            for (FosDetector detector : this.detectors.values())
+            {
+                completed = Math.max(completed, detector.getAggregationPyramid().getPeriods());
+            }
+            int values = Math.max((Math.min(toPeriod, completed) - fromPeriod) / step, 0);
+            int n = crossSections * lanes * values;
+            float[][] measures = new float[4][n];
+            int index = 0;
+            for (int crossSection = 0; crossSection < crossSections; crossSection++)
+            {
+                for (int lane = 0; lane < lanes; lane++)
+                {
+                    FosDetector detector = this.detectorGrid.getDetector(crossSection, lane);
+                    for (int value = 0; value < values; value++)
+                    {
+                        int from = fromPeriod + value * step;
+                        for (int measure = 0; measure < measures.length; measure++)
+                        {
+                            measures[measure][index] = detector == null ? -1.0f
+                                    : (float) detector.getAggregationPyramid().getSum(measure, from, from + step);
+                        }
+                        index++;
+                    }
+                }
+            }
+            return new Object[] {crossSections, lanes, fromPeriod, values, measures[AggregationPyramid.COUNT],
+                    measures[AggregationPyramid.SUM_RECIPROCAL_SPEED], measures[AggregationPyramid.TRAVEL_TIME_COUNT],
+                    measures[AggregationPyramid.SUM_TRAVEL_TIME]};
+        }
+
+        /**
+         * Returns measurements of virtual detectors derived from the sampled trajectories. The request contains an array of
+         * positions [m], an array of lane numbers and the aggregation period. The reply contains the number of positions,
+         * lanes and completed aggregation periods, followed by arrays of count and harmonic mean speed [km/h] (-1 if no
+         * vehicles passed), where the value of position i, lane l and period p is at index (i * lanes + l) * periods + p. After
+         * that, for each virtual detector in the same order, the passing times, speeds [km/h] and GTU ids.
+         * @param message message through Sim0MQ
+         * @return payload with measurements of virtual detectors
+         */
+        private Object[] getVirtualDetectorPayload(final Sim0MQMessage message)
+        {
+            Object[] payload = message.createObjectArray();
+            double[] positions = (double[]) payload[8];
+            int[] lanes = (int[]) payload[9];
+            Duration period = (Duration) payload[10];
+            VirtualDetectors virtualDetectors = new VirtualDetectors(this.trajectoryIndex.getSamplerData(), positions, lanes,
+                    period, OtsTransceiver.this.simulator.getSimulatorTime());
+            int periods = virtualDetectors.getPeriods();
+            float[] count = new float[virtualDetectors.size() * periods];
+            float[] speed = new float[virtualDetectors.size() * periods];
+            Object[] reply = new Object[5 + 3 * virtualDetectors.size()];
+            reply[0] = positions.length;
+            reply[1] = lanes.length;
+            reply[2] = periods;
+            reply[3] = count;
+            reply[4] = speed;
+            int index = 0;
+            int k = 5;
+            for (int detector = 0; detector < virtualDetectors.size(); detector++)
+            {
+                for (int p = 0; p < periods; p++)
+                {
+                    count[index] = virtualDetectors.getCount(detector, p);
+                    double v = virtualDetectors.getHarmonicMeanSpeed(detector, p);
+                    speed[index] = Double.isNaN(v) ? -1.0f : (float) (3.6 * v);
+                    index++;
+                }
+                VirtualDetectors.Passings passings = virtualDetectors.getPassings(detector);
+                float[] passingSpeed = new float[passings.speed().length];
+                for (int i = 0; i < passingSpeed.length; i++)
+                {
+                    passingSpeed[i] = 3.6f * passings.speed()[i];
+                }
+                reply[k++] = passings.time();
+                reply[k++] = passingSpeed;
+                reply[k++] = passings.gtuId();
+            }
+            return reply;
+        }
+
         /**
          * Setup stop criterion for batch simulation.
          * @param message message through Sim0MQ
@@ -1170,6 +1482,10 @@ public class OtsTransceiver
             int toLane = (int) payload[10];
             int detector = (int) payload[11];
             Speed threshold = (Speed) payload[12];
+            if (this.stopCriterion != null)
+            {
+                this.stopCriterion.stop();
+            }
             this.stopCriterion =
                     new StopCriterion(OtsTransceiver.this.network, detectionType, fromLane, toLane, detector, threshold);
         }
@@ -1195,6 +1511,7 @@ public class OtsTransceiver
             }
             if (!BatchStatus.RUNNING.equals(out))
             {
+                this.stopCriterion.stop();
                 this.stopCriterion = null;
             }
             return out;
@@ -1214,88 +1531,20 @@ public class OtsTransceiver
             final Length finishPosition = (Length) payloadIn[11];
             final int granularity = (int) payloadIn[12]; // number of time steps
 
-            final float stepSize = (float) (OtsTransceiver.this.step.si * granularity);
-
-            final Map<String, SortedSet<Trajectory<?>>> trajectoriesPerGtu = new LinkedHashMap<>();
-            final Map<Trajectory<?>, Lane> laneOfTrajectory = new LinkedHashMap<>();
-            final Comparator<Trajectory<?>> trajectoryComp = new Comparator<>()
-            {
-                @Override
-                public int compare(final Trajectory<?> o1, final Trajectory<?> o2)
-                {
-                    if (o1.size() == 0)
-                    {
-                        if (o2.size() == 0)
-                        {
-                            return 0;
-                        }
-                        return -1;
-                    }
-                    return Float.compare(o1.getT(0), o2.getT(0));
-                }
-            };
-
-            for (LaneData<?> laneData : this.sampler.getSamplerData().getLanes())
-            {
-                Lane lane = ((LaneDataRoad) laneData).getLane();
-                double x0 = lane.getCenterLine().getFirst().x;
-                double x1 = lane.getCenterLine().getLast().x;
-                Length startPositionLane = Length.ofSI(startPosition.si - x0);
-                Length finishPositionLane = Length.ofSI(finishPosition.si - x0);
-                if (x0 < finishPosition.si && x1 > startPosition.si)
-                {
-                    for (Trajectory<?> trajectory : this.sampler.getSamplerData().getTrajectoryGroup(laneData).get())
-                    {
-                        boolean spatialOverlap = trajectory.getX(0) < finishPositionLane.si
-                                && trajectory.getX(trajectory.size() - 1) > startPositionLane.si;
-                        if (spatialOverlap && GraphUtil.considerTrajectory(trajectory, startTime, finishTime))
-                        {
-                            trajectoriesPerGtu.computeIfAbsent(trajectory.getGtuId(), (id) -> new TreeSet<>(trajectoryComp))
-                                    .add(trajectory);
-                            laneOfTrajectory.put(trajectory, lane);
-                        }
-                    }
-                }
-            }
-
-            float tMin = (float) startTime.si;
-            float tMax = (float) finishTime.si;
-            int n = trajectoriesPerGtu.size();
+            this.trajectoryIndex.update(OtsTransceiver.this.simulator.getSimulatorTime());
+            List<TrajectoryCache.Samples> samples =
+                    this.trajectoryCache.getSamples(startTime, finishTime, startPosition, finishPosition, granularity);
+            int n = samples.size();
             Object[] payload = new Object[1 + 3 * n];
             int k = 0;
             payload[k++] = n;
-            for (SortedSet<Trajectory<?>> trajectories : trajectoriesPerGtu.values())
+            for (TrajectoryCache.Samples gtuSamples : samples)
             {
-                List<Float> time = new ArrayList<>();
-                List<Float> position = new ArrayList<>();
-                List<Integer> lane = new ArrayList<>();
-
-                float tPrev = Float.NEGATIVE_INFINITY;
-                for (Trajectory<?> trajectory : trajectories)
-                {
-                    float[] t = trajectory.getT();
-                    float[] x = trajectory.getX();
-                    Lane laneRoad = laneOfTrajectory.get(trajectory);
-                    int laneNum = getLaneRowFromId(laneRoad.getId());
-                    float laneStart = (float) laneRoad.getCenterLine().getFirst().x;
-                    float laneLength = (float) laneRoad.getLength().si;
-                    float xMin = Math.max(0.0f, (float) startPosition.si - laneStart);
-                    float xMax = Math.min(laneLength, (float) finishPosition.si - laneStart);
-                    for (int i = 0; i < t.length; i++)
-                    {
-                        if (x[i] >= xMin && x[i] < xMax && t[i] >= tMin && t[i] < tMax && t[i] >= tPrev + stepSize - 0.001)
-                        {
-                            time.add(t[i]);
-                            position.add(laneStart + x[i]);
-                            lane.add(laneNum);
-                            tPrev = t[i];
-                        }
-                    }
-                }
-
-                payload[k++] = new FloatDurationVector(time);
-                payload[k++] = new FloatLengthVector(position);
-                payload[k++] = lane.toArray(new Integer[lane.size()]);
+                Integer[] lane = new Integer[gtuSamples.lane().length];
+                Arrays.setAll(lane, (i) -> gtuSamples.lane()[i]);
+                payload[k++] = new FloatDurationVector(gtuSamples.t());
+                payload[k++] = new FloatLengthVector(gtuSamples.x());
+                payload[k++] = lane;
             }
 
             return payload;
@@ -1325,6 +1574,7 @@ public class OtsTransceiver
                 }
             }
 
+            this.trajectoryIndex.update(OtsTransceiver.this.simulator.getSimulatorTime());
             Object[] payloadOut = new Object[1 + 2 * lanes.size()];
             int[] laneNums = lanes.stream().mapToInt(i -> i).toArray();
             payloadOut[0] = laneNums;
@@ -1333,11 +1583,11 @@ public class OtsTransceiver
             {
                 if (this.graphPaths[i] != null)
                 {
-                    GraphPath<LaneDataRoad> graphPath = this.graphPaths[i];
-                    FosContourDataSource dataSource = new FosContourDataSource(this.sampler.getSamplerData(), graphPath);
-                    dataSource.update(startTime, dt, finishTime, startPosition, dx, finishPosition);
-                    payloadOut[1 + index * 2] = new FloatLengthMatrix(dataSource.getTotalDistance());
-                    payloadOut[2 + index * 2] = new FloatDurationMatrix(dataSource.getTotalTime());
+                    // the index update has forwarded all new samples to the grid, only re-binning remains
+                    Contour contour = this.contourGrid.getContour(i, startTime, dt, finishTime, startPosition, dx,
+                            finishPosition);
+                    payloadOut[1 + index * 2] = new FloatLengthMatrix(contour.distance());
+                    payloadOut[2 + index * 2] = new FloatDurationMatrix(contour.time());
                     index++;
                 }
             }
@@ -1361,14 +1611,28 @@ public class OtsTransceiver
             this.nextPeriods = null;
             this.detectors.clear();
             this.stepNumber = 1;
-            this.sampler = null;
+            this.trajectoryIndex = null;
+            this.trajectoryCache = null;
+            this.contourGrid = null;
             this.targetLane.clear();
             this.graphPaths = null;
             this.laneChanges.clear();
-            this.lastDetectionTime = null;
-            this.lastTravelTimeTime = null;
-            this.lastVehiclesTime = null;
-            this.staticVehiclesTraceDataListener = null;
+            this.detectionSequence = 0L;
+            this.travelTimeSequence = 0L;
+            this.gtuSlots = null;
+            this.traceCollector = null;
+            this.vehicleSampleStore = null;
+            if (this.conflictCollector != null)
+            {
+                // conflicts that are still open are written, such that they can be obtained after the simulation is stopped
+                this.conflictCollector.flush();
+                this.conflictCollector = null;
+            }
+            if (this.stopCriterion != null)
+            {
+                this.stopCriterion.stop();
+                this.stopCriterion = null;
+            }
         }
 
         /**
@@ -1440,13 +1704,26 @@ public class OtsTransceiver
         }
 
         /**
-         * Record of a queued request.
+         * Record of a queued request, or of the reply of a fork that is done.
+         * @param identity identity of the requester
+         * @param request request, null for the reply of a fork
+         * @param forkReply payload of the reply of a fork, null for a request
          */
-        private record Request(byte[] identity, byte[] request)
+        private record Request(byte[] identity, byte[] request, Object[] forkReply)
         {
             /** Empty payload. */
             private static Object[] EMPTY = new Object[0];
 
+            /**
+             * Constructor of a received request.
+             * @param identity identity of the requester
+             * @param request request
+             */
+            Request(final byte[] identity, final byte[] request)
+            {
+                this(identity, request, null);
+            }
+
             /**
              * Send reply without payload.
              * @param transceiver transceiver
@@ -0,0 +1,205 @@
+package org.opentrafficsim.fosim.sim0mq;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.djunits.value.vdouble.scalar.Duration;
+import org.djutils.exceptions.Throw;
+import org.opentrafficsim.core.dsol.OtsSimulatorInterface;
+import org.opentrafficsim.fosim.FosDetector;
+import org.opentrafficsim.fosim.parser.FosSampler;
+import org.opentrafficsim.fosim.sim0mq.trace.TraceData;
+import org.opentrafficsim.kpi.sampling.SamplerData;
+import org.opentrafficsim.road.network.sampling.RoadSampler;
+
+/**
+ * Retention policy of sampled trajectories with a rolling horizon. The sampler is rotated every horizon: a new sampler records
+ * from the current time, while the sampler of the previous horizon is retained at full resolution. The sampler before that
+ * is released, and the fine levels of the trajectory cache are released for GTUs that left the network. Full-resolution
+ * trajectories are thus retained for at least one horizon, and at most two, while coarse trajectory queries remain available.
+ * The cells of a {@code ContourGrid}, if set, are discarded along with the sampler data, such that contour queries are
+ * available over the same window as full-resolution trajectories. Likewise, rows of trace data and passings of detectors, if
+ * set, that were added before the start of the oldest retained sampler are discarded, also if they were not read. The first
+ * sampler should record until one horizon after the current time.
+ * <p>
+ * Copyright (c) 2023-2024 Delft University of Technology, PO Box 5, 2600 AA, Delft, the Netherlands. All rights reserved. <br>
+ * BSD-style license. See <a href="https://opentrafficsim.org/docs/license.html">OpenTrafficSim License</a>.
+ * </p>
+ * @author <a href="https://github.com/wjschakel">Wouter Schakel</a>
+ */
+public class SamplerRetention
+{
+
+    /** Finest level of the trajectory cache that is retained for compacted trajectories. */
+    private static final int COMPACTED_LEVEL = 3;
+
+    /** Simulator. */
+    private final OtsSimulatorInterface simulator;
+
+    /** Sampler. */
+    private final FosSampler fosSampler;
+
+    /** Index over sampled trajectories. */
+    private final TrajectoryIndex index;
+
+    /** Multi-resolution cache of sampled trajectories. */
+    private final TrajectoryCache cache;
+
+    /** Horizon. */
+    private final Duration horizon;
+
+    /** Contour grid of which cells are discarded along with sampler data, may be null. */
+    private ContourGrid contourGrid;
+
+    /** Trace data of which rows are discarded along with sampler data. */
+    private Collection<TraceData> traceData = List.of();
+
+    /** Detectors of which passings are discarded along with sampler data. */
+    private Collection<FosDetector> detectors = List.of();
+
+    /** Retained generations of sampler data, oldest first. */
+    private final List<Generation> generations = new ArrayList<>();
+
+    /**
+     * Constructor. The first rotation is scheduled one horizon after the current time.
+     * @param simulator simulator
+     * @param fosSampler sampler, of which the current sampler records until one horizon after the current time
+     * @param index index over sampled trajectories, containing the sampler data of the current sampler
+     * @param cache multi-resolution cache of sampled trajectories
+     * @param horizon horizon
+     */
+    public SamplerRetention(final OtsSimulatorInterface simulator, final FosSampler fosSampler, final TrajectoryIndex index,
+            final TrajectoryCache cache, final Duration horizon)
+    {
+        Throw.whenNull(simulator, "simulator");
+        Throw.whenNull(fosSampler, "fosSampler");
+        Throw.whenNull(index, "index");
+        Throw.whenNull(cache, "cache");
+        Throw.whenNull(horizon, "horizon");
+        Throw.when(horizon.si <= 0.0, IllegalArgumentException.class, "Horizon should be positive.");
+        this.simulator = simulator;
+        this.fosSampler = fosSampler;
+        this.index = index;
+        this.cache = cache;
+        this.horizon = horizon;
+        Duration now = simulator.getSimulatorTime();
+        // rows and passings before the first sampler are never discarded
+        this.generations.add(new Generation(fosSampler.getSampler().getSamplerData(), now, now.plus(horizon), Map.of(), 0L));
+        simulator.scheduleEventAbs(now.plus(horizon), this, "rotate", null);
+    }
+
+    /**
+     * Returns the horizon.
+     * @return horizon
+     */
+    public Duration getHorizon()
+    {
+        return this.horizon;
+    }
+
+    /**
+     * Sets the contour grid of which cells are discarded along with sampler data.
+     * @param contourGrid contour grid, may be null
+     * @return this retention for method chaining
+     */
+    public SamplerRetention setContourGrid(final ContourGrid contourGrid)
+    {
+        this.contourGrid = contourGrid;
+        return this;
+    }
+
+    /**
+     * Sets the trace data of which rows are discarded along with sampler data. This may be a live view on trace data that is
+     * activated and deactivated during simulation. Trace data that is activated during a horizon is first trimmed at the
+     * rotation after the next.
+     * @param traceData trace data
+     * @return this retention for method chaining
+     */
+    public SamplerRetention setTraceData(final Collection<TraceData> traceData)
+    {
+        Throw.whenNull(traceData, "traceData");
+        this.traceData = traceData;
+        return this;
+    }
+
+    /**
+     * Sets the detectors of which passings are discarded along with sampler data. The detectors should share a period clock.
+     * @param detectors detectors
+     * @return this retention for method chaining
+     */
+    public SamplerRetention setDetectors(final Collection<FosDetector> detectors)
+    {
+        Throw.whenNull(detectors, "detectors");
+        this.detectors = detectors;
+        return this;
+    }
+
+    /**
+     * Starts a new sampler, releases sampler data beyond the retention horizon, and schedules the next rotation.
+     */
+    @SuppressWarnings("unused") // used through scheduling
+    private void rotate()
+    {
+        Duration now = this.simulator.getSimulatorTime();
+        this.index.update(now);
+        Duration until = now.plus(this.horizon);
+        RoadSampler sampler = this.fosSampler.rotate(until);
+        this.index.addSamplerData(sampler.getSamplerData());
+        Map<TraceData, Long> traceSequences = new IdentityHashMap<>();
+        for (TraceData data : this.traceData)
+        {
+            traceSequences.put(data, data.getSequence());
+        }
+        long passingSequence =
+                this.detectors.isEmpty() ? 0L : this.detectors.iterator().next().getPeriodClock().getPassingSequence();
+        this.generations.add(new Generation(sampler.getSamplerData(), now, until, traceSequences, passingSequence));
+        while (this.generations.size() > 2)
+        {
+            Generation oldest = this.generations.remove(0);
+            this.index.removeSamplerData(oldest.samplerData());
+            this.cache.compact(oldest.end(), COMPACTED_LEVEL);
+            if (this.contourGrid != null)
+            {
+                this.contourGrid.discardBefore(oldest.end());
+            }
+            Generation retained = this.generations.get(0);
+            for (TraceData data : this.traceData)
+            {
+                Long sequence = retained.traceSequences().get(data);
+                if (sequence != null)
+                {
+                    data.discardBefore(sequence);
+                }
+            }
+            for (FosDetector detector : this.detectors)
+            {
+                detector.clearPassingsBefore(retained.passingSequence());
+            }
+        }
+        this.simulator.scheduleEventAbs(until, this, "rotate", null);
+    }
+
+    @Override
+    public String toString()
+    {
+        return "SamplerRetention [horizon=" + this.horizon + ", generations=" + this.generations.size() + "]";
+    }
+
+    /**
+     * Sampler data of a single sampler, the time window it records, and the sequence numbers of trace data and passings at
+     * the start of recording.
+     * @param samplerData sampler data
+     * @param start start of recording
+     * @param end end of recording
+     * @param traceSequences sequence number of the next row per trace data at the start of recording
+     * @param passingSequence sequence number of the next passing at the start of recording
+     */
+    private record Generation(SamplerData<?> samplerData, Duration start, Duration end, Map<TraceData, Long> traceSequences,
+            long passingSequence)
+    {
+    }
+
+}
@@ -4,9 +4,11 @@ import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.IntConsumer;
 
 import org.djunits.value.vdouble.scalar.Duration;
 import org.djunits.value.vdouble.scalar.Speed;
+import org.opentrafficsim.fosim.DetectorPeriodClock;
 import org.opentrafficsim.fosim.FosDetector;
 import org.opentrafficsim.road.network.RoadNetwork;
 
@@ -32,8 +34,14 @@ public class StopCriterion
     /** Detectors to check. */
     private final Map<Integer, Set<FosDetector>> detectors = new LinkedHashMap<>();
 
-    /** Previous period index. */
-    private int prevPeriod = -1;
+    /** Clock of detector periods, {@code null} if there are no detectors or the criterion is stopped. */
+    private DetectorPeriodClock periodClock;
+
+    /** Listener to completed periods. */
+    private final IntConsumer periodListener = this::periodCompleted;
+
+    /** Status after the last completed period, until it is returned. */
+    private BatchStatus status = BatchStatus.RUNNING;
 
     /** Initial period when speed dropped below threshold. */
     private int initialTriggerPeriod = Integer.MAX_VALUE;
@@ -68,6 +76,24 @@ public class StopCriterion
                 this.detectors.computeIfAbsent(detNum, (dn) -> new LinkedHashSet<>()).add(det);
             }
         }
+        if (!this.detectors.isEmpty())
+        {
+            this.periodClock = this.detectors.values().iterator().next().iterator().next().getPeriodClock();
+            this.periodClock.addListener(this.periodListener);
+        }
+    }
+
+    /**
+     * Stops evaluating the criterion by removing it from the detector period clock. This should be called when the criterion
+     * is no longer used, as the clock is shared by all detectors of the network.
+     */
+    public void stop()
+    {
+        if (this.periodClock != null)
+        {
+            this.periodClock.removeListener(this.periodListener);
+            this.periodClock = null;
+        }
     }
 
     /**
@@ -94,6 +120,8 @@ public class StopCriterion
      * </ul>
      * </li>
      * </ul>
+     * The criterion is evaluated when a detector period is completed. This method returns the status of that evaluation
+     * once, and {@code RUNNING} on later calls until the next period is completed.
      * @return whether the simulation can stop as the stop criterion has been reached.
      */
     public BatchStatus canStop()
@@ -102,15 +130,32 @@ public class StopCriterion
         {
             return BatchStatus.STOPPED; // there are no detectors...
         }
+        BatchStatus out = this.status;
+        this.status = BatchStatus.RUNNING;
+        return out;
+    }
 
-        // check whether the next period has been reached
-        int period = this.detectors.values().iterator().next().iterator().next().getCurrentPeriod() - 1;
-        if (period <= this.prevPeriod)
+    /**
+     * Evaluates the criterion when a detector period has been completed.
+     * @param period index of completed period.
+     */
+    private void periodCompleted(final int period)
+    {
+        // a trigger that was not returned yet is kept
+        BatchStatus periodStatus = evaluate(period);
+        if (!BatchStatus.TRIGGERED.equals(this.status))
         {
-            return BatchStatus.RUNNING;
+            this.status = periodStatus;
         }
-        this.prevPeriod = period;
+    }
 
+    /**
+     * Evaluates the criterion for a completed detector period.
+     * @param period index of completed period.
+     * @return status after the completed period.
+     */
+    private BatchStatus evaluate(final int period)
+    {
         // for method Fosim one additional period needs to have been simulated
         if (this.stopType.equals(DetectionType.FOSIM) && this.initialTriggerPeriod < period)
         {
@@ -0,0 +1,451 @@
+package org.opentrafficsim.fosim.sim0mq;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.djunits.value.vdouble.scalar.Duration;
+import org.djunits.value.vdouble.scalar.Length;
+import org.djutils.exceptions.Throw;
+import org.opentrafficsim.kpi.interfaces.LaneData;
+import org.opentrafficsim.kpi.sampling.Trajectory;
+import org.opentrafficsim.road.network.lane.Lane;
+import org.opentrafficsim.road.network.sampling.LaneDataRoad;
+
+/**
+ * Cache of sampled trajectories at multiple resolutions, for the TRAJECTORIES request. Per GTU, the trajectories on all lanes
+ * are stitched into a single series of time, absolute position and lane row, stored off-heap and quantized in a
+ * {@code CompactTrajectoryStore}. Level {@code k}
+ * contains a sample once at least {@code 2^k} sampling intervals have passed since the previous sample at that level, such
+ * that a request with a granularity of {@code 2^k} steps can read level {@code k} directly. For other granularities the
+ * coarsest level that is not coarser than the granularity is thinned further. The cache is fed with new samples by a
+ * {@code TrajectoryIndex}. Samples forwarded during an update are sorted by time before they are stitched, as the samples of a
+ * GTU on the lane it left and on the lane it entered may be forwarded in any order. The fine levels of GTUs that left the
+ * network can be compacted, after which requests for these GTUs read the finest retained level, and the memory of the fine
+ * levels is reused in the store.
+ * <p>
+ * Copyright (c) 2023-2024 Delft University of Technology, PO Box 5, 2600 AA, Delft, the Netherlands. All rights reserved. <br>
+ * BSD-style license. See <a href="https://opentrafficsim.org/docs/license.html">OpenTrafficSim License</a>.
+ * </p>
+ * @author <a href="https://github.com/wjschakel">Wouter Schakel</a>
+ */
+public class TrajectoryCache
+{
+
+    /** Default number of levels, i.e. granularities 1 to 32. */
+    private static final int DEFAULT_LEVELS = 6;
+
+    /** Bucket width [s]. */
+    private static final double BUCKET_WIDTH = 30.0;
+
+    /** Margin for sample times on the step grid [s]. */
+    private static final double MARGIN = 0.001;
+
+    /** Sampling interval [s]. */
+    private final double samplingInterval;
+
+    /** Number of levels. */
+    private final int levels;
+
+    /** Store of the samples. */
+    private final CompactTrajectoryStore store;
+
+    /** Stitched trajectory per GTU id. */
+    private final Map<String, GtuTrajectory> gtuTrajectories = new LinkedHashMap<>();
+
+    /** Stitched trajectories per bucket. */
+    private final List<List<GtuTrajectory>> buckets = new ArrayList<>();
+
+    /** Lane row and start position per lane. */
+    private final Map<LaneData<?>, double[]> laneInfo = new LinkedHashMap<>();
+
+    /** Samples forwarded during the current update. */
+    private final List<Segment> pending = new ArrayList<>();
+
+    /** Stitched trajectories of which no level is compacted. */
+    private List<GtuTrajectory> uncompacted = new ArrayList<>();
+
+    /**
+     * Constructor with default number of levels.
+     * @param samplingInterval sampling interval of the sampler.
+     */
+    public TrajectoryCache(final Duration samplingInterval)
+    {
+        this(samplingInterval, DEFAULT_LEVELS);
+    }
+
+    /**
+     * Constructor.
+     * @param samplingInterval sampling interval of the sampler.
+     * @param levels number of levels, level {@code k} has a resolution of {@code 2^k} sampling intervals.
+     */
+    public TrajectoryCache(final Duration samplingInterval, final int levels)
+    {
+        this(samplingInterval, levels, new CompactTrajectoryStore());
+    }
+
+    /**
+     * Constructor.
+     * @param samplingInterval sampling interval of the sampler.
+     * @param levels number of levels, level {@code k} has a resolution of {@code 2^k} sampling intervals.
+     * @param store store of the samples, which determines the precision of time and position.
+     */
+    public TrajectoryCache(final Duration samplingInterval, final int levels, final CompactTrajectoryStore store)
+    {
+        Throw.whenNull(samplingInterval, "samplingInterval");
+        Throw.whenNull(store, "store");
+        Throw.when(samplingInterval.si <= 0.0, IllegalArgumentException.class, "Sampling interval should be positive.");
+        Throw.when(levels < 1 || levels > 16, IllegalArgumentException.class, "Number of levels should be in the range 1-16.");
+        this.samplingInterval = samplingInterval.si;
+        this.levels = levels;
+        this.store = store;
+    }
+
+    /**
+     * Forwards new samples of a trajectory. The samples are stitched when the update is committed.
+     * @param laneData lane of the trajectory.
+     * @param trajectory trajectory.
+     * @param from index of first new sample.
+     * @param to index after last new sample.
+     */
+    void append(final LaneData<?> laneData, final Trajectory<?> trajectory, final int from, final int to)
+    {
+        this.pending.add(new Segment(laneData, trajectory, from, to));
+    }
+
+    /**
+     * Stitches all samples forwarded during the current update, in order of time.
+     */
+    void commit()
+    {
+        this.pending.sort((s1, s2) -> Float.compare(s1.trajectory().getT(s1.from()), s2.trajectory().getT(s2.from())));
+        for (Segment segment : this.pending)
+        {
+            double[] info = this.laneInfo.computeIfAbsent(segment.laneData(), (laneData) ->
+            {
+                Lane lane = ((LaneDataRoad) laneData).getLane();
+                return new double[] {OtsTransceiver.getLaneRowFromId(lane.getId()), lane.getCenterLine().getFirst().x};
+            });
+            int laneRow = (int) info[0];
+            float laneStart = (float) info[1];
+            Trajectory<?> trajectory = segment.trajectory();
+            GtuTrajectory gtuTrajectory = getGtuTrajectory(trajectory.getGtuId());
+            for (int i = segment.from(); i < segment.to(); i++)
+            {
+                append(gtuTrajectory, trajectory.getT(i), laneStart + trajectory.getX(i), laneRow);
+            }
+        }
+        this.pending.clear();
+    }
+
+    /**
+     * Stitches a single sample of a GTU, bypassing the pending samples of the current update.
+     * @param gtuId GTU id.
+     * @param t time [s].
+     * @param x absolute position [m].
+     * @param laneRow lane row.
+     */
+    void append(final String gtuId, final float t, final float x, final int laneRow)
+    {
+        append(getGtuTrajectory(gtuId), t, x, laneRow);
+    }
+
+    /**
+     * Returns the stitched trajectory of a GTU, which is created if it does not exist yet.
+     * @param gtuId GTU id.
+     * @return stitched trajectory of the GTU.
+     */
+    private GtuTrajectory getGtuTrajectory(final String gtuId)
+    {
+        return this.gtuTrajectories.computeIfAbsent(gtuId, (id) ->
+        {
+            GtuTrajectory newTrajectory = new GtuTrajectory(id);
+            this.uncompacted.add(newTrajectory);
+            return newTrajectory;
+        });
+    }
+
+    /**
+     * Stitches a sample, and stores the trajectory in the buckets from its first bucket, or from the bucket after the last
+     * bucket it is stored in, up to the bucket of the sample.
+     * @param gtuTrajectory stitched trajectory.
+     * @param t time [s].
+     * @param x absolute position [m].
+     * @param laneRow lane row.
+     */
+    private void append(final GtuTrajectory gtuTrajectory, final float t, final float x, final int laneRow)
+    {
+        if (gtuTrajectory.append(t, x, laneRow))
+        {
+            int to = bucket(t);
+            while (this.buckets.size() <= to)
+            {
+                this.buckets.add(new ArrayList<>());
+            }
+            for (int b = Math.max(gtuTrajectory.lastBucket + 1, gtuTrajectory.firstBucket); b <= to; b++)
+            {
+                this.buckets.get(b).add(gtuTrajectory);
+            }
+            gtuTrajectory.lastBucket = Math.max(gtuTrajectory.lastBucket, to);
+        }
+    }
+
+    /**
+     * Returns the ids of the GTUs stored in a bucket.
+     * @param bucket bucket index.
+     * @return ids of the GTUs stored in the bucket.
+     */
+    List<String> getGtuIds(final int bucket)
+    {
+        List<String> gtuIds = new ArrayList<>();
+        if (bucket < this.buckets.size())
+        {
+            for (GtuTrajectory gtuTrajectory : this.buckets.get(bucket))
+            {
+                gtuIds.add(gtuTrajectory.gtuId);
+            }
+        }
+        return gtuIds;
+    }
+
+    /**
+     * Releases the levels finer than the given level, of all GTUs of which the last sample is before the given time.
+     * @param before time before which the last sample of a GTU should be.
+     * @param level finest level to retain.
+     */
+    public void compact(final Duration before, final int level)
+    {
+        Throw.when(level < 0 || level >= this.levels, IllegalArgumentException.class, "Level %s does not exist.", level);
+        List<GtuTrajectory> stillUncompacted = new ArrayList<>();
+        for (GtuTrajectory gtuTrajectory : this.uncompacted)
+        {
+            Level finest = gtuTrajectory.levels[0];
+            if (finest.series.size() > 0 && finest.lastT < before.si)
+            {
+                for (int k = 0; k < level; k++)
+                {
+                    this.store.release(gtuTrajectory.levels[k].series);
+                    gtuTrajectory.levels[k] = null;
+                }
+                gtuTrajectory.finestLevel = level;
+            }
+            else
+            {
+                stillUncompacted.add(gtuTrajectory);
+            }
+        }
+        this.uncompacted = stillUncompacted;
+    }
+
+    /**
+     * Returns the samples of all GTUs within a time window and position range, with at least the given number of steps
+     * between consecutive samples of a GTU. GTUs without samples in the window are not included.
+     * @param startTime start of time window (inclusive).
+     * @param finishTime end of time window (exclusive).
+     * @param startPosition start of position range (inclusive).
+     * @param finishPosition end of position range (exclusive).
+     * @param granularity number of sampling intervals between samples.
+     * @return samples per GTU.
+     */
+    public List<Samples> getSamples(final Duration startTime, final Duration finishTime, final Length startPosition,
+            final Length finishPosition, final int granularity)
+    {
+        Throw.when(granularity < 1, IllegalArgumentException.class, "Granularity should be at least 1.");
+        int level = Math.min(this.levels - 1, 31 - Integer.numberOfLeadingZeros(granularity));
+        float stepSize = (float) (this.samplingInterval * granularity);
+        float tMin = (float) startTime.si;
+        float tMax = (float) finishTime.si;
+        float xMin = (float) startPosition.si;
+        float xMax = (float) finishPosition.si;
+
+        List<Samples> out = new ArrayList<>();
+        float[] time = new float[64];
+        float[] position = new float[64];
+        int[] lane = new int[64];
+        CompactTrajectoryStore.Reader reader = this.store.reader();
+        int from = bucket(tMin);
+        int to = Math.min(bucket(tMax), this.buckets.size() - 1);
+        for (int b = from; b <= to; b++)
+        {
+            for (GtuTrajectory gtuTrajectory : this.buckets.get(b))
+            {
+                // a trajectory in multiple buckets is only considered in the first bucket of the window it is in
+                if (Math.max(from, gtuTrajectory.firstBucket) != b)
+                {
+                    continue;
+                }
+                reader.seek(gtuTrajectory.levels[Math.max(level, gtuTrajectory.finestLevel)].series, tMin);
+                int n = 0;
+                float tPrev = Float.NEGATIVE_INFINITY;
+                while (reader.next() && reader.t() < tMax)
+                {
+                    float t = reader.t();
+                    float x = reader.x();
+                    if (x >= xMin && x < xMax && t >= tPrev + stepSize - MARGIN)
+                    {
+                        if (n == time.length)
+                        {
+                            time = Arrays.copyOf(time, 2 * n);
+                            position = Arrays.copyOf(position, 2 * n);
+                            lane = Arrays.copyOf(lane, 2 * n);
+                        }
+                        time[n] = t;
+                        position[n] = x;
+                        lane[n] = reader.lane();
+                        n++;
+                        tPrev = t;
+                    }
+                }
+                if (n > 0)
+                {
+                    out.add(new Samples(gtuTrajectory.gtuId, Arrays.copyOf(time, n), Arrays.copyOf(position, n),
+                            Arrays.copyOf(lane, n)));
+                }
+            }
+        }
+        return out;
+    }
+
+    /**
+     * Returns the bucket of a time.
+     * @param t time [s].
+     * @return bucket of the time.
+     */
+    private static int bucket(final double t)
+    {
+        return Math.max(0, (int) Math.floor(t / BUCKET_WIDTH));
+    }
+
+    @Override
+    public String toString()
+    {
+        return "TrajectoryCache [gtus=" + this.gtuTrajectories.size() + ", levels=" + this.levels + ", store=" + this.store
+                + "]";
+    }
+
+    /**
+     * Samples of a GTU.
+     * @param gtuId GTU id.
+     * @param t times [s].
+     * @param x absolute positions [m].
+     * @param lane lane rows.
+     */
+    public record Samples(String gtuId, float[] t, float[] x, int[] lane)
+    {
+    }
+
+    /**
+     * New samples of a trajectory.
+     * @param laneData lane of the trajectory.
+     * @param trajectory trajectory.
+     * @param from index of first new sample.
+     * @param to index after last new sample.
+     */
+    private record Segment(LaneData<?> laneData, Trajectory<?> trajectory, int from, int to)
+    {
+    }
+
+    /**
+     * Stitched trajectory of a GTU at all levels.
+     */
+    private class GtuTrajectory
+    {
+        /** GTU id. */
+        private final String gtuId;
+
+        /** Samples per level. */
+        private final Level[] levels;
+
+        /** First bucket the trajectory is stored in. */
+        private int firstBucket = -1;
+
+        /** Finest level that is not compacted. */
+        private int finestLevel = 0;
+
+        /** Last bucket the trajectory is stored in, -1 if it is not stored yet. */
+        private int lastBucket = -1;
+
+        /**
+         * Constructor.
+         * @param gtuId GTU id.
+         */
+        GtuTrajectory(final String gtuId)
+        {
+            this.gtuId = gtuId;
+            this.levels = new Level[TrajectoryCache.this.levels];
+            for (int k = 0; k < this.levels.length; k++)
+            {
+                this.levels[k] = new Level(TrajectoryCache.this.samplingInterval * (1 << k));
+            }
+        }
+
+        /**
+         * Appends a sample to each level for which enough time has passed since its last sample at that level.
+         * @param t time [s].
+         * @param x absolute position [m].
+         * @param lane lane row.
+         * @return whether the sample was added to the finest level, which is never the case once compacted.
+         */
+        boolean append(final float t, final float x, final int lane)
+        {
+            if (this.finestLevel > 0 || !this.levels[0].append(t, x, lane))
+            {
+                return false;
+            }
+            if (this.firstBucket < 0)
+            {
+                this.firstBucket = bucket(t);
+            }
+            for (int k = 1; k < this.levels.length; k++)
+            {
+                this.levels[k].append(t, x, lane);
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Samples of a stitched trajectory at a single level.
+     */
+    private class Level
+    {
+        /** Minimum time between samples [s]. */
+        private final double interval;
+
+        /** Samples in the store. */
+        private final CompactTrajectoryStore.Series series = TrajectoryCache.this.store.createSeries();
+
+        /** Time of the last sample, before quantization [s]. */
+        private float lastT;
+
+        /**
+         * Constructor.
+         * @param interval minimum time between samples [s].
+         */
+        Level(final double interval)
+        {
+            this.interval = interval;
+        }
+
+        /**
+         * Appends a sample if enough time has passed since the last sample.
+         * @param time time [s].
+         * @param position absolute position [m].
+         * @param laneRow lane row.
+         * @return whether the sample was appended.
+         */
+        boolean append(final float time, final float position, final int laneRow)
+        {
+            if (this.series.size() > 0 && time < this.lastT + this.interval - MARGIN)
+            {
+                return false;
+            }
+            TrajectoryCache.this.store.append(this.series, time, position, laneRow);
+            this.lastT = time;
+            return true;
+        }
+    }
+
+}
@@ -0,0 +1,358 @@
+package org.opentrafficsim.fosim.sim0mq;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.djunits.value.vdouble.scalar.Duration;
+import org.djutils.exceptions.Throw;
+import org.opentrafficsim.core.dsol.OtsSimulatorInterface;
+import org.opentrafficsim.kpi.interfaces.LaneData;
+import org.opentrafficsim.kpi.sampling.SamplerData;
+import org.opentrafficsim.kpi.sampling.Trajectory;
+import org.opentrafficsim.kpi.sampling.TrajectoryGroup;
+
+/**
+ * Incremental index over the trajectories in sampler data, which forwards new samples of trajectories to a
+ * {@code TrajectoryCache} and a {@code ContourGrid}. At each update, only trajectories that were added to a trajectory group
+ * since the previous update are added, and only trajectories that are still being sampled are checked for new samples. A
+ * trajectory is considered to be still sampled while its last sample is not older than two sampling intervals, as the sampler
+ * samples at a fixed frequency. The index can cover the sampler data of multiple samplers, which are added and removed as
+ * samplers are rotated. A trajectory of a new sampler continues the trajectory of the same GTU on the same lane in the
+ * previous sampler, if that was still sampled at the rotation: samples at or before the last forwarded sample of the previous
+ * trajectory are skipped, and the interval between both trajectories is forwarded to the contour grid. Each part of a
+ * trajectory that spans a rotation is thus forwarded exactly once. The index can be updated by the simulator once every
+ * sampling interval, such that samples are forwarded as they are sampled, and a query only needs to forward the samples
+ * since the last of these updates.
+ * <p>
+ * Copyright (c) 2023-2024 Delft University of Technology, PO Box 5, 2600 AA, Delft, the Netherlands. All rights reserved. <br>
+ * BSD-style license. See <a href="https://opentrafficsim.org/docs/license.html">OpenTrafficSim License</a>.
+ * </p>
+ * @author <a href="https://github.com/wjschakel">Wouter Schakel</a>
+ */
+public class TrajectoryIndex
+{
+
+    /** Sampling interval [s]. */
+    private final double samplingInterval;
+
+    /** Index per lane, per sampler data. */
+    private final Map<SamplerData<?>, Map<LaneData<?>, LaneIndex>> laneIndices = new LinkedHashMap<>();
+
+    /** Cache to forward new samples to, may be null. */
+    private TrajectoryCache cache;
+
+    /** Contour grid to forward new samples to, may be null. */
+    private ContourGrid contourGrid;
+
+    /** Simulator that updates the index every sampling interval, null if the index is only updated on request. */
+    private OtsSimulatorInterface simulator;
+
+    /** Trajectories that were still sampled when the latest sampler data was added, per lane, per GTU id. */
+    private Map<LaneData<?>, Map<String, OpenTrajectory>> predecessors = new LinkedHashMap<>();
+
+    /**
+     * Constructor.
+     * @param samplerData sampler data.
+     * @param samplingInterval sampling interval of the sampler.
+     */
+    public TrajectoryIndex(final SamplerData<?> samplerData, final Duration samplingInterval)
+    {
+        Throw.whenNull(samplerData, "samplerData");
+        Throw.whenNull(samplingInterval, "samplingInterval");
+        Throw.when(samplingInterval.si <= 0.0, IllegalArgumentException.class, "Sampling interval should be positive.");
+        this.samplingInterval = samplingInterval.si;
+        addSamplerData(samplerData);
+    }
+
+    /**
+     * Adds sampler data to the index, e.g. of a new sampler after rotation. Trajectories of the new sampler data continue
+     * the trajectories that are still sampled in the sampler data in the index. The index should therefore be updated
+     * before the sampler data is added.
+     * @param samplerData sampler data.
+     */
+    public void addSamplerData(final SamplerData<?> samplerData)
+    {
+        Throw.whenNull(samplerData, "samplerData");
+        if (this.laneIndices.containsKey(samplerData))
+        {
+            return;
+        }
+        this.predecessors = new LinkedHashMap<>();
+        for (Map<LaneData<?>, LaneIndex> lanes : this.laneIndices.values())
+        {
+            for (LaneIndex laneIndex : lanes.values())
+            {
+                for (OpenTrajectory entry : laneIndex.open)
+                {
+                    if (entry.samples > 0)
+                    {
+                        this.predecessors.computeIfAbsent(laneIndex.laneData, (l) -> new LinkedHashMap<>())
+                                .put(entry.trajectory.getGtuId(), entry);
+                    }
+                }
+            }
+        }
+        this.laneIndices.put(samplerData, new LinkedHashMap<>());
+    }
+
+    /**
+     * Removes sampler data from the index, such that its trajectories can be released.
+     * @param samplerData sampler data.
+     */
+    public void removeSamplerData(final SamplerData<?> samplerData)
+    {
+        this.laneIndices.remove(samplerData);
+    }
+
+    /**
+     * Returns the sampler data in the index, in order of addition.
+     * @return sampler data in the index.
+     */
+    public List<SamplerData<?>> getSamplerData()
+    {
+        return new ArrayList<>(this.laneIndices.keySet());
+    }
+
+    /**
+     * Returns the sampling interval.
+     * @return sampling interval.
+     */
+    public Duration getSamplingInterval()
+    {
+        return Duration.ofSI(this.samplingInterval);
+    }
+
+    /**
+     * Sets the cache to which new samples are forwarded at each update. Only samples after the current update are forwarded.
+     * @param cache cache, may be null.
+     * @return this index for method chaining.
+     */
+    public TrajectoryIndex setCache(final TrajectoryCache cache)
+    {
+        this.cache = cache;
+        return this;
+    }
+
+    /**
+     * Sets the contour grid to which new samples are forwarded at each update. Only samples after the current update are
+     * forwarded.
+     * @param contourGrid contour grid, may be null.
+     * @return this index for method chaining.
+     */
+    public TrajectoryIndex setContourGrid(final ContourGrid contourGrid)
+    {
+        this.contourGrid = contourGrid;
+        return this;
+    }
+
+    /**
+     * Updates the index every sampling interval, starting at the next multiple of the sampling interval. Updates stop at the
+     * end of the replication.
+     * @param simulator simulator.
+     * @return this index for method chaining.
+     */
+    public TrajectoryIndex scheduleUpdates(final OtsSimulatorInterface simulator)
+    {
+        Throw.whenNull(simulator, "simulator");
+        Throw.when(this.simulator != null, IllegalStateException.class, "Updates are already scheduled.");
+        this.simulator = simulator;
+        double now = simulator.getSimulatorTime().si;
+        simulator.scheduleEventAbs(Duration.ofSI(Math.ceil(now / this.samplingInterval - 1e-6) * this.samplingInterval), this,
+                "scheduledUpdate", null);
+        return this;
+    }
+
+    /**
+     * Updates the index, and schedules the next update one sampling interval later.
+     */
+    @SuppressWarnings("unused") // used through scheduling
+    private void scheduledUpdate()
+    {
+        Duration now = this.simulator.getSimulatorTime();
+        update(now);
+        this.simulator.scheduleEventAbs(now.plus(Duration.ofSI(this.samplingInterval)), this, "scheduledUpdate", null);
+    }
+
+    /**
+     * Adds new trajectories to the index, and forwards new samples of trajectories that are still being sampled to the cache
+     * and the contour grid, if any. This should be called before queries whenever simulation time has progressed, which is
+     * cheap when updates are scheduled.
+     * @param now current time.
+     */
+    public void update(final Duration now)
+    {
+        for (Entry<SamplerData<?>, Map<LaneData<?>, LaneIndex>> entry : this.laneIndices.entrySet())
+        {
+            SamplerData<?> samplerData = entry.getKey();
+            for (LaneData<?> laneData : samplerData.getLanes())
+            {
+                TrajectoryGroup<?> group = samplerData.getTrajectoryGroup(laneData).orElse(null);
+                if (group != null)
+                {
+                    entry.getValue().computeIfAbsent(laneData, (l) -> new LaneIndex(l)).update(group, now.si);
+                }
+            }
+        }
+        if (this.cache != null)
+        {
+            this.cache.commit();
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return "TrajectoryIndex [samplerData=" + this.laneIndices.size() + ", samplingInterval=" + this.samplingInterval + "]";
+    }
+
+    /**
+     * Index of the trajectories on a single lane.
+     */
+    private class LaneIndex
+    {
+        /** Lane. */
+        private final LaneData<?> laneData;
+
+        /** Number of trajectories of the trajectory group that are indexed. */
+        private int indexed = 0;
+
+        /** Trajectories that are still being sampled, or that have no samples yet. */
+        private List<OpenTrajectory> open = new ArrayList<>();
+
+        /**
+         * Constructor.
+         * @param laneData lane.
+         */
+        LaneIndex(final LaneData<?> laneData)
+        {
+            this.laneData = laneData;
+        }
+
+        /**
+         * Adds new trajectories of the group, and forwards new samples of open trajectories.
+         * @param group trajectory group of the lane.
+         * @param now current time [s].
+         */
+        void update(final TrajectoryGroup<?> group, final double now)
+        {
+            int size = group.size();
+            if (size > this.indexed)
+            {
+                // trajectory groups only append, skip what is indexed
+                Iterator<? extends Trajectory<?>> iterator = group.iterator();
+                for (int i = 0; i < this.indexed; i++)
+                {
+                    iterator.next();
+                }
+                Map<String, OpenTrajectory> lanePredecessors = TrajectoryIndex.this.predecessors.get(this.laneData);
+                for (int i = this.indexed; i < size; i++)
+                {
+                    OpenTrajectory entry = new OpenTrajectory(iterator.next());
+                    if (lanePredecessors != null)
+                    {
+                        entry.predecessor = lanePredecessors.remove(entry.trajectory.getGtuId());
+                    }
+                    this.open.add(entry);
+                }
+                this.indexed = size;
+            }
+            List<OpenTrajectory> stillOpen = new ArrayList<>();
+            double closed = now - 2.0 * TrajectoryIndex.this.samplingInterval;
+            for (OpenTrajectory entry : this.open)
+            {
+                Trajectory<?> trajectory = entry.trajectory;
+                int n = trajectory.size();
+                if (n > 0 && entry.predecessor != null)
+                {
+                    continuePredecessor(entry, n);
+                }
+                if (n > entry.samples)
+                {
+                    if (TrajectoryIndex.this.cache != null)
+                    {
+                        TrajectoryIndex.this.cache.append(this.laneData, trajectory, entry.samples, n);
+                    }
+                    if (TrajectoryIndex.this.contourGrid != null)
+                    {
+                        TrajectoryIndex.this.contourGrid.append(this.laneData, trajectory, entry.samples, n);
+                    }
+                    entry.samples = n;
+                }
+                if (n == 0 || trajectory.getT(n - 1) >= closed)
+                {
+                    stillOpen.add(entry);
+                }
+            }
+            this.open = stillOpen;
+        }
+
+        /**
+         * Skips the first samples of a trajectory that are at or before the last forwarded sample of the trajectory it
+         * continues, and forwards the interval between both trajectories to the contour grid. If all samples are skipped, the
+         * trajectory is continued at the next update.
+         * @param entry trajectory with a predecessor, of which no samples are forwarded yet.
+         * @param n number of samples of the trajectory.
+         */
+        private void continuePredecessor(final OpenTrajectory entry, final int n)
+        {
+            Trajectory<?> previous = entry.predecessor.trajectory;
+            float t0 = previous.getT(entry.predecessor.samples - 1);
+            float x0 = previous.getX(entry.predecessor.samples - 1);
+            Trajectory<?> trajectory = entry.trajectory;
+            int k = 0;
+            while (k < n && trajectory.getT(k) <= t0)
+            {
+                k++;
+            }
+            if (k == n)
+            {
+                // all samples are forwarded already, try again with the next samples
+                entry.samples = n;
+                return;
+            }
+            entry.predecessor = null;
+            if (TrajectoryIndex.this.contourGrid != null)
+            {
+                TrajectoryIndex.this.contourGrid.append(this.laneData, t0, x0, trajectory.getT(k), trajectory.getX(k));
+            }
+            if (k > 0)
+            {
+                // the sample after the skipped samples is forwarded without the interval from the skipped samples
+                if (TrajectoryIndex.this.cache != null)
+                {
+                    TrajectoryIndex.this.cache.append(this.laneData, trajectory, k, k + 1);
+                }
+                entry.samples = k + 1;
+            }
+        }
+    }
+
+    /**
+     * Trajectory that is still being sampled, with the number of forwarded samples.
+     */
+    private static class OpenTrajectory
+    {
+        /** Trajectory. */
+        private final Trajectory<?> trajectory;
+
+        /** Number of forwarded samples. */
+        private int samples = 0;
+
+        /** Trajectory in the previous sampler data that this trajectory continues, null once continued or if none. */
+        private OpenTrajectory predecessor;
+
+        /**
+         * Constructor.
+         * @param trajectory trajectory.
+         */
+        OpenTrajectory(final Trajectory<?> trajectory)
+        {
+            this.trajectory = trajectory;
+        }
+    }
+
+}
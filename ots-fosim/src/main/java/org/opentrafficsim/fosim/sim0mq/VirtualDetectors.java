@@ -0,0 +1,259 @@
+package org.opentrafficsim.fosim.sim0mq;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+import org.djunits.value.vdouble.scalar.Duration;
+import org.djutils.exceptions.Throw;
+import org.opentrafficsim.kpi.interfaces.LaneData;
+import org.opentrafficsim.kpi.sampling.SamplerData;
+import org.opentrafficsim.kpi.sampling.Trajectory;
+import org.opentrafficsim.road.network.lane.Lane;
+import org.opentrafficsim.road.network.sampling.LaneDataRoad;
+
+/**
+ * Virtual detectors that are derived from sampled trajectories, rather than being simulated. Virtual detectors can thus be
+ * placed at any position and lane after a simulation, without running it again. The passing time and speed at a virtual
+ * detector are linearly interpolated between the two trajectory samples around the detector position. Virtual detectors are
+ * derived in parallel. When the sampler is rotated with a retention horizon, only passings in retained sampler data are
+ * derived.
+ * <p>
+ * Copyright (c) 2023-2024 Delft University of Technology, PO Box 5, 2600 AA, Delft, the Netherlands. All rights reserved. <br>
+ * BSD-style license. See <a href="https://opentrafficsim.org/docs/license.html">OpenTrafficSim License</a>.
+ * </p>
+ * @author <a href="https://github.com/wjschakel">Wouter Schakel</a>
+ */
+public class VirtualDetectors
+{
+
+    /** Positions [m]. */
+    private final double[] positions;
+
+    /** Lane rows. */
+    private final int[] lanes;
+
+    /** Aggregation period [s]. */
+    private final double period;
+
+    /** Passings per virtual detector, index is position index * number of lanes + lane index. */
+    private final Passings[] passings;
+
+    /** Number of completed aggregation periods. */
+    private final int periods;
+
+    /**
+     * Derives virtual detectors at all combinations of positions and lanes, from the trajectories in the sampler data.
+     * @param samplerData sampler data, e.g. of subsequent samplers.
+     * @param positions positions [m].
+     * @param lanes lane rows.
+     * @param period aggregation period.
+     * @param until time until which to derive passings, i.e. the current time.
+     */
+    public VirtualDetectors(final List<SamplerData<?>> samplerData, final double[] positions, final int[] lanes,
+            final Duration period, final Duration until)
+    {
+        Throw.whenNull(samplerData, "samplerData");
+        Throw.whenNull(positions, "positions");
+        Throw.whenNull(lanes, "lanes");
+        Throw.when(period.si <= 0.0, IllegalArgumentException.class, "Aggregation period should be positive.");
+        this.positions = positions.clone();
+        this.lanes = lanes.clone();
+        this.period = period.si;
+        this.periods = (int) Math.floor(until.si / period.si + 1e-9);
+        Set<LaneDataRoad> sampledLanes = new LinkedHashSet<>();
+        for (SamplerData<?> data : samplerData)
+        {
+            for (LaneData<?> laneData : data.getLanes())
+            {
+                sampledLanes.add((LaneDataRoad) laneData);
+            }
+        }
+        this.passings = new Passings[positions.length * lanes.length];
+        IntStream.range(0, this.passings.length).parallel().forEach((i) -> this.passings[i] = detect(samplerData, sampledLanes,
+                this.positions[i / this.lanes.length], this.lanes[i % this.lanes.length]));
+    }
+
+    /**
+     * Derives all passings at a position and lane.
+     * @param samplerData sampler data.
+     * @param sampledLanes sampled lanes.
+     * @param position position [m].
+     * @param laneRow lane row.
+     * @return passings, sorted by time.
+     */
+    private static Passings detect(final List<SamplerData<?>> samplerData, final Set<LaneDataRoad> sampledLanes,
+            final double position, final int laneRow)
+    {
+        List<Passing> rows = new ArrayList<>();
+        for (LaneDataRoad laneData : sampledLanes)
+        {
+            Lane lane = laneData.getLane();
+            if (lane.getId().startsWith("_") || OtsTransceiver.getLaneRowFromId(lane.getId()) != laneRow)
+            {
+                continue;
+            }
+            double x0 = lane.getCenterLine().getFirst().x;
+            double x1 = lane.getCenterLine().getLast().x;
+            if (position < x0 || position >= x1)
+            {
+                continue;
+            }
+            float xDetector = (float) (position - x0);
+            for (Trajectory<?> trajectory : trajectories(samplerData, laneData))
+            {
+                if (trajectory.size() < 2)
+                {
+                    continue;
+                }
+                float[] x = trajectory.getX();
+                int i = Arrays.binarySearch(x, xDetector);
+                // index of first sample at or after the detector
+                int after = i >= 0 ? i : -i - 1;
+                if (after == 0 || after == x.length)
+                {
+                    continue; // detector not crossed within this trajectory
+                }
+                float[] t = trajectory.getT();
+                float[] v = trajectory.getV();
+                float f = (xDetector - x[after - 1]) / (x[after] - x[after - 1]);
+                float time = t[after - 1] + f * (t[after] - t[after - 1]);
+                float speed = v[after - 1] + f * (v[after] - v[after - 1]);
+                rows.add(new Passing(time, speed, Integer.parseInt(trajectory.getGtuId())));
+            }
+        }
+        rows.sort((row1, row2) -> Float.compare(row1.time(), row2.time()));
+        float[] time = new float[rows.size()];
+        float[] speed = new float[rows.size()];
+        int[] gtuId = new int[rows.size()];
+        for (int j = 0; j < rows.size(); j++)
+        {
+            time[j] = rows.get(j).time();
+            speed[j] = rows.get(j).speed();
+            gtuId[j] = rows.get(j).gtuId();
+        }
+        return new Passings(time, speed, gtuId);
+    }
+
+    /**
+     * Returns the trajectories on a lane in all sampler data.
+     * @param samplerData sampler data.
+     * @param laneData lane.
+     * @return trajectories on the lane.
+     */
+    private static List<Trajectory<?>> trajectories(final List<SamplerData<?>> samplerData, final LaneDataRoad laneData)
+    {
+        List<Trajectory<?>> trajectories = new ArrayList<>();
+        for (SamplerData<?> data : samplerData)
+        {
+            data.getTrajectoryGroup(laneData).ifPresent((group) -> group.forEach(trajectories::add));
+        }
+        return trajectories;
+    }
+
+    /**
+     * Returns the number of completed aggregation periods.
+     * @return number of completed aggregation periods.
+     */
+    public int getPeriods()
+    {
+        return this.periods;
+    }
+
+    /**
+     * Returns the number of virtual detectors, i.e. the number of positions times the number of lanes.
+     * @return number of virtual detectors.
+     */
+    public int size()
+    {
+        return this.passings.length;
+    }
+
+    /**
+     * Returns the passings of a virtual detector.
+     * @param detector detector index, which is position index * number of lanes + lane index.
+     * @return passings of the virtual detector.
+     */
+    public Passings getPassings(final int detector)
+    {
+        return this.passings[detector];
+    }
+
+    /**
+     * Returns the vehicle count of a virtual detector in an aggregation period.
+     * @param detector detector index, which is position index * number of lanes + lane index.
+     * @param aggregationPeriod index of aggregation period.
+     * @return vehicle count.
+     */
+    public int getCount(final int detector, final int aggregationPeriod)
+    {
+        Passings p = this.passings[detector];
+        return p.indexOf(this.period * (aggregationPeriod + 1)) - p.indexOf(this.period * aggregationPeriod);
+    }
+
+    /**
+     * Returns the harmonic mean speed of a virtual detector in an aggregation period.
+     * @param detector detector index, which is position index * number of lanes + lane index.
+     * @param aggregationPeriod index of aggregation period.
+     * @return harmonic mean speed [m/s], NaN if no vehicles passed.
+     */
+    public double getHarmonicMeanSpeed(final int detector, final int aggregationPeriod)
+    {
+        Passings p = this.passings[detector];
+        int from = p.indexOf(this.period * aggregationPeriod);
+        int to = p.indexOf(this.period * (aggregationPeriod + 1));
+        double sumReciprocalSpeed = 0.0;
+        for (int i = from; i < to; i++)
+        {
+            sumReciprocalSpeed += 1.0 / Math.max(p.speed()[i], 0.05);
+        }
+        return to > from ? (to - from) / sumReciprocalSpeed : Double.NaN;
+    }
+
+    /**
+     * Single passing at a virtual detector.
+     * @param time passing time [s]
+     * @param speed passing speed [m/s]
+     * @param gtuId GTU id
+     */
+    private record Passing(float time, float speed, int gtuId)
+    {
+    };
+
+    /**
+     * Passings at a virtual detector, sorted by time.
+     * @param time passing times [s]
+     * @param speed passing speeds [m/s]
+     * @param gtuId GTU ids
+     */
+    public record Passings(float[] time, float[] speed, int[] gtuId)
+    {
+        /**
+         * Returns the index of the first passing at or after the given time.
+         * @param t time [s].
+         * @return index of the first passing at or after the given time.
+         */
+        int indexOf(final double t)
+        {
+            int low = 0;
+            int high = this.time.length;
+            while (low < high)
+            {
+                int mid = (low + high) >>> 1;
+                if (this.time[mid] < t)
+                {
+                    low = mid + 1;
+                }
+                else
+                {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+    };
+
+}
@@ -0,0 +1,408 @@
+package org.opentrafficsim.fosim.sim0mq.trace;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.djunits.value.vdouble.scalar.Duration;
+import org.djutils.event.Event;
+import org.djutils.event.EventListener;
+import org.djutils.exceptions.Throw;
+import org.opentrafficsim.base.logger.Logger;
+import org.opentrafficsim.core.gtu.GtuException;
+import org.opentrafficsim.core.gtu.GtuType;
+import org.opentrafficsim.core.network.Link;
+import org.opentrafficsim.core.network.Network;
+import org.opentrafficsim.fosim.GtuSlots;
+import org.opentrafficsim.fosim.sim0mq.OtsTransceiver;
+import org.opentrafficsim.road.gtu.lane.LaneBasedGtu;
+import org.opentrafficsim.road.network.lane.CrossSectionLink;
+import org.opentrafficsim.road.network.lane.Lane;
+
+import nl.tudelft.simulation.dsol.experiment.Replication;
+
+/**
+ * Collector of Conflict trace data, i.e. episodes in which the time-to-collision (TTC) of a GTU to its leader is below a
+ * threshold. At each step a single pass over the GTUs on each lane, in order of position, pairs each GTU with its leader on
+ * the same lane. The front GTU on a lane is paired with the first GTU downstream, which is found once per lane in a pass and
+ * carried upstream over lanes without GTUs, such that leaders are found any number of lanes ahead. At a split the nearest GTU
+ * over the next lanes is taken. Hence no lane walk per GTU is required. For each episode the minimum TTC, the maximum
+ * deceleration rate to avoid crash (DRAC), the position at the minimum TTC, and the GTUs involved are stored in arrays indexed
+ * by GTU slot. A row is written when the episode ends, i.e. when the TTC is no longer below the threshold, the leader changes,
+ * or the GTU leaves the network. Episodes that are still open at the end of the replication, or when the collector is flushed,
+ * are written with the current time as end time. GTUs on dummy lanes are skipped.
+ * @author wjschakel
+ */
+public class ConflictCollector implements EventListener
+{
+
+    /** Network. */
+    private final Network network;
+
+    /** Slots of GTUs. */
+    private final GtuSlots gtuSlots;
+
+    /** Data storage. */
+    private final TraceData data;
+
+    /** Step between passes. */
+    private final Duration step;
+
+    /** TTC threshold [s]. */
+    private double ttcThreshold = 4.0;
+
+    /** Number of the current pass. */
+    private int pass = 0;
+
+    /** Pass in which a GTU was last in conflict, per slot. */
+    private int[] stamp = new int[0];
+
+    /** Whether a GTU is in conflict, per slot. */
+    private boolean[] inConflict = new boolean[0];
+
+    /** Start time of conflict [s], per slot. */
+    private float[] start = new float[0];
+
+    /** Minimum TTC [s], per slot. */
+    private float[] minTtc = new float[0];
+
+    /** Maximum DRAC [m/s/s], per slot. */
+    private float[] maxDrac = new float[0];
+
+    /** Position at minimum TTC [m], per slot. */
+    private float[] position = new float[0];
+
+    /** Lane row at minimum TTC, per slot. */
+    private int[] laneRow = new int[0];
+
+    /** GTU id, per slot. */
+    private int[] gtuId = new int[0];
+
+    /** GTU type index, per slot. */
+    private int[] type = new int[0];
+
+    /** Leader id, per slot. */
+    private int[] leaderId = new int[0];
+
+    /** First GTU downstream of the end of each lane in the current pass, per GTU type, {@code null} values if none. */
+    private final Map<GtuType, Map<Lane, Downstream>> downstream = new LinkedHashMap<>();
+
+    /**
+     * Constructor. Passes start at the next multiple of the step.
+     * @param network network
+     * @param gtuSlots slots of GTUs in the network, which also provide the GTU ids and GTU type indices
+     * @param data data storage
+     * @param step step between passes
+     */
+    public ConflictCollector(final Network network, final GtuSlots gtuSlots, final TraceData data, final Duration step)
+    {
+        Throw.whenNull(network, "network");
+        Throw.whenNull(gtuSlots, "gtuSlots");
+        Throw.whenNull(data, "data");
+        Throw.whenNull(step, "step");
+        Throw.when(step.si <= 0.0, IllegalArgumentException.class, "Step should be positive.");
+        this.network = network;
+        this.gtuSlots = gtuSlots;
+        this.data = data;
+        this.step = step;
+        double now = network.getSimulator().getSimulatorTime().si;
+        network.getSimulator().scheduleEventAbs(Duration.ofSI(Math.ceil(now / step.si - 1e-6) * step.si), this, "pass", null);
+        network.addListener(this, Network.GTU_REMOVE_EVENT);
+        network.getSimulator().addListener(this, Replication.END_REPLICATION_EVENT);
+    }
+
+    /**
+     * Sets the TTC threshold below which a GTU is in conflict.
+     * @param ttcThreshold TTC threshold
+     * @return this collector for method chaining
+     */
+    public ConflictCollector setTtcThreshold(final Duration ttcThreshold)
+    {
+        Throw.whenNull(ttcThreshold, "ttcThreshold");
+        Throw.when(ttcThreshold.si <= 0.0, IllegalArgumentException.class, "TTC threshold should be positive.");
+        this.ttcThreshold = ttcThreshold.si;
+        return this;
+    }
+
+    /**
+     * Ends all open conflicts at the current time, and writes them if they are accepted by the filter. This should be called
+     * before the data is read for the last time, e.g. when the simulation is stopped.
+     */
+    public void flush()
+    {
+        float t = this.network.getSimulator().getSimulatorTime().floatValue();
+        for (int slot = 0; slot < this.inConflict.length; slot++)
+        {
+            if (this.inConflict[slot])
+            {
+                exit(slot, t);
+            }
+        }
+    }
+
+    @Override
+    public void notify(final Event event)
+    {
+        if (Replication.END_REPLICATION_EVENT.equals(event.getType()))
+        {
+            flush();
+            return;
+        }
+        // the slot is still assigned during removal, it is recycled for a next GTU
+        int slot = this.gtuSlots.getSlot((String) event.getContent());
+        if (slot >= 0 && slot < this.inConflict.length && this.inConflict[slot])
+        {
+            exit(slot, this.network.getSimulator().getSimulatorTime().floatValue());
+        }
+    }
+
+    /**
+     * Evaluates the TTC of all GTUs to their leader, ends conflicts that are no longer present, and schedules the next pass.
+     */
+    @SuppressWarnings("unused") // used through scheduling
+    private void pass()
+    {
+        Duration now = this.network.getSimulator().getSimulatorTime();
+        TraceFilter filter = this.data.getFilter();
+        this.pass++;
+        this.downstream.clear();
+        if (filter.acceptsTime(now.si))
+        {
+            for (Link link : this.network.getLinkMap().values())
+            {
+                if (link instanceof CrossSectionLink cLink)
+                {
+                    for (Lane lane : cLink.getLanes())
+                    {
+                        if (!lane.getId().startsWith("_"))
+                        {
+                            try
+                            {
+                                passLane(lane, now);
+                            }
+                            catch (GtuException ex)
+                            {
+                                Logger.ots().warn(ex, "Unable to evaluate conflicts on lane {}.", lane.getFullId());
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        float t = now.floatValue();
+        for (int slot = 0; slot < this.inConflict.length; slot++)
+        {
+            if (this.inConflict[slot] && this.stamp[slot] != this.pass)
+            {
+                exit(slot, t);
+            }
+        }
+        if (!filter.isOver(now.si))
+        {
+            this.network.getSimulator().scheduleEventAbs(now.plus(this.step), this, "pass", null);
+        }
+    }
+
+    /**
+     * Evaluates the TTC of all GTUs on a lane, of which the lane is the reference lane, to their leader.
+     * @param lane lane
+     * @param now current time
+     * @throws GtuException when a position cannot be obtained
+     */
+    private void passLane(final Lane lane, final Duration now) throws GtuException
+    {
+        int n = lane.numberOfGtus();
+        if (n == 0)
+        {
+            return;
+        }
+        int row = OtsTransceiver.getLaneRowFromId(lane.getId());
+        double linkStart = lane.getLink().getStartNode().getPoint().x;
+        for (int i = 0; i < n; i++)
+        {
+            LaneBasedGtu gtu = lane.getGtu(i);
+            if (!lane.equals(gtu.getPosition().lane()))
+            {
+                continue;
+            }
+            // Due to https://github.com/averbraeck/opentrafficsim/issues/262, as in TimeToCollision
+            double front = gtu.getPosition().position().si + gtu.getFront().dx().si;
+            double v = gtu.getSpeed().si;
+            LaneBasedGtu leader = null;
+            double gap = Double.NaN;
+            for (int j = i + 1; j < n && leader == null; j++)
+            {
+                LaneBasedGtu next = lane.getGtu(j);
+                double g = next.getPosition(lane, next.getRear()).si - front;
+                if (g > 0.0)
+                {
+                    leader = next;
+                    gap = g;
+                }
+            }
+            if (leader == null)
+            {
+                Downstream next = getDownstream(lane, gtu.getType());
+                if (next != null && next.gtu() != gtu)
+                {
+                    double g = lane.getLength().si + next.distance() - front;
+                    if (g > 0.0)
+                    {
+                        leader = next.gtu();
+                        gap = g;
+                    }
+                }
+            }
+            double dv = leader == null ? 0.0 : v - leader.getSpeed().si;
+            if (dv > 0.0 && gap / dv < this.ttcThreshold)
+            {
+                update(gtu, leader, gap / dv, dv * dv / (2.0 * gap), (float) (linkStart + front), row, now);
+            }
+        }
+    }
+
+    /**
+     * Returns the first GTU of which the rear is downstream of the end of a lane. This is the first GTU with its rear on a next
+     * lane, or the first GTU downstream of the end of a next lane without such GTU. At a split the nearest GTU is returned.
+     * The result is stored for the current pass, such that each lane is evaluated at most once per pass and GTU type.
+     * @param lane lane
+     * @param gtuType GTU type, which determines the next lanes
+     * @return first GTU downstream of the end of the lane, {@code null} if there is none
+     * @throws GtuException when a position cannot be obtained
+     */
+    private Downstream getDownstream(final Lane lane, final GtuType gtuType) throws GtuException
+    {
+        Map<Lane, Downstream> lanes = this.downstream.computeIfAbsent(gtuType, (t) -> new LinkedHashMap<>());
+        if (lanes.containsKey(lane))
+        {
+            return lanes.get(lane);
+        }
+        // stored before the next lanes are evaluated, such that a loop in the network ends here
+        lanes.put(lane, null);
+        Downstream result = null;
+        for (Lane nextLane : lane.nextLanes(gtuType))
+        {
+            Downstream candidate = null;
+            for (int j = 0; j < nextLane.numberOfGtus() && candidate == null; j++)
+            {
+                // GTUs with their rear upstream of the next lane are also on the lane itself
+                LaneBasedGtu next = nextLane.getGtu(j);
+                double rear = next.getPosition(nextLane, next.getRear()).si;
+                if (rear >= 0.0)
+                {
+                    candidate = new Downstream(next, rear);
+                }
+            }
+            if (candidate == null)
+            {
+                Downstream further = getDownstream(nextLane, gtuType);
+                if (further != null)
+                {
+                    candidate = new Downstream(further.gtu(), nextLane.getLength().si + further.distance());
+                }
+            }
+            if (candidate != null && (result == null || candidate.distance() < result.distance()))
+            {
+                result = candidate;
+            }
+        }
+        lanes.put(lane, result);
+        return result;
+    }
+
+    /**
+     * Updates the conflict of a GTU, starting it if needed.
+     * @param gtu GTU
+     * @param leader leader
+     * @param ttc time-to-collision [s]
+     * @param drac deceleration rate to avoid crash [m/s/s]
+     * @param pos position of front [m]
+     * @param row lane row
+     * @param now current time
+     */
+    private void update(final LaneBasedGtu gtu, final LaneBasedGtu leader, final double ttc, final double drac,
+            final float pos, final int row, final Duration now)
+    {
+        int slot = this.gtuSlots.getSlot(gtu.getId());
+        if (slot < 0)
+        {
+            return;
+        }
+        ensureCapacity(slot);
+        int leaderSlot = this.gtuSlots.getSlot(leader.getId());
+        int leaderNumber = leaderSlot < 0 ? -1 : this.gtuSlots.getGtuId(leaderSlot);
+        float t = now.floatValue();
+        if (this.inConflict[slot] && this.leaderId[slot] != leaderNumber)
+        {
+            exit(slot, t);
+        }
+        if (!this.inConflict[slot])
+        {
+            this.inConflict[slot] = true;
+            this.start[slot] = t;
+            this.minTtc[slot] = Float.POSITIVE_INFINITY;
+            this.maxDrac[slot] = 0.0f;
+            this.gtuId[slot] = this.gtuSlots.getGtuId(slot);
+            this.type[slot] = this.gtuSlots.getGtuType(slot);
+            this.leaderId[slot] = leaderNumber;
+        }
+        this.stamp[slot] = this.pass;
+        if (ttc < this.minTtc[slot])
+        {
+            this.minTtc[slot] = (float) ttc;
+            this.position[slot] = pos;
+            this.laneRow[slot] = row;
+        }
+        this.maxDrac[slot] = Math.max(this.maxDrac[slot], (float) drac);
+    }
+
+    /**
+     * Ends the conflict of a GTU, and writes it if it is accepted by the filter.
+     * @param slot slot
+     * @param t end time [s]
+     */
+    private void exit(final int slot, final float t)
+    {
+        this.inConflict[slot] = false;
+        TraceFilter filter = this.data.getFilter();
+        if (filter.acceptsLocation(this.position[slot], this.laneRow[slot]) && filter.acceptsGtuType(this.type[slot]))
+        {
+            // t start, t end, lane, pos, min ttc, max drac, type, id, leader
+            this.data.setFloat(0, this.start[slot]).setFloat(1, t).setInt(2, this.laneRow[slot])
+                    .setFloat(3, this.position[slot]).setFloat(4, this.minTtc[slot]).setFloat(5, this.maxDrac[slot])
+                    .setInt(6, this.type[slot]).setInt(7, this.gtuId[slot]).setInt(8, this.leaderId[slot]).addRow();
+        }
+    }
+
+    /**
+     * Makes sure the slot arrays can contain the given slot.
+     * @param slot slot
+     */
+    private void ensureCapacity(final int slot)
+    {
+        if (slot >= this.inConflict.length)
+        {
+            int length = Math.max(2 * this.inConflict.length, Math.max(slot + 1, 16));
+            this.stamp = Arrays.copyOf(this.stamp, length);
+            this.inConflict = Arrays.copyOf(this.inConflict, length);
+            this.start = Arrays.copyOf(this.start, length);
+            this.minTtc = Arrays.copyOf(this.minTtc, length);
+            this.maxDrac = Arrays.copyOf(this.maxDrac, length);
+            this.position = Arrays.copyOf(this.position, length);
+            this.laneRow = Arrays.copyOf(this.laneRow, length);
+            this.gtuId = Arrays.copyOf(this.gtuId, length);
+            this.type = Arrays.copyOf(this.type, length);
+            this.leaderId = Arrays.copyOf(this.leaderId, length);
+        }
+    }
+
+    /**
+     * First GTU downstream of the end of a lane.
+     * @param gtu GTU
+     * @param distance distance from the end of the lane to the rear of the GTU [m]
+     */
+    private record Downstream(LaneBasedGtu gtu, double distance)
+    {
+    }
+
+}
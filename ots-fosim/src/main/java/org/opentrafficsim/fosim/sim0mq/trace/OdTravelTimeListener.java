@@ -6,8 +6,6 @@ import java.util.List;
 import java.util.Map;
 
 import org.djunits.value.vdouble.scalar.Duration;
-import org.djunits.value.vfloat.scalar.FloatDuration;
-import org.djunits.value.vfloat.scalar.FloatSpeed;
 import org.djutils.event.Event;
 import org.djutils.event.EventListener;
 import org.opentrafficsim.core.gtu.GtuType;
@@ -64,18 +62,26 @@ public class OdTravelTimeListener implements EventListener
         }
         else if (event.getType().equals(Network.GTU_REMOVE_EVENT))
         {
+            Duration tStart = this.startTime.remove(id);
+            float t = this.network.getSimulator().getSimulatorTime().floatValue();
+            // OD travel times have no single location, the region of the filter does not apply
+            if (!this.data.getFilter().acceptsTime(t))
+            {
+                return;
+            }
             LaneBasedGtu gtu = (LaneBasedGtu) this.network.getGTU(id).get();
-            Duration tStart = this.startTime.remove(gtu.getId());
-            FloatDuration t = FloatDuration.ofSI(this.network.getSimulator().getSimulatorTime().floatValue());
-            Integer origin = this.odNumbers.get(gtu.getStrategicalPlanner().getOrigin().get().getId());
-            Integer dest = this.odNumbers.get(gtu.getStrategicalPlanner().getDestination().get().getId());
+            int type = this.gtuTypes.indexOf(gtu.getType());
+            if (!this.data.getFilter().acceptsGtuType(type))
+            {
+                return;
+            }
+            int origin = this.odNumbers.get(gtu.getStrategicalPlanner().getOrigin().get().getId());
+            int dest = this.odNumbers.get(gtu.getStrategicalPlanner().getDestination().get().getId());
             double ttt = this.network.getSimulator().getSimulatorTime().si - tStart.si;
-            FloatDuration tt = FloatDuration.ofSI((float) ttt);
             double dx = gtu.getStrategicalPlanner().getDestination().get().getPoint().x
                     - gtu.getStrategicalPlanner().getOrigin().get().getPoint().x;
-            FloatSpeed v = FloatSpeed.ofSI((float) (dx / ttt));
-            int type = this.gtuTypes.indexOf(gtu.getType());
-            this.data.append(t, origin, dest, tt, v, type, Integer.valueOf(id));
+            this.data.setFloat(0, t).setInt(1, origin).setInt(2, dest).setFloat(3, (float) ttt)
+                    .setFloat(4, (float) (dx / ttt)).setInt(5, type).setInt(6, Integer.parseInt(id)).addRow();
         }
     }
 
@@ -0,0 +1,68 @@
+package org.opentrafficsim.fosim.sim0mq.trace;
+
+import java.util.Map;
+
+import org.opentrafficsim.fosim.FosDetector;
+import org.opentrafficsim.fosim.PassingLog;
+import org.opentrafficsim.fosim.sim0mq.OtsTransceiver;
+
+/**
+ * Derives Detection and TravelTime trace data from the passings logged by detectors.
+ * @author wjschakel
+ */
+public final class PassingTraces
+{
+
+    /**
+     * Constructor.
+     */
+    private PassingTraces()
+    {
+        //
+    }
+
+    /**
+     * Add passing data to trace data for a single detector, if it is in the region of the filter.
+     * @param detector detector
+     * @param from sequence number of the first passing to add
+     * @param data object to add data to, Detection or TravelTime trace data
+     * @param addTravelTime whether to include the travel time since last detector data
+     * @param filter filter
+     * @param odNumbers mappings of OTS to Fosim names
+     */
+    public static void addPassings(final FosDetector detector, final long from, final TraceData data,
+            final boolean addTravelTime, final TraceFilter filter, final Map<String, Integer> odNumbers)
+    {
+        float pos = (float) detector.getLocation().x;
+        int lane = OtsTransceiver.getLaneRowFromId(detector.getLane().getId());
+        if (!filter.acceptsLocation(pos, lane))
+        {
+            return;
+        }
+        PassingLog.Cursor passing = detector.getPassings(from);
+        while (passing.next())
+        {
+            int type = passing.getGtuType();
+            if ((!addTravelTime || passing.hasTravelTime()) && filter.acceptsTime(passing.getTime())
+                    && filter.acceptsGtuType(type))
+            {
+                // pos, lane, t, ___ v, type, id, dest
+                // pos, lane, t, dt, v, type, id, dest
+                int index = 0;
+                data.setFloat(index++, pos); // pos
+                data.setInt(index++, lane); // lane
+                data.setFloat(index++, (float) passing.getTime()); // t
+                if (addTravelTime)
+                {
+                    data.setFloat(index++, (float) passing.getTravelTime()); // dt
+                }
+                data.setFloat(index++, (float) passing.getSpeed()); // v
+                data.setInt(index++, type); // type
+                data.setInt(index++, passing.getGtuId()); // id
+                data.setInt(index++, odNumbers.get(passing.getDestination())); // dest
+                data.addRow();
+            }
+        }
+    }
+
+}
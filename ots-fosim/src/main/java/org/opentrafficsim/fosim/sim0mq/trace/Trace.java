@@ -1,5 +1,11 @@
 package org.opentrafficsim.fosim.sim0mq.trace;
 
+import static org.opentrafficsim.fosim.sim0mq.trace.Trace.ColumnType.ACCELERATION;
+import static org.opentrafficsim.fosim.sim0mq.trace.Trace.ColumnType.DURATION;
+import static org.opentrafficsim.fosim.sim0mq.trace.Trace.ColumnType.INTEGER;
+import static org.opentrafficsim.fosim.sim0mq.trace.Trace.ColumnType.LENGTH;
+import static org.opentrafficsim.fosim.sim0mq.trace.Trace.ColumnType.SPEED;
+
 /**
  * Specification of trace files.
  * @author wjschakel
@@ -9,27 +15,39 @@ public enum Trace
 
     /** Acceleration changes and lane changes. */
     ACCELERATION_CHANGE(new Info(Info.ACCELERATION_CHANGE_ID, "Acceleratie veranderingen uitvoer", "Acceleration Changes",
-            new String[] {"t (s)", "fromln", "tolane", "from a", "to a", "pos (m)", "v (m/s)", "type", "id"})),
+            new String[] {"t (s)", "fromln", "tolane", "from a", "to a", "pos (m)", "v (m/s)", "type", "id"},
+            new ColumnType[] {DURATION, INTEGER, INTEGER, ACCELERATION, ACCELERATION, LENGTH, SPEED, INTEGER, INTEGER})),
+
+    /** Conflicts with time-to-collision below a threshold. */
+    CONFLICT(new Info(Info.CONFLICT_ID, "Conflicten uitvoer", "Conflicts",
+            new String[] {"t start (s)", "t end (s)", "lane", "pos (m)", "min ttc (s)", "max drac (m/s2)", "type", "id",
+                    "leader"},
+            new ColumnType[] {DURATION, DURATION, INTEGER, LENGTH, DURATION, ACCELERATION, INTEGER, INTEGER, INTEGER})),
 
     /** Detector passages. */
     DETECTION(new Info(Info.DETECTION_ID, "Micro detector uitvoer", "Detector Passages",
-            new String[] {"pos (m)", "lane", "t (s)", "v (m/s)", "type", "id", "dest"})),
+            new String[] {"pos (m)", "lane", "t (s)", "v (m/s)", "type", "id", "dest"},
+            new ColumnType[] {LENGTH, INTEGER, DURATION, SPEED, INTEGER, INTEGER, INTEGER})),
 
     /** Lane changes. */
     LANE_CHANGE(new Info(Info.LANE_CHANGE_ID, "Strookwisselingen uitvoer", "Lane Changes",
-            new String[] {"t(s)", "fromln", "tolane", "pos (m)", "type", "id"})),
+            new String[] {"t(s)", "fromln", "tolane", "pos (m)", "type", "id"},
+            new ColumnType[] {DURATION, INTEGER, INTEGER, LENGTH, INTEGER, INTEGER})),
 
     /** Travel time between origin and destination. */
     OD_TRAVEL_TIME(new Info(Info.OD_TRAVEL_TIME_ID, "Trajecttijden tussen herkomst en bestemming uitvoer",
-            "Origin To Destination Travel Times", new String[] {"t (s)", "origin", "dest", "tt (s)", "v (m/s)", "type", "id"})),
+            "Origin To Destination Travel Times", new String[] {"t (s)", "origin", "dest", "tt (s)", "v (m/s)", "type", "id"},
+            new ColumnType[] {DURATION, INTEGER, INTEGER, DURATION, SPEED, INTEGER, INTEGER})),
 
     /** Travel time between detectors. */
     TRAVEL_TIME(new Info(Info.TRAVEL_TIME_ID, "Trajecttijden tussen detectoren uitvoer", "Detector To Detector Travel Times",
-            new String[] {"pos (m)", "lane", "t (s)", "dt (s)", "v (m/s)", "type", "id", "dest"})),
+            new String[] {"pos (m)", "lane", "t (s)", "dt (s)", "v (m/s)", "type", "id", "dest"},
+            new ColumnType[] {LENGTH, INTEGER, DURATION, DURATION, SPEED, INTEGER, INTEGER, INTEGER})),
 
     /** Vehicle samples. */
     VEHICLES(new Info(Info.VEHICLES_ID, "Voertuig monsters", "Vehicle Samples",
-            new String[] {"t (s)", "id", "type", "origin", "dest", "lane", "pos (m)", "v (m/s)"}));
+            new String[] {"t (s)", "id", "type", "origin", "dest", "lane", "pos (m)", "v (m/s)"},
+            new ColumnType[] {DURATION, INTEGER, INTEGER, INTEGER, INTEGER, INTEGER, LENGTH, SPEED}));
     
     /** Data in trace file specification. */
     final Info data;
@@ -75,13 +93,17 @@ public enum Trace
      * @param dutchName Dutch menu name
      * @param englishName English menu name
      * @param header header fields in trace file
+     * @param columns type of each column, in the same order as the header fields
      */
-    public record Info(String id, String dutchName, String englishName, String[] header)
+    public record Info(String id, String dutchName, String englishName, String[] header, ColumnType[] columns)
     {
 
         /** Acceleration change id. */
         public static final String ACCELERATION_CHANGE_ID = "AccelerationChange";
 
+        /** Conflict id. */
+        public static final String CONFLICT_ID = "Conflict";
+
         /** Acceleration change id. */
         public static final String DETECTION_ID = "Detection";
 
@@ -99,4 +121,25 @@ public enum Trace
 
     }
 
+    /**
+     * Type of a trace column, which determines how the column is stored and sent.
+     */
+    public enum ColumnType
+    {
+        /** Duration in s, sent as FloatDurationVector. */
+        DURATION,
+
+        /** Length in m, sent as FloatLengthVector. */
+        LENGTH,
+
+        /** Speed in m/s, sent as FloatSpeedVector. */
+        SPEED,
+
+        /** Acceleration in m/s/s, sent as FloatAccelerationVector. */
+        ACCELERATION,
+
+        /** Integer number, sent as int[]. */
+        INTEGER;
+    }
+
 }
@@ -0,0 +1,242 @@
+package org.opentrafficsim.fosim.sim0mq.trace;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.djunits.value.vdouble.scalar.Acceleration;
+import org.djunits.value.vdouble.scalar.Speed;
+import org.djunits.value.vdouble.vector.PositionVector;
+import org.djutils.event.Event;
+import org.djutils.event.EventListener;
+import org.djutils.exceptions.Throw;
+import org.opentrafficsim.core.network.Network;
+import org.opentrafficsim.fosim.GtuSlots;
+import org.opentrafficsim.fosim.sim0mq.OtsTransceiver;
+import org.opentrafficsim.road.gtu.lane.LaneBasedGtu;
+
+/**
+ * Collector of all trace data that is derived from GTU movements. This is the only listener to move and lane change events of
+ * each GTU, and a single move event feeds the AccelerationChange and LaneChange traces. Lane change events are also forwarded
+ * to other listeners, such that they do not need to subscribe to each GTU. The state of GTUs between move events is stored in
+ * arrays indexed by GTU slot, and the GTU type and numeric id are obtained from the GTU slots.
+ * @author wjschakel
+ */
+public class TraceCollector implements EventListener
+{
+
+    /** Network. */
+    private final Network network;
+
+    /** Slots of GTUs. */
+    private final GtuSlots gtuSlots;
+
+    /** AccelerationChange data storage, null if not active. */
+    private TraceData accelerationChangeData;
+
+    /** LaneChange data storage, null if not active. */
+    private TraceData laneChangeData;
+
+    /** Listeners to lane change events. */
+    private final List<EventListener> laneChangeListeners = new ArrayList<>();
+
+    /** Whether a GTU has a previous stamp, per slot. */
+    private boolean[] stamped = new boolean[0];
+
+    /** Acceleration * 10 of previous stamp, per slot. */
+    private long[] acceleration10 = new long[0];
+
+    /** Lane number of previous stamp, per slot. */
+    private int[] lane = new int[0];
+
+    /** Whether a GTU changed lane since it was added, per slot. */
+    private boolean[] changedLane = new boolean[0];
+
+    /** Whether a GTU changed lane in its most recent time step, per slot. */
+    private boolean[] justChangedLane = new boolean[0];
+
+    /**
+     * Constructor.
+     * @param network network
+     * @param gtuSlots slots of GTUs in the network, which resolve the GTU type index
+     */
+    public TraceCollector(final Network network, final GtuSlots gtuSlots)
+    {
+        Throw.whenNull(network, "network");
+        Throw.whenNull(gtuSlots, "gtuSlots");
+        this.network = network;
+        this.gtuSlots = gtuSlots;
+        this.network.addListener(this, Network.GTU_ADD_EVENT);
+        this.network.addListener(this, Network.GTU_REMOVE_EVENT);
+    }
+
+    /**
+     * Sets the AccelerationChange data storage.
+     * @param data data storage, null to not collect AccelerationChange data
+     * @return this collector for method chaining
+     */
+    public TraceCollector setAccelerationChangeData(final TraceData data)
+    {
+        resetWhenInactive();
+        this.accelerationChangeData = data;
+        return this;
+    }
+
+    /**
+     * Sets the LaneChange data storage.
+     * @param data data storage, null to not collect LaneChange data
+     * @return this collector for method chaining
+     */
+    public TraceCollector setLaneChangeData(final TraceData data)
+    {
+        resetWhenInactive();
+        this.laneChangeData = data;
+        return this;
+    }
+
+    /**
+     * Clears the previous stamps of all GTUs if no trace is active, as these are not updated while no trace is active.
+     */
+    private void resetWhenInactive()
+    {
+        if (this.accelerationChangeData == null && this.laneChangeData == null)
+        {
+            Arrays.fill(this.stamped, false);
+        }
+    }
+
+    /**
+     * Adds a listener to the lane change events of all GTUs.
+     * @param listener listener
+     */
+    public void addLaneChangeListener(final EventListener listener)
+    {
+        this.laneChangeListeners.add(listener);
+    }
+
+    @Override
+    public void notify(final Event event)
+    {
+        if (event.getType().equals(LaneBasedGtu.LANEBASED_MOVE_EVENT))
+        {
+            move((Object[]) event.getContent());
+        }
+        else if (event.getType().equals(LaneBasedGtu.LANE_CHANGE_EVENT))
+        {
+            int slot = this.gtuSlots.getSlot((String) ((Object[]) event.getContent())[0]);
+            if (slot >= 0)
+            {
+                ensureCapacity(slot);
+                this.changedLane[slot] = true;
+                this.justChangedLane[slot] = true;
+            }
+            for (EventListener listener : this.laneChangeListeners)
+            {
+                listener.notify(event);
+            }
+        }
+        else if (event.getType().equals(Network.GTU_ADD_EVENT))
+        {
+            LaneBasedGtu gtu = (LaneBasedGtu) this.network.getGTU((String) event.getContent()).get();
+            gtu.addListener(this, LaneBasedGtu.LANEBASED_MOVE_EVENT);
+            gtu.addListener(this, LaneBasedGtu.LANE_CHANGE_EVENT);
+        }
+        else if (event.getType().equals(Network.GTU_REMOVE_EVENT))
+        {
+            LaneBasedGtu gtu = (LaneBasedGtu) this.network.getGTU((String) event.getContent()).get();
+            gtu.removeListener(this, LaneBasedGtu.LANEBASED_MOVE_EVENT);
+            gtu.removeListener(this, LaneBasedGtu.LANE_CHANGE_EVENT);
+            // reset state, the slot is recycled for a next GTU
+            int slot = this.gtuSlots.getSlot(gtu.getId());
+            if (slot >= 0 && slot < this.stamped.length)
+            {
+                this.stamped[slot] = false;
+                this.changedLane[slot] = false;
+                this.justChangedLane[slot] = false;
+            }
+        }
+    }
+
+    /**
+     * Processes a move of a GTU for all active traces. Nothing is done while no trace is active, or for a GTU without slot.
+     * @param payload payload of the move event
+     */
+    private void move(final Object[] payload)
+    {
+        if (this.accelerationChangeData == null && this.laneChangeData == null)
+        {
+            return;
+        }
+        int slot = this.gtuSlots.getSlot((String) payload[0]);
+        if (slot < 0)
+        {
+            return;
+        }
+        ensureCapacity(slot);
+        long toA10 = Math.round(((Acceleration) payload[4]).si * 10.0);
+        int tolane = OtsTransceiver.getLaneRowFromId((String) payload[8]);
+        if (this.stamped[slot])
+        {
+            int fromln = this.lane[slot];
+            float t = this.network.getSimulator().getSimulatorTime().floatValue();
+            float pos = ((PositionVector) payload[1]).get(0).floatValue();
+            // Note: toLane != fromLane might just mean the GTU left a diagonal lane, so need to consider lane change events
+            if (this.accelerationChangeData != null
+                    && (this.acceleration10[slot] != toA10 || (fromln != tolane && this.changedLane[slot]))
+                    && this.accelerationChangeData.getFilter().accepts(t, pos, tolane))
+            {
+                int type = this.gtuSlots.getGtuType(slot);
+                if (this.accelerationChangeData.getFilter().acceptsGtuType(type))
+                {
+                    float v = ((Speed) payload[3]).floatValue();
+                    this.accelerationChangeData.setFloat(0, t).setInt(1, fromln).setInt(2, tolane)
+                            .setFloat(3, rounded(this.acceleration10[slot])).setFloat(4, rounded(toA10)).setFloat(5, pos)
+                            .setFloat(6, v).setInt(7, type).setInt(8, this.gtuSlots.getGtuId(slot)).addRow();
+                }
+            }
+            if (this.laneChangeData != null && fromln != tolane && this.justChangedLane[slot]
+                    && (this.laneChangeData.getFilter().accepts(t, pos, fromln)
+                            || this.laneChangeData.getFilter().accepts(t, pos, tolane)))
+            {
+                int type = this.gtuSlots.getGtuType(slot);
+                if (this.laneChangeData.getFilter().acceptsGtuType(type))
+                {
+                    this.laneChangeData.setFloat(0, t).setInt(1, fromln).setInt(2, tolane).setFloat(3, pos).setInt(4, type)
+                            .setInt(5, this.gtuSlots.getGtuId(slot)).addRow();
+                }
+            }
+        }
+        this.stamped[slot] = true;
+        this.acceleration10[slot] = toA10;
+        this.lane[slot] = tolane;
+        this.justChangedLane[slot] = false;
+    }
+
+    /**
+     * Makes sure the state arrays can contain the given slot.
+     * @param slot slot
+     */
+    private void ensureCapacity(final int slot)
+    {
+        if (slot >= this.stamped.length)
+        {
+            int length = Math.max(2 * this.stamped.length, Math.max(slot + 1, 16));
+            this.stamped = Arrays.copyOf(this.stamped, length);
+            this.acceleration10 = Arrays.copyOf(this.acceleration10, length);
+            this.lane = Arrays.copyOf(this.lane, length);
+            this.changedLane = Arrays.copyOf(this.changedLane, length);
+            this.justChangedLane = Arrays.copyOf(this.justChangedLane, length);
+        }
+    }
+
+    /**
+     * Returns the acceleration rounded to the nearest 0.1 m/s/s.
+     * @param acceleration10 acceleration * 10
+     * @return acceleration rounded to the nearest 0.1 m/s/s
+     */
+    private static float rounded(final long acceleration10)
+    {
+        return ((float) acceleration10) / 10.0f;
+    }
+
+}
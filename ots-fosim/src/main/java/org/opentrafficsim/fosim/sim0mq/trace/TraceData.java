@@ -1,72 +1,446 @@
 package org.opentrafficsim.fosim.sim0mq.trace;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.List;
 
-import org.djunits.value.vfloat.scalar.FloatAcceleration;
-import org.djunits.value.vfloat.scalar.FloatDuration;
-import org.djunits.value.vfloat.scalar.FloatLength;
-import org.djunits.value.vfloat.scalar.FloatSpeed;
+import org.djunits.unit.AccelerationUnit;
+import org.djunits.unit.DurationUnit;
+import org.djunits.unit.LengthUnit;
+import org.djunits.unit.SpeedUnit;
 import org.djunits.value.vfloat.vector.FloatAccelerationVector;
 import org.djunits.value.vfloat.vector.FloatDurationVector;
 import org.djunits.value.vfloat.vector.FloatLengthVector;
 import org.djunits.value.vfloat.vector.FloatSpeedVector;
+import org.djutils.exceptions.Throw;
+import org.opentrafficsim.base.logger.Logger;
+import org.opentrafficsim.fosim.sim0mq.trace.Trace.ColumnType;
 
 /**
- * Trace data contained.
+ * Trace data contained in primitive columns. The type of each column is given by the schema of the trace. Data is stored in
+ * chunks of fixed size, such that growing the data does not copy earlier data. A row is appended by setting the value of each
+ * column using {@code setFloat()} or {@code setInt()}, followed by {@code addRow()}. Columns are exported with a single copy
+ * of the chunks into an array, which is used for the vector in the payload.<br>
+ * <br>
+ * Each row has a sequence number, which increases over the lifetime of the trace data. A reader that acknowledges the rows
+ * before a sequence number, discards those rows, such that an export contains only the rows that were not yet acknowledged.
+ * Leading chunks of which all rows are discarded are released.<br>
+ * <br>
+ * When a {@code TraceSpill} is set, completed chunks are written to segment files once the trace data of all traces exceeds
+ * the memory budget of the spill. Exports read spilled chunks from the segment files, and clearing the data deletes them.
  * @author wjschakel
  */
 public class TraceData
 {
 
-    /** Column list. */
-    private List<Object>[] data;
+    /** Number of rows per chunk. */
+    private static final int CHUNK_SIZE = 4096;
+
+    /** Column types. */
+    private final ColumnType[] columns;
+
+    /** Bytes per value. */
+    private static final int BYTES = 4;
+
+    /** Chunks of float columns, null for int columns. Spilled chunks are null. */
+    private final List<float[]>[] floatChunks;
+
+    /** Chunks of int columns, null for float columns. Spilled chunks are null. */
+    private final List<int[]>[] intChunks;
+
+    /** Position of the first row, in the chunks. */
+    private int start = 0;
+
+    /** Position after the last row, in the chunks. */
+    private int end = 0;
+
+    /** Sequence number of position 0 in the chunks. */
+    private long base = 0;
+
+    /** Filter applied by the listeners that collect the data. */
+    private TraceFilter filter = TraceFilter.ALL;
+
+    /** Memory budget and location of segment files, null if data is not spilled. */
+    private TraceSpill spill;
+
+    /** Segment files of spilled chunks, index is chunk index. */
+    private final List<Path> segments = new ArrayList<>();
+
+    /**
+     * Constructor with the schema of a trace.
+     * @param trace trace
+     */
+    public TraceData(final Trace trace)
+    {
+        this(trace.getInfo().columns());
+    }
 
     /**
      * Constructor.
-     * @param numberOfColumns number of columns
+     * @param columns column types
      */
     @SuppressWarnings("unchecked")
-    public TraceData(final int numberOfColumns)
+    public TraceData(final ColumnType... columns)
+    {
+        this.columns = columns.clone();
+        this.floatChunks = new List[columns.length];
+        this.intChunks = new List[columns.length];
+        for (int i = 0; i < columns.length; i++)
+        {
+            if (ColumnType.INTEGER.equals(columns[i]))
+            {
+                this.intChunks[i] = new ArrayList<>();
+            }
+            else
+            {
+                this.floatChunks[i] = new ArrayList<>();
+            }
+        }
+    }
+
+    /**
+     * Sets the spill to which completed chunks are written when the memory budget is exceeded.
+     * @param spill spill, null to keep all data in memory
+     * @return this trace data for method chaining
+     */
+    public TraceData setSpill(final TraceSpill spill)
+    {
+        Throw.when(this.end > 0, IllegalStateException.class, "Spill can only be set on empty trace data.");
+        this.spill = spill;
+        return this;
+    }
+
+    /**
+     * Sets the filter to be applied by the listeners that collect the data.
+     * @param filter filter
+     * @return this trace data for method chaining
+     */
+    public TraceData setFilter(final TraceFilter filter)
+    {
+        Throw.whenNull(filter, "filter");
+        this.filter = filter;
+        return this;
+    }
+
+    /**
+     * Returns the filter to be applied by the listeners that collect the data.
+     * @return filter
+     */
+    public TraceFilter getFilter()
+    {
+        return this.filter;
+    }
+
+    /**
+     * Sets the value of a float column in the row being appended.
+     * @param column column number
+     * @param value value in SI units
+     * @return this trace data for method chaining
+     */
+    public TraceData setFloat(final int column, final float value)
+    {
+        List<float[]> chunks = this.floatChunks[column];
+        int chunk = this.end / CHUNK_SIZE;
+        while (chunk >= chunks.size())
+        {
+            chunks.add(new float[CHUNK_SIZE]);
+            allocated();
+        }
+        chunks.get(chunk)[this.end % CHUNK_SIZE] = value;
+        return this;
+    }
+
+    /**
+     * Sets the value of an int column in the row being appended.
+     * @param column column number
+     * @param value value
+     * @return this trace data for method chaining
+     */
+    public TraceData setInt(final int column, final int value)
+    {
+        List<int[]> chunks = this.intChunks[column];
+        int chunk = this.end / CHUNK_SIZE;
+        while (chunk >= chunks.size())
+        {
+            chunks.add(new int[CHUNK_SIZE]);
+            allocated();
+        }
+        chunks.get(chunk)[this.end % CHUNK_SIZE] = value;
+        return this;
+    }
+
+    /**
+     * Completes the row being appended. The value of columns that were not set in the row is undefined.
+     */
+    public void addRow()
+    {
+        this.end++;
+        if (this.spill != null && this.end % CHUNK_SIZE == 0 && this.spill.isOverBudget())
+        {
+            spillChunks();
+        }
+    }
+
+    /**
+     * Registers an allocated chunk with the spill, if any.
+     */
+    private void allocated()
+    {
+        if (this.spill != null)
+        {
+            this.spill.allocate(CHUNK_SIZE * BYTES);
+        }
+    }
+
+    /**
+     * Registers a released chunk with the spill, if any.
+     */
+    private void released()
+    {
+        if (this.spill != null)
+        {
+            this.spill.release(CHUNK_SIZE * BYTES);
+        }
+    }
+
+    /**
+     * Writes all completed chunks that are in memory to segment files, and releases them from memory. If writing fails, the
+     * chunks remain in memory.
+     */
+    private void spillChunks()
+    {
+        ByteBuffer buffer = ByteBuffer.allocate(this.columns.length * CHUNK_SIZE * BYTES);
+        for (int chunk = this.segments.size(); chunk < this.end / CHUNK_SIZE; chunk++)
+        {
+            buffer.clear();
+            for (int i = 0; i < this.columns.length; i++)
+            {
+                // a column that was never set in this chunk has undefined values, as it would in memory
+                if (this.floatChunks[i] != null && chunk < this.floatChunks[i].size())
+                {
+                    buffer.asFloatBuffer().put(this.floatChunks[i].get(chunk));
+                }
+                else if (this.intChunks[i] != null && chunk < this.intChunks[i].size())
+                {
+                    buffer.asIntBuffer().put(this.intChunks[i].get(chunk));
+                }
+                buffer.position(buffer.position() + CHUNK_SIZE * BYTES);
+            }
+            buffer.flip();
+            Path segment = this.spill.newSegment();
+            try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE))
+            {
+                while (buffer.hasRemaining())
+                {
+                    channel.write(buffer);
+                }
+            }
+            catch (IOException ex)
+            {
+                Logger.ots().warn(ex, "Unable to spill trace data, data remains in memory.");
+                return;
+            }
+            this.segments.add(segment);
+            for (int i = 0; i < this.columns.length; i++)
+            {
+                List<?> chunks = this.floatChunks[i] != null ? this.floatChunks[i] : this.intChunks[i];
+                if (chunk < chunks.size())
+                {
+                    chunks.set(chunk, null);
+                    released();
+                }
+                while (chunks.size() <= chunk)
+                {
+                    chunks.add(null);
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads values of a column of a spilled chunk from its segment file.
+     * @param chunk chunk index
+     * @param column column number
+     * @param offset position of the first value in the chunk
+     * @param n number of values to read
+     * @return buffer with the values
+     */
+    private ByteBuffer readSegment(final int chunk, final int column, final int offset, final int n)
+    {
+        ByteBuffer buffer = ByteBuffer.allocate(n * BYTES);
+        try (FileChannel channel = FileChannel.open(this.segments.get(chunk), StandardOpenOption.READ))
+        {
+            long position = ((long) column * CHUNK_SIZE + offset) * BYTES;
+            while (buffer.hasRemaining())
+            {
+                if (channel.read(buffer, position + buffer.position()) < 0)
+                {
+                    throw new IOException("Unexpected end of trace segment " + this.segments.get(chunk));
+                }
+            }
+        }
+        catch (IOException ex)
+        {
+            throw new UncheckedIOException(ex);
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Returns the number of rows.
+     * @return number of rows
+     */
+    public int size()
     {
-        List<List<Object>> list = new ArrayList<>();
-        for (int i = 0; i < numberOfColumns; i++)
+        return this.end - this.start;
+    }
+
+    /**
+     * Returns the sequence number of the first row.
+     * @return sequence number of the first row
+     */
+    public long getFirstSequence()
+    {
+        return this.base + this.start;
+    }
+
+    /**
+     * Returns the sequence number that the next row will have, i.e. the number of rows ever appended.
+     * @return sequence number that the next row will have
+     */
+    public long getSequence()
+    {
+        return this.base + this.end;
+    }
+
+    /**
+     * Discards all rows before the given sequence number, e.g. as they were acknowledged by the reader. Chunks of which all
+     * rows are discarded are released, and their segment files are deleted.
+     * @param sequence sequence number (exclusive)
+     */
+    public void discardBefore(final long sequence)
+    {
+        this.start = (int) Math.max(this.start, Math.min(sequence - this.base, this.end));
+        while (this.start >= CHUNK_SIZE)
         {
-            list.add(new ArrayList<>());
+            for (int i = 0; i < this.columns.length; i++)
+            {
+                List<?> chunks = this.floatChunks[i] != null ? this.floatChunks[i] : this.intChunks[i];
+                if (!chunks.isEmpty() && chunks.remove(0) != null)
+                {
+                    released();
+                }
+            }
+            if (!this.segments.isEmpty())
+            {
+                Path segment = this.segments.remove(0);
+                try
+                {
+                    Files.deleteIfExists(segment);
+                }
+                catch (IOException ex)
+                {
+                    Logger.ots().warn(ex, "Unable to delete trace segment {}.", segment);
+                }
+            }
+            this.start -= CHUNK_SIZE;
+            this.end -= CHUNK_SIZE;
+            this.base += CHUNK_SIZE;
         }
-        this.data = list.toArray(new List[numberOfColumns]);
     }
 
     /**
-     * Append data. Objects must be in types of columns.
-     * @param row data to append
+     * Returns the number of columns.
+     * @return number of columns
+     */
+    public int getNumberOfColumns()
+    {
+        return this.columns.length;
+    }
+
+    /**
+     * Returns a column in the form of its payload type, i.e. an {@code int[]} or a float vector of the column type.
+     * @param column column number
+     * @return column in the form of its payload type
      */
-    public void append(final Object... row)
+    public Object getColumn(final int column)
     {
-        for (int i = 0; i < row.length; i++)
+        switch (this.columns[column])
         {
-            this.data[i].add(row[i]);
+            case DURATION:
+                return asDuration(column);
+            case LENGTH:
+                return asLength(column);
+            case SPEED:
+                return asSpeed(column);
+            case ACCELERATION:
+                return asAcceleration(column);
+            default:
+                return asInteger(column);
         }
     }
 
     /**
-     * Return column as integer array.
+     * Return column as int array.
      * @param column column number
-     * @return column as integer array
+     * @return column as int array
      */
-    public Integer[] asInteger(final int column)
+    public int[] asInteger(final int column)
     {
-        return this.data[column].toArray(new Integer[this.data[column].size()]);
+        Throw.when(this.intChunks[column] == null, IllegalArgumentException.class, "Column %s is not an int column.",
+                column);
+        int[] values = new int[this.end - this.start];
+        List<int[]> chunks = this.intChunks[column];
+        for (int p = this.start; p < this.end; p = (p / CHUNK_SIZE + 1) * CHUNK_SIZE)
+        {
+            int chunk = p / CHUNK_SIZE;
+            int offset = p % CHUNK_SIZE;
+            int n = Math.min(CHUNK_SIZE - offset, this.end - p);
+            if (chunk < this.segments.size())
+            {
+                readSegment(chunk, column, offset, n).asIntBuffer().get(values, p - this.start, n);
+            }
+            else if (chunk < chunks.size())
+            {
+                System.arraycopy(chunks.get(chunk), offset, values, p - this.start, n);
+            }
+        }
+        return values;
     }
 
     /**
-     * Return column as String array.
+     * Return column as float array in SI units.
      * @param column column number
-     * @return column as String array
+     * @return column as float array
      */
-    public String[] asString(final int column)
+    public float[] asFloat(final int column)
     {
-        return this.data[column].toArray(new String[this.data[column].size()]);
+        Throw.when(this.floatChunks[column] == null, IllegalArgumentException.class, "Column %s is not a float column.",
+                column);
+        float[] values = new float[this.end - this.start];
+        List<float[]> chunks = this.floatChunks[column];
+        for (int p = this.start; p < this.end; p = (p / CHUNK_SIZE + 1) * CHUNK_SIZE)
+        {
+            int chunk = p / CHUNK_SIZE;
+            int offset = p % CHUNK_SIZE;
+            int n = Math.min(CHUNK_SIZE - offset, this.end - p);
+            if (chunk < this.segments.size())
+            {
+                readSegment(chunk, column, offset, n).asFloatBuffer().get(values, p - this.start, n);
+            }
+            else if (chunk < chunks.size())
+            {
+                System.arraycopy(chunks.get(chunk), offset, values, p - this.start, n);
+            }
+        }
+        return values;
     }
 
     /**
@@ -76,7 +450,7 @@ public class TraceData
      */
     public FloatLengthVector asLength(final int column)
     {
-        return new FloatLengthVector(this.data[column].toArray(new FloatLength[this.data[column].size()]));
+        return new FloatLengthVector(asFloat(column), LengthUnit.SI);
     }
 
     /**
@@ -86,7 +460,7 @@ public class TraceData
      */
     public FloatDurationVector asDuration(final int column)
     {
-        return new FloatDurationVector(this.data[column].toArray(new FloatDuration[this.data[column].size()]));
+        return new FloatDurationVector(asFloat(column), DurationUnit.SI);
     }
 
     /**
@@ -96,7 +470,7 @@ public class TraceData
      */
     public FloatSpeedVector asSpeed(final int column)
     {
-        return new FloatSpeedVector(this.data[column].toArray(new FloatSpeed[this.data[column].size()]));
+        return new FloatSpeedVector(asFloat(column), SpeedUnit.SI);
     }
 
     /**
@@ -106,18 +480,32 @@ public class TraceData
      */
     public FloatAccelerationVector asAcceleration(final int column)
     {
-        return new FloatAccelerationVector(this.data[column].toArray(new FloatAcceleration[this.data[column].size()]));
+        return new FloatAccelerationVector(asFloat(column), AccelerationUnit.SI);
     }
 
     /**
-     * Clear all data.
+     * Clear all data, delete all segment files, and release all chunks from memory. Sequence numbers continue after the
+     * cleared rows.
      */
     public void clear()
     {
-        for (List<Object> list : this.data)
+        discardBefore(getSequence());
+        // the chunk being appended to remains after discarding, as it is not complete
+        for (int i = 0; i < this.columns.length; i++)
         {
-            list.clear();
+            List<?> chunks = this.floatChunks[i] != null ? this.floatChunks[i] : this.intChunks[i];
+            for (Object chunk : chunks)
+            {
+                if (chunk != null)
+                {
+                    released();
+                }
+            }
+            chunks.clear();
         }
+        this.base += this.end;
+        this.start = 0;
+        this.end = 0;
     }
 
 }
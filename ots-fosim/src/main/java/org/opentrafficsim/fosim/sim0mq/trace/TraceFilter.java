@@ -0,0 +1,154 @@
+package org.opentrafficsim.fosim.sim0mq.trace;
+
+import java.util.Arrays;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.djunits.value.vdouble.scalar.Duration;
+import org.djunits.value.vdouble.scalar.Length;
+import org.djutils.exceptions.Throw;
+
+/**
+ * Filter of trace data by region (x-range and lane range), GTU type and time window. Filters are applied when trace data is
+ * collected, such that the cost of trace data scales with the region of interest. All ranges are inclusive. Listeners should
+ * check time and location before the GTU type, as these are usually available without obtaining the GTU.
+ * @author wjschakel
+ */
+public final class TraceFilter
+{
+
+    /** Filter that accepts all data. */
+    public static final TraceFilter ALL = new TraceFilter(Length.NEGATIVE_INFINITY, Length.POSITIVE_INFINITY, Integer.MIN_VALUE,
+            Integer.MAX_VALUE, new int[0], Duration.NEGATIVE_INFINITY, Duration.POSITIVE_INFINITY);
+
+    /** Start of x-range [m]. */
+    private final double xFrom;
+
+    /** End of x-range [m]. */
+    private final double xTo;
+
+    /** First lane row. */
+    private final int laneFrom;
+
+    /** Last lane row. */
+    private final int laneTo;
+
+    /** Whether a GTU type index is accepted, null if all GTU types are accepted. */
+    private final boolean[] gtuTypes;
+
+    /** Start of time window [s]. */
+    private final double tFrom;
+
+    /** End of time window [s]. */
+    private final double tTo;
+
+    /**
+     * Constructor.
+     * @param xFrom start of x-range
+     * @param xTo end of x-range
+     * @param laneFrom first lane row
+     * @param laneTo last lane row
+     * @param gtuTypes indices of accepted GTU types, empty to accept all GTU types
+     * @param tFrom start of time window
+     * @param tTo end of time window
+     * @throws IllegalArgumentException when a range ends before it starts, or a GTU type index is negative
+     */
+    public TraceFilter(final Length xFrom, final Length xTo, final int laneFrom, final int laneTo, final int[] gtuTypes,
+            final Duration tFrom, final Duration tTo)
+    {
+        Throw.whenNull(xFrom, "xFrom");
+        Throw.whenNull(xTo, "xTo");
+        Throw.whenNull(gtuTypes, "gtuTypes");
+        Throw.whenNull(tFrom, "tFrom");
+        Throw.whenNull(tTo, "tTo");
+        Throw.when(xTo.lt(xFrom), IllegalArgumentException.class, "Start of x-range is beyond its end.");
+        Throw.when(laneTo < laneFrom, IllegalArgumentException.class, "First lane is beyond last lane.");
+        Throw.when(tTo.lt(tFrom), IllegalArgumentException.class, "Start of time window is beyond its end.");
+        for (int type : gtuTypes)
+        {
+            Throw.when(type < 0, IllegalArgumentException.class, "GTU type index %s is negative.", type);
+        }
+        this.xFrom = xFrom.si;
+        this.xTo = xTo.si;
+        this.laneFrom = laneFrom;
+        this.laneTo = laneTo;
+        if (gtuTypes.length == 0)
+        {
+            this.gtuTypes = null;
+        }
+        else
+        {
+            this.gtuTypes = new boolean[Arrays.stream(gtuTypes).max().getAsInt() + 1];
+            for (int type : gtuTypes)
+            {
+                this.gtuTypes[type] = true;
+            }
+        }
+        this.tFrom = tFrom.si;
+        this.tTo = tTo.si;
+    }
+
+    /**
+     * Returns whether the time is in the time window.
+     * @param t time [s]
+     * @return whether the time is in the time window
+     */
+    public boolean acceptsTime(final double t)
+    {
+        return t >= this.tFrom && t <= this.tTo;
+    }
+
+    /**
+     * Returns whether the time window ended before the given time, i.e. no data will be accepted any more.
+     * @param t time [s]
+     * @return whether the time window ended before the given time
+     */
+    public boolean isOver(final double t)
+    {
+        return t > this.tTo;
+    }
+
+    /**
+     * Returns whether the location is in the region.
+     * @param x position [m]
+     * @param lane lane row
+     * @return whether the location is in the region
+     */
+    public boolean acceptsLocation(final double x, final int lane)
+    {
+        return x >= this.xFrom && x <= this.xTo && lane >= this.laneFrom && lane <= this.laneTo;
+    }
+
+    /**
+     * Returns whether the GTU type is accepted.
+     * @param type GTU type index
+     * @return whether the GTU type is accepted
+     */
+    public boolean acceptsGtuType(final int type)
+    {
+        return this.gtuTypes == null || (type >= 0 && type < this.gtuTypes.length && this.gtuTypes[type]);
+    }
+
+    /**
+     * Returns whether the time and location are accepted.
+     * @param t time [s]
+     * @param x position [m]
+     * @param lane lane row
+     * @return whether the time and location are accepted
+     */
+    public boolean accepts(final double t, final double x, final int lane)
+    {
+        return acceptsTime(t) && acceptsLocation(x, lane);
+    }
+
+    @Override
+    public String toString()
+    {
+        return "TraceFilter [x=" + this.xFrom + ".." + this.xTo + ", lane=" + this.laneFrom + ".." + this.laneTo + ", t="
+                + this.tFrom + ".." + this.tTo + ", gtuTypes=" + (this.gtuTypes == null ? "all"
+                        : IntStream.range(0, this.gtuTypes.length).filter((i) -> this.gtuTypes[i]).mapToObj(Integer::toString)
+                                .collect(Collectors.joining(",", "[", "]")))
+                + "]";
+    }
+
+}
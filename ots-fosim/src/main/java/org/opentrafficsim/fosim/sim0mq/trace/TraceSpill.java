@@ -0,0 +1,143 @@
+package org.opentrafficsim.fosim.sim0mq.trace;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import org.djutils.exceptions.Throw;
+import org.opentrafficsim.base.logger.Logger;
+
+/**
+ * Memory budget of trace data, shared by all trace data of a simulation. Once the trace data in memory exceeds the budget,
+ * completed chunks of trace data are spilled to segment files in a directory, one file per chunk. Segment files are deleted
+ * when the trace data is cleared after it was sent. Hence heap use is bounded by the budget, regardless of the length of the
+ * simulation and the frequency at which trace data is requested. Remaining segment files can be deleted at once, e.g. at the
+ * setup of a new simulation.
+ * @author wjschakel
+ */
+public class TraceSpill
+{
+
+    /** Budget of trace data in memory [bytes]. */
+    private final long budget;
+
+    /** Directory of segment files. */
+    private final Path directory;
+
+    /** Trace data in memory [bytes]. */
+    private long allocated = 0;
+
+    /** Number of segments created, used for unique file names. */
+    private long segments = 0;
+
+    /**
+     * Constructor.
+     * @param budget budget of trace data in memory [bytes]
+     * @param directory directory of segment files
+     */
+    public TraceSpill(final long budget, final Path directory)
+    {
+        Throw.when(budget < 0, IllegalArgumentException.class, "Budget should not be negative.");
+        Throw.whenNull(directory, "directory");
+        this.budget = budget;
+        this.directory = directory;
+    }
+
+    /**
+     * Creates a trace spill with segment files in a new temporary directory. The directory and all remaining segment files
+     * are deleted when the JVM shuts down.
+     * @param budget budget of trace data in memory [bytes]
+     * @return trace spill
+     * @throws IOException if the temporary directory cannot be created
+     */
+    public static TraceSpill inTempDirectory(final long budget) throws IOException
+    {
+        TraceSpill spill = new TraceSpill(budget, Files.createTempDirectory("ots-trace"));
+        Runtime.getRuntime().addShutdownHook(new Thread(() ->
+        {
+            spill.deleteSegments();
+            try
+            {
+                Files.deleteIfExists(spill.directory);
+            }
+            catch (IOException ex)
+            {
+                // nothing to do during shutdown
+            }
+        }));
+        return spill;
+    }
+
+    /**
+     * Registers trace data that is allocated in memory.
+     * @param bytes number of bytes
+     */
+    void allocate(final long bytes)
+    {
+        this.allocated += bytes;
+    }
+
+    /**
+     * Registers trace data that is released from memory.
+     * @param bytes number of bytes
+     */
+    void release(final long bytes)
+    {
+        this.allocated -= bytes;
+    }
+
+    /**
+     * Deletes all segment files in the directory. This should only be called when no trace data refers to segment files,
+     * i.e. when all trace data using this spill is cleared or no longer used.
+     */
+    public void deleteSegments()
+    {
+        try (Stream<Path> files = Files.list(this.directory))
+        {
+            files.forEach((segment) ->
+            {
+                try
+                {
+                    Files.deleteIfExists(segment);
+                }
+                catch (IOException ex)
+                {
+                    Logger.ots().warn(ex, "Unable to delete trace segment {}.", segment);
+                }
+            });
+        }
+        catch (IOException ex)
+        {
+            Logger.ots().warn(ex, "Unable to list trace segments in {}.", this.directory);
+        }
+    }
+
+    /**
+     * Returns whether the trace data in memory exceeds the budget.
+     * @return whether the trace data in memory exceeds the budget
+     */
+    boolean isOverBudget()
+    {
+        return this.allocated > this.budget;
+    }
+
+    /**
+     * Returns the path of a new segment file.
+     * @return path of a new segment file
+     */
+    Path newSegment()
+    {
+        return this.directory.resolve("segment_" + (this.segments++) + ".bin");
+    }
+
+    /**
+     * Returns the trace data in memory.
+     * @return trace data in memory [bytes]
+     */
+    public long getAllocated()
+    {
+        return this.allocated;
+    }
+
+}
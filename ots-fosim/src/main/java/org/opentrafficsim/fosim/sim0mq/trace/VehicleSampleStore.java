@@ -0,0 +1,300 @@
+package org.opentrafficsim.fosim.sim0mq.trace;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.djunits.value.vdouble.scalar.Duration;
+import org.djutils.event.Event;
+import org.djutils.event.EventListener;
+import org.djutils.exceptions.Throw;
+import org.opentrafficsim.core.gtu.Gtu;
+import org.opentrafficsim.core.gtu.GtuType;
+import org.opentrafficsim.core.network.Network;
+import org.opentrafficsim.fosim.GtuSlots;
+import org.opentrafficsim.fosim.sim0mq.OtsTransceiver;
+import org.opentrafficsim.road.gtu.lane.LaneBasedGtu;
+import org.opentrafficsim.road.network.lane.Lane;
+import org.opentrafficsim.road.network.lane.LanePosition;
+
+/**
+ * Store of vehicle samples for the Vehicles trace. At each vehicles trace step, a row is written for each GTU in the network
+ * in its final form: t, id, type, origin, destination, lane row and absolute position, and speed. Type, origin and destination
+ * are resolved once per GTU, and lane row and start position of the link once per lane a GTU is on, and are kept in arrays
+ * indexed by GTU slot. The filter of the data is applied to each GTU before its static data is resolved. The samples are
+ * indexed by time, such that the sequence number of the rows of a time can be found.
+ * @author wjschakel
+ */
+public class VehicleSampleStore implements EventListener
+{
+
+    /** Network. */
+    private final Network network;
+
+    /** Slots of GTUs. */
+    private final GtuSlots gtuSlots;
+
+    /** GTU types. */
+    private final List<GtuType> gtuTypes;
+
+    /** OD node name mappings (OTS names are the keys, Fosim numbers the fields). */
+    private final Map<String, Integer> odNumbers;
+
+    /** Data storage. */
+    private final TraceData data;
+
+    /** Step in vehicles trace. */
+    private Duration vehiclesTraceStep;
+
+    /** Whether static data of a GTU is resolved, per slot. */
+    private boolean[] resolved = new boolean[0];
+
+    /** GTU id, per slot. */
+    private int[] gtuId = new int[0];
+
+    /** GTU type index, per slot. */
+    private int[] type = new int[0];
+
+    /** Origin number, per slot. */
+    private int[] origin = new int[0];
+
+    /** Destination number, per slot. */
+    private int[] destination = new int[0];
+
+    /** Lane of which lane row and link start position are resolved, per slot. */
+    private Lane[] lane = new Lane[0];
+
+    /** Lane row, per slot. */
+    private int[] laneRow = new int[0];
+
+    /** Start position of the link of the lane, per slot. */
+    private double[] linkStart = new double[0];
+
+    /** Time of each sample. */
+    private double[] sampleTime = new double[16];
+
+    /** Sequence number of the first row of each sample. */
+    private long[] sampleSequence = new long[16];
+
+    /** Index of first sample in the time index. */
+    private int firstSample = 0;
+
+    /** Number of samples in the time index. */
+    private int samples = 0;
+
+    /**
+     * Constructor. Sampling starts at the next multiple of the vehicles trace step.
+     * @param network network
+     * @param gtuSlots slots of GTUs in the network
+     * @param gtuTypes gtu types from parser
+     * @param odNumbers mappings of OTS to Fosim names
+     * @param data data storage
+     * @param vehiclesTraceStep step in vehicles trace
+     */
+    public VehicleSampleStore(final Network network, final GtuSlots gtuSlots, final List<GtuType> gtuTypes,
+            final Map<String, Integer> odNumbers, final TraceData data, final Duration vehiclesTraceStep)
+    {
+        Throw.whenNull(network, "network");
+        Throw.whenNull(gtuSlots, "gtuSlots");
+        Throw.whenNull(odNumbers, "odNumbers");
+        Throw.whenNull(data, "data");
+        this.network = network;
+        this.gtuSlots = gtuSlots;
+        this.gtuTypes = new ArrayList<>(gtuTypes);
+        this.odNumbers = new LinkedHashMap<>(odNumbers);
+        this.data = data;
+        setVehiclesTraceStep(vehiclesTraceStep);
+        double now = network.getSimulator().getSimulatorTime().si;
+        double step = vehiclesTraceStep.si;
+        network.getSimulator().scheduleEventAbs(Duration.ofSI(Math.ceil(now / step - 1e-6) * step), this, "sample", null);
+        network.addListener(this, Network.GTU_REMOVE_EVENT);
+    }
+
+    /**
+     * Sets the step in the Vehicles trace. This takes effect after the next sample.
+     * @param vehiclesTraceStep step in the Vehicles trace
+     * @return this store for method chaining
+     */
+    public VehicleSampleStore setVehiclesTraceStep(final Duration vehiclesTraceStep)
+    {
+        Throw.whenNull(vehiclesTraceStep, "vehiclesTraceStep");
+        Throw.when(vehiclesTraceStep.si <= 0.0, IllegalArgumentException.class, "Vehicles trace step should be positive.");
+        this.vehiclesTraceStep = vehiclesTraceStep;
+        return this;
+    }
+
+    /**
+     * Returns the data storage.
+     * @return data storage
+     */
+    public TraceData getData()
+    {
+        return this.data;
+    }
+
+    /**
+     * Returns the sequence number of the first row sampled at or after the given time. Samples of which all rows were
+     * discarded from the data are not considered.
+     * @param time time
+     * @return sequence number of the first row sampled at or after the given time
+     */
+    public long getSequence(final Duration time)
+    {
+        trimIndex();
+        int lo = this.firstSample;
+        int hi = this.firstSample + this.samples;
+        while (lo < hi)
+        {
+            int mid = (lo + hi) >>> 1;
+            if (this.sampleTime[mid] < time.si)
+            {
+                lo = mid + 1;
+            }
+            else
+            {
+                hi = mid;
+            }
+        }
+        return lo < this.firstSample + this.samples ? this.sampleSequence[lo] : this.data.getSequence();
+    }
+
+    @Override
+    public void notify(final Event event)
+    {
+        // the slot is still assigned during removal, it is recycled for a next GTU
+        int slot = this.gtuSlots.getSlot((String) event.getContent());
+        if (slot >= 0 && slot < this.resolved.length)
+        {
+            this.resolved[slot] = false;
+            this.lane[slot] = null;
+        }
+    }
+
+    /**
+     * Appends a row to the data for each GTU in the network that is accepted by the filter of the data, and schedules the next
+     * sample until the time window of the filter is over. GTUs on dummy lanes are skipped.
+     */
+    @SuppressWarnings("unused") // used through scheduling
+    private void sample()
+    {
+        Duration now = this.network.getSimulator().getSimulatorTime();
+        TraceFilter filter = this.data.getFilter();
+        if (filter.isOver(now.si))
+        {
+            return;
+        }
+        if (filter.acceptsTime(now.si))
+        {
+            index(now.si, this.data.getSequence());
+            sampleGtus((float) now.si, filter);
+        }
+        this.network.getSimulator().scheduleEventAbs(now.plus(this.vehiclesTraceStep), this, "sample", null);
+    }
+
+    /**
+     * Appends a row to the data for each GTU in the network that is accepted by the filter.
+     * @param t time [s]
+     * @param filter filter
+     */
+    private void sampleGtus(final float t, final TraceFilter filter)
+    {
+        for (Gtu gtu : this.network.getGTUs())
+        {
+            LanePosition position = ((LaneBasedGtu) gtu).getPosition();
+            int slot = this.gtuSlots.getSlot(gtu.getId());
+            ensureCapacity(slot);
+            if (this.lane[slot] != position.lane())
+            {
+                if (position.lane().getId().startsWith("_"))
+                {
+                    continue;
+                }
+                this.lane[slot] = position.lane();
+                this.laneRow[slot] = OtsTransceiver.getLaneRowFromId(position.lane().getId());
+                this.linkStart[slot] = position.lane().getLink().getStartNode().getPoint().x;
+            }
+            double pos = this.linkStart[slot] + position.position().si;
+            if (!filter.acceptsLocation(pos, this.laneRow[slot]))
+            {
+                continue;
+            }
+            if (!this.resolved[slot])
+            {
+                this.gtuId[slot] = Integer.parseInt(gtu.getId());
+                this.type[slot] = this.gtuTypes.indexOf(gtu.getType());
+                this.origin[slot] = this.odNumbers.get(gtu.getStrategicalPlanner().getOrigin().get().getId());
+                this.destination[slot] = this.odNumbers.get(gtu.getStrategicalPlanner().getDestination().get().getId());
+                this.resolved[slot] = true;
+            }
+            if (!filter.acceptsGtuType(this.type[slot]))
+            {
+                continue;
+            }
+            // t, id, type, origin, dest, lane, pos, v
+            this.data.setFloat(0, t).setInt(1, this.gtuId[slot]).setInt(2, this.type[slot]).setInt(3, this.origin[slot])
+                    .setInt(4, this.destination[slot]).setInt(5, this.laneRow[slot]).setFloat(6, (float) pos)
+                    .setFloat(7, (float) gtu.getSpeed().si).addRow();
+        }
+    }
+
+    /**
+     * Adds a sample to the time index, after removing samples of which all rows were discarded.
+     * @param time time of the sample [s]
+     * @param sequence sequence number of the first row of the sample
+     */
+    private void index(final double time, final long sequence)
+    {
+        trimIndex();
+        if (this.firstSample + this.samples == this.sampleTime.length)
+        {
+            // compact, and grow if more than half is in use
+            int length = this.samples > this.sampleTime.length / 2 ? 2 * this.sampleTime.length : this.sampleTime.length;
+            double[] times = new double[length];
+            long[] sequences = new long[length];
+            System.arraycopy(this.sampleTime, this.firstSample, times, 0, this.samples);
+            System.arraycopy(this.sampleSequence, this.firstSample, sequences, 0, this.samples);
+            this.sampleTime = times;
+            this.sampleSequence = sequences;
+            this.firstSample = 0;
+        }
+        this.sampleTime[this.firstSample + this.samples] = time;
+        this.sampleSequence[this.firstSample + this.samples] = sequence;
+        this.samples++;
+    }
+
+    /**
+     * Removes samples from the time index of which all rows were discarded from the data.
+     */
+    private void trimIndex()
+    {
+        long first = this.data.getFirstSequence();
+        while (this.samples > 1 && this.sampleSequence[this.firstSample + 1] <= first)
+        {
+            this.firstSample++;
+            this.samples--;
+        }
+    }
+
+    /**
+     * Makes sure the slot arrays can contain the given slot.
+     * @param slot slot
+     */
+    private void ensureCapacity(final int slot)
+    {
+        if (slot >= this.resolved.length)
+        {
+            int length = Math.max(2 * this.resolved.length, Math.max(slot + 1, 16));
+            this.resolved = Arrays.copyOf(this.resolved, length);
+            this.gtuId = Arrays.copyOf(this.gtuId, length);
+            this.type = Arrays.copyOf(this.type, length);
+            this.origin = Arrays.copyOf(this.origin, length);
+            this.destination = Arrays.copyOf(this.destination, length);
+            this.lane = Arrays.copyOf(this.lane, length);
+            this.laneRow = Arrays.copyOf(this.laneRow, length);
+            this.linkStart = Arrays.copyOf(this.linkStart, length);
+        }
+    }
+
+}
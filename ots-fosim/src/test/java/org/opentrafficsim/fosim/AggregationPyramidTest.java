@@ -0,0 +1,96 @@
+package org.opentrafficsim.fosim;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for {@code AggregationPyramid}.
+ * <p>
+ * Copyright (c) 2023-2024 Delft University of Technology, PO Box 5, 2600 AA, Delft, the Netherlands. All rights reserved. <br>
+ * BSD-style license. See <a href="https://opentrafficsim.org/docs/license.html">OpenTrafficSim License</a>.
+ * </p>
+ * @author <a href="https://github.com/wjschakel">Wouter Schakel</a>
+ */
+public class AggregationPyramidTest
+{
+
+    /** Number of detector periods added. */
+    private static final int PERIODS = 1000;
+
+    /**
+     * Test that sums over any range equal the brute force sum over the individual detector periods.
+     */
+    @Test
+    public void testSum()
+    {
+        Random random = new Random(42L);
+        AggregationPyramid pyramid = new AggregationPyramid(5, 30, 60);
+        double[][] values = new double[4][PERIODS];
+        for (int period = 0; period < PERIODS; period++)
+        {
+            int count = random.nextInt(20);
+            int travelTimeCount = random.nextInt(count + 1);
+            values[AggregationPyramid.COUNT][period] = count;
+            values[AggregationPyramid.SUM_RECIPROCAL_SPEED][period] = count * random.nextDouble() / 10.0;
+            values[AggregationPyramid.TRAVEL_TIME_COUNT][period] = travelTimeCount;
+            values[AggregationPyramid.SUM_TRAVEL_TIME][period] = travelTimeCount * 60.0 * random.nextDouble();
+            pyramid.add(count, values[AggregationPyramid.SUM_RECIPROCAL_SPEED][period], travelTimeCount,
+                    values[AggregationPyramid.SUM_TRAVEL_TIME][period]);
+        }
+        assertEquals(PERIODS, pyramid.getPeriods());
+        for (int i = 0; i < 2000; i++)
+        {
+            int a = random.nextInt(PERIODS + 1);
+            int b = random.nextInt(PERIODS + 1);
+            int from = Math.min(a, b);
+            int to = Math.max(a, b);
+            for (int measure = 0; measure < 4; measure++)
+            {
+                double expected = 0.0;
+                for (int period = from; period < to; period++)
+                {
+                    expected += values[measure][period];
+                }
+                assertEquals(expected, pyramid.getSum(measure, from, to), 1e-9 * (1.0 + Math.abs(expected)),
+                        "Sum of measure " + measure + " over " + from + "-" + to);
+            }
+        }
+        assertEquals(0.0, pyramid.getSum(AggregationPyramid.COUNT, 500, 500), 0.0);
+    }
+
+    /**
+     * Test that the levels are derived from the multiples, and that invalid multiples are rejected.
+     */
+    @Test
+    public void testMultiples()
+    {
+        assertArrayEquals(new int[] {1, 5, 30, 60}, new AggregationPyramid(5, 30, 60).getMultiples());
+        assertArrayEquals(new int[] {1}, new AggregationPyramid().getMultiples());
+        assertThrows(IllegalArgumentException.class, () -> new AggregationPyramid(1));
+        assertThrows(IllegalArgumentException.class, () -> new AggregationPyramid(5, 12));
+        assertThrows(IllegalArgumentException.class, () -> new AggregationPyramid(10, 5));
+    }
+
+    /**
+     * Test that a range outside of the completed detector periods is rejected.
+     */
+    @Test
+    public void testRange()
+    {
+        AggregationPyramid pyramid = new AggregationPyramid(5);
+        for (int period = 0; period < 12; period++)
+        {
+            pyramid.add(1, 0.0, 0, 0.0);
+        }
+        assertEquals(12.0, pyramid.getSum(AggregationPyramid.COUNT, 0, 12), 0.0);
+        assertThrows(IndexOutOfBoundsException.class, () -> pyramid.getSum(AggregationPyramid.COUNT, 0, 13));
+        assertThrows(IndexOutOfBoundsException.class, () -> pyramid.getSum(AggregationPyramid.COUNT, -1, 5));
+        assertThrows(IndexOutOfBoundsException.class, () -> pyramid.getSum(AggregationPyramid.COUNT, 6, 5));
+    }
+
+}
@@ -0,0 +1,91 @@
+package org.opentrafficsim.fosim;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.IntConsumer;
+
+import org.djunits.value.vdouble.scalar.Duration;
+import org.junit.jupiter.api.Test;
+import org.opentrafficsim.core.network.NetworkException;
+import org.opentrafficsim.fosim.batch.HeadlessRun;
+
+/**
+ * Tests for {@code DetectorPeriodClock}.
+ * <p>
+ * Copyright (c) 2023-2024 Delft University of Technology, PO Box 5, 2600 AA, Delft, the Netherlands. All rights reserved. <br>
+ * BSD-style license. See <a href="https://opentrafficsim.org/docs/license.html">OpenTrafficSim License</a>.
+ * </p>
+ * @author <a href="https://github.com/wjschakel">Wouter Schakel</a>
+ */
+public class DetectorPeriodClockTest
+{
+
+    /**
+     * Test that all detectors share one clock, that listeners are notified of each completed period in order at the end of the
+     * period and after all detectors have been advanced, and that a removed listener is no longer notified.
+     * @throws IOException when the .fos file cannot be read
+     * @throws NetworkException when the network cannot be built
+     */
+    @Test
+    public void testPeriods() throws IOException, NetworkException
+    {
+        String fosString = new String(
+                DetectorPeriodClockTest.class.getResourceAsStream("/fos/Afv_21_quick.fos").readAllBytes(),
+                StandardCharsets.UTF_8);
+        List<FosDetector> detectors = new ArrayList<>();
+        List<Integer> periods = new ArrayList<>();
+        List<Double> times = new ArrayList<>();
+        List<Integer> removedPeriods = new ArrayList<>();
+        IntConsumer removed = (period) -> removedPeriods.add(period);
+        int[] periodsAtRemoval = new int[1];
+        new HeadlessRun(fosString, "Period clock test").setEndTime(Duration.ofSI(1000.0))
+                .addAction(Duration.ofSI(1.0), (network) ->
+                {
+                    Collection<FosDetector> all = network.getObjectMap(FosDetector.class).values();
+                    detectors.addAll(all);
+                    DetectorPeriodClock clock = detectors.get(0).getPeriodClock();
+                    clock.addListener((period) ->
+                    {
+                        periods.add(period);
+                        times.add(network.getSimulator().getSimulatorTime().si);
+                        for (FosDetector detector : all)
+                        {
+                            assertEquals(period + 1, detector.getCurrentPeriod(), "Detector not advanced before listener.");
+                        }
+                        assertEquals(period + 1, clock.getCompletedPeriods());
+                    });
+                    clock.addListener(removed);
+                }).addAction(Duration.ofSI(500.0), (network) ->
+                {
+                    DetectorPeriodClock clock = detectors.get(0).getPeriodClock();
+                    clock.removeListener(removed);
+                    periodsAtRemoval[0] = clock.getCompletedPeriods();
+                }).run();
+        assertFalse(detectors.isEmpty());
+
+        DetectorPeriodClock clock = detectors.get(0).getPeriodClock();
+        for (FosDetector detector : detectors)
+        {
+            assertSame(clock, detector.getPeriodClock(), "Detectors do not share a clock.");
+            assertEquals(clock.getCompletedPeriods(), detector.getCurrentPeriod());
+        }
+        assertTrue(periods.size() > 2, "Too few periods.");
+        assertEquals(clock.getCompletedPeriods(), periods.size());
+        for (int i = 0; i < periods.size(); i++)
+        {
+            assertEquals(i, periods.get(i));
+            assertEquals(clock.getFirstPeriod().si + i * clock.getNextPeriods().si, times.get(i), 1e-6);
+        }
+        assertEquals(periodsAtRemoval[0], removedPeriods.size());
+        assertTrue(removedPeriods.size() < periods.size(), "Removed listener notified.");
+    }
+
+}
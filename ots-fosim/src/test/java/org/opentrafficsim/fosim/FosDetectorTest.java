@@ -0,0 +1,98 @@
+package org.opentrafficsim.fosim;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+import org.djunits.value.vdouble.scalar.Duration;
+import org.junit.jupiter.api.Test;
+import org.opentrafficsim.core.network.NetworkException;
+import org.opentrafficsim.fosim.batch.HeadlessRun;
+
+/**
+ * Tests for the passings of {@code FosDetector}, of which the sequence numbers are shared by all detectors of a clock.
+ * <p>
+ * Copyright (c) 2023-2024 Delft University of Technology, PO Box 5, 2600 AA, Delft, the Netherlands. All rights reserved. <br>
+ * BSD-style license. See <a href="https://opentrafficsim.org/docs/license.html">OpenTrafficSim License</a>.
+ * </p>
+ * @author <a href="https://github.com/wjschakel">Wouter Schakel</a>
+ */
+public class FosDetectorTest
+{
+
+    /**
+     * Test that all passings have a unique sequence number over all detectors, and that reading from a sequence number and
+     * clearing before it only affect earlier passings.
+     * @throws IOException when the .fos file cannot be read
+     * @throws NetworkException when the network cannot be built
+     */
+    @Test
+    public void testPassingSequence() throws IOException, NetworkException
+    {
+        String fosString = new String(FosDetectorTest.class.getResourceAsStream("/fos/Afv_21_quick.fos").readAllBytes(),
+                StandardCharsets.UTF_8);
+        long[] cursor = new long[1];
+        List<FosDetector> detectors = new ArrayList<>();
+        new HeadlessRun(fosString, "Detector test").setEndTime(Duration.ofSI(300.0))
+                .addAction(Duration.ofSI(150.0), (network) ->
+                {
+                    detectors.addAll(network.getObjectMap(FosDetector.class).values());
+                    cursor[0] = detectors.get(0).getPeriodClock().getPassingSequence();
+                }).run();
+        assertFalse(detectors.isEmpty());
+        long next = detectors.get(0).getPeriodClock().getPassingSequence();
+        assertTrue(cursor[0] > 0 && next > cursor[0], "No passings before and after the cursor.");
+
+        // every sequence number is used once, by a passing counted by its detector
+        BitSet used = new BitSet();
+        int counted = 0;
+        for (FosDetector detector : detectors)
+        {
+            assertEquals(next, detector.getPeriodClock().getPassingSequence(), "Detectors do not share a clock.");
+            long previous = -1L;
+            PassingLog.Cursor passings = detector.getPassings(0L);
+            while (passings.next())
+            {
+                long sequence = passings.getSequence();
+                assertTrue(sequence > previous && sequence < next);
+                assertFalse(used.get((int) sequence), "Sequence number is used twice.");
+                used.set((int) sequence);
+                previous = sequence;
+            }
+            for (int period = 0; period <= detector.getCurrentPeriod(); period++)
+            {
+                counted += detector.getCount(period);
+            }
+        }
+        assertEquals(next, used.cardinality());
+        assertEquals(next, counted);
+
+        // reading from the cursor returns the later passings only, which remain after clearing
+        for (FosDetector detector : detectors)
+        {
+            int later = 0;
+            PassingLog.Cursor passings = detector.getPassings(cursor[0]);
+            while (passings.next())
+            {
+                assertTrue(passings.getSequence() >= cursor[0]);
+                later++;
+            }
+            detector.clearPassingsBefore(cursor[0]);
+            passings = detector.getPassings(0L);
+            int remaining = 0;
+            while (passings.next())
+            {
+                assertTrue(passings.getSequence() >= cursor[0]);
+                remaining++;
+            }
+            assertEquals(later, remaining);
+        }
+    }
+
+}
@@ -0,0 +1,181 @@
+package org.opentrafficsim.fosim;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.opentrafficsim.core.dsol.OtsSimulator;
+import org.opentrafficsim.core.network.Network;
+import org.opentrafficsim.fosim.GtuSlots.Times;
+import org.opentrafficsim.road.network.RoadNetwork;
+
+/**
+ * Tests for {@code GtuSlots}.
+ * <p>
+ * Copyright (c) 2023-2024 Delft University of Technology, PO Box 5, 2600 AA, Delft, the Netherlands. All rights reserved. <br>
+ * BSD-style license. See <a href="https://opentrafficsim.org/docs/license.html">OpenTrafficSim License</a>.
+ * </p>
+ * @author <a href="https://github.com/wjschakel">Wouter Schakel</a>
+ */
+public class GtuSlotsTest
+{
+
+    /**
+     * Returns a network without simulation, on which GTU events can be fired.
+     * @return network.
+     */
+    private static RoadNetwork createNetwork()
+    {
+        return new RoadNetwork("GTU slots test", new OtsSimulator("GTU slots test"));
+    }
+
+    /**
+     * Test that GTUs get dense slots, and that the slot of a removed GTU is only recycled when the next GTU is added.
+     */
+    @Test
+    public void testRecycling()
+    {
+        RoadNetwork network = createNetwork();
+        GtuSlots slots = new GtuSlots(network, List.of());
+        assertEquals(-1, slots.getSlot("1"));
+        network.fireEvent(Network.GTU_ADD_EVENT, "1");
+        network.fireEvent(Network.GTU_ADD_EVENT, "2");
+        network.fireEvent(Network.GTU_ADD_EVENT, "3");
+        assertEquals(0, slots.getSlot("1"));
+        assertEquals(1, slots.getSlot("2"));
+        assertEquals(2, slots.getSlot("3"));
+        assertEquals(3, slots.getCapacity());
+
+        // the slot remains available to other listeners until the next GTU is added
+        network.fireEvent(Network.GTU_REMOVE_EVENT, "2");
+        assertEquals(1, slots.getSlot("2"));
+        network.fireEvent(Network.GTU_ADD_EVENT, "4");
+        assertEquals(-1, slots.getSlot("2"));
+        assertEquals(1, slots.getSlot("4"));
+        assertEquals(3, slots.getCapacity());
+
+        // multiple removals are recycled at once, and no new slots are created while free slots remain
+        network.fireEvent(Network.GTU_REMOVE_EVENT, "1");
+        network.fireEvent(Network.GTU_REMOVE_EVENT, "3");
+        network.fireEvent(Network.GTU_ADD_EVENT, "5");
+        network.fireEvent(Network.GTU_ADD_EVENT, "6");
+        assertEquals(-1, slots.getSlot("1"));
+        assertEquals(-1, slots.getSlot("3"));
+        assertNotEquals(slots.getSlot("5"), slots.getSlot("6"));
+        assertTrue(slots.getSlot("5") == 0 || slots.getSlot("5") == 2);
+        assertTrue(slots.getSlot("6") == 0 || slots.getSlot("6") == 2);
+        assertEquals(3, slots.getCapacity());
+        network.fireEvent(Network.GTU_ADD_EVENT, "7");
+        assertEquals(3, slots.getSlot("7"));
+        assertEquals(4, slots.getCapacity());
+    }
+
+    /**
+     * Test that the number of slots does not exceed the maximum number of GTUs in the network at the same time.
+     */
+    @Test
+    public void testCapacity()
+    {
+        RoadNetwork network = createNetwork();
+        GtuSlots slots = new GtuSlots(network, List.of());
+        int id = 0;
+        for (int i = 0; i < 1000; i++)
+        {
+            network.fireEvent(Network.GTU_ADD_EVENT, Integer.toString(id++));
+            if (id > 50)
+            {
+                network.fireEvent(Network.GTU_REMOVE_EVENT, Integer.toString(id - 51));
+            }
+        }
+        // at most 51 GTUs, as the removed GTU keeps its slot until the next GTU is added
+        assertTrue(slots.getCapacity() <= 51, "Capacity " + slots.getCapacity() + " exceeds the number of GTUs.");
+    }
+
+    /**
+     * Test that times are stored per slot, and cleared when a slot is recycled.
+     */
+    @Test
+    public void testTimes()
+    {
+        RoadNetwork network = createNetwork();
+        GtuSlots slots = new GtuSlots(network, List.of());
+        Times times = slots.createTimes();
+        assertEquals(Double.NaN, times.get(0), 0.0);
+        network.fireEvent(Network.GTU_ADD_EVENT, "1");
+        network.fireEvent(Network.GTU_ADD_EVENT, "2");
+        times.set(slots.getSlot("1"), 10.0);
+        times.set(slots.getSlot("2"), 20.0);
+        assertEquals(10.0, times.get(slots.getSlot("1")), 0.0);
+        assertEquals(20.0, times.remove(slots.getSlot("2")), 0.0);
+        assertEquals(Double.NaN, times.get(slots.getSlot("2")), 0.0);
+
+        // time of a removed GTU remains until its slot is recycled
+        network.fireEvent(Network.GTU_REMOVE_EVENT, "1");
+        assertEquals(10.0, times.get(slots.getSlot("1")), 0.0);
+        network.fireEvent(Network.GTU_ADD_EVENT, "3");
+        assertEquals(0, slots.getSlot("3"));
+        assertEquals(Double.NaN, times.get(0), 0.0);
+
+        // storage grows beyond the initial length
+        times.set(100, 1.0);
+        assertEquals(1.0, times.get(100), 0.0);
+        assertEquals(Double.NaN, times.get(99), 0.0);
+        assertEquals(Double.NaN, times.get(1000), 0.0);
+
+        // a GTU without slot has no time
+        times.set(slots.getSlot("unknown"), 1.0);
+        assertEquals(Double.NaN, times.get(-1), 0.0);
+        assertEquals(Double.NaN, times.remove(-1), 0.0);
+    }
+
+    /**
+     * Test that numeric ids are resolved once per slot, without failing on ids that are not a number.
+     */
+    @Test
+    public void testIds()
+    {
+        RoadNetwork network = createNetwork();
+        GtuSlots slots = new GtuSlots(network, List.of());
+        for (int i = 0; i < 40; i++)
+        {
+            network.fireEvent(Network.GTU_ADD_EVENT, Integer.toString(1000 + i));
+        }
+        network.fireEvent(Network.GTU_ADD_EVENT, "truck");
+        network.fireEvent(Network.GTU_ADD_EVENT, "-5");
+        network.fireEvent(Network.GTU_ADD_EVENT, "2147483647");
+        network.fireEvent(Network.GTU_ADD_EVENT, "2147483648");
+        for (int i = 0; i < 40; i++)
+        {
+            assertEquals(1000 + i, slots.getGtuId(slots.getSlot(Integer.toString(1000 + i))));
+        }
+        assertEquals(-1, slots.getGtuId(slots.getSlot("truck")));
+        assertEquals(-1, slots.getGtuId(slots.getSlot("-5")));
+        assertEquals(Integer.MAX_VALUE, slots.getGtuId(slots.getSlot("2147483647")));
+        assertEquals(-1, slots.getGtuId(slots.getSlot("2147483648")));
+        // without GTU in the network, the type is unknown
+        assertEquals(-1, slots.getGtuType(slots.getSlot("1000")));
+        assertTrue(slots.getDestinations().isEmpty());
+
+        // a recycled slot gets the id of the next GTU
+        int slot = slots.getSlot("1005");
+        network.fireEvent(Network.GTU_REMOVE_EVENT, "1005");
+        network.fireEvent(Network.GTU_ADD_EVENT, "77");
+        assertEquals(slot, slots.getSlot("77"));
+        assertEquals(77, slots.getGtuId(slot));
+    }
+
+    /**
+     * Test input validation.
+     */
+    @Test
+    public void testInput()
+    {
+        assertThrows(NullPointerException.class, () -> new GtuSlots(null, List.of()));
+        assertThrows(NullPointerException.class, () -> new GtuSlots(createNetwork(), null));
+    }
+
+}
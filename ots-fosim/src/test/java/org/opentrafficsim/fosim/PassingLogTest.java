@@ -0,0 +1,136 @@
+package org.opentrafficsim.fosim;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for {@code PassingLog}.
+ * <p>
+ * Copyright (c) 2023-2024 Delft University of Technology, PO Box 5, 2600 AA, Delft, the Netherlands. All rights reserved. <br>
+ * BSD-style license. See <a href="https://opentrafficsim.org/docs/license.html">OpenTrafficSim License</a>.
+ * </p>
+ * @author <a href="https://github.com/wjschakel">Wouter Schakel</a>
+ */
+public class PassingLogTest
+{
+
+    /** Destinations by index. */
+    private static final List<String> DESTINATIONS = List.of("A", "B", "C");
+
+    /**
+     * Returns a log with passings at sequence numbers 10, 20, ... 1000, i.e. beyond the initial capacity. Odd passings are of
+     * GTU type 1 to destination B without travel time, even passings of GTU type 0 to destination A.
+     * @return log with passings.
+     */
+    private static PassingLog createLog()
+    {
+        PassingLog log = new PassingLog(DESTINATIONS);
+        for (int i = 1; i <= 100; i++)
+        {
+            boolean odd = i % 2 == 1;
+            log.append(10L * i, i, 20.0 + i, odd ? Double.NaN : 5.0 * i, odd ? 1 : 0, 1000 + i, odd ? 1 : 0);
+        }
+        return log;
+    }
+
+    /**
+     * Test that the values of all passings are returned in order of sequence number.
+     */
+    @Test
+    public void testSequence()
+    {
+        PassingLog log = createLog();
+        assertEquals(100, log.size());
+        PassingLog.Cursor cursor = log.from(0L);
+        for (int i = 1; i <= 100; i++)
+        {
+            assertTrue(cursor.next());
+            boolean odd = i % 2 == 1;
+            assertEquals(10L * i, cursor.getSequence());
+            assertEquals(i, cursor.getTime(), 0.0);
+            assertEquals(20.0 + i, cursor.getSpeed(), 0.0);
+            assertEquals(!odd, cursor.hasTravelTime());
+            assertEquals(odd ? Double.NaN : 5.0 * i, cursor.getTravelTime(), 0.0);
+            assertEquals(odd ? 1 : 0, cursor.getGtuType());
+            assertEquals(1000 + i, cursor.getGtuId());
+            assertEquals(odd ? "B" : "A", cursor.getDestination());
+        }
+        assertFalse(cursor.next());
+    }
+
+    /**
+     * Test that a sequence number that is not after the last passing is rejected, and input validation.
+     */
+    @Test
+    public void testOrder()
+    {
+        PassingLog log = createLog();
+        assertThrows(IllegalArgumentException.class, () -> log.append(1000L, 0.0, 0.0, 0.0, 0, 1, 0));
+        assertThrows(IllegalArgumentException.class, () -> log.append(999L, 0.0, 0.0, 0.0, 0, 1, 0));
+        log.append(1001L, 0.0, 0.0, 0.0, 0, 1, 0);
+        assertEquals(101, log.size());
+        assertThrows(NullPointerException.class, () -> new PassingLog(null));
+    }
+
+    /**
+     * Test that a cursor starts at the first passing with at least the given sequence number.
+     */
+    @Test
+    public void testCursor()
+    {
+        PassingLog log = createLog();
+        PassingLog.Cursor cursor = log.from(500L);
+        assertTrue(cursor.next());
+        assertEquals(500L, cursor.getSequence());
+        cursor = log.from(501L);
+        assertTrue(cursor.next());
+        assertEquals(510L, cursor.getSequence());
+        int n = 1;
+        while (cursor.next())
+        {
+            n++;
+        }
+        assertEquals(50, n);
+        assertFalse(log.from(1001L).next());
+    }
+
+    /**
+     * Test that clearing removes exactly the passings before the given sequence number.
+     */
+    @Test
+    public void testClear()
+    {
+        PassingLog log = createLog();
+        log.clearBefore(5L);
+        assertEquals(100, log.size());
+        log.clearBefore(255L);
+        assertEquals(75, log.size());
+        PassingLog.Cursor cursor = log.from(0L);
+        assertTrue(cursor.next());
+        assertEquals(260L, cursor.getSequence());
+        assertEquals(0, cursor.getGtuType());
+        assertEquals("A", cursor.getDestination());
+        assertTrue(cursor.next());
+        assertEquals(270L, cursor.getSequence());
+        assertEquals(1, cursor.getGtuType());
+        assertEquals(1027, cursor.getGtuId());
+
+        // appending after clearing continues in order
+        log.append(1010L, 101.0, 0.0, Double.NaN, 0, 1101, 2);
+        cursor = log.from(1001L);
+        assertTrue(cursor.next());
+        assertEquals("C", cursor.getDestination());
+        assertFalse(cursor.next());
+
+        log.clearBefore(Long.MAX_VALUE);
+        assertEquals(0, log.size());
+        assertFalse(log.from(0L).next());
+    }
+
+}
@@ -0,0 +1,95 @@
+package org.opentrafficsim.fosim.batch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+/**
+ * Tests for {@code FosFileEditor}.
+ * <p>
+ * Copyright (c) 2023-2024 Delft University of Technology, PO Box 5, 2600 AA, Delft, the Netherlands. All rights reserved. <br>
+ * BSD-style license. See <a href="https://opentrafficsim.org/docs/license.html">OpenTrafficSim License</a>.
+ * </p>
+ * @author <a href="https://github.com/wjschakel">Wouter Schakel</a>
+ */
+public class FosFileEditorTest
+{
+
+    /** Contents of a .fos file with only the lines that the editor uses, and a line that should remain as is. */
+    private static final String FOS = String.join("\n", "version: 2.0", "flow  0:     0|02000   900|03600  2400|03600",
+            "random seed: 1", "time step size: 0.50", "maximum simulation time: 2000",
+            "ots param: {\"parameterGroups\":[{\"id\":\"Driver\",\"parameters\":[{\"id\":\"Tmax\",\"value\":[1.2,1.4]}]}]}");
+
+    /**
+     * Test that the end time is derived from the time step size and maximum simulation time.
+     */
+    @Test
+    public void testEndTime()
+    {
+        assertEquals(1000.0, FosFileEditor.getEndTime(FOS).si, 1e-9);
+        assertThrows(IllegalArgumentException.class, () -> FosFileEditor.getEndTime("version: 2.0"));
+    }
+
+    /**
+     * Test that the seed is replaced, and that other lines remain as is.
+     */
+    @Test
+    public void testSeed()
+    {
+        List<String> lines = FosFileEditor.setSeed(FOS, 42).lines().toList();
+        assertEquals("random seed: 42", lines.get(2));
+        assertEquals(FOS.lines().toList().subList(3, 6), lines.subList(3, 6));
+        assertEquals("version: 2.0", lines.get(0));
+    }
+
+    /**
+     * Test that a parameter value is set for all vehicle types, and that a parameter not in the file is rejected.
+     */
+    @Test
+    public void testParameters()
+    {
+        List<ParameterRange> ranges = List.of(new ParameterRange("Driver", "Tmax", 1.0, 2.0));
+        String edited = FosFileEditor.setParameters(FOS, ranges, new double[] {1.7});
+        String line = edited.lines().filter((l) -> l.startsWith("ots param")).findFirst().get();
+        JsonObject json = JsonParser.parseString(line.substring(line.indexOf(':') + 1)).getAsJsonObject();
+        JsonObject parameter = json.getAsJsonArray("parameterGroups").get(0).getAsJsonObject().getAsJsonArray("parameters")
+                .get(0).getAsJsonObject();
+        assertEquals(1.7, parameter.getAsJsonArray("value").get(0).getAsDouble(), 0.0);
+        assertEquals(1.7, parameter.getAsJsonArray("value").get(1).getAsDouble(), 0.0);
+
+        assertThrows(IllegalArgumentException.class, () -> FosFileEditor.setParameters(FOS,
+                List.of(new ParameterRange("Driver", "Tmin", 0.1, 1.0)), new double[] {0.5}));
+        assertThrows(IllegalArgumentException.class, () -> FosFileEditor.setParameters(FOS, ranges, new double[0]));
+        assertThrows(IllegalArgumentException.class,
+                () -> FosFileEditor.setParameters("random seed: 1", ranges, new double[] {1.7}));
+    }
+
+    /**
+     * Test that demand before the given time remains equal, and that demand is scaled after a short step.
+     */
+    @Test
+    public void testScaleDemand()
+    {
+        String line = FosFileEditor.scaleDemand(FOS, 450.0, 0.5).lines().toList().get(1);
+        assertTrue(line.startsWith("flow  0:"));
+        String[] fields = line.substring(line.indexOf(':') + 1).trim().split("\\s+");
+        double scaled = 0.5 * (2000.0 + 450.001 / 900.0 * 1600.0);
+        double[][] expected = {{0.0, 2000.0}, {450.0, 2800.0}, {450.001, scaled}, {900.0, 1800.0}, {2400.0, 1800.0}};
+        assertEquals(expected.length, fields.length);
+        for (int i = 0; i < fields.length; i++)
+        {
+            String[] pair = fields[i].split("\\|");
+            assertEquals(expected[i][0], Double.parseDouble(pair[0]), 1e-9);
+            assertEquals(expected[i][1], Double.parseDouble(pair[1]), 1e-6);
+        }
+        assertThrows(IllegalArgumentException.class, () -> FosFileEditor.scaleDemand(FOS, 450.0, -1.0));
+    }
+
+}
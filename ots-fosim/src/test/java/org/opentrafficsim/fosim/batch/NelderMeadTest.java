@@ -0,0 +1,150 @@
+package org.opentrafficsim.fosim.batch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for {@code NelderMead}.
+ * <p>
+ * Copyright (c) 2023-2024 Delft University of Technology, PO Box 5, 2600 AA, Delft, the Netherlands. All rights reserved. <br>
+ * BSD-style license. See <a href="https://opentrafficsim.org/docs/license.html">OpenTrafficSim License</a>.
+ * </p>
+ * @author <a href="https://github.com/wjschakel">Wouter Schakel</a>
+ */
+public class NelderMeadTest
+{
+
+    /**
+     * Returns an evaluator of a quadratic function with given minimum, which stores all evaluated points.
+     * @param minimum point of the minimum.
+     * @param evaluated list to store evaluated points in.
+     * @return evaluator.
+     */
+    private static Function<List<double[]>, double[]> quadratic(final double[] minimum, final List<double[]> evaluated)
+    {
+        return (points) ->
+        {
+            double[] values = new double[points.size()];
+            for (int i = 0; i < points.size(); i++)
+            {
+                double[] point = points.get(i);
+                evaluated.add(point);
+                for (int j = 0; j < point.length; j++)
+                {
+                    values[i] += (point[j] - minimum[j]) * (point[j] - minimum[j]);
+                }
+            }
+            return values;
+        };
+    }
+
+    /**
+     * Runs iterations until the spread is negligible.
+     * @param nelderMead optimizer.
+     */
+    private static void converge(final NelderMead nelderMead)
+    {
+        for (int i = 0; i < 500 && nelderMead.getSpread() > 1e-14; i++)
+        {
+            nelderMead.iterate();
+        }
+    }
+
+    /**
+     * Test that the minimum of a quadratic function inside the unit hypercube is found.
+     */
+    @Test
+    public void testMinimum()
+    {
+        NelderMead nelderMead = new NelderMead(quadratic(new double[] {0.3, 0.7, 0.5}, new ArrayList<>()),
+                new double[] {0.9, 0.1, 0.2}, 0.1);
+        converge(nelderMead);
+        double[] best = nelderMead.getBestPoint();
+        assertEquals(0.3, best[0], 1e-4);
+        assertEquals(0.7, best[1], 1e-4);
+        assertEquals(0.5, best[2], 1e-4);
+        assertEquals(0.0, nelderMead.getBestValue(), 1e-8);
+    }
+
+    /**
+     * Test that all points are in the unit hypercube, and that a minimum outside of it is found on its boundary.
+     */
+    @Test
+    public void testClamp()
+    {
+        List<double[]> evaluated = new ArrayList<>();
+        NelderMead nelderMead = new NelderMead(quadratic(new double[] {1.5, -0.2}, evaluated), new double[] {0.5, 0.5}, 0.2);
+        converge(nelderMead);
+        for (double[] point : evaluated)
+        {
+            for (double value : point)
+            {
+                assertTrue(value >= 0.0 && value <= 1.0, "Point outside of unit hypercube.");
+            }
+        }
+        assertEquals(1.0, nelderMead.getBestPoint()[0], 1e-4);
+        assertEquals(0.0, nelderMead.getBestPoint()[1], 1e-4);
+    }
+
+    /**
+     * Test that the initial simplex and the candidates of each iteration are evaluated in batches, and counted.
+     */
+    @Test
+    public void testBatches()
+    {
+        List<Integer> batches = new ArrayList<>();
+        Function<List<double[]>, double[]> quadratic = quadratic(new double[] {0.2, 0.2}, new ArrayList<>());
+        NelderMead nelderMead = new NelderMead((points) ->
+        {
+            batches.add(points.size());
+            return quadratic.apply(points);
+        }, new double[] {0.8, 0.8}, 0.1);
+        assertEquals(List.of(3), batches);
+        assertEquals(3, nelderMead.getEvaluations());
+        nelderMead.iterate();
+        // reflection, expansion and both contractions, possibly followed by a shrink of the 2 other vertices
+        assertEquals(4, (int) batches.get(1));
+        assertEquals(batches.stream().mapToInt((n) -> n).sum(), nelderMead.getEvaluations());
+    }
+
+    /**
+     * Test that NaN is treated as infinitely bad.
+     */
+    @Test
+    public void testNaN()
+    {
+        Function<List<double[]>, double[]> quadratic = quadratic(new double[] {0.9}, new ArrayList<>());
+        NelderMead nelderMead = new NelderMead((points) ->
+        {
+            double[] values = quadratic.apply(points);
+            for (int i = 0; i < values.length; i++)
+            {
+                values[i] = points.get(i)[0] > 0.5 ? Double.NaN : values[i];
+            }
+            return values;
+        }, new double[] {0.1}, 0.1);
+        converge(nelderMead);
+        assertFalse(nelderMead.getBestPoint()[0] > 0.5);
+        assertEquals(0.5, nelderMead.getBestPoint()[0], 1e-3);
+    }
+
+    /**
+     * Test input validation.
+     */
+    @Test
+    public void testInput()
+    {
+        assertThrows(NullPointerException.class, () -> new NelderMead(null, new double[] {0.5}, 0.1));
+        assertThrows(IllegalArgumentException.class,
+                () -> new NelderMead(quadratic(new double[] {0.5}, new ArrayList<>()), new double[] {0.5}, 0.0));
+    }
+
+}
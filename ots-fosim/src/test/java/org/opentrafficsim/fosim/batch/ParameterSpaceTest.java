@@ -0,0 +1,104 @@
+package org.opentrafficsim.fosim.batch;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.opentrafficsim.fosim.parameters.ParameterDefinitions;
+
+import nl.tudelft.simulation.jstats.streams.MersenneTwister;
+
+/**
+ * Tests for {@code ParameterRange} and {@code ParameterSpace}.
+ * <p>
+ * Copyright (c) 2023-2024 Delft University of Technology, PO Box 5, 2600 AA, Delft, the Netherlands. All rights reserved. <br>
+ * BSD-style license. See <a href="https://opentrafficsim.org/docs/license.html">OpenTrafficSim License</a>.
+ * </p>
+ * @author <a href="https://github.com/wjschakel">Wouter Schakel</a>
+ */
+public class ParameterSpaceTest
+{
+
+    /**
+     * Test that ranges are derived from the limits of the parameter definitions, or from an explicit range.
+     */
+    @Test
+    public void testRange()
+    {
+        ParameterRange a = ParameterRange.of("a");
+        assertEquals(ParameterDefinitions.FOLLOWING_GROUP_ID, a.getGroupId());
+        assertEquals("a", a.getParameterId());
+        assertEquals(0.0, a.getMinimum(), 0.0);
+        assertEquals(8.0, a.getMaximum(), 0.0);
+        assertEquals(2.0, a.getValue(0.25), 1e-9);
+
+        // minimum refers to Tmin, which is resolved with its default value
+        ParameterRange tMax = ParameterRange.of("Tmax");
+        assertEquals(ParameterDefinitions.DRIVER_GROUP_ID, tMax.getGroupId());
+        assertEquals(0.56, tMax.getMinimum(), 1e-9);
+        assertEquals(10.0, tMax.getMaximum(), 0.0);
+
+        ParameterRange explicit = ParameterRange.of(" s0 = 1.5 : 2.5");
+        assertEquals("s0", explicit.getParameterId());
+        assertEquals(1.5, explicit.getMinimum(), 0.0);
+        assertEquals(2.5, explicit.getMaximum(), 0.0);
+
+        assertThrows(IllegalArgumentException.class, () -> ParameterRange.of("unknown"));
+        assertThrows(IllegalArgumentException.class, () -> ParameterRange.of("s0=1.5"));
+        assertThrows(IllegalArgumentException.class, () -> ParameterRange.of("s0=2.5:1.5"));
+    }
+
+    /**
+     * Test that a full factorial grid contains all combinations of levels, with the last parameter varying fastest.
+     */
+    @Test
+    public void testGrid()
+    {
+        ParameterSpace space = new ParameterSpace(
+                List.of(new ParameterRange("g", "x", 0.0, 1.0), new ParameterRange("g", "y", 10.0, 20.0)));
+        assertEquals(2, space.getDimensions());
+        List<double[]> grid = space.grid(3);
+        assertEquals(9, grid.size());
+        assertArrayEquals(new double[] {0.0, 10.0}, grid.get(0), 1e-9);
+        assertArrayEquals(new double[] {0.0, 15.0}, grid.get(1), 1e-9);
+        assertArrayEquals(new double[] {0.5, 10.0}, grid.get(3), 1e-9);
+        assertArrayEquals(new double[] {1.0, 20.0}, grid.get(8), 1e-9);
+        assertEquals(List.of("x", "y"), List.copyOf(space.asMap(grid.get(8)).keySet()));
+        assertEquals(20.0, space.asMap(grid.get(8)).get("y"), 0.0);
+        assertThrows(IllegalArgumentException.class, () -> space.grid(1));
+        assertThrows(IllegalArgumentException.class, () -> space.getValues(new double[] {0.5}));
+        assertThrows(IllegalArgumentException.class, () -> new ParameterSpace(List.of()));
+    }
+
+    /**
+     * Test that a Latin-hypercube sample has exactly one sample in each stratum of each parameter.
+     */
+    @Test
+    public void testLatinHypercube()
+    {
+        ParameterSpace space = new ParameterSpace(
+                List.of(new ParameterRange("g", "x", 0.0, 1.0), new ParameterRange("g", "y", -5.0, 5.0)));
+        int n = 20;
+        List<double[]> samples = space.latinHypercube(n, new MersenneTwister(3L));
+        assertEquals(n, samples.size());
+        for (int j = 0; j < space.getDimensions(); j++)
+        {
+            ParameterRange range = space.getRanges().get(j);
+            boolean[] stratumUsed = new boolean[n];
+            for (double[] sample : samples)
+            {
+                double fraction = (sample[j] - range.getMinimum()) / (range.getMaximum() - range.getMinimum());
+                assertTrue(fraction >= 0.0 && fraction < 1.0, "Sample outside of range.");
+                int stratum = (int) (fraction * n);
+                assertTrue(!stratumUsed[stratum], "Stratum " + stratum + " of " + range.getParameterId() + " used twice.");
+                stratumUsed[stratum] = true;
+            }
+        }
+        assertThrows(IllegalArgumentException.class, () -> space.latinHypercube(0, new MersenneTwister(3L)));
+    }
+
+}
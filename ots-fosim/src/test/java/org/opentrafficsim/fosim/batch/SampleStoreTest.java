@@ -0,0 +1,80 @@
+package org.opentrafficsim.fosim.batch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for {@code SampleStore}.
+ * <p>
+ * Copyright (c) 2023-2024 Delft University of Technology, PO Box 5, 2600 AA, Delft, the Netherlands. All rights reserved. <br>
+ * BSD-style license. See <a href="https://opentrafficsim.org/docs/license.html">OpenTrafficSim License</a>.
+ * </p>
+ * @author <a href="https://github.com/wjschakel">Wouter Schakel</a>
+ */
+public class SampleStoreTest
+{
+
+    /** KPIs. */
+    private static final List<Kpi> KPIS = List.of(Kpi.CAPACITY, Kpi.SPEED);
+
+    /**
+     * Test that values are averaged over available seeds, and that a study is resumed from the file, skipping a partially
+     * written line.
+     * @throws IOException when the file cannot be read or written
+     */
+    @Test
+    public void testResume() throws IOException
+    {
+        Path path = Files.createTempFile("samples", ".csv");
+        try
+        {
+            try (SampleStore store = new SampleStore(path, "morris k=2", KPIS))
+            {
+                store.add(0, 1, new double[] {4000.0, 80.0});
+                store.add(0, 2, new double[] {4200.0, Double.NaN});
+                store.add(1, 1, new double[] {3800.0, 70.0});
+                assertTrue(store.contains(0, 2));
+                assertFalse(store.contains(1, 2));
+                assertEquals(4100.0, store.getMean(0, Kpi.CAPACITY, new int[] {1, 2}), 1e-9);
+                assertEquals(80.0, store.getMean(0, Kpi.SPEED, new int[] {1, 2}), 1e-9);
+                assertTrue(Double.isNaN(store.getMean(1, Kpi.SPEED, new int[] {2})));
+            }
+            // interrupted while writing a line
+            Files.writeString(path, "1,2,39", StandardOpenOption.APPEND);
+
+            try (SampleStore store = new SampleStore(path, "morris k=2", KPIS))
+            {
+                assertTrue(store.contains(0, 1));
+                assertTrue(store.contains(1, 1));
+                assertFalse(store.contains(1, 2));
+                assertEquals(4100.0, store.getMean(0, Kpi.CAPACITY, new int[] {1, 2}), 1e-9);
+                store.add(1, 2, new double[] {3900.0, 75.0});
+            }
+            List<String> lines = Files.readAllLines(path);
+            assertEquals("# morris k=2", lines.get(0));
+            assertEquals("point,seed,capacity,speed", lines.get(1));
+            assertEquals("1,2,3900.0,75.0", lines.get(lines.size() - 1));
+
+            try (SampleStore store = new SampleStore(path, "morris k=2", KPIS))
+            {
+                assertEquals(3850.0, store.getMean(1, Kpi.CAPACITY, new int[] {1, 2}), 1e-9);
+            }
+            assertThrows(IllegalStateException.class, () -> new SampleStore(path, "sobol k=2", KPIS));
+        }
+        finally
+        {
+            Files.deleteIfExists(path);
+        }
+    }
+
+}
@@ -0,0 +1,93 @@
+package org.opentrafficsim.fosim.batch;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import nl.tudelft.simulation.jstats.streams.MersenneTwister;
+
+/**
+ * Tests for the designs of {@code SensitivityAnalysis}.
+ * <p>
+ * Copyright (c) 2023-2024 Delft University of Technology, PO Box 5, 2600 AA, Delft, the Netherlands. All rights reserved. <br>
+ * BSD-style license. See <a href="https://opentrafficsim.org/docs/license.html">OpenTrafficSim License</a>.
+ * </p>
+ * @author <a href="https://github.com/wjschakel">Wouter Schakel</a>
+ */
+public class SensitivityAnalysisTest
+{
+
+    /**
+     * Test that each Morris trajectory changes each parameter once by delta, on the grid and within the unit hypercube.
+     */
+    @Test
+    public void testMorris()
+    {
+        int k = 3;
+        int r = 10;
+        int p = 4;
+        double delta = p / (2.0 * (p - 1));
+        List<double[]> design = SensitivityAnalysis.morris(k, r, p, new MersenneTwister(5L));
+        assertEquals(r * (k + 1), design.size());
+        for (int t = 0; t < r; t++)
+        {
+            boolean[] changed = new boolean[k];
+            for (int point = t * (k + 1); point < (t + 1) * (k + 1); point++)
+            {
+                double[] x = design.get(point);
+                for (int j = 0; j < k; j++)
+                {
+                    assertTrue(x[j] >= 0.0 && x[j] <= 1.0 + 1e-9, "Point outside of unit hypercube.");
+                    double level = x[j] * (p - 1);
+                    assertEquals(Math.round(level), level, 1e-9, "Point not on the grid.");
+                }
+                if (point > t * (k + 1))
+                {
+                    double[] previous = design.get(point - 1);
+                    int n = 0;
+                    for (int j = 0; j < k; j++)
+                    {
+                        if (x[j] != previous[j])
+                        {
+                            n++;
+                            assertEquals(delta, Math.abs(x[j] - previous[j]), 1e-9);
+                            assertTrue(!changed[j], "Parameter changed twice in a trajectory.");
+                            changed[j] = true;
+                        }
+                    }
+                    assertEquals(1, n, "Not exactly one parameter changed.");
+                }
+            }
+        }
+        assertThrows(IllegalArgumentException.class, () -> SensitivityAnalysis.morris(k, r, 3, new MersenneTwister(5L)));
+    }
+
+    /**
+     * Test that each Saltelli block consists of A, B, and A with one value of B for each parameter.
+     */
+    @Test
+    public void testSaltelli()
+    {
+        int k = 3;
+        int n = 5;
+        List<double[]> design = SensitivityAnalysis.saltelli(k, n, new MersenneTwister(5L));
+        assertEquals(n * (k + 2), design.size());
+        for (int s = 0; s < n; s++)
+        {
+            double[] a = design.get(s * (k + 2));
+            double[] b = design.get(s * (k + 2) + 1);
+            for (int i = 0; i < k; i++)
+            {
+                double[] expected = a.clone();
+                expected[i] = b[i];
+                assertArrayEquals(expected, design.get(s * (k + 2) + 2 + i), 0.0);
+            }
+        }
+    }
+
+}
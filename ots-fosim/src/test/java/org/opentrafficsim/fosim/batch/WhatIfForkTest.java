@@ -0,0 +1,104 @@
+package org.opentrafficsim.fosim.batch;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.djunits.unit.LengthUnit;
+import org.djunits.value.vdouble.scalar.Duration;
+import org.djunits.value.vdouble.scalar.Length;
+import org.junit.jupiter.api.Test;
+import org.opentrafficsim.core.network.NetworkException;
+import org.opentrafficsim.fosim.batch.WhatIfFork.Mutation;
+import org.opentrafficsim.fosim.batch.WhatIfFork.Variant;
+import org.opentrafficsim.fosim.batch.WhatIfFork.VariantResult;
+
+/**
+ * Tests for {@code WhatIfFork}.
+ * <p>
+ * Copyright (c) 2023-2024 Delft University of Technology, PO Box 5, 2600 AA, Delft, the Netherlands. All rights reserved. <br>
+ * BSD-style license. See <a href="https://opentrafficsim.org/docs/license.html">OpenTrafficSim License</a>.
+ * </p>
+ * @author <a href="https://github.com/wjschakel">Wouter Schakel</a>
+ */
+public class WhatIfForkTest
+{
+
+    /**
+     * Returns the contents of a quick .fos file.
+     * @return contents of a quick .fos file
+     * @throws IOException when the file cannot be read
+     */
+    private static String getFosString() throws IOException
+    {
+        return new String(WhatIfForkTest.class.getResourceAsStream("/fos/Afv_21_quick.fos").readAllBytes(),
+                StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Test that variants are run asynchronously on an executor with fewer threads than variants, with the reference variant
+     * first and results that do not depend on the executor.
+     * @throws IOException when the file cannot be read
+     * @throws NetworkException when a variant fails
+     * @throws InterruptedException when interrupted while waiting for the results
+     * @throws ExecutionException when a variant fails
+     * @throws TimeoutException when the variants do not complete in time
+     */
+    @Test
+    public void testRunAsync()
+            throws IOException, NetworkException, InterruptedException, ExecutionException, TimeoutException
+    {
+        WhatIfFork fork = new WhatIfFork(getFosString(), Duration.ofSI(60.0), Duration.ofSI(120.0));
+        List<Variant> variants = List.of(new Variant(Mutation.SPEED_LIMIT, 0, 1, new Length(1.0, LengthUnit.KILOMETER), 50.0),
+                new Variant(Mutation.DEMAND, 0, 0, Length.ZERO, 0.5));
+        ExecutorService single = Executors.newSingleThreadExecutor();
+        ExecutorService pool = Executors.newFixedThreadPool(3);
+        try
+        {
+            // a single thread would block forever if it waited for the other variants
+            List<VariantResult> sequential = fork.runAsync(variants, single).get(5, TimeUnit.MINUTES);
+            List<VariantResult> parallel = fork.run(variants, pool);
+            assertEquals(3, sequential.size());
+            assertEquals(3, parallel.size());
+            assertEquals(Mutation.NONE, sequential.get(0).variant().mutation());
+            assertEquals(variants.get(0), sequential.get(1).variant());
+            assertEquals(variants.get(1), sequential.get(2).variant());
+            for (int i = 0; i < sequential.size(); i++)
+            {
+                assertArrayEquals(sequential.get(i).flow(), parallel.get(i).flow(), "Variants are not deterministic.");
+                assertEquals(sequential.get(i).gtuCount(), parallel.get(i).gtuCount());
+            }
+            assertTrue(sequential.get(0).gtuCount() > 0, "No vehicles in the network at the horizon.");
+        }
+        finally
+        {
+            single.shutdownNow();
+            pool.shutdownNow();
+            pool.awaitTermination(1, TimeUnit.MINUTES);
+        }
+    }
+
+    /**
+     * Test that a horizon that is not after the fork time or after the end of the replication is rejected.
+     * @throws IOException when the file cannot be read
+     */
+    @Test
+    public void testHorizon() throws IOException
+    {
+        String fosString = getFosString();
+        assertThrows(IllegalArgumentException.class, () -> new WhatIfFork(fosString, Duration.ofSI(60.0), Duration.ofSI(60.0)));
+        assertThrows(IllegalArgumentException.class,
+                () -> new WhatIfFork(fosString, Duration.ofSI(60.0), Duration.ofSI(1e6)));
+    }
+
+}
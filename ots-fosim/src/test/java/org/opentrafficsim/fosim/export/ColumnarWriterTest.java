@@ -0,0 +1,212 @@
+package org.opentrafficsim.fosim.export;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import org.junit.jupiter.api.Test;
+import org.opentrafficsim.fosim.export.ColumnarWriter.Column;
+import org.opentrafficsim.fosim.export.ColumnarWriter.Type;
+import org.opentrafficsim.fosim.sim0mq.trace.Trace.ColumnType;
+import org.opentrafficsim.fosim.sim0mq.trace.TraceData;
+
+/**
+ * Tests for {@code ColumnarWriter}. Files are written, and read back according to the documented format.
+ * <p>
+ * Copyright (c) 2023-2024 Delft University of Technology, PO Box 5, 2600 AA, Delft, the Netherlands. All rights reserved. <br>
+ * BSD-style license. See <a href="https://opentrafficsim.org/docs/license.html">OpenTrafficSim License</a>.
+ * </p>
+ * @author <a href="https://github.com/wjschakel">Wouter Schakel</a>
+ */
+public class ColumnarWriterTest
+{
+
+    /** Number of rows, which is more than one block. */
+    private static final int ROWS = 70000;
+
+    /**
+     * Test that rows appended one by one are read back, with the header.
+     * @throws IOException on file error
+     * @throws DataFormatException on invalid compressed data
+     */
+    @Test
+    public void testRows() throws IOException, DataFormatException
+    {
+        Path path = Files.createTempFile("ots-columnar-test", ".bin");
+        try
+        {
+            Map<String, String> metadata = new LinkedHashMap<>();
+            metadata.put("source", "test.fos");
+            metadata.put("seed", "1");
+            try (ColumnarWriter writer = new ColumnarWriter(path, metadata,
+                    List.of(new Column("t", Type.FLOAT32, "s"), new Column("id", Type.INT32, ""))))
+            {
+                for (int i = 0; i < ROWS; i++)
+                {
+                    writer.setFloat(0, 0.5f * i).setInt(1, -i).addRow();
+                }
+            }
+            Table table = read(path);
+            assertEquals(metadata, table.metadata());
+            assertEquals(List.of(new Column("t", Type.FLOAT32, "s"), new Column("id", Type.INT32, "")), table.columns());
+            assertEquals(List.of(65536, ROWS - 65536), table.blocks());
+            for (int i = 0; i < ROWS; i++)
+            {
+                assertEquals(0.5f * i, table.values().get(0).getFloat(4 * i), 0.0f);
+                assertEquals(-i, table.values().get(1).getInt(4 * i));
+            }
+        }
+        finally
+        {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    /**
+     * Test that trace data is written after buffered rows, and that columns without any value are written as zeros.
+     * @throws IOException on file error
+     * @throws DataFormatException on invalid compressed data
+     */
+    @Test
+    public void testTraceData() throws IOException, DataFormatException
+    {
+        Path path = Files.createTempFile("ots-columnar-test", ".bin");
+        try
+        {
+            TraceData data = new TraceData(ColumnType.DURATION, ColumnType.INTEGER, ColumnType.SPEED);
+            for (int i = 0; i < 5000; i++)
+            {
+                data.setFloat(0, i).setInt(1, i % 7).setFloat(2, 30.0f).addRow();
+            }
+            try (ColumnarWriter writer = ColumnarWriter.forTrace(path, Map.of(), new String[] {"t", "lane", "v"},
+                    new ColumnType[] {ColumnType.DURATION, ColumnType.INTEGER, ColumnType.SPEED}))
+            {
+                writer.setInt(1, 99).addRow();
+                writer.write(data);
+            }
+            Table table = read(path);
+            assertEquals(List.of(new Column("t", Type.FLOAT32, "s"), new Column("lane", Type.INT32, ""),
+                    new Column("v", Type.FLOAT32, "m/s")), table.columns());
+            assertEquals(List.of(1, 5000), table.blocks());
+            assertEquals(0.0f, table.values().get(0).getFloat(0), 0.0f);
+            assertEquals(99, table.values().get(1).getInt(0));
+            assertEquals(0.0f, table.values().get(2).getFloat(0), 0.0f);
+            for (int i = 0; i < 5000; i++)
+            {
+                assertEquals(i, table.values().get(0).getFloat(4 * (i + 1)), 0.0f);
+                assertEquals(i % 7, table.values().get(1).getInt(4 * (i + 1)));
+                assertEquals(30.0f, table.values().get(2).getFloat(4 * (i + 1)), 0.0f);
+            }
+        }
+        finally
+        {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    /**
+     * Test that values that do not match the column type are rejected.
+     * @throws IOException on file error
+     */
+    @Test
+    public void testTypes() throws IOException
+    {
+        Path path = Files.createTempFile("ots-columnar-test", ".bin");
+        try
+        {
+            try (ColumnarWriter writer = new ColumnarWriter(path, Map.of(), List.of(new Column("id", Type.INT32, ""))))
+            {
+                assertThrows(IllegalArgumentException.class, () -> writer.setFloat(0, 1.0f));
+                TraceData data = new TraceData(ColumnType.LENGTH);
+                data.setFloat(0, 1.0f).addRow();
+                assertThrows(IllegalArgumentException.class, () -> writer.write(data));
+                assertThrows(IllegalArgumentException.class, () -> writer.write(new TraceData(ColumnType.INTEGER,
+                        ColumnType.INTEGER)));
+            }
+            assertThrows(IllegalArgumentException.class, () -> ColumnarWriter.forTrace(path, Map.of(), new String[] {"t"},
+                    new ColumnType[] {ColumnType.DURATION, ColumnType.INTEGER}));
+        }
+        finally
+        {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    /**
+     * Reads a file.
+     * @param path path of file
+     * @return table in the file
+     * @throws IOException on file error
+     * @throws DataFormatException on invalid compressed data
+     */
+    private static Table read(final Path path) throws IOException, DataFormatException
+    {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path))))
+        {
+            assertEquals(0x464F5343, in.readInt());
+            assertEquals(1, in.readInt());
+            Map<String, String> metadata = new LinkedHashMap<>();
+            int m = in.readInt();
+            for (int i = 0; i < m; i++)
+            {
+                metadata.put(in.readUTF(), in.readUTF());
+            }
+            List<Column> columns = new ArrayList<>();
+            int n = in.readInt();
+            for (int i = 0; i < n; i++)
+            {
+                columns.add(new Column(in.readUTF(), Type.values()[in.readByte()], in.readUTF()));
+            }
+            List<Integer> blocks = new ArrayList<>();
+            List<ByteBuffer> values = new ArrayList<>();
+            for (int i = 0; i < n; i++)
+            {
+                values.add(ByteBuffer.allocate(4 * ROWS + 4));
+            }
+            Inflater inflater = new Inflater();
+            for (int rows = in.readInt(); rows > 0; rows = in.readInt())
+            {
+                blocks.add(rows);
+                for (int i = 0; i < n; i++)
+                {
+                    byte[] compressed = new byte[in.readInt()];
+                    in.readFully(compressed);
+                    byte[] bytes = new byte[4 * rows];
+                    inflater.reset();
+                    inflater.setInput(compressed);
+                    assertEquals(bytes.length, inflater.inflate(bytes));
+                    assertTrue(inflater.finished());
+                    values.get(i).put(bytes);
+                }
+            }
+            inflater.end();
+            assertEquals(-1, in.read());
+            return new Table(metadata, columns, blocks, values);
+        }
+    }
+
+    /**
+     * Table read from a file.
+     * @param metadata metadata
+     * @param columns columns
+     * @param blocks number of rows per block
+     * @param values big-endian values of all blocks per column
+     */
+    private record Table(Map<String, String> metadata, List<Column> columns, List<Integer> blocks, List<ByteBuffer> values)
+    {
+    }
+
+}
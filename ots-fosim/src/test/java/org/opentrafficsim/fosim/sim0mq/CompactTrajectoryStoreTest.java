@@ -0,0 +1,188 @@
+package org.opentrafficsim.fosim.sim0mq;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.djunits.value.vdouble.scalar.Duration;
+import org.djunits.value.vdouble.scalar.Length;
+import org.junit.jupiter.api.Test;
+import org.opentrafficsim.fosim.sim0mq.CompactTrajectoryStore.Reader;
+import org.opentrafficsim.fosim.sim0mq.CompactTrajectoryStore.Series;
+
+/**
+ * Tests for {@code CompactTrajectoryStore}.
+ * <p>
+ * Copyright (c) 2023-2024 Delft University of Technology, PO Box 5, 2600 AA, Delft, the Netherlands. All rights reserved. <br>
+ * BSD-style license. See <a href="https://opentrafficsim.org/docs/license.html">OpenTrafficSim License</a>.
+ * </p>
+ * @author <a href="https://github.com/wjschakel">Wouter Schakel</a>
+ */
+public class CompactTrajectoryStoreTest
+{
+
+    /** Number of samples per series, which spans many blocks. */
+    private static final int SAMPLES = 10000;
+
+    /**
+     * Returns the time of a sample.
+     * @param i sample index
+     * @return time of the sample [s]
+     */
+    private static double t(final int i)
+    {
+        return 100.0 + 0.5 * i;
+    }
+
+    /**
+     * Returns the position of a sample, with varying speed.
+     * @param i sample index
+     * @param offset position offset [m]
+     * @return position of the sample [m]
+     */
+    private static double x(final int i, final double offset)
+    {
+        return offset + 12.5 * i + 3.0 * Math.sin(0.01 * i);
+    }
+
+    /**
+     * Returns the lane row of a sample, with lane changes in both directions.
+     * @param i sample index
+     * @return lane row of the sample
+     */
+    private static int lane(final int i)
+    {
+        return 1 + (i / 700) % 3;
+    }
+
+    /**
+     * Appends samples to a series.
+     * @param store store
+     * @param series series
+     * @param offset position offset [m]
+     */
+    private static void fill(final CompactTrajectoryStore store, final Series series, final double offset)
+    {
+        for (int i = 0; i < SAMPLES; i++)
+        {
+            store.append(series, t(i), x(i, offset), lane(i));
+        }
+    }
+
+    /**
+     * Asserts that a reader returns the samples from the given index onwards.
+     * @param reader reader, positioned before the sample
+     * @param from index of the first sample
+     * @param offset position offset [m]
+     */
+    private static void assertSamples(final Reader reader, final int from, final double offset)
+    {
+        for (int i = from; i < SAMPLES; i++)
+        {
+            assertTrue(reader.next(), "Missing sample " + i);
+            assertEquals(t(i), reader.t(), 1e-3);
+            assertEquals(x(i, offset), reader.x(), 0.02);
+            assertEquals(lane(i), reader.lane());
+        }
+        assertFalse(reader.next());
+    }
+
+    /**
+     * Test that appended samples are read back within the precision.
+     */
+    @Test
+    public void testSamples()
+    {
+        CompactTrajectoryStore store = new CompactTrajectoryStore();
+        Series series = store.createSeries();
+        fill(store, series, 0.0);
+        assertEquals(SAMPLES, series.size());
+        Reader reader = store.reader();
+        reader.seek(series, 0.0);
+        assertSamples(reader, 0, 0.0);
+        // samples are stored compactly, well below 3 floats per sample
+        assertTrue(store.getUsedBytes() < 8L * SAMPLES, "Used " + store.getUsedBytes() + " bytes.");
+    }
+
+    /**
+     * Test that seeking positions the reader before the first sample at or after the time.
+     */
+    @Test
+    public void testSeek()
+    {
+        CompactTrajectoryStore store = new CompactTrajectoryStore();
+        Series series = store.createSeries();
+        fill(store, series, 0.0);
+        Reader reader = store.reader();
+        reader.seek(series, t(5000) - 0.25);
+        assertSamples(reader, 5000, 0.0);
+        reader.seek(series, t(SAMPLES - 1) - 0.25);
+        assertSamples(reader, SAMPLES - 1, 0.0);
+        reader.seek(series, t(SAMPLES - 1) + 0.25);
+        assertFalse(reader.next());
+        for (int i = 0; i < SAMPLES; i += 37)
+        {
+            reader.seek(series, t(i) - 0.25);
+            assertTrue(reader.next());
+            assertEquals(t(i), reader.t(), 1e-3);
+            assertEquals(lane(i), reader.lane());
+        }
+        reader.seek(store.createSeries(), 0.0);
+        assertFalse(reader.next());
+    }
+
+    /**
+     * Test that series are independent, and that blocks of released series are reused.
+     */
+    @Test
+    public void testRelease()
+    {
+        CompactTrajectoryStore store = new CompactTrajectoryStore();
+        Series series1 = store.createSeries();
+        Series series2 = store.createSeries();
+        for (int i = 0; i < SAMPLES; i++)
+        {
+            store.append(series1, t(i), x(i, 0.0), lane(i));
+            store.append(series2, t(i), x(i, 1000.0), lane(i));
+        }
+        Reader reader = store.reader();
+        reader.seek(series2, 0.0);
+        assertSamples(reader, 0, 1000.0);
+        long used = store.getUsedBytes();
+        long allocated = store.getAllocatedBytes();
+        assertTrue(used > 0L && used <= allocated);
+
+        store.release(series1);
+        assertEquals(0, series1.size());
+        assertEquals(used / 2, store.getUsedBytes());
+        reader.seek(series1, 0.0);
+        assertFalse(reader.next());
+
+        Series series3 = store.createSeries();
+        fill(store, series3, 2000.0);
+        assertEquals(used, store.getUsedBytes());
+        assertEquals(allocated, store.getAllocatedBytes());
+        reader.seek(series3, 0.0);
+        assertSamples(reader, 0, 2000.0);
+        reader.seek(series2, 0.0);
+        assertSamples(reader, 0, 1000.0);
+
+        // a released series can be used again
+        fill(store, series1, 0.0);
+        reader.seek(series1, 0.0);
+        assertSamples(reader, 0, 0.0);
+    }
+
+    /**
+     * Test input validation.
+     */
+    @Test
+    public void testInput()
+    {
+        assertThrows(IllegalArgumentException.class, () -> new CompactTrajectoryStore(Duration.ZERO, Length.ofSI(0.01)));
+        assertThrows(IllegalArgumentException.class, () -> new CompactTrajectoryStore(Duration.ofSI(0.001), Length.ZERO));
+        assertThrows(NullPointerException.class, () -> new CompactTrajectoryStore(null, Length.ofSI(0.01)));
+    }
+
+}
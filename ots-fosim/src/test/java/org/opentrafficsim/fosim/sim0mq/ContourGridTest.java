@@ -0,0 +1,304 @@
+package org.opentrafficsim.fosim.sim0mq;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.djunits.value.vdouble.scalar.Duration;
+import org.djunits.value.vdouble.scalar.Length;
+import org.djunits.value.vdouble.scalar.Speed;
+import org.junit.jupiter.api.Test;
+import org.opentrafficsim.draw.graphs.GraphPath;
+import org.opentrafficsim.draw.graphs.GraphPath.Section;
+import org.opentrafficsim.fosim.sim0mq.ContourGrid.Contour;
+import org.opentrafficsim.kpi.interfaces.LaneData;
+import org.opentrafficsim.kpi.interfaces.LinkData;
+
+/**
+ * Tests for {@code ContourGrid}. Contours are compared with a brute force calculation of Edie's definitions over the same
+ * sample intervals.
+ * <p>
+ * Copyright (c) 2023-2024 Delft University of Technology, PO Box 5, 2600 AA, Delft, the Netherlands. All rights reserved. <br>
+ * BSD-style license. See <a href="https://opentrafficsim.org/docs/license.html">OpenTrafficSim License</a>.
+ * </p>
+ * @author <a href="https://github.com/wjschakel">Wouter Schakel</a>
+ */
+public class ContourGridTest
+{
+
+    /** Lane at the start of the path. */
+    private static final TestLane LANE_A = new TestLane("A", 100.0);
+
+    /** Lane at the end of the path, which is not a multiple of the base grid. */
+    private static final TestLane LANE_B = new TestLane("B", 55.0);
+
+    /** Sample intervals on the path of both lanes, as {t0, p0, t1, p1}. */
+    private final List<double[]> intervalsAb = new ArrayList<>();
+
+    /** Sample intervals on the path of lane B, as {t0, p0, t1, p1}. */
+    private final List<double[]> intervalsB = new ArrayList<>();
+
+    /**
+     * Returns a grid with base granularity 10s and 10m, and graph paths {null, A-B, B}.
+     * @return grid
+     */
+    @SuppressWarnings("unchecked")
+    private static ContourGrid createGrid()
+    {
+        Speed speedLimit = Speed.ofSI(30.0);
+        GraphPath<TestLane> pathAb = new GraphPath<>("A-B",
+                List.of(new Section<>(Length.ofSI(100.0), speedLimit, List.of(LANE_A)),
+                        new Section<>(Length.ofSI(55.0), speedLimit, List.of(LANE_B))));
+        GraphPath<TestLane> pathB =
+                new GraphPath<>("B", List.of(new Section<>(Length.ofSI(55.0), speedLimit, List.of(LANE_B))));
+        return new ContourGrid(new GraphPath[] {null, pathAb, pathB}, Duration.ofSI(10.0), Length.ofSI(10.0));
+    }
+
+    /**
+     * Appends the samples of vehicles with random entry time and varying speed, sampled every 0.5s, and a vehicle standing
+     * still for 30s.
+     * @param grid grid
+     */
+    private void fill(final ContourGrid grid)
+    {
+        Random random = new Random(3L);
+        for (int vehicle = 0; vehicle < 40; vehicle++)
+        {
+            double t = 200.0 * random.nextDouble();
+            double p = 0.0;
+            while (p < 155.0)
+            {
+                double t1 = t + 0.5;
+                double p1 = p + 0.5 * (5.0 + 25.0 * random.nextDouble());
+                // intervals crossing the lane boundary are not sampled on either lane
+                if (p1 < 100.0)
+                {
+                    append(grid, LANE_A, t, p, t1, p1, 0.0);
+                }
+                else if (p >= 100.0)
+                {
+                    append(grid, LANE_B, t, p, t1, p1, 100.0);
+                }
+                t = t1;
+                p = p1;
+            }
+        }
+        append(grid, LANE_A, 100.0, 50.0, 130.0, 50.0, 0.0);
+    }
+
+    /**
+     * Appends an interval to the grid, and stores it for the brute force calculation.
+     * @param grid grid
+     * @param lane lane
+     * @param t0 start time [s]
+     * @param p0 start position on path A-B [m]
+     * @param t1 end time [s]
+     * @param p1 end position on path A-B [m]
+     * @param start start of the lane on path A-B [m]
+     */
+    private void append(final ContourGrid grid, final TestLane lane, final double t0, final double p0, final double t1,
+            final double p1, final double start)
+    {
+        grid.append(lane, t0, p0 - start, t1, p1 - start);
+        this.intervalsAb.add(new double[] {t0, p0, t1, p1});
+        if (lane == LANE_B)
+        {
+            this.intervalsB.add(new double[] {t0, p0 - start, t1, p1 - start});
+        }
+    }
+
+    /**
+     * Returns the total distance and total time of intervals in a cell, by the fraction of each interval within the cell.
+     * @param intervals intervals
+     * @param ta start time of the cell [s]
+     * @param tb end time of the cell [s]
+     * @param xa start position of the cell [m]
+     * @param xb end position of the cell [m]
+     * @return {total distance, total time}
+     */
+    private static double[] bruteForce(final List<double[]> intervals, final double ta, final double tb, final double xa,
+            final double xb)
+    {
+        double totalDistance = 0.0;
+        double totalTime = 0.0;
+        for (double[] interval : intervals)
+        {
+            double duration = interval[2] - interval[0];
+            double distance = interval[3] - interval[1];
+            double from = Math.max(0.0, (ta - interval[0]) / duration);
+            double to = Math.min(1.0, (tb - interval[0]) / duration);
+            if (distance > 0.0)
+            {
+                from = Math.max(from, (xa - interval[1]) / distance);
+                to = Math.min(to, (xb - interval[1]) / distance);
+            }
+            else if (interval[1] < xa || interval[1] >= xb)
+            {
+                continue;
+            }
+            if (to > from)
+            {
+                totalDistance += (to - from) * distance;
+                totalTime += (to - from) * duration;
+            }
+        }
+        return new double[] {totalDistance, totalTime};
+    }
+
+    /**
+     * Asserts that a contour equals the brute force calculation, for cells of 20s and 20m from 0 up to 300s and the path end.
+     * @param contour contour
+     * @param intervals intervals
+     * @param length length of the path [m]
+     */
+    private static void assertContour(final Contour contour, final List<double[]> intervals, final double length)
+    {
+        int nSpace = (int) Math.ceil(length / 20.0);
+        assertEquals(nSpace, contour.distance().length);
+        assertEquals(15, contour.distance()[0].length);
+        for (int i = 0; i < nSpace; i++)
+        {
+            for (int j = 0; j < 15; j++)
+            {
+                double[] expected = bruteForce(intervals, 20.0 * j, 20.0 * (j + 1), 20.0 * i, Math.min(20.0 * (i + 1), length));
+                assertEquals(expected[0], contour.distance()[i][j], 1e-3 + 1e-5 * expected[0], "Distance in " + i + ", " + j);
+                assertEquals(expected[1], contour.time()[i][j], 1e-3 + 1e-5 * expected[1], "Time in " + i + ", " + j);
+            }
+        }
+    }
+
+    /**
+     * Test that a contour of which the cell boundaries are on the base grid is exact.
+     */
+    @Test
+    public void testAligned()
+    {
+        ContourGrid grid = createGrid();
+        fill(grid);
+        Duration t0 = Duration.ZERO;
+        Duration dt = Duration.ofSI(20.0);
+        Duration t1 = Duration.ofSI(300.0);
+        assertContour(grid.getContour(1, t0, dt, t1, Length.ZERO, Length.ofSI(20.0), Length.ofSI(155.0)), this.intervalsAb,
+                155.0);
+        assertContour(grid.getContour(2, t0, dt, t1, Length.ZERO, Length.ofSI(20.0), Length.ofSI(55.0)), this.intervalsB,
+                55.0);
+    }
+
+    /**
+     * Test that a contour of which the cell boundaries are not on the base grid contains all data.
+     */
+    @Test
+    public void testUnaligned()
+    {
+        ContourGrid grid = createGrid();
+        fill(grid);
+        Contour contour = grid.getContour(1, Duration.ZERO, Duration.ofSI(7.0), Duration.ofSI(301.0), Length.ZERO,
+                Length.ofSI(7.0), Length.ofSI(155.0));
+        double totalDistance = 0.0;
+        double totalTime = 0.0;
+        for (int i = 0; i < contour.distance().length; i++)
+        {
+            for (int j = 0; j < contour.distance()[i].length; j++)
+            {
+                totalDistance += contour.distance()[i][j];
+                totalTime += contour.time()[i][j];
+            }
+        }
+        double[] expected = bruteForce(this.intervalsAb, 0.0, 301.0, 0.0, 155.0);
+        assertEquals(expected[0], totalDistance, 1e-5 * expected[0]);
+        assertEquals(expected[1], totalTime, 1e-5 * expected[1]);
+    }
+
+    /**
+     * Test that discarded cells contribute no data, also for intervals added later, while later cells are unaffected.
+     */
+    @Test
+    public void testDiscard()
+    {
+        ContourGrid grid = createGrid();
+        fill(grid);
+        // not on the base grid, the cell of 100-110s is retained
+        grid.discardBefore(Duration.ofSI(105.0));
+        grid.discardBefore(Duration.ofSI(50.0));
+        grid.append(LANE_A, 90.0, 10.0, 110.0, 30.0);
+        this.intervalsAb.add(new double[] {90.0, 10.0, 110.0, 30.0});
+        Contour contour = grid.getContour(1, Duration.ZERO, Duration.ofSI(20.0), Duration.ofSI(300.0), Length.ZERO,
+                Length.ofSI(20.0), Length.ofSI(155.0));
+        for (int i = 0; i < contour.distance().length; i++)
+        {
+            for (int j = 0; j < 15; j++)
+            {
+                double ta = Math.max(20.0 * j, 100.0);
+                double tb = 20.0 * (j + 1);
+                double[] expected = tb <= ta ? new double[2]
+                        : bruteForce(this.intervalsAb, ta, tb, 20.0 * i, Math.min(20.0 * (i + 1), 155.0));
+                assertEquals(expected[0], contour.distance()[i][j], 1e-3 + 1e-5 * expected[0], "Distance in " + i + ", " + j);
+                assertEquals(expected[1], contour.time()[i][j], 1e-3 + 1e-5 * expected[1], "Time in " + i + ", " + j);
+            }
+        }
+
+        // discarding beyond the last cell leaves no data, and cells are created again for later intervals
+        grid.discardBefore(Duration.ofSI(1000.0));
+        grid.append(LANE_B, 1005.0, 0.0, 1015.0, 50.0);
+        contour = grid.getContour(2, Duration.ZERO, Duration.ofSI(10.0), Duration.ofSI(1020.0), Length.ZERO,
+                Length.ofSI(55.0), Length.ofSI(55.0));
+        for (int j = 0; j < 100; j++)
+        {
+            assertEquals(0.0f, contour.distance()[0][j], 0.0f);
+        }
+        assertEquals(25.0f, contour.distance()[0][100], 1e-4f);
+        assertEquals(25.0f, contour.distance()[0][101], 1e-4f);
+        assertEquals(10.0f, contour.time()[0][100] + contour.time()[0][101], 1e-4f);
+    }
+
+    /**
+     * Test input validation, and that samples on lanes that are not on any path are ignored.
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testInput()
+    {
+        ContourGrid grid = createGrid();
+        assertEquals(10.0, grid.getDt().si, 0.0);
+        assertEquals(10.0, grid.getDx().si, 0.0);
+        grid.append(new TestLane("C", 100.0), 0.0, 0.0, 10.0, 100.0);
+        Contour contour = grid.getContour(1, Duration.ZERO, Duration.ofSI(10.0), Duration.ofSI(10.0), Length.ZERO,
+                Length.ofSI(155.0), Length.ofSI(155.0));
+        assertEquals(0.0f, contour.distance()[0][0], 0.0f);
+        assertThrows(IllegalArgumentException.class, () -> grid.getContour(0, Duration.ZERO, Duration.ofSI(10.0),
+                Duration.ofSI(10.0), Length.ZERO, Length.ofSI(10.0), Length.ofSI(10.0)));
+        assertThrows(IllegalArgumentException.class,
+                () -> new ContourGrid(new GraphPath[0], Duration.ZERO, Length.ofSI(10.0)));
+        assertThrows(NullPointerException.class, () -> new ContourGrid(null));
+    }
+
+    /**
+     * Lane with a length.
+     * @param id id
+     * @param length length [m]
+     */
+    private record TestLane(String id, double length) implements LaneData<TestLane>
+    {
+        @Override
+        public Length getLength()
+        {
+            return Length.ofSI(this.length);
+        }
+
+        @Override
+        public LinkData<?> getLinkData()
+        {
+            return null;
+        }
+
+        @Override
+        public String getId()
+        {
+            return this.id;
+        }
+    }
+
+}
@@ -0,0 +1,136 @@
+package org.opentrafficsim.fosim.sim0mq;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.djunits.value.vdouble.scalar.Duration;
+import org.junit.jupiter.api.Test;
+import org.opentrafficsim.core.network.NetworkException;
+import org.opentrafficsim.fosim.FosDetector;
+import org.opentrafficsim.fosim.batch.HeadlessRun;
+
+/**
+ * Tests for {@code DetectorGrid}.
+ * <p>
+ * Copyright (c) 2023-2024 Delft University of Technology, PO Box 5, 2600 AA, Delft, the Netherlands. All rights reserved. <br>
+ * BSD-style license. See <a href="https://opentrafficsim.org/docs/license.html">OpenTrafficSim License</a>.
+ * </p>
+ * @author <a href="https://github.com/wjschakel">Wouter Schakel</a>
+ */
+public class DetectorGridTest
+{
+
+    /**
+     * Test that all measurements are placed at the index of their cross-section, lane and period, that values are -1 where
+     * there is no detector or the period has not started, and that only completed periods are returned.
+     * @throws IOException when the .fos file cannot be read
+     * @throws NetworkException when the network cannot be built
+     */
+    @Test
+    public void testMeasurements() throws IOException, NetworkException
+    {
+        String fosString = new String(DetectorGridTest.class.getResourceAsStream("/fos/Afv_21_quick.fos").readAllBytes(),
+                StandardCharsets.UTF_8);
+        Map<String, FosDetector> detectors = new LinkedHashMap<>();
+        new HeadlessRun(fosString, "Detector grid test").setEndTime(Duration.ofSI(1000.0))
+                .addAction(Duration.ofSI(999.0), (network) -> network.getObjectMap(FosDetector.class).values()
+                        .forEach((detector) -> detectors.put(detector.getId(), detector)))
+                .run();
+        assertFalse(detectors.isEmpty());
+
+        DetectorGrid grid = new DetectorGrid(detectors.values());
+        int crossSections = 0;
+        int lanes = 0;
+        for (String id : detectors.keySet())
+        {
+            String[] crossSectionAndLane = id.split("_");
+            crossSections = Math.max(crossSections, Integer.parseInt(crossSectionAndLane[0]) + 1);
+            lanes = Math.max(lanes, Integer.parseInt(crossSectionAndLane[1]) + 1);
+        }
+        assertEquals(crossSections, grid.getCrossSections());
+        assertEquals(lanes, grid.getLanes());
+        assertNull(grid.getDetector(-1, 0));
+        assertNull(grid.getDetector(0, lanes));
+        assertNull(grid.getDetector(crossSections, 0));
+
+        int current = detectors.values().iterator().next().getCurrentPeriod();
+        assertTrue(current > 1, "Too few periods.");
+
+        // all completed periods, the request extends beyond them
+        assertMeasurements(grid, detectors, grid.getMeasurements(-3, current + 5, current), 0, current);
+        // a sub-range of periods
+        assertMeasurements(grid, detectors, grid.getMeasurements(1, current - 1, current), 1, current - 1);
+        // including the ongoing period, and a period that has not started
+        assertMeasurements(grid, detectors, grid.getMeasurements(current, current + 1, current + 2), current, 2);
+        // no completed periods
+        assertMeasurements(grid, detectors, grid.getMeasurements(0, current, 0), 0, 0);
+
+        DetectorGrid empty = new DetectorGrid(List.of());
+        assertMeasurements(empty, Map.of(), empty.getMeasurements(0, 10, 10), 0, 10);
+        assertEquals(0, ((float[]) empty.getMeasurements(0, 10, 10)[4]).length);
+    }
+
+    /**
+     * Asserts that the measurements are equal to those of the detectors.
+     * @param grid detector grid
+     * @param detectors detectors by id
+     * @param measurements measurements from the grid
+     * @param fromPeriod expected first period
+     * @param periods expected number of periods
+     */
+    private static void assertMeasurements(final DetectorGrid grid, final Map<String, FosDetector> detectors,
+            final Object[] measurements, final int fromPeriod, final int periods)
+    {
+        int crossSections = grid.getCrossSections();
+        int lanes = grid.getLanes();
+        assertEquals(crossSections, measurements[0]);
+        assertEquals(lanes, measurements[1]);
+        assertEquals(fromPeriod, measurements[2]);
+        if (crossSections == 0)
+        {
+            return;
+        }
+        assertEquals(periods, measurements[3]);
+        float[] count = (float[]) measurements[4];
+        float[] sumReciprocalSpeed = (float[]) measurements[5];
+        float[] travelTimeCount = (float[]) measurements[6];
+        float[] sumTravelTime = (float[]) measurements[7];
+        assertEquals(crossSections * lanes * periods, count.length);
+        for (int crossSection = 0; crossSection < crossSections; crossSection++)
+        {
+            for (int lane = 0; lane < lanes; lane++)
+            {
+                FosDetector detector = detectors.get(crossSection + "_" + lane);
+                assertSame(detector, grid.getDetector(crossSection, lane));
+                for (int period = fromPeriod; period < fromPeriod + periods; period++)
+                {
+                    int index = (crossSection * lanes + lane) * periods + (period - fromPeriod);
+                    if (detector == null || period > detector.getCurrentPeriod())
+                    {
+                        assertEquals(-1.0f, count[index]);
+                        assertEquals(-1.0f, sumReciprocalSpeed[index]);
+                        assertEquals(-1.0f, travelTimeCount[index]);
+                        assertEquals(-1.0f, sumTravelTime[index]);
+                    }
+                    else
+                    {
+                        assertEquals(detector.getCount(period), count[index]);
+                        assertEquals((float) detector.getSumReciprocalSpeed(period), sumReciprocalSpeed[index]);
+                        assertEquals(detector.getTravelTimeCount(period), travelTimeCount[index]);
+                        assertEquals((float) detector.getSumTravelTime(period), sumTravelTime[index]);
+                    }
+                }
+            }
+        }
+    }
+
+}
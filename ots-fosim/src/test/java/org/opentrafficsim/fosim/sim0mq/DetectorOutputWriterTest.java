@@ -0,0 +1,127 @@
+package org.opentrafficsim.fosim.sim0mq;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.opentrafficsim.core.network.NetworkException;
+import org.opentrafficsim.fosim.FosDetector;
+import org.opentrafficsim.fosim.parser.FosParser;
+import org.opentrafficsim.fosim.parser.ParserSetting;
+import org.opentrafficsim.fosim.sim0mq.DetectorOutputWriter.Format;
+import org.opentrafficsim.fosim.simulator.OtsSimulatorStep;
+
+/**
+ * Tests for {@code DetectorOutputWriter}. The files are read while the simulation runs, and compared with the detectors.
+ * <p>
+ * Copyright (c) 2023-2024 Delft University of Technology, PO Box 5, 2600 AA, Delft, the Netherlands. All rights reserved. <br>
+ * BSD-style license. See <a href="https://opentrafficsim.org/docs/license.html">OpenTrafficSim License</a>.
+ * </p>
+ * @author <a href="https://github.com/wjschakel">Wouter Schakel</a>
+ */
+public class DetectorOutputWriterTest
+{
+
+    /** End of simulation [s], after two completed periods of 300s. */
+    private static final double END = 700.0;
+
+    /**
+     * Test that the CSV and binary files contain all completed periods of all detectors, while the simulation runs.
+     * @throws IOException when the .fos file cannot be read, or the output cannot be written or read
+     * @throws NetworkException when the network cannot be built
+     */
+    @Test
+    public void testOutput() throws IOException, NetworkException
+    {
+        String fosString = new String(
+                DetectorOutputWriterTest.class.getResourceAsStream("/fos/Afv_21_quick.fos").readAllBytes(),
+                StandardCharsets.UTF_8);
+        Map<ParserSetting, Boolean> settings = new LinkedHashMap<>();
+        settings.put(ParserSetting.GUI, false);
+        OtsSimulatorStep simulator = new OtsSimulatorStep("Detector output test");
+        FosParser parser = new FosParser().setSettings(settings).setSimulator(simulator);
+        parser.parseFromString(fosString);
+        Path csv = Files.createTempFile("detectors", ".csv");
+        Path binary = Files.createTempFile("detectors", ".bin");
+        try
+        {
+            new DetectorOutputWriter(parser.getNetwork(), csv, Format.CSV);
+            new DetectorOutputWriter(parser.getNetwork(), binary, Format.BINARY);
+            while (simulator.getSimulatorTime().si < END)
+            {
+                simulator.step();
+            }
+
+            // detectors by lane and position
+            Map<String, FosDetector> detectors = new LinkedHashMap<>();
+            for (FosDetector detector : parser.getNetwork().getObjectMap(FosDetector.class).values())
+            {
+                int lane = OtsTransceiver.getLaneRowFromId(detector.getLane().getId());
+                detectors.put(lane + "," + (float) detector.getLocation().x, detector);
+            }
+            assertFalse(detectors.isEmpty());
+            int n = detectors.size();
+            double[] t = {0.0, 300.0};
+            double[] duration = {300.0, 300.0};
+
+            // CSV
+            List<String> lines = Files.readAllLines(csv);
+            assertEquals("t,lane,x,q,v", lines.get(0));
+            assertEquals(1 + 2 * n, lines.size());
+            for (int i = 1; i < lines.size(); i++)
+            {
+                int period = (i - 1) / n;
+                String[] fields = lines.get(i).split(",");
+                assertEquals(t[period], Double.parseDouble(fields[0]), 1e-9);
+                FosDetector detector = detectors.get(fields[1] + "," + Float.parseFloat(fields[2]));
+                assertNotNull(detector, "Row of unknown detector.");
+                int count = detector.getCount(period);
+                assertEquals(3600.0 * count / duration[period], Double.parseDouble(fields[3]), 1e-6);
+                assertEquals(3.6 * count / detector.getSumReciprocalSpeed(period), Double.parseDouble(fields[4]), 1e-6);
+            }
+
+            // binary
+            ByteBuffer bytes = ByteBuffer.wrap(Files.readAllBytes(binary));
+            assertEquals(12 + 8 * n + 2 * (4 + 8 * n), bytes.remaining());
+            assertEquals(0x464F5344, bytes.getInt());
+            assertEquals(1, bytes.getInt());
+            assertEquals(n, bytes.getInt());
+            FosDetector[] order = new FosDetector[n];
+            for (int i = 0; i < n; i++)
+            {
+                int lane = bytes.getInt();
+                order[i] = detectors.get(lane + "," + bytes.getFloat());
+                assertNotNull(order[i], "Header of unknown detector.");
+            }
+            for (int period = 0; period < 2; period++)
+            {
+                assertEquals((float) t[period], bytes.getFloat());
+                for (int i = 0; i < n; i++)
+                {
+                    assertEquals((float) (3600.0 * order[i].getCount(period) / duration[period]), bytes.getFloat());
+                }
+                for (int i = 0; i < n; i++)
+                {
+                    assertEquals((float) (3.6 * order[i].getCount(period) / order[i].getSumReciprocalSpeed(period)),
+                            bytes.getFloat());
+                }
+            }
+        }
+        finally
+        {
+            Files.deleteIfExists(csv);
+            Files.deleteIfExists(binary);
+        }
+    }
+
+}
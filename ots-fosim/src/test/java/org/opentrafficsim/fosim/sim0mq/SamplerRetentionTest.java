@@ -0,0 +1,192 @@
+package org.opentrafficsim.fosim.sim0mq;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.djunits.value.vdouble.scalar.Duration;
+import org.djunits.value.vdouble.scalar.Frequency;
+import org.djunits.value.vdouble.scalar.Length;
+import org.junit.jupiter.api.Test;
+import org.opentrafficsim.core.network.NetworkException;
+import org.opentrafficsim.draw.graphs.GraphPath;
+import org.opentrafficsim.draw.graphs.GraphPath.Section;
+import org.opentrafficsim.fosim.FosDetector;
+import org.opentrafficsim.fosim.PassingLog;
+import org.opentrafficsim.fosim.parser.FosParser;
+import org.opentrafficsim.fosim.parser.FosSampler;
+import org.opentrafficsim.fosim.parser.ParserSetting;
+import org.opentrafficsim.fosim.sim0mq.ContourGrid.Contour;
+import org.opentrafficsim.fosim.sim0mq.TrajectoryCache.Samples;
+import org.opentrafficsim.fosim.sim0mq.trace.Trace.ColumnType;
+import org.opentrafficsim.fosim.sim0mq.trace.TraceData;
+import org.opentrafficsim.fosim.simulator.OtsSimulatorStep;
+import org.opentrafficsim.kpi.sampling.SpaceTimeRegion;
+import org.opentrafficsim.road.network.sampling.LaneDataRoad;
+import org.opentrafficsim.road.network.sampling.RoadSampler;
+
+/**
+ * Tests for {@code SamplerRetention}. Trajectories and contours of rotated samplers are compared with those of a reference
+ * sampler that records the full run.
+ * <p>
+ * Copyright (c) 2023-2024 Delft University of Technology, PO Box 5, 2600 AA, Delft, the Netherlands. All rights reserved. <br>
+ * BSD-style license. See <a href="https://opentrafficsim.org/docs/license.html">OpenTrafficSim License</a>.
+ * </p>
+ * @author <a href="https://github.com/wjschakel">Wouter Schakel</a>
+ */
+public class SamplerRetentionTest
+{
+
+    /** Sampling interval. */
+    private static final Duration INTERVAL = Duration.ofSI(0.5);
+
+    /** Horizon. */
+    private static final Duration HORIZON = Duration.ofSI(60.0);
+
+    /** Start of the retained window after three rotations [s]. */
+    private static final double RETAINED = 120.0;
+
+    /** End of simulation [s]. */
+    private static final double END = 200.0;
+
+    /**
+     * Test that trajectories are continuous over rotations without lost or duplicate samples, that contours in the retained
+     * window equal those of a single sampler, and that older contour cells, trace rows and passings are discarded.
+     * @throws IOException when the .fos file cannot be read
+     * @throws NetworkException when the network cannot be built
+     */
+    @Test
+    public void testRotations() throws IOException, NetworkException
+    {
+        String fosString = new String(SamplerRetentionTest.class.getResourceAsStream("/fos/Afv_21_quick.fos").readAllBytes(),
+                StandardCharsets.UTF_8);
+        Map<ParserSetting, Boolean> settings = new LinkedHashMap<>();
+        settings.put(ParserSetting.GUI, false);
+        OtsSimulatorStep simulator = new OtsSimulatorStep("Sampler retention test");
+        FosParser parser = new FosParser().setSettings(settings).setSimulator(simulator);
+        parser.parseFromString(fosString);
+        Frequency frequency = Frequency.ofSI(1.0 / INTERVAL.si);
+        FosSampler fosSampler = new FosSampler(parser, parser.getNetwork(), frequency, HORIZON);
+        GraphPath<LaneDataRoad>[] paths = fosSampler.getLaneGraphPaths();
+
+        // rotated samplers
+        TrajectoryCache cache = new TrajectoryCache(INTERVAL);
+        ContourGrid grid = new ContourGrid(paths);
+        TrajectoryIndex index = new TrajectoryIndex(fosSampler.getSampler().getSamplerData(), INTERVAL).setCache(cache)
+                .setContourGrid(grid).scheduleUpdates(simulator);
+        TraceData traceData = new TraceData(ColumnType.DURATION);
+        List<FosDetector> detectors = new ArrayList<>(parser.getNetwork().getObjectMap(FosDetector.class).values());
+        assertFalse(detectors.isEmpty());
+        new SamplerRetention(simulator, fosSampler, index, cache, HORIZON).setContourGrid(grid)
+                .setTraceData(List.of(traceData)).setDetectors(detectors);
+
+        // reference sampler of the full run on the same lanes
+        RoadSampler reference = new RoadSampler(parser.getNetwork(), frequency);
+        for (GraphPath<LaneDataRoad> path : paths)
+        {
+            if (path != null)
+            {
+                for (Section<LaneDataRoad> section : path.getSections())
+                {
+                    LaneDataRoad laneData = section.getSource(0);
+                    if (!laneData.getId().startsWith("_"))
+                    {
+                        reference.registerSpaceTimeRegion(new SpaceTimeRegion<>(laneData, Length.ZERO, laneData.getLength(),
+                                Duration.ZERO, Duration.ofSI(1000.0)));
+                    }
+                }
+            }
+        }
+        TrajectoryCache referenceCache = new TrajectoryCache(INTERVAL);
+        ContourGrid referenceGrid = new ContourGrid(paths);
+        TrajectoryIndex referenceIndex = new TrajectoryIndex(reference.getSamplerData(), INTERVAL).setCache(referenceCache)
+                .setContourGrid(referenceGrid);
+
+        while (simulator.getSimulatorTime().si < END)
+        {
+            simulator.step();
+            traceData.setFloat(0, (float) simulator.getSimulatorTime().si).addRow();
+        }
+        Duration now = simulator.getSimulatorTime();
+        index.update(now);
+        referenceIndex.update(now);
+
+        // trajectories in the retained window are continuous over the rotations at 120s and 180s
+        Length end = Length.ofSI(1e6);
+        Map<String, Samples> rotated = new LinkedHashMap<>();
+        cache.getSamples(Duration.ofSI(RETAINED), now, Length.ZERO, end, 1).forEach((s) -> rotated.put(s.gtuId(), s));
+        List<Samples> expected = referenceCache.getSamples(Duration.ofSI(RETAINED), now, Length.ZERO, end, 1);
+        assertFalse(expected.isEmpty());
+        for (Samples samples : expected)
+        {
+            Samples actual = rotated.get(samples.gtuId());
+            assertNotNull(actual, "GTU " + samples.gtuId() + " is lost at rotation.");
+            assertEquals(samples.t()[0], actual.t()[0], 1e-3f, "Samples of GTU " + samples.gtuId() + " are lost.");
+            assertEquals(samples.t()[samples.t().length - 1], actual.t()[actual.t().length - 1], 1e-3f);
+            assertTrue(maxGap(actual.t()) <= maxGap(samples.t()) + 1e-3f, "Trajectory of " + samples.gtuId() + " has a gap.");
+        }
+
+        // contours in the retained window equal those of the reference, older cells are discarded
+        for (int path = 0; path < paths.length; path++)
+        {
+            if (paths[path] != null)
+            {
+                Contour contour = grid.getContour(path, Duration.ZERO, Duration.ofSI(20.0), now, Length.ZERO,
+                        Length.ofSI(100.0), end);
+                Contour referenceContour = referenceGrid.getContour(path, Duration.ZERO, Duration.ofSI(20.0), now,
+                        Length.ZERO, Length.ofSI(100.0), end);
+                for (int i = 0; i < contour.distance().length; i++)
+                {
+                    for (int j = 0; j < contour.distance()[i].length; j++)
+                    {
+                        float expectedTime = j < RETAINED / 20.0 ? 0.0f : referenceContour.time()[i][j];
+                        float expectedDistance = j < RETAINED / 20.0 ? 0.0f : referenceContour.distance()[i][j];
+                        assertEquals(expectedTime, contour.time()[i][j], 0.01f + 1e-3f * expectedTime,
+                                "Time in " + i + ", " + j + " of path " + path);
+                        assertEquals(expectedDistance, contour.distance()[i][j], 0.01f + 1e-3f * expectedDistance,
+                                "Distance in " + i + ", " + j + " of path " + path);
+                    }
+                }
+            }
+        }
+
+        // trace rows and passings before the retained window are discarded
+        assertEquals(RETAINED, traceData.asFloat(0)[0], INTERVAL.si);
+        int passings = 0;
+        for (FosDetector detector : detectors)
+        {
+            PassingLog.Cursor cursor = detector.getPassings(0L);
+            while (cursor.next())
+            {
+                assertTrue(cursor.getTime() >= RETAINED - INTERVAL.si, "Passing before the retained window.");
+                passings++;
+            }
+        }
+        assertTrue(passings > 0, "No passings in the retained window.");
+    }
+
+    /**
+     * Returns the largest time between consecutive samples, which should be increasing.
+     * @param t sample times [s]
+     * @return largest time between consecutive samples [s]
+     */
+    private static float maxGap(final float[] t)
+    {
+        float gap = 0.0f;
+        for (int k = 1; k < t.length; k++)
+        {
+            assertTrue(t[k] > t[k - 1], "Samples are not increasing in time.");
+            gap = Math.max(gap, t[k] - t[k - 1]);
+        }
+        return gap;
+    }
+
+}
@@ -0,0 +1,112 @@
+package org.opentrafficsim.fosim.sim0mq;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.List;
+
+import org.djunits.value.vdouble.scalar.Duration;
+import org.djunits.value.vdouble.scalar.Length;
+import org.junit.jupiter.api.Test;
+import org.opentrafficsim.fosim.sim0mq.TrajectoryCache.Samples;
+
+/**
+ * Tests for {@code TrajectoryCache}.
+ * <p>
+ * Copyright (c) 2023-2024 Delft University of Technology, PO Box 5, 2600 AA, Delft, the Netherlands. All rights reserved. <br>
+ * BSD-style license. See <a href="https://opentrafficsim.org/docs/license.html">OpenTrafficSim License</a>.
+ * </p>
+ * @author <a href="https://github.com/wjschakel">Wouter Schakel</a>
+ */
+public class TrajectoryCacheTest
+{
+
+    /**
+     * Returns a cache with sampling interval 0.5s, with GTU 1 sampled from 0s to 100s, and GTU 2 from 95s to 150s, both at
+     * 20m/s on lane row 1.
+     * @return cache
+     */
+    private static TrajectoryCache createCache()
+    {
+        TrajectoryCache cache = new TrajectoryCache(Duration.ofSI(0.5));
+        for (int i = 0; i <= 200; i++)
+        {
+            cache.append("1", 0.5f * i, 10.0f * i, 1);
+        }
+        for (int i = 190; i <= 300; i++)
+        {
+            cache.append("2", 0.5f * i, 10.0f * (i - 190), 1);
+        }
+        return cache;
+    }
+
+    /**
+     * Test that a GTU is only stored in the buckets from its first sample to its last sample.
+     */
+    @Test
+    public void testBuckets()
+    {
+        TrajectoryCache cache = createCache();
+        assertEquals(List.of("1"), cache.getGtuIds(0));
+        assertEquals(List.of("1"), cache.getGtuIds(2));
+        assertEquals(List.of("1", "2"), cache.getGtuIds(3));
+        assertEquals(List.of("2"), cache.getGtuIds(4));
+        assertEquals(List.of("2"), cache.getGtuIds(5));
+        assertEquals(List.of(), cache.getGtuIds(6));
+    }
+
+    /**
+     * Test that samples are returned within the window, with the granularity, and once per GTU.
+     */
+    @Test
+    public void testSamples()
+    {
+        TrajectoryCache cache = createCache();
+        List<Samples> samples = cache.getSamples(Duration.ZERO, Duration.ofSI(30.0), Length.ZERO, Length.ofSI(1e6), 1);
+        assertEquals(1, samples.size());
+        assertEquals("1", samples.get(0).gtuId());
+        assertEquals(60, samples.get(0).t().length);
+
+        samples = cache.getSamples(Duration.ofSI(80.0), Duration.ofSI(120.0), Length.ZERO, Length.ofSI(1e6), 4);
+        assertEquals(2, samples.size());
+        Samples samples1 = samples.get(0).gtuId().equals("1") ? samples.get(0) : samples.get(1);
+        Samples samples2 = samples.get(0).gtuId().equals("2") ? samples.get(0) : samples.get(1);
+        // GTU 1 from 80s up to and including 100s, every 2s
+        assertEquals(11, samples1.t().length);
+        assertEquals(80.0f, samples1.t()[0], 1e-3f);
+        assertEquals(100.0f, samples1.t()[10], 1e-3f);
+        assertEquals(1600.0f, samples1.x()[0], 0.02f);
+        // GTU 2 from 95s up to 120s, every 2s
+        assertEquals(13, samples2.t().length);
+        assertEquals(95.0f, samples2.t()[0], 1e-3f);
+        assertEquals(1, samples2.lane()[0]);
+
+        samples = cache.getSamples(Duration.ZERO, Duration.ofSI(200.0), Length.ofSI(500.0), Length.ofSI(600.0), 1);
+        assertEquals(2, samples.size());
+        for (Samples gtuSamples : samples)
+        {
+            assertEquals(10, gtuSamples.x().length);
+        }
+        assertThrows(IllegalArgumentException.class,
+                () -> cache.getSamples(Duration.ZERO, Duration.ofSI(30.0), Length.ZERO, Length.ofSI(1e6), 0));
+    }
+
+    /**
+     * Test that compacted GTUs are read from the finest retained level.
+     */
+    @Test
+    public void testCompact()
+    {
+        TrajectoryCache cache = createCache();
+        cache.compact(Duration.ofSI(120.0), 2);
+        List<Samples> samples = cache.getSamples(Duration.ZERO, Duration.ofSI(30.0), Length.ZERO, Length.ofSI(1e6), 1);
+        // level 2 of GTU 1, every 2s
+        assertEquals(15, samples.get(0).t().length);
+        samples = cache.getSamples(Duration.ofSI(102.0), Duration.ofSI(110.0), Length.ZERO, Length.ofSI(1e6), 1);
+        assertEquals(1, samples.size());
+        assertEquals("2", samples.get(0).gtuId());
+        assertEquals(16, samples.get(0).t().length);
+        assertThrows(IllegalArgumentException.class, () -> cache.compact(Duration.ZERO, 6));
+    }
+
+}
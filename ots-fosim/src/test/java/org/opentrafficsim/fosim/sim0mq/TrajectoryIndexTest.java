@@ -0,0 +1,118 @@
+package org.opentrafficsim.fosim.sim0mq;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.djunits.value.vdouble.scalar.Duration;
+import org.djunits.value.vdouble.scalar.Frequency;
+import org.djunits.value.vdouble.scalar.Length;
+import org.junit.jupiter.api.Test;
+import org.opentrafficsim.core.network.NetworkException;
+import org.opentrafficsim.fosim.parser.FosParser;
+import org.opentrafficsim.fosim.parser.FosSampler;
+import org.opentrafficsim.fosim.parser.ParserSetting;
+import org.opentrafficsim.fosim.sim0mq.ContourGrid.Contour;
+import org.opentrafficsim.fosim.sim0mq.TrajectoryCache.Samples;
+import org.opentrafficsim.fosim.simulator.OtsSimulatorStep;
+
+/**
+ * Tests for {@code TrajectoryIndex}.
+ * <p>
+ * Copyright (c) 2023-2024 Delft University of Technology, PO Box 5, 2600 AA, Delft, the Netherlands. All rights reserved. <br>
+ * BSD-style license. See <a href="https://opentrafficsim.org/docs/license.html">OpenTrafficSim License</a>.
+ * </p>
+ * @author <a href="https://github.com/wjschakel">Wouter Schakel</a>
+ */
+public class TrajectoryIndexTest
+{
+
+    /** Sampling interval. */
+    private static final Duration INTERVAL = Duration.ofSI(0.5);
+
+    /**
+     * Test that updates scheduled every sampling interval forward samples during simulation, and forward the same samples as
+     * a single update after simulation.
+     * @throws IOException when the .fos file cannot be read
+     * @throws NetworkException when the network cannot be built
+     */
+    @Test
+    public void testScheduledUpdates() throws IOException, NetworkException
+    {
+        String fosString = new String(TrajectoryIndexTest.class.getResourceAsStream("/fos/Afv_21_quick.fos").readAllBytes(),
+                StandardCharsets.UTF_8);
+        Map<ParserSetting, Boolean> settings = new LinkedHashMap<>();
+        settings.put(ParserSetting.GUI, false);
+        OtsSimulatorStep simulator = new OtsSimulatorStep("Trajectory index test");
+        FosParser parser = new FosParser().setSettings(settings).setSimulator(simulator);
+        parser.parseFromString(fosString);
+        FosSampler fosSampler = new FosSampler(parser, parser.getNetwork(), Frequency.ofSI(1.0 / INTERVAL.si));
+
+        TrajectoryCache scheduledCache = new TrajectoryCache(INTERVAL);
+        ContourGrid scheduledGrid = new ContourGrid(fosSampler.getLaneGraphPaths());
+        TrajectoryIndex scheduled = new TrajectoryIndex(fosSampler.getSampler().getSamplerData(), INTERVAL)
+                .setCache(scheduledCache).setContourGrid(scheduledGrid).scheduleUpdates(simulator);
+        assertThrows(IllegalStateException.class, () -> scheduled.scheduleUpdates(simulator));
+        TrajectoryCache bulkCache = new TrajectoryCache(INTERVAL);
+        ContourGrid bulkGrid = new ContourGrid(fosSampler.getLaneGraphPaths());
+        TrajectoryIndex bulk = new TrajectoryIndex(fosSampler.getSampler().getSamplerData(), INTERVAL).setCache(bulkCache)
+                .setContourGrid(bulkGrid);
+
+        while (simulator.getSimulatorTime().si < 300.0)
+        {
+            simulator.step();
+        }
+        Duration now = simulator.getSimulatorTime();
+        Length end = Length.ofSI(1e6);
+
+        // samples of the last minute are available without an update on request
+        assertFalse(scheduledCache.getSamples(now.minus(Duration.ofSI(60.0)), now, Length.ZERO, end, 1).isEmpty());
+
+        scheduled.update(now);
+        bulk.update(now);
+        List<Samples> scheduledSamples = sorted(scheduledCache.getSamples(Duration.ZERO, now, Length.ZERO, end, 1));
+        List<Samples> bulkSamples = sorted(bulkCache.getSamples(Duration.ZERO, now, Length.ZERO, end, 1));
+        assertFalse(bulkSamples.isEmpty());
+        assertEquals(bulkSamples.size(), scheduledSamples.size());
+        for (int i = 0; i < bulkSamples.size(); i++)
+        {
+            assertEquals(bulkSamples.get(i).gtuId(), scheduledSamples.get(i).gtuId());
+            assertArrayEquals(bulkSamples.get(i).t(), scheduledSamples.get(i).t());
+            assertArrayEquals(bulkSamples.get(i).x(), scheduledSamples.get(i).x());
+        }
+        for (int path = 0; path < fosSampler.getLaneGraphPaths().length; path++)
+        {
+            if (fosSampler.getLaneGraphPaths()[path] != null)
+            {
+                Contour scheduledContour = scheduledGrid.getContour(path, Duration.ZERO, Duration.ofSI(60.0), now,
+                        Length.ZERO, Length.ofSI(100.0), end);
+                Contour bulkContour = bulkGrid.getContour(path, Duration.ZERO, Duration.ofSI(60.0), now, Length.ZERO,
+                        Length.ofSI(100.0), end);
+                for (int j = 0; j < bulkContour.distance().length; j++)
+                {
+                    assertArrayEquals(bulkContour.distance()[j], scheduledContour.distance()[j], 0.01f);
+                    assertArrayEquals(bulkContour.time()[j], scheduledContour.time()[j], 0.01f);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the samples sorted by GTU id.
+     * @param samples samples
+     * @return samples sorted by GTU id
+     */
+    private static List<Samples> sorted(final List<Samples> samples)
+    {
+        return samples.stream().sorted(Comparator.comparing(Samples::gtuId)).toList();
+    }
+
+}
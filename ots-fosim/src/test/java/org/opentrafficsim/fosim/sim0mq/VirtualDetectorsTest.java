@@ -0,0 +1,132 @@
+package org.opentrafficsim.fosim.sim0mq;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.djunits.value.vdouble.scalar.Duration;
+import org.djunits.value.vdouble.scalar.Frequency;
+import org.junit.jupiter.api.Test;
+import org.opentrafficsim.core.network.NetworkException;
+import org.opentrafficsim.fosim.FosDetector;
+import org.opentrafficsim.fosim.parser.FosParser;
+import org.opentrafficsim.fosim.parser.FosSampler;
+import org.opentrafficsim.fosim.parser.ParserSetting;
+import org.opentrafficsim.fosim.sim0mq.VirtualDetectors.Passings;
+import org.opentrafficsim.fosim.simulator.OtsSimulatorStep;
+import org.opentrafficsim.kpi.sampling.SamplerData;
+import org.opentrafficsim.road.network.lane.Lane;
+
+/**
+ * Tests for {@code VirtualDetectors}. Virtual detectors at the positions of the simulated detectors are compared with the
+ * simulated detectors.
+ * <p>
+ * Copyright (c) 2023-2024 Delft University of Technology, PO Box 5, 2600 AA, Delft, the Netherlands. All rights reserved. <br>
+ * BSD-style license. See <a href="https://opentrafficsim.org/docs/license.html">OpenTrafficSim License</a>.
+ * </p>
+ * @author <a href="https://github.com/wjschakel">Wouter Schakel</a>
+ */
+public class VirtualDetectorsTest
+{
+
+    /** Aggregation period, equal to the detector periods in the .fos file. */
+    private static final Duration PERIOD = Duration.ofSI(300.0);
+
+    /** End of simulation [s]. */
+    private static final double END = 700.0;
+
+    /**
+     * Test that virtual detectors count the same vehicles at a similar harmonic mean speed as simulated detectors at the same
+     * position, that passings are sorted by time, and that only completed periods are derived.
+     * @throws IOException when the .fos file cannot be read
+     * @throws NetworkException when the network cannot be built
+     */
+    @Test
+    public void testDetectors() throws IOException, NetworkException
+    {
+        String fosString = new String(VirtualDetectorsTest.class.getResourceAsStream("/fos/Afv_21_quick.fos").readAllBytes(),
+                StandardCharsets.UTF_8);
+        Map<ParserSetting, Boolean> settings = new LinkedHashMap<>();
+        settings.put(ParserSetting.GUI, false);
+        OtsSimulatorStep simulator = new OtsSimulatorStep("Virtual detectors test");
+        FosParser parser = new FosParser().setSettings(settings).setSimulator(simulator);
+        parser.parseFromString(fosString);
+        FosSampler fosSampler = new FosSampler(parser, parser.getNetwork(), Frequency.ofSI(2.0));
+        while (simulator.getSimulatorTime().si < END)
+        {
+            simulator.step();
+        }
+        List<SamplerData<?>> samplerData = List.of(fosSampler.getSampler().getSamplerData());
+
+        int compared = 0;
+        double[] sampled = null;
+        for (FosDetector detector : parser.getNetwork().getObjectMap(FosDetector.class).values())
+        {
+            // virtual detectors do not interpolate between samples on different lanes, skip detectors at a lane boundary
+            Lane lane = detector.getLane();
+            double position = detector.getLongitudinalPosition().si;
+            if (position < 20.0 || position > lane.getLength().si - 20.0)
+            {
+                continue;
+            }
+            double x = lane.getCenterLine().getFirst().x + position;
+            int laneRow = OtsTransceiver.getLaneRowFromId(lane.getId());
+            VirtualDetectors virtualDetectors = new VirtualDetectors(samplerData, new double[] {x}, new int[] {laneRow},
+                    PERIOD, simulator.getSimulatorTime());
+            assertEquals(1, virtualDetectors.size());
+            assertEquals(2, virtualDetectors.getPeriods());
+
+            Passings passings = virtualDetectors.getPassings(0);
+            assertEquals(passings.time().length, passings.speed().length);
+            assertEquals(passings.time().length, passings.gtuId().length);
+            for (int i = 1; i < passings.time().length; i++)
+            {
+                assertTrue(passings.time()[i] >= passings.time()[i - 1], "Passings not sorted by time.");
+            }
+
+            for (int period = 0; period < virtualDetectors.getPeriods(); period++)
+            {
+                int count = detector.getCount(period);
+                int virtualCount = virtualDetectors.getCount(0, period);
+                assertEquals(count, virtualCount, 2.0 + 0.02 * count,
+                        "Count of detector " + detector.getId() + " in period " + period);
+                if (count > 10)
+                {
+                    double speed = count / detector.getSumReciprocalSpeed(period);
+                    assertEquals(speed, virtualDetectors.getHarmonicMeanSpeed(0, period), 0.1 * speed,
+                            "Speed of detector " + detector.getId() + " in period " + period);
+                    compared++;
+                }
+            }
+            if (sampled == null && passings.time().length > 0)
+            {
+                sampled = new double[] {x, laneRow, passings.time().length};
+            }
+        }
+        assertTrue(compared > 0, "No detector with traffic compared.");
+        assertNotNull(sampled);
+
+        // no passings upstream of the network
+        VirtualDetectors none = new VirtualDetectors(samplerData, new double[] {-100.0}, new int[] {1}, PERIOD,
+                simulator.getSimulatorTime());
+        assertEquals(0, none.getPassings(0).time().length);
+        assertEquals(0, none.getCount(0, 0));
+        assertTrue(Double.isNaN(none.getHarmonicMeanSpeed(0, 0)));
+
+        // index of positions and lanes, lane row -1 does not exist
+        VirtualDetectors grid = new VirtualDetectors(samplerData, new double[] {-100.0, sampled[0]},
+                new int[] {(int) sampled[1], -1}, PERIOD, simulator.getSimulatorTime());
+        assertEquals(4, grid.size());
+        assertEquals(0, grid.getPassings(0).time().length);
+        assertEquals(0, grid.getPassings(1).time().length);
+        assertEquals((int) sampled[2], grid.getPassings(2).time().length);
+        assertEquals(0, grid.getPassings(3).time().length);
+    }
+
+}
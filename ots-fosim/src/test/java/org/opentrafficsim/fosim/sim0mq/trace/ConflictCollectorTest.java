@@ -0,0 +1,70 @@
+package org.opentrafficsim.fosim.sim0mq.trace;
+
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.djunits.value.vdouble.scalar.Duration;
+import org.junit.jupiter.api.Test;
+import org.opentrafficsim.core.network.NetworkException;
+import org.opentrafficsim.fosim.GtuSlots;
+import org.opentrafficsim.fosim.batch.HeadlessRun;
+
+/**
+ * Tests for {@code ConflictCollector}. A simulation with an off-ramp is run, such that leaders are also found over lane
+ * boundaries and at a split.
+ * <p>
+ * Copyright (c) 2023-2024 Delft University of Technology, PO Box 5, 2600 AA, Delft, the Netherlands. All rights reserved. <br>
+ * BSD-style license. See <a href="https://opentrafficsim.org/docs/license.html">OpenTrafficSim License</a>.
+ * </p>
+ * @author <a href="https://github.com/wjschakel">Wouter Schakel</a>
+ */
+public class ConflictCollectorTest
+{
+
+    /** TTC threshold [s]. */
+    private static final double TTC_THRESHOLD = 10.0;
+
+    /**
+     * Test that conflict episodes are consistent.
+     * @throws IOException when the .fos file cannot be read
+     * @throws NetworkException when the network cannot be built
+     */
+    @Test
+    public void testConflicts() throws IOException, NetworkException
+    {
+        String fosString = new String(ConflictCollectorTest.class.getResourceAsStream("/fos/Afv_21_quick.fos").readAllBytes(),
+                StandardCharsets.UTF_8);
+        TraceData data = new TraceData(Trace.CONFLICT);
+        ConflictCollector[] collector = new ConflictCollector[1];
+        Duration end = Duration.ofSI(600.0);
+        new HeadlessRun(fosString, "Conflict collector test").setEndTime(end).addAction(Duration.ZERO, (network) ->
+        {
+            // before the first GTU is generated, so all GTUs have a slot
+            GtuSlots gtuSlots = new GtuSlots(network, List.of());
+            collector[0] = new ConflictCollector(network, gtuSlots, data, Duration.ofSI(0.5))
+                    .setTtcThreshold(Duration.ofSI(TTC_THRESHOLD));
+        }).addAction(end, (network) -> collector[0].flush()).run();
+
+        assertTrue(data.size() > 0, "No conflicts in a busy simulation.");
+        float[] start = data.asFloat(0);
+        float[] stop = data.asFloat(1);
+        float[] minTtc = data.asFloat(4);
+        float[] maxDrac = data.asFloat(5);
+        int[] id = data.asInteger(7);
+        int[] leader = data.asInteger(8);
+        for (int i = 0; i < data.size(); i++)
+        {
+            assertTrue(start[i] <= stop[i], "Conflict ends before it starts.");
+            assertTrue(stop[i] <= end.si, "Conflict ends after the end of the simulation.");
+            assertTrue(minTtc[i] > 0.0f && minTtc[i] < TTC_THRESHOLD, "Minimum TTC is not below the threshold.");
+            assertTrue(maxDrac[i] > 0.0f, "Maximum DRAC is not positive.");
+            assertTrue(id[i] >= 0 && leader[i] >= 0, "GTU or leader id is not resolved from its slot.");
+            assertNotEquals(id[i], leader[i], "GTU is its own leader.");
+        }
+    }
+
+}
@@ -0,0 +1,170 @@
+package org.opentrafficsim.fosim.sim0mq.trace;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.List;
+
+import javax.naming.NamingException;
+
+import org.djunits.unit.PositionUnit;
+import org.djunits.value.vdouble.scalar.Acceleration;
+import org.djunits.value.vdouble.scalar.Duration;
+import org.djunits.value.vdouble.scalar.Speed;
+import org.djunits.value.vdouble.scalar.Time;
+import org.djunits.value.vdouble.vector.PositionVector;
+import org.djutils.event.Event;
+import org.junit.jupiter.api.Test;
+import org.opentrafficsim.core.dsol.AbstractOtsModel;
+import org.opentrafficsim.core.dsol.OtsSimulator;
+import org.opentrafficsim.core.network.Network;
+import org.opentrafficsim.core.perception.HistoryManagerDevs;
+import org.opentrafficsim.fosim.GtuSlots;
+import org.opentrafficsim.road.gtu.lane.LaneBasedGtu;
+import org.opentrafficsim.road.network.RoadNetwork;
+
+import nl.tudelft.simulation.dsol.SimRuntimeException;
+
+/**
+ * Tests for {@code TraceCollector}. Move and lane change events are fed to the collector directly.
+ * <p>
+ * Copyright (c) 2023-2024 Delft University of Technology, PO Box 5, 2600 AA, Delft, the Netherlands. All rights reserved. <br>
+ * BSD-style license. See <a href="https://opentrafficsim.org/docs/license.html">OpenTrafficSim License</a>.
+ * </p>
+ * @author <a href="https://github.com/wjschakel">Wouter Schakel</a>
+ */
+public class TraceCollectorTest
+{
+
+    /** Network. */
+    private RoadNetwork network;
+
+    /** Collector. */
+    private TraceCollector collector;
+
+    /**
+     * Creates a network with an initialized simulator, in which GTUs 1 and 2 have a slot, and a collector without traces.
+     * @throws SimRuntimeException simulation exception
+     * @throws NamingException naming exception
+     */
+    private void createCollector() throws SimRuntimeException, NamingException
+    {
+        OtsSimulator simulator = new OtsSimulator("Trace collector test");
+        this.network = new RoadNetwork("Trace collector test", simulator);
+        simulator.initialize(Time.ZERO, Duration.ZERO, Duration.ofSI(3600.0), new AbstractOtsModel(simulator)
+        {
+            @Override
+            public Network getNetwork()
+            {
+                return TraceCollectorTest.this.network;
+            }
+
+            @Override
+            public void constructModel() throws SimRuntimeException
+            {
+                //
+            }
+        }, HistoryManagerDevs.noHistory(simulator));
+        GtuSlots gtuSlots = new GtuSlots(this.network, List.of());
+        // slots are assigned before the collector exists, which would otherwise subscribe to the (absent) GTUs
+        this.network.fireEvent(Network.GTU_ADD_EVENT, "1");
+        this.network.fireEvent(Network.GTU_ADD_EVENT, "2");
+        this.collector = new TraceCollector(this.network, gtuSlots);
+    }
+
+    /**
+     * Feeds a move event to the collector.
+     * @param id GTU id
+     * @param x position [m]
+     * @param v speed [m/s]
+     * @param a acceleration [m/s/s]
+     * @param laneId lane id
+     */
+    private void move(final String id, final double x, final double v, final double a, final String laneId)
+    {
+        Object[] payload = new Object[] {id, new PositionVector(new double[] {x, 0.0}, PositionUnit.METER), null,
+                Speed.ofSI(v), Acceleration.ofSI(a), null, null, null, laneId};
+        this.collector.notify(new Event(LaneBasedGtu.LANEBASED_MOVE_EVENT, payload, false));
+    }
+
+    /**
+     * Feeds a lane change event to the collector.
+     * @param id GTU id
+     */
+    private void laneChange(final String id)
+    {
+        this.collector.notify(new Event(LaneBasedGtu.LANE_CHANGE_EVENT, new Object[] {id, null, null, null, null}, false));
+    }
+
+    /**
+     * Test that acceleration changes are only recorded while the trace is active, from the second move after activation.
+     * @throws SimRuntimeException simulation exception
+     * @throws NamingException naming exception
+     */
+    @Test
+    public void testAccelerationChange() throws SimRuntimeException, NamingException
+    {
+        createCollector();
+        // no trace active, nothing is stored, also not for a GTU without slot
+        move("1", 10.0, 20.0, 1.0, "A_1");
+        move("unknown", 10.0, 20.0, 1.0, "A_1");
+
+        TraceData data = new TraceData(Trace.ACCELERATION_CHANGE);
+        this.collector.setAccelerationChangeData(data);
+        move("1", 20.0, 20.0, 1.0, "A_1");
+        move("2", 5.0, 10.0, -0.5, "A_2");
+        move("1", 30.0, 20.5, 1.0, "A_1");
+        assertEquals(0, data.size());
+        move("1", 40.0, 21.0, 0.52, "A_1");
+        move("2", 6.0, 10.0, -0.5, "A_2");
+        assertEquals(1, data.size());
+        assertEquals(1, data.asInteger(1)[0]);
+        assertEquals(1, data.asInteger(2)[0]);
+        assertEquals(1.0f, data.asFloat(3)[0], 1e-6f);
+        assertEquals(0.5f, data.asFloat(4)[0], 1e-6f);
+        assertEquals(40.0f, data.asFloat(5)[0], 1e-6f);
+        assertEquals(21.0f, data.asFloat(6)[0], 1e-6f);
+        assertEquals(-1, data.asInteger(7)[0]);
+        assertEquals(1, data.asInteger(8)[0]);
+
+        // while inactive the previous stamps are not updated, so they are cleared on activation
+        this.collector.setAccelerationChangeData(null);
+        move("1", 50.0, 21.0, 2.0, "A_1");
+        TraceData next = new TraceData(Trace.ACCELERATION_CHANGE);
+        this.collector.setAccelerationChangeData(next);
+        move("1", 60.0, 21.0, 2.0, "A_1");
+        assertEquals(0, next.size());
+        move("1", 70.0, 21.0, 2.0, "A_1");
+        assertEquals(0, next.size());
+        assertEquals(1, data.size());
+    }
+
+    /**
+     * Test that lane changes are recorded on the first move after the lane change event, and are forwarded to listeners.
+     * @throws SimRuntimeException simulation exception
+     * @throws NamingException naming exception
+     */
+    @Test
+    public void testLaneChange() throws SimRuntimeException, NamingException
+    {
+        createCollector();
+        int[] forwarded = new int[1];
+        this.collector.addLaneChangeListener((event) -> forwarded[0]++);
+        TraceData data = new TraceData(Trace.LANE_CHANGE);
+        this.collector.setLaneChangeData(data);
+        move("2", 100.0, 25.0, 0.0, "A_2");
+        // leaving a diagonal lane without lane change event is not a lane change
+        move("2", 110.0, 25.0, 0.0, "A_3");
+        assertEquals(0, data.size());
+        laneChange("2");
+        laneChange("unknown");
+        assertEquals(2, forwarded[0]);
+        move("2", 120.0, 25.0, 0.0, "A_2");
+        move("2", 130.0, 25.0, 0.0, "A_2");
+        assertEquals(1, data.size());
+        assertEquals(3, data.asInteger(1)[0]);
+        assertEquals(2, data.asInteger(2)[0]);
+        assertEquals(120.0f, data.asFloat(3)[0], 1e-6f);
+        assertEquals(2, data.asInteger(5)[0]);
+    }
+
+}
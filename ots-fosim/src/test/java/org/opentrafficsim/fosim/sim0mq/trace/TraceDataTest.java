@@ -0,0 +1,297 @@
+package org.opentrafficsim.fosim.sim0mq.trace;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import org.djunits.value.vfloat.vector.FloatAccelerationVector;
+import org.djunits.value.vfloat.vector.FloatDurationVector;
+import org.djunits.value.vfloat.vector.FloatLengthVector;
+import org.djunits.value.vfloat.vector.FloatSpeedVector;
+import org.junit.jupiter.api.Test;
+import org.opentrafficsim.fosim.sim0mq.trace.Trace.ColumnType;
+
+/**
+ * Tests for {@code TraceData} and {@code TraceSpill}.
+ * <p>
+ * Copyright (c) 2023-2024 Delft University of Technology, PO Box 5, 2600 AA, Delft, the Netherlands. All rights reserved. <br>
+ * BSD-style license. See <a href="https://opentrafficsim.org/docs/license.html">OpenTrafficSim License</a>.
+ * </p>
+ * @author <a href="https://github.com/wjschakel">Wouter Schakel</a>
+ */
+public class TraceDataTest
+{
+
+    /** Number of rows appended, which spans multiple chunks. */
+    private static final int ROWS = 10000;
+
+    /** Bytes of one chunk of one column. */
+    private static final int CHUNK_BYTES = 4096 * 4;
+
+    /**
+     * Returns trace data with an int and a float column, with {@code ROWS} rows of which the values are the row index and half
+     * the row index.
+     * @param spill spill, may be null
+     * @return trace data
+     */
+    private static TraceData createData(final TraceSpill spill)
+    {
+        TraceData data = new TraceData(ColumnType.INTEGER, ColumnType.LENGTH).setSpill(spill);
+        for (int i = 0; i < ROWS; i++)
+        {
+            data.setInt(0, i).setFloat(1, 0.5f * i).addRow();
+        }
+        return data;
+    }
+
+    /**
+     * Asserts that the trace data contains the rows from the given row index onwards.
+     * @param data trace data
+     * @param from index of the first row
+     */
+    private static void assertRows(final TraceData data, final int from)
+    {
+        assertEquals(ROWS - from, data.size());
+        assertEquals(from, data.getFirstSequence());
+        assertEquals(ROWS, data.getSequence());
+        int[] ints = data.asInteger(0);
+        float[] floats = data.asFloat(1);
+        assertEquals(ROWS - from, ints.length);
+        assertEquals(ROWS - from, floats.length);
+        for (int i = from; i < ROWS; i++)
+        {
+            assertEquals(i, ints[i - from]);
+            assertEquals(0.5f * i, floats[i - from], 0.0f);
+        }
+    }
+
+    /**
+     * Returns the number of files in a directory.
+     * @param directory directory
+     * @return number of files in the directory
+     * @throws IOException if the directory cannot be listed
+     */
+    private static long countFiles(final Path directory) throws IOException
+    {
+        try (Stream<Path> files = Files.list(directory))
+        {
+            return files.count();
+        }
+    }
+
+    /**
+     * Test that rows spanning multiple chunks are returned in order.
+     */
+    @Test
+    public void testChunks()
+    {
+        TraceData data = createData(null);
+        assertEquals(2, data.getNumberOfColumns());
+        assertRows(data, 0);
+        assertEquals(ROWS, data.asLength(1).size());
+        assertThrows(IllegalArgumentException.class, () -> data.asFloat(0));
+        assertThrows(IllegalArgumentException.class, () -> data.asInteger(1));
+    }
+
+    /**
+     * Test that each column type is stored in its own primitive column, and is returned in the form of its payload type, also
+     * when the columns are spilled to segment files.
+     * @throws IOException if the temporary directory cannot be created or listed
+     */
+    @Test
+    public void testColumnTypes() throws IOException
+    {
+        Path directory = Files.createTempDirectory("ots-trace-test");
+        try
+        {
+            for (TraceSpill spill : new TraceSpill[] {null, new TraceSpill(0L, directory)})
+            {
+                TraceData data = new TraceData(ColumnType.DURATION, ColumnType.INTEGER, ColumnType.LENGTH, ColumnType.SPEED,
+                        ColumnType.ACCELERATION).setSpill(spill);
+                for (int i = 0; i < ROWS; i++)
+                {
+                    // set in a different order than the columns
+                    data.setFloat(4, -0.25f * i).setInt(1, -i).setFloat(0, 0.5f * i).setFloat(3, 30.0f).setFloat(2, 2.0f * i)
+                            .addRow();
+                }
+                assertEquals(5, data.getNumberOfColumns());
+                assertEquals(ROWS, data.size());
+                assertInstanceOf(FloatDurationVector.class, data.getColumn(0));
+                assertInstanceOf(int[].class, data.getColumn(1));
+                assertInstanceOf(FloatLengthVector.class, data.getColumn(2));
+                assertInstanceOf(FloatSpeedVector.class, data.getColumn(3));
+                assertInstanceOf(FloatAccelerationVector.class, data.getColumn(4));
+                float[] duration = ((FloatDurationVector) data.getColumn(0)).getValuesSI();
+                int[] ints = (int[]) data.getColumn(1);
+                float[] length = ((FloatLengthVector) data.getColumn(2)).getValuesSI();
+                float[] speed = ((FloatSpeedVector) data.getColumn(3)).getValuesSI();
+                float[] acceleration = ((FloatAccelerationVector) data.getColumn(4)).getValuesSI();
+                for (int i = 0; i < ROWS; i++)
+                {
+                    assertEquals(0.5f * i, duration[i], 0.0f);
+                    assertEquals(-i, ints[i]);
+                    assertEquals(2.0f * i, length[i], 0.0f);
+                    assertEquals(30.0f, speed[i], 0.0f);
+                    assertEquals(-0.25f * i, acceleration[i], 0.0f);
+                }
+                assertArrayEquals(length, data.asFloat(2), 0.0f);
+                for (int column : new int[] {0, 2, 3, 4})
+                {
+                    assertThrows(IllegalArgumentException.class, () -> data.asInteger(column));
+                }
+                data.clear();
+            }
+            assertEquals(0, countFiles(directory));
+        }
+        finally
+        {
+            new TraceSpill(0L, directory).deleteSegments();
+            Files.deleteIfExists(directory);
+        }
+    }
+
+    /**
+     * Test that trace data has the columns of its trace.
+     */
+    @Test
+    public void testTraceSchema()
+    {
+        for (Trace trace : Trace.values())
+        {
+            ColumnType[] columns = trace.getInfo().columns();
+            TraceData data = new TraceData(trace);
+            assertEquals(columns.length, data.getNumberOfColumns());
+            for (int i = 0; i < columns.length; i++)
+            {
+                if (ColumnType.INTEGER.equals(columns[i]))
+                {
+                    data.setInt(i, i);
+                }
+                else
+                {
+                    data.setFloat(i, i);
+                }
+            }
+            data.addRow();
+            for (int i = 0; i < columns.length; i++)
+            {
+                if (ColumnType.INTEGER.equals(columns[i]))
+                {
+                    assertEquals(i, ((int[]) data.getColumn(i))[0]);
+                }
+                else
+                {
+                    assertEquals(i, data.asFloat(i)[0], 0.0f);
+                }
+            }
+        }
+    }
+
+    /**
+     * Test that discarded rows are no longer returned, and that sequence numbers continue.
+     */
+    @Test
+    public void testDiscard()
+    {
+        TraceData data = createData(null);
+        data.discardBefore(5000L);
+        assertRows(data, 5000);
+        data.discardBefore(100L);
+        assertRows(data, 5000);
+        data.discardBefore(8192L);
+        assertRows(data, 8192);
+        data.discardBefore(Long.MAX_VALUE);
+        assertEquals(0, data.size());
+        assertEquals(ROWS, data.getFirstSequence());
+        data.setInt(0, -1).setFloat(1, -1.0f).addRow();
+        assertEquals(1, data.size());
+        assertEquals(ROWS, data.getFirstSequence());
+        assertEquals(-1, data.asInteger(0)[0]);
+    }
+
+    /**
+     * Test that clearing releases all rows, while sequence numbers continue.
+     */
+    @Test
+    public void testClear()
+    {
+        TraceData data = createData(null);
+        data.clear();
+        assertEquals(0, data.size());
+        assertEquals(ROWS, data.getSequence());
+        assertEquals(0, data.asInteger(0).length);
+        data.setInt(0, 7).setFloat(1, 7.0f).addRow();
+        assertEquals(ROWS, data.getFirstSequence());
+        assertEquals(7, data.asInteger(0)[0]);
+    }
+
+    /**
+     * Test that completed chunks are spilled to segment files beyond the budget, that spilled rows are returned, and that
+     * discarding and clearing release memory and delete segment files.
+     * @throws IOException if the temporary directory cannot be created or listed
+     */
+    @Test
+    public void testSpill() throws IOException
+    {
+        Path directory = Files.createTempDirectory("ots-trace-test");
+        try
+        {
+            TraceSpill spill = new TraceSpill(0L, directory);
+            TraceData data = createData(spill);
+            // 2 completed chunks are spilled, the chunk being appended to remains in memory for both columns
+            assertEquals(2, countFiles(directory));
+            assertEquals(2 * CHUNK_BYTES, spill.getAllocated());
+            assertRows(data, 0);
+
+            data.discardBefore(5000L);
+            assertEquals(1, countFiles(directory));
+            assertRows(data, 5000);
+
+            data.clear();
+            assertEquals(0, countFiles(directory));
+            assertEquals(0L, spill.getAllocated());
+            assertEquals(ROWS, data.getSequence());
+
+            // data remains in memory within budget
+            TraceData other = createData(new TraceSpill(Long.MAX_VALUE, directory));
+            assertEquals(0, countFiles(directory));
+            assertRows(other, 0);
+            assertThrows(IllegalStateException.class, () -> other.setSpill(null));
+        }
+        finally
+        {
+            new TraceSpill(0L, directory).deleteSegments();
+            Files.deleteIfExists(directory);
+        }
+    }
+
+    /**
+     * Test that remaining segment files are deleted at once.
+     * @throws IOException if the temporary directory cannot be created or listed
+     */
+    @Test
+    public void testDeleteSegments() throws IOException
+    {
+        Path directory = Files.createTempDirectory("ots-trace-test");
+        try
+        {
+            TraceSpill spill = new TraceSpill(0L, directory);
+            createData(spill);
+            createData(spill);
+            assertEquals(4, countFiles(directory));
+            spill.deleteSegments();
+            assertEquals(0, countFiles(directory));
+        }
+        finally
+        {
+            Files.deleteIfExists(directory);
+        }
+    }
+
+}
@@ -0,0 +1,109 @@
+package org.opentrafficsim.fosim.sim0mq.trace;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.djunits.value.vdouble.scalar.Duration;
+import org.djunits.value.vdouble.scalar.Length;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for {@code TraceFilter}.
+ * <p>
+ * Copyright (c) 2023-2024 Delft University of Technology, PO Box 5, 2600 AA, Delft, the Netherlands. All rights reserved. <br>
+ * BSD-style license. See <a href="https://opentrafficsim.org/docs/license.html">OpenTrafficSim License</a>.
+ * </p>
+ * @author <a href="https://github.com/wjschakel">Wouter Schakel</a>
+ */
+public class TraceFilterTest
+{
+
+    /**
+     * Returns a filter of x-range 100-200m, lanes 1-2, GTU types 0 and 3 and time window 60-120s.
+     * @return filter
+     */
+    private static TraceFilter createFilter()
+    {
+        return new TraceFilter(Length.ofSI(100.0), Length.ofSI(200.0), 1, 2, new int[] {0, 3},
+                Duration.ofSI(60.0), Duration.ofSI(120.0));
+    }
+
+    /**
+     * Test that ranges are inclusive.
+     */
+    @Test
+    public void testRanges()
+    {
+        TraceFilter filter = createFilter();
+        assertTrue(filter.acceptsLocation(100.0, 1));
+        assertTrue(filter.acceptsLocation(200.0, 2));
+        assertFalse(filter.acceptsLocation(99.9, 1));
+        assertFalse(filter.acceptsLocation(200.1, 2));
+        assertFalse(filter.acceptsLocation(150.0, 0));
+        assertFalse(filter.acceptsLocation(150.0, 3));
+
+        assertTrue(filter.acceptsTime(60.0));
+        assertTrue(filter.acceptsTime(120.0));
+        assertFalse(filter.acceptsTime(59.9));
+        assertFalse(filter.acceptsTime(120.1));
+        assertFalse(filter.isOver(120.0));
+        assertTrue(filter.isOver(120.1));
+
+        assertTrue(filter.accepts(90.0, 150.0, 1));
+        assertFalse(filter.accepts(30.0, 150.0, 1));
+        assertFalse(filter.accepts(90.0, 50.0, 1));
+    }
+
+    /**
+     * Test that only the given GTU types are accepted.
+     */
+    @Test
+    public void testGtuTypes()
+    {
+        TraceFilter filter = createFilter();
+        assertTrue(filter.acceptsGtuType(0));
+        assertFalse(filter.acceptsGtuType(1));
+        assertFalse(filter.acceptsGtuType(2));
+        assertTrue(filter.acceptsGtuType(3));
+        assertFalse(filter.acceptsGtuType(4));
+        assertFalse(filter.acceptsGtuType(-1));
+    }
+
+    /**
+     * Test that the filter of all data accepts anything.
+     */
+    @Test
+    public void testAll()
+    {
+        TraceFilter filter = TraceFilter.ALL;
+        assertTrue(filter.accepts(0.0, 0.0, 0));
+        assertTrue(filter.accepts(-1e9, 1e9, Integer.MAX_VALUE));
+        assertTrue(filter.acceptsGtuType(0));
+        assertTrue(filter.acceptsGtuType(1000));
+        assertFalse(filter.isOver(Double.MAX_VALUE));
+    }
+
+    /**
+     * Test input validation.
+     */
+    @Test
+    public void testInput()
+    {
+        Length x0 = Length.ofSI(100.0);
+        Length x1 = Length.ofSI(200.0);
+        Duration t0 = Duration.ofSI(60.0);
+        Duration t1 = Duration.ofSI(120.0);
+        int[] types = new int[0];
+        assertThrows(IllegalArgumentException.class, () -> new TraceFilter(x1, x0, 1, 2, types, t0, t1));
+        assertThrows(IllegalArgumentException.class, () -> new TraceFilter(x0, x1, 2, 1, types, t0, t1));
+        assertThrows(IllegalArgumentException.class, () -> new TraceFilter(x0, x1, 1, 2, types, t1, t0));
+        assertThrows(IllegalArgumentException.class, () -> new TraceFilter(x0, x1, 1, 2, new int[] {2, -1}, t0, t1));
+        assertThrows(NullPointerException.class, () -> new TraceFilter(null, x1, 1, 2, types, t0, t1));
+        assertThrows(NullPointerException.class, () -> new TraceFilter(x0, x1, 1, 2, null, t0, t1));
+        assertThrows(NullPointerException.class, () -> new TraceFilter(x0, x1, 1, 2, types, t0, null));
+        // ranges of a single value are valid
+        assertTrue(new TraceFilter(x0, x0, 1, 1, types, t0, t0).accepts(60.0, 100.0, 1));
+    }
+
+}
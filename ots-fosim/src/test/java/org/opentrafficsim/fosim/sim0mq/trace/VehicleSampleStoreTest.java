@@ -0,0 +1,112 @@
+package org.opentrafficsim.fosim.sim0mq.trace;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.djunits.value.vdouble.scalar.Duration;
+import org.junit.jupiter.api.Test;
+import org.opentrafficsim.core.network.NetworkException;
+import org.opentrafficsim.fosim.parser.FosParser;
+import org.opentrafficsim.fosim.parser.ParserSetting;
+import org.opentrafficsim.fosim.simulator.OtsSimulatorStep;
+
+/**
+ * Tests for {@code VehicleSampleStore}.
+ * <p>
+ * Copyright (c) 2023-2024 Delft University of Technology, PO Box 5, 2600 AA, Delft, the Netherlands. All rights reserved. <br>
+ * BSD-style license. See <a href="https://opentrafficsim.org/docs/license.html">OpenTrafficSim License</a>.
+ * </p>
+ * @author <a href="https://github.com/wjschakel">Wouter Schakel</a>
+ */
+public class VehicleSampleStoreTest
+{
+
+    /**
+     * Test that rows are sampled at each vehicles trace step, that a changed step takes effect, and that the time cursor
+     * returns the first row at or after a time, also after rows are discarded.
+     * @throws IOException when the .fos file cannot be read
+     * @throws NetworkException when the network cannot be built
+     */
+    @Test
+    public void testTimeCursor() throws IOException, NetworkException
+    {
+        String fosString = new String(
+                VehicleSampleStoreTest.class.getResourceAsStream("/fos/Afv_21_quick.fos").readAllBytes(),
+                StandardCharsets.UTF_8);
+        Map<ParserSetting, Boolean> settings = new LinkedHashMap<>();
+        settings.put(ParserSetting.GUI, false);
+        OtsSimulatorStep simulator = new OtsSimulatorStep("Vehicle sample store test");
+        FosParser parser = new FosParser().setSettings(settings).setSimulator(simulator);
+        parser.parseFromString(fosString);
+        TraceData data = new TraceData(Trace.VEHICLES);
+        VehicleSampleStore store = new VehicleSampleStore(parser.getNetwork(), parser.getGtuSlots(), parser.getGtuTypes(),
+                parser.getOdNameMappings(), data, Duration.ofSI(1.0));
+        while (simulator.getSimulatorTime().si < 100.0)
+        {
+            simulator.step();
+        }
+        store.setVehiclesTraceStep(Duration.ofSI(2.0));
+        while (simulator.getSimulatorTime().si < 200.0)
+        {
+            simulator.step();
+        }
+        assertTrue(data.size() > 0, "No vehicles sampled.");
+
+        // rows are sampled at each step in order of time, and each GTU once per sample
+        float[] t = data.asFloat(0);
+        int[] id = data.asInteger(1);
+        int[] type = data.asInteger(2);
+        float[] v = data.asFloat(7);
+        for (int i = 0; i < t.length; i++)
+        {
+            assertTrue(id[i] >= 0 && type[i] >= 0 && v[i] >= 0.0f, "GTU data not resolved.");
+            if (i > 0)
+            {
+                assertTrue(t[i] >= t[i - 1], "Rows not in order of time.");
+                assertTrue(t[i] > t[i - 1] || id[i] != id[i - 1], "GTU sampled twice at the same time.");
+                // there is traffic at each sample from 50s, the changed step takes effect after the sample at 100s or 101s
+                if (t[i] > t[i - 1] && t[i - 1] >= 50.0)
+                {
+                    assertEquals(t[i] <= 101.0f ? 1.0f : 2.0f, t[i] - t[i - 1], 1e-3f, "Row not at a vehicles trace step.");
+                }
+            }
+        }
+
+        // the cursor points to the first row at or after the time
+        for (double time : new double[] {0.0, 10.0, 10.5, 100.0, 101.0, 150.0, 199.0})
+        {
+            assertEquals(firstRowAtOrAfter(data, time), store.getSequence(Duration.ofSI(time)), "Sequence at " + time);
+        }
+        assertEquals(data.getSequence(), store.getSequence(Duration.ofSI(500.0)));
+
+        // after discarding, earlier times point to the first retained row
+        long cursor = store.getSequence(Duration.ofSI(120.0));
+        data.discardBefore(cursor);
+        assertEquals(cursor, store.getSequence(Duration.ofSI(0.0)));
+        assertEquals(cursor, store.getSequence(Duration.ofSI(120.0)));
+        assertEquals(firstRowAtOrAfter(data, 150.0), store.getSequence(Duration.ofSI(150.0)));
+    }
+
+    /**
+     * Returns the sequence number of the first row at or after the given time.
+     * @param data trace data
+     * @param time time [s]
+     * @return sequence number of the first row at or after the given time
+     */
+    private static long firstRowAtOrAfter(final TraceData data, final double time)
+    {
+        float[] t = data.asFloat(0);
+        int i = 0;
+        while (i < t.length && t[i] < time)
+        {
+            i++;
+        }
+        return data.getFirstSequence() + i;
+    }
+
+}